@@ -1,12 +1,87 @@
 package rpggame;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.*;
 import java.util.stream.Collectors;
 
 public class RPGGame {
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("alloc")) {
+            AllocationBudget.run(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("combatlog")) {
+            CombatLog.run(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("items")) {
+            ItemGenerator.run(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("events")) {
+            EventBook.run(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("loot")) {
+            LootTable.run(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("skills")) {
+            SkillBook.run(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("pack")) {
+            PackBattleEngine.run(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("sweep")) {
+            BalanceSweep.run(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("kernel")) {
+            BatchCombatKernel.run(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("ai")) {
+            MonsterAI.run(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("offline")) {
+            OfflineProgress.run(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("simulate")) {
+            ProgressionSimulator.run(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("tune")) {
+            MonsterTuner.run(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("odds")) {
+            FightOddsCalculator.run(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("record")) {
+            SessionReplay.record(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("replay")) {
+            SessionReplay.replay(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        
         Game game = new Game();
         game.start();
     }
@@ -89,24 +164,297 @@ enum ShopType {
 
 // 상태 이상 열거형
 enum StatusEffectType {
-    POISON("중독", "매 턴 체력 5% 감소", true),
-    BURN("화상", "매 턴 체력 3% 감소", true),
-    FREEZE("빙결", "행동 불가", false),
-    BLESS("축복", "공격력 10% 증가", false);
+    POISON("중독", "매 턴 체력 5% 감소", 0.05, false, 0),
+    BURN("화상", "매 턴 체력 3% 감소", 0.03, false, 0),
+    FREEZE("빙결", "행동 불가", 0.0, true, 0),
+    BLESS("축복", "공격력 10% 증가", 0.0, false, 10);
     
     private String name;
     private String description;
-    private boolean isDamageOverTime;
+    private double damageRatio;       // 매 턴 최대 체력 대비 피해 비율
+    private boolean skipsTurn;
+    private int attackPercent;        // 중첩 하나당 공격력 퍼센트 수정치
     
-    StatusEffectType(String name, String description, boolean isDamageOverTime) {
+    StatusEffectType(String name, String description, double damageRatio, boolean skipsTurn, int attackPercent) {
         this.name = name;
         this.description = description;
-        this.isDamageOverTime = isDamageOverTime;
+        this.damageRatio = damageRatio;
+        this.skipsTurn = skipsTurn;
+        this.attackPercent = attackPercent;
     }
     
     public String getName() { return name; }
     public String getDescription() { return description; }
-    public boolean isDamageOverTime() { return isDamageOverTime; }
+    public boolean isDamageOverTime() { return damageRatio > 0; }
+    public double getDamageRatio() { return damageRatio; }
+    public boolean skipsTurn() { return skipsTurn; }
+    public int getAttackPercent() { return attackPercent; }
+}
+
+// 이미 걸린 상태 이상이 다시 걸릴 때의 규칙
+enum StackRule {
+    REFRESH,  // 남은 턴과 새 지속 시간 중 긴 쪽으로 갱신
+    EXTEND,   // 남은 턴에 새 지속 시간을 더한다
+    STACK,    // 최대치까지 중첩 수를 올리고 남은 턴을 갱신 (효과가 중첩 수만큼 커진다)
+    IGNORE    // 걸려 있는 동안에는 다시 걸리지 않는다
+}
+
+// 상태 이상 종류별 중첩/갱신 규칙 (with로 바꾼 사본을 만든다)
+class StatusRules {
+    static final StatusRules DEFAULT = new StatusRules()
+        .with(StatusEffectType.POISON, StackRule.STACK, 3)
+        .with(StatusEffectType.FREEZE, StackRule.IGNORE, 1);
+    
+    private final StackRule[] rules;
+    private final int[] maxStacks;
+    
+    // 모든 종류가 REFRESH, 최대 중첩 1
+    public StatusRules() {
+        int count = StatusEffectType.values().length;
+        this.rules = new StackRule[count];
+        this.maxStacks = new int[count];
+        Arrays.fill(rules, StackRule.REFRESH);
+        Arrays.fill(maxStacks, 1);
+    }
+    
+    private StatusRules(StatusRules other) {
+        this.rules = other.rules.clone();
+        this.maxStacks = other.maxStacks.clone();
+    }
+    
+    public StatusRules with(StatusEffectType type, StackRule rule, int maxStacks) {
+        StatusRules copy = new StatusRules(this);
+        copy.rules[type.ordinal()] = rule;
+        copy.maxStacks[type.ordinal()] = Math.max(1, maxStacks);
+        return copy;
+    }
+    
+    public StackRule getRule(StatusEffectType type) { return rules[type.ordinal()]; }
+    public int getMaxStacks(StatusEffectType type) { return maxStacks[type.ordinal()]; }
+}
+
+// 공격 속성 열거형 (기본 공격은 무속성)
+enum Element {
+    NONE("무속성"), STRIKE("타격"), PIERCE("관통"), FIRE("화염"), ICE("냉기"), POISON("독");
+    
+    private String name;
+    
+    Element(String name) {
+        this.name = name;
+    }
+    
+    public String getName() { return name; }
+}
+
+// 속성 × 몬스터 타입 상성표 (받는 피해 %).
+// 서수로 색인하는 1차원 배열이라 매 타격마다 객체를 만들거나 맵을 찾지 않는다.
+final class TypeChart {
+    static final int TYPES = MonsterType.values().length;
+    private static final int[] PERCENT = new int[Element.values().length * TYPES];
+    
+    static {
+        Arrays.fill(PERCENT, 100);
+        set(Element.STRIKE, MonsterType.UNDEAD, 125);
+        set(Element.STRIKE, MonsterType.CONSTRUCT, 150);
+        set(Element.STRIKE, MonsterType.PLANT, 75);
+        set(Element.STRIKE, MonsterType.GHOST, 50);
+        
+        set(Element.PIERCE, MonsterType.FLYING, 150);
+        set(Element.PIERCE, MonsterType.BEAST, 125);
+        set(Element.PIERCE, MonsterType.UNDEAD, 75);
+        set(Element.PIERCE, MonsterType.GHOST, 50);
+        set(Element.PIERCE, MonsterType.CONSTRUCT, 50);
+        
+        set(Element.FIRE, MonsterType.PLANT, 200);
+        set(Element.FIRE, MonsterType.UNDEAD, 150);
+        set(Element.FIRE, MonsterType.BEAST, 125);
+        set(Element.FIRE, MonsterType.ELEMENTAL, 50);
+        set(Element.FIRE, MonsterType.DEMON, 50);
+        set(Element.FIRE, MonsterType.DRAGON, 50);
+        
+        set(Element.ICE, MonsterType.DRAGON, 150);
+        set(Element.ICE, MonsterType.FLYING, 150);
+        set(Element.ICE, MonsterType.PLANT, 125);
+        set(Element.ICE, MonsterType.DEMON, 125);
+        set(Element.ICE, MonsterType.UNDEAD, 50);
+        
+        set(Element.POISON, MonsterType.BEAST, 150);
+        set(Element.POISON, MonsterType.NORMAL, 125);
+        set(Element.POISON, MonsterType.GIANT, 125);
+        set(Element.POISON, MonsterType.PLANT, 50);
+        set(Element.POISON, MonsterType.UNDEAD, 0);
+        set(Element.POISON, MonsterType.GHOST, 0);
+        set(Element.POISON, MonsterType.ELEMENTAL, 0);
+        set(Element.POISON, MonsterType.CONSTRUCT, 0);
+    }
+    
+    private TypeChart() {}
+    
+    private static void set(Element element, MonsterType type, int percent) {
+        PERCENT[element.ordinal() * TYPES + type.ordinal()] = percent;
+    }
+    
+    static int percent(Element element, MonsterType type) {
+        return PERCENT[element.ordinal() * TYPES + type.ordinal()];
+    }
+    
+    // 배율을 적용한 피해 (면역이 아니면 최소 1)
+    static int scale(int damage, int percent) {
+        if (percent == 100) return damage;
+        if (percent <= 0) return 0;
+        return Math.max(1, damage * percent / 100);
+    }
+    
+    // 상성 배율이 걸린 타격을 알린다. 약점은 처음 찔렀을 때 드러난다
+    static void announce(PrintStream out, Monster target, Element element, int percent) {
+        if (percent <= 0) {
+            out.printf("%s은(는) %s 속성에 면역입니다!\n", target.getName(), element.getName());
+        } else if (percent < 100) {
+            out.println("효과가 별로인 것 같습니다...");
+        } else if (target.revealWeakness(element)) {
+            out.printf("약점 발견! %s은(는) %s 속성에 약합니다!\n", target.getName(), element.getName());
+        } else {
+            out.println("효과가 굉장합니다!");
+        }
+    }
+    
+    // 드러난 약점 속성 목록 (예: "화염 냉기")
+    static String describeRevealed(Monster monster) {
+        StringBuilder text = new StringBuilder();
+        for (Element element : Element.values()) {
+            if (monster.isWeaknessRevealed(element)) {
+                if (text.length() > 0) text.append(' ');
+                text.append(element.getName());
+            }
+        }
+        return text.toString();
+    }
+}
+
+// 난수 생성기 인터페이스
+interface GameRandom {
+    long nextLong();
+    int nextInt(int bound);
+    double nextDouble();
+    boolean nextBoolean();
+    
+    // 이 스트림과 겹치지 않는 새 스트림을 분리
+    GameRandom split();
+    
+    // 상태를 바꾸지 않고 현재 상태를 요약 (재현 결과 비교용)
+    long stateHash();
+}
+
+// SplitMix64 난수 생성기 (SplittableRandom과 같은 방식으로 분리 가능)
+class SplitMixRandom implements GameRandom, Serializable {
+    private static final long serialVersionUID = 1L;
+    static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    
+    private long seed;
+    private long gamma;
+    
+    public SplitMixRandom(long seed) {
+        this(seed, GOLDEN_GAMMA);
+    }
+    
+    private SplitMixRandom(long seed, long gamma) {
+        this.seed = seed;
+        this.gamma = gamma;
+    }
+    
+    // 같은 객체를 새 시드로 다시 사용 (대량 시뮬레이션용)
+    public void setSeed(long seed) {
+        this.seed = seed;
+        this.gamma = GOLDEN_GAMMA;
+    }
+    
+    @Override
+    public long nextLong() {
+        return mix64(seed += gamma);
+    }
+    
+    // Lemire의 곱셈 방식으로 [0, bound) 범위의 균등 정수
+    @Override
+    public int nextInt(int bound) {
+        long product = (nextLong() >>> 32) * bound;
+        int low = (int) product;
+        if (Integer.compareUnsigned(low, bound) < 0) {
+            int threshold = Integer.remainderUnsigned(-bound, bound);
+            while (Integer.compareUnsigned(low, threshold) < 0) {
+                product = (nextLong() >>> 32) * bound;
+                low = (int) product;
+            }
+        }
+        return (int)(product >>> 32);
+    }
+    
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+    
+    @Override
+    public boolean nextBoolean() {
+        return nextLong() < 0;
+    }
+    
+    @Override
+    public GameRandom split() {
+        return new SplitMixRandom(nextLong(), mixGamma(seed += gamma));
+    }
+    
+    // 다음 nextLong()과 같은 값이지만 상태는 그대로 둔다
+    @Override
+    public long stateHash() {
+        return mix64(seed + gamma);
+    }
+    
+    static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+    
+    private static long mixGamma(long z) {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        int transitions = Long.bitCount(z ^ (z >>> 1));
+        return transitions < 24 ? z ^ 0xAAAAAAAAAAAAAAAAL : z;
+    }
+}
+
+// 난수 서비스 (스레드와 세션마다 분리된 스트림을 나눠 주어 공유 상태 경합이 없다)
+final class RandomService {
+    private static GameRandom root = new SplitMixRandom(System.nanoTime() ^ System.currentTimeMillis());
+    private static final ThreadLocal<GameRandom> CURRENT = ThreadLocal.withInitial(RandomService::newStream);
+    
+    private RandomService() {}
+    
+    // 현재 스레드 전용 스트림
+    public static GameRandom current() {
+        return CURRENT.get();
+    }
+    
+    // 현재 스레드가 이후 사용할 스트림을 지정 (세션을 스레드에 묶을 때)
+    public static void bind(GameRandom random) {
+        CURRENT.set(random);
+    }
+    
+    // 세션 마스터 시드 발급
+    public static synchronized long newSeed() {
+        return root.nextLong();
+    }
+    
+    // 루트에서 새 스트림을 분리 (세션 생성 시 한 번만 잠금을 잡는다)
+    public static synchronized GameRandom newStream() {
+        return root.split();
+    }
+    
+    // 난수 공급원 교체 (테스트나 재현용 고정 시드)
+    public static synchronized void setRoot(GameRandom random) {
+        root = random;
+    }
 }
 
 // 지역 클래스
@@ -116,6 +464,7 @@ class Location {
     private LocationType type;
     private int minLevel;
     private int maxLevel;
+    private LocationEvents events;   // 처음 사건을 굴릴 때 공유 사건표에서 찾아 둔다
     
     public Location(String name, String description, LocationType type, int minLevel, int maxLevel) {
         this.name = name;
@@ -134,6 +483,314 @@ class Location {
     public boolean isSuitableFor(int playerLevel) {
         return playerLevel >= minLevel && playerLevel <= maxLevel;
     }
+    
+    public LocationEvents getEvents() {
+        if (events == null) {
+            events = EventBook.SHARED.events(this);
+        }
+        return events;
+    }
+}
+
+// 하루의 시간대 (게임 날짜로 정한다)
+enum TimeOfDay {
+    MORNING("아침"), DAY("낮"), NIGHT("밤");
+    
+    // values()는 부를 때마다 배열을 복사하므로 한 번만 만들어 둔다
+    private static final TimeOfDay[] VALUES = values();
+    
+    private String name;
+    
+    TimeOfDay(String name) {
+        this.name = name;
+    }
+    
+    public String getName() { return name; }
+    
+    public static TimeOfDay of(int gameDay) {
+        return VALUES[gameDay % VALUES.length];
+    }
+}
+
+// 사건을 굴리는 상황
+enum EventContext {
+    EXPLORE("탐색"), TRAVEL("이동"), SPECIAL("특수");
+    
+    private String name;
+    
+    EventContext(String name) {
+        this.name = name;
+    }
+    
+    public String getName() { return name; }
+}
+
+// 사건 표에 올릴 수 있는 사건 (처리기는 Game이 미리 등록한다)
+enum GameEvent {
+    BATTLE("전투"), ITEM("아이템"), SPECIAL("특수 사건"), NOTHING("없음"),
+    FOUNTAIN("분수"), TREASURE("보물"), MERCHANT("상인"), TRAP("함정"), RUINS("유적");
+    
+    private String name;
+    
+    GameEvent(String name) {
+        this.name = name;
+    }
+    
+    public String getName() { return name; }
+}
+
+// 사건 처리기 (등록할 때 한 번 만들어 두고 굴릴 때마다 다시 쓴다)
+@FunctionalInterface
+interface EventHandler {
+    void handle(EventContext context, Location location);
+}
+
+// 한 지역, 상황, 시간대, 레벨 구간의 가중치 사건 표
+final class EventTable {
+    static final EventTable NONE = new EventTable(new GameEvent[] { GameEvent.NOTHING }, new double[] { 1.0 });
+    
+    private final GameEvent[] events;
+    private final double[] weights;
+    private final AliasSampler sampler;
+    
+    EventTable(GameEvent[] events, double[] weights) {
+        this.events = events;
+        this.weights = weights;
+        this.sampler = new AliasSampler(weights);
+    }
+    
+    public GameEvent roll(GameRandom random) {
+        return events[sampler.sample(random)];
+    }
+    
+    public double getChance(GameEvent event) {
+        double total = 0.0;
+        double chance = 0.0;
+        for (int i = 0; i < events.length; i++) {
+            total += weights[i];
+            if (events[i] == event) chance += weights[i];
+        }
+        return chance / total;
+    }
+    
+    boolean sameAs(EventTable other) {
+        return Arrays.equals(events, other.events) && Arrays.equals(weights, other.weights);
+    }
+    
+    public String describe() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < events.length; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(String.format("%s %.1f%%", events[i].getName(), getChance(events[i]) * 100));
+        }
+        return sb.toString();
+    }
+}
+
+// 사건 정의 한 줄: 장소(지역 이름, 지역 타입 또는 *), 상황, 시간대(또는 *), 레벨 범위, 사건, 가중치
+final class EventRule {
+    static final String ANY = "*";
+    
+    private final String place;
+    private final EventContext context;
+    private final TimeOfDay time;      // null이면 모든 시간대
+    private final int minLevel;
+    private final int maxLevel;
+    private final GameEvent event;
+    private final double weight;
+    
+    EventRule(String place, EventContext context, TimeOfDay time, int minLevel, int maxLevel, 
+              GameEvent event, double weight) {
+        this.place = place;
+        this.context = context;
+        this.time = time;
+        this.minLevel = minLevel;
+        this.maxLevel = maxLevel;
+        this.event = event;
+        this.weight = weight;
+    }
+    
+    boolean matches(Location location, EventContext context, TimeOfDay time, int level) {
+        return this.context == context
+            && (this.time == null || this.time == time)
+            && level >= minLevel && level <= maxLevel
+            && (place.equals(ANY) || place.equals(location.getName()) 
+                || place.equals(location.getType().getKoreanName()));
+    }
+    
+    public int getMinLevel() { return minLevel; }
+    public int getMaxLevel() { return maxLevel; }
+    public GameEvent getEvent() { return event; }
+    public double getWeight() { return weight; }
+}
+
+// 지역 하나의 사건 표. 상황 × 시간대 × 플레이어 레벨마다 미리 만들어 두고
+// 표가 같은 연속 레벨은 같은 표를 공유한다. 규칙의 레벨 경계를 넘는 레벨은 마지막 표를 쓴다.
+final class LocationEvents {
+    private final EventTable[][][] tables = 
+        new EventTable[EventContext.values().length][TimeOfDay.values().length][];
+    
+    LocationEvents(Location location, List<EventRule> rules, int levelLimit) {
+        GameEvent[] allEvents = GameEvent.values();
+        double[] weights = new double[allEvents.length];
+        for (EventContext context : EventContext.values()) {
+            for (TimeOfDay time : TimeOfDay.values()) {
+                EventTable[] byLevel = new EventTable[levelLimit + 1];
+                for (int level = 0; level <= levelLimit; level++) {
+                    // 같은 사건에 맞는 규칙이 여럿이면 마지막 규칙의 가중치를 쓴다
+                    Arrays.fill(weights, 0.0);
+                    for (EventRule rule : rules) {
+                        if (rule.matches(location, context, time, level)) {
+                            weights[rule.getEvent().ordinal()] = rule.getWeight();
+                        }
+                    }
+                    EventTable table = build(allEvents, weights);
+                    byLevel[level] = level > 0 && table.sameAs(byLevel[level - 1]) ? byLevel[level - 1] : table;
+                }
+                tables[context.ordinal()][time.ordinal()] = byLevel;
+            }
+        }
+    }
+    
+    private static EventTable build(GameEvent[] allEvents, double[] weights) {
+        int count = 0;
+        for (double weight : weights) {
+            if (weight > 0) count++;
+        }
+        if (count == 0) {
+            return EventTable.NONE;
+        }
+        GameEvent[] events = new GameEvent[count];
+        double[] kept = new double[count];
+        count = 0;
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] > 0) {
+                events[count] = allEvents[i];
+                kept[count++] = weights[i];
+            }
+        }
+        return new EventTable(events, kept);
+    }
+    
+    public EventTable table(EventContext context, TimeOfDay time, int playerLevel) {
+        EventTable[] byLevel = tables[context.ordinal()][time.ordinal()];
+        return byLevel[Math.max(0, Math.min(playerLevel, byLevel.length - 1))];
+    }
+}
+
+// 탐색, 이동, 특수 사건 확률표. events.txt가 있으면 그것을, 없으면 내장 기본값을 불러온다.
+// 지역마다 처음 필요할 때 한 번 표를 만들어 모든 세션이 함께 쓴다.
+final class EventBook {
+    static final String FILE = "events.txt";
+    
+    static final String[] DEFAULTS = {
+        "# 장소|상황|시간대|최소 레벨|최대 레벨|사건|가중치",
+        "# 장소: 지역 이름, 지역 타입(숲, 산, 묘지, 던전, 호수, 마을) 또는 *, 시간대: 아침, 낮, 밤 또는 *, 최대 레벨: 숫자 또는 *",
+        "# 상황: 탐색, 이동, 특수 (특수 사건이 나오면 특수 표를 굴린다), 같은 사건에 맞는 줄이 여럿이면 마지막 줄을 쓴다 (0이면 뺀다)",
+        "*|탐색|*|1|*|전투|60",
+        "*|탐색|*|1|*|아이템|25",
+        "*|탐색|*|1|*|특수 사건|10",
+        "*|탐색|*|1|*|없음|5",
+        "*|이동|*|1|*|전투|40",
+        "*|이동|*|1|*|아이템|30",
+        "*|이동|*|1|*|특수 사건|15",
+        "*|이동|*|1|*|없음|15",
+        "*|특수|*|1|*|분수|1",
+        "*|특수|*|1|*|보물|1",
+        "*|특수|*|1|*|상인|1",
+        "*|특수|*|1|*|함정|1",
+        "*|특수|*|1|*|유적|1"
+    };
+    
+    static final EventBook SHARED = new EventBook(load());
+    
+    private final List<EventRule> rules;
+    private final int levelLimit;   // 이 레벨 이상에서는 모든 규칙의 레벨 조건이 같은 결과를 낸다
+    private final Map<String, LocationEvents> byLocation = new ConcurrentHashMap<>();
+    
+    EventBook(List<EventRule> rules) {
+        this.rules = rules;
+        int limit = 1;
+        for (EventRule rule : rules) {
+            limit = Math.max(limit, rule.getMinLevel());
+            if (rule.getMaxLevel() != Integer.MAX_VALUE) {
+                limit = Math.max(limit, rule.getMaxLevel() + 1);
+            }
+        }
+        this.levelLimit = limit;
+    }
+    
+    public LocationEvents events(Location location) {
+        return byLocation.computeIfAbsent(location.getName() + "|" + location.getType(), 
+            key -> new LocationEvents(location, rules, levelLimit));
+    }
+    
+    public static List<EventRule> load() {
+        java.nio.file.Path path = java.nio.file.Paths.get(FILE);
+        if (java.nio.file.Files.exists(path)) {
+            try {
+                return parse(java.nio.file.Files.readAllLines(path, java.nio.charset.StandardCharsets.UTF_8), FILE);
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("사건 정의를 불러오지 못해 기본값을 사용합니다: " + e.getMessage());
+            }
+        }
+        return parse(Arrays.asList(DEFAULTS), "기본 사건 정의");
+    }
+    
+    public static List<EventRule> parse(List<String> lines, String source) {
+        List<EventRule> rules = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            try {
+                rules.add(compile(line));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException(source + " " + (i + 1) + "행: " + e.getMessage(), e);
+            }
+        }
+        return Collections.unmodifiableList(rules);
+    }
+    
+    static EventRule compile(String line) {
+        String[] fields = line.split("\\|", -1);
+        if (fields.length != 7) {
+            throw new IllegalArgumentException("항목이 7개여야 합니다 (" + fields.length + "개)");
+        }
+        for (int i = 0; i < fields.length; i++) fields[i] = fields[i].trim();
+        
+        EventContext context = SkillBook.lookup(EventContext.values(), EventContext::getName, fields[1], "상황");
+        TimeOfDay time = fields[2].equals(EventRule.ANY) ? null 
+            : SkillBook.lookup(TimeOfDay.values(), TimeOfDay::getName, fields[2], "시간대");
+        int minLevel = SkillBook.number(fields[3], "최소 레벨", 1);
+        int maxLevel = fields[4].equals(EventRule.ANY) ? Integer.MAX_VALUE 
+            : SkillBook.number(fields[4], "최대 레벨", minLevel);
+        GameEvent event = SkillBook.lookup(GameEvent.values(), GameEvent::getName, fields[5], "사건");
+        double weight;
+        try {
+            weight = Double.parseDouble(fields[6]);
+        } catch (NumberFormatException e) {
+            weight = -1;
+        }
+        if (!(weight >= 0) || Double.isInfinite(weight)) {
+            throw new IllegalArgumentException("가중치는 0 이상의 수여야 합니다: " + fields[6]);
+        }
+        if (context == EventContext.SPECIAL && event == GameEvent.SPECIAL) {
+            throw new IllegalArgumentException("특수 표에는 특수 사건을 둘 수 없습니다");
+        }
+        return new EventRule(fields[0], context, time, minLevel, maxLevel, event, weight);
+    }
+    
+    // events [파일]: 내장 기본 정의를 파일로 내보낸다 (기획자가 고쳐 쓰는 출발점)
+    static void run(String[] args) {
+        String filename = args.length > 0 ? args[0] : FILE;
+        try {
+            java.nio.file.Files.write(java.nio.file.Paths.get(filename), Arrays.asList(DEFAULTS), 
+                java.nio.charset.StandardCharsets.UTF_8);
+            System.out.println("기본 사건 정의 " + (DEFAULTS.length - 3) + "줄을 " + filename + "에 저장했습니다.");
+        } catch (IOException e) {
+            System.out.println("저장 실패: " + e.getMessage());
+        }
+    }
 }
 
 // NPC 클래스
@@ -179,6 +836,8 @@ interface Item extends Serializable {
     default int getSellPrice() {
         return (int)(getPrice() * 0.7);
     }
+    // 드롭 표의 아이템은 여러 세션이 함께 쓰는 원본이므로 플레이어에게는 복사본을 준다
+    Item copy();
 }
 
 // 장비 추상 클래스
@@ -237,13 +896,31 @@ abstract class Equipment implements Item {
         return durability <= 0;
     }
     
+    @Override
+    public abstract Equipment copy();
+    
+    // 생성자로 만든 복사본에 닳은 내구도와 강화 단계를 옮긴다
+    protected <T extends Equipment> T copyState(T copy) {
+        copy.durability = durability;
+        copy.enhanceLevel = enhanceLevel;
+        return copy;
+    }
+    
+    // 강화로 더해진 수치 (무기는 공격력, 방어구는 방어력)
+    public abstract int getEnhanceBonus();
+    
+    // 강화 한 단계마다 그때의 수치에 10%(버림)를 더한다. 단계가 쌓이면 복리로 커진다
+    protected int enhanceBonus(int base) {
+        int value = base;
+        for (int i = 0; i < enhanceLevel; i++) {
+            value += (int)(value * 0.1);
+        }
+        return value - base;
+    }
+    
+    // 착용 중인 장비는 Player.enhance로 강화해야 능력치 캐시가 갱신된다
     public void enhance() {
         enhanceLevel++;
-        if (this instanceof Weapon) {
-            attack += (int)(attack * 0.1);
-        } else if (this instanceof Armor) {
-            defense += (int)(defense * 0.1);
-        }
     }
 }
 
@@ -268,12 +945,28 @@ class Weapon extends Equipment implements Serializable {
     public double getCriticalChance() { return criticalChance; }
     public double getAccuracy() { return accuracy; }
     
+    @Override
+    public int getAttack() { return attack + getEnhanceBonus(); }
+    
+    @Override
+    public int getEnhanceBonus() { return enhanceBonus(attack); }
+    
     public boolean isCriticalHit() {
-        return Math.random() < criticalChance;
+        return isCriticalHit(RandomService.current());
+    }
+    
+    public boolean isCriticalHit(GameRandom random) {
+        return random.nextDouble() < criticalChance;
     }
     
     public boolean isAttackHit() {
-        return Math.random() < accuracy;
+        return RandomService.current().nextDouble() < accuracy;
+    }
+    
+    @Override
+    public Weapon copy() {
+        return copyState(new Weapon(name, price, attack, levelRequirement, requiredClass, maxDurability, description, 
+            criticalChance, accuracy));
     }
 }
 
@@ -297,21 +990,458 @@ class Armor extends Equipment {
     public double getEvasion() { return evasion; }
     public double getDamageReduction() { return damageReduction; }
     
+    @Override
+    public int getDefense() { return defense + getEnhanceBonus(); }
+    
+    @Override
+    public int getEnhanceBonus() { return enhanceBonus(defense); }
+    
     public boolean isEvaded() {
-        return Math.random() < evasion;
+        return RandomService.current().nextDouble() < evasion;
     }
     
     public int calculateReducedDamage(int damage) {
         return (int)(damage * (1.0 - damageReduction));
     }
+    
+    @Override
+    public Armor copy() {
+        return copyState(new Armor(name, price, defense, levelRequirement, requiredClass, maxDurability, description, 
+            evasion, damageReduction));
+    }
 }
 
-// 물약 인터페이스
-interface Potion extends Item {
-    void use(Player player);
-    int getAmount();
-    int getRemainingUses();
-    void setRemainingUses(int remainingUses);
+// 장비 등급 (등급마다 기본 능력치 배율, 접사 수, 추가 내구도가 다르다)
+enum Rarity {
+    COMMON("일반", "발견한", 50, 0, 100, 0),
+    MAGIC("고급", "고급", 25, 1, 125, 15),
+    RARE("희귀", "희귀한", 20, 2, 160, 30),
+    LEGENDARY("전설", "전설의", 5, 2, 200, 50);
+    
+    private String name;
+    private String title;        // 이름 앞에 붙는 말
+    private int weight;
+    private int affixes;
+    private int statPercent;
+    private int durabilityBonus;
+    
+    Rarity(String name, String title, int weight, int affixes, int statPercent, int durabilityBonus) {
+        this.name = name;
+        this.title = title;
+        this.weight = weight;
+        this.affixes = affixes;
+        this.statPercent = statPercent;
+        this.durabilityBonus = durabilityBonus;
+    }
+    
+    public String getName() { return name; }
+    public String getTitle() { return title; }
+    public int getWeight() { return weight; }
+    public int getAffixes() { return affixes; }
+    public int getStatPercent() { return statPercent; }
+    public int getDurabilityBonus() { return durabilityBonus; }
+}
+
+// 접사가 올리는 능력치
+enum AffixStat {
+    ATTACK("공격력"), DEFENSE("방어력"), CRITICAL("치명타"), ACCURACY("명중"), 
+    EVASION("회피"), REDUCTION("피해 감소"), DURABILITY("내구도");
+    
+    private String name;
+    
+    AffixStat(String name) {
+        this.name = name;
+    }
+    
+    public String getName() { return name; }
+}
+
+// 접두사/접미사 하나: 아이템 레벨마다 perLevel씩 오르는 범위에서 수치를 굴린다
+final class Affix {
+    private final int id;
+    private final String name;
+    private final AffixStat stat;
+    private final double min;
+    private final double max;
+    private final double perLevel;
+    
+    Affix(int id, String name, AffixStat stat, double min, double max, double perLevel) {
+        this.id = id;
+        this.name = name;
+        this.stat = stat;
+        this.min = min;
+        this.max = max;
+        this.perLevel = perLevel;
+    }
+    
+    public double roll(GameRandom random, int itemLevel, double scale) {
+        return (min + random.nextDouble() * (max - min) + perLevel * itemLevel) * scale;
+    }
+    
+    public int getId() { return id; }
+    public String getName() { return name; }
+    public AffixStat getStat() { return stat; }
+}
+
+// 접사 기반 장비 생성기. 기본 종류, 접사, 등급 표와 이름/설명 문자열을 처음 한 번 만들어 두고
+// 생성한 장비는 미리 만든 문자열을 가리키기만 한다 (장비마다 이름을 이어 붙이지 않는다).
+// 굴림 결과는 다시 쓰는 Roll에 담기므로 대량 분석은 장비 객체 없이 돌 수 있다.
+final class ItemGenerator {
+    static final int CHUNK_SIZE = 1 << 16;
+    static final double LEGENDARY_AFFIX_SCALE = 1.5;
+    
+    private static final Rarity[] RARITIES = Rarity.values();
+    private static final String[] WEAPON_BASES = {"검", "도끼", "둔기", "창", "활", "석궁", "지팡이", "단검"};
+    private static final String[] ARMOR_BASES = {"갑옷", "투구", "장갑", "부츠", "망토", "방패"};
+    // 위의 정적 표를 쓰므로 그 뒤에 둔다
+    static final ItemGenerator SHARED = new ItemGenerator();
+    
+    private final Affix[] weaponPrefixes;
+    private final Affix[] weaponSuffixes;
+    private final Affix[] armorPrefixes;
+    private final Affix[] armorSuffixes;
+    private final List<Affix> affixes = new ArrayList<>();   // id 순서
+    private final AliasSampler rarities;
+    private final String[][][][] weaponNames;   // [등급][종류][접두사 + 1][접미사 + 1] (0이면 없음)
+    private final String[][][][] armorNames;
+    private final String[][] descriptions;      // [등급][무기 0, 방어구 1]
+    
+    // 한 번 굴린 장비의 모든 값 (대량 생성에서 다시 쓴다)
+    static final class Roll {
+        boolean weapon;
+        Rarity rarity;
+        int level;
+        int base;
+        int prefix;   // -1이면 없음
+        int suffix;
+        int attack;
+        int defense;
+        int durability;
+        double critical;
+        double accuracy;
+        double evasion;
+        double reduction;
+    }
+    
+    private ItemGenerator() {
+        weaponPrefixes = register(new Affix[] {
+            new Affix(0, "날카로운", AffixStat.CRITICAL, 0.03, 0.08, 0.0),
+            new Affix(1, "강력한", AffixStat.ATTACK, 1, 3, 0.5),
+            new Affix(2, "정교한", AffixStat.ACCURACY, 0.02, 0.05, 0.0),
+            new Affix(3, "빛나는", AffixStat.ATTACK, 0, 2, 0.3),
+            new Affix(4, "고대의", AffixStat.DURABILITY, 20, 40, 2),
+            new Affix(5, "마법의", AffixStat.CRITICAL, 0.02, 0.04, 0.002)});
+        weaponSuffixes = register(new Affix[] {
+            new Affix(6, "파괴", AffixStat.ATTACK, 2, 4, 0.5),
+            new Affix(7, "정확", AffixStat.ACCURACY, 0.03, 0.06, 0.0),
+            new Affix(8, "치명", AffixStat.CRITICAL, 0.04, 0.1, 0.0),
+            new Affix(9, "견고", AffixStat.DURABILITY, 30, 60, 3)});
+        armorPrefixes = register(new Affix[] {
+            new Affix(10, "튼튼한", AffixStat.DEFENSE, 1, 3, 0.5),
+            new Affix(11, "가벼운", AffixStat.EVASION, 0.02, 0.05, 0.0),
+            new Affix(12, "빛나는", AffixStat.DEFENSE, 0, 2, 0.3),
+            new Affix(13, "고대의", AffixStat.DURABILITY, 20, 40, 2),
+            new Affix(14, "마법의", AffixStat.REDUCTION, 0.02, 0.05, 0.0),
+            new Affix(15, "정교한", AffixStat.EVASION, 0.01, 0.03, 0.002)});
+        armorSuffixes = register(new Affix[] {
+            new Affix(16, "수호", AffixStat.DEFENSE, 2, 4, 0.5),
+            new Affix(17, "회피", AffixStat.EVASION, 0.03, 0.06, 0.0),
+            new Affix(18, "인내", AffixStat.REDUCTION, 0.03, 0.08, 0.0),
+            new Affix(19, "견고", AffixStat.DURABILITY, 30, 60, 3)});
+        
+        double[] weights = new double[RARITIES.length];
+        for (Rarity rarity : RARITIES) {
+            weights[rarity.ordinal()] = rarity.getWeight();
+        }
+        rarities = new AliasSampler(weights);
+        weaponNames = names(WEAPON_BASES, weaponPrefixes, weaponSuffixes);
+        armorNames = names(ARMOR_BASES, armorPrefixes, armorSuffixes);
+        descriptions = new String[RARITIES.length][2];
+        for (Rarity rarity : RARITIES) {
+            descriptions[rarity.ordinal()][0] = "탐험 중 발견한 " + rarity.getName() + " 등급 무기";
+            descriptions[rarity.ordinal()][1] = "탐험 중 발견한 " + rarity.getName() + " 등급 방어구";
+        }
+    }
+    
+    // 접사 id는 등록 순서와 같아야 한다 (통계 배열의 첨자로 쓴다)
+    private Affix[] register(Affix[] group) {
+        for (Affix affix : group) {
+            if (affix.getId() != affixes.size()) {
+                throw new IllegalStateException("접사 id가 등록 순서와 다릅니다: " + affix.getName());
+            }
+            affixes.add(affix);
+        }
+        return group;
+    }
+    
+    // "등급 접두사 종류 (접미사)"를 모든 조합에 대해 한 번만 만든다
+    private static String[][][][] names(String[] bases, Affix[] prefixes, Affix[] suffixes) {
+        String[][][][] names = new String[RARITIES.length][bases.length][prefixes.length + 1][suffixes.length + 1];
+        for (Rarity rarity : RARITIES) {
+            for (int b = 0; b < bases.length; b++) {
+                for (int p = 0; p <= prefixes.length; p++) {
+                    for (int s = 0; s <= suffixes.length; s++) {
+                        StringBuilder name = new StringBuilder(rarity.getTitle()).append(' ');
+                        if (p > 0) name.append(prefixes[p - 1].getName()).append(' ');
+                        name.append(bases[b]);
+                        if (s > 0) name.append(" (").append(suffixes[s - 1].getName()).append(')');
+                        names[rarity.ordinal()][b][p][s] = name.toString();
+                    }
+                }
+            }
+        }
+        return names;
+    }
+    
+    // 장비 하나를 굴려 out에 담는다 (할당 없음)
+    public void roll(GameRandom random, int itemLevel, Roll out) {
+        out.level = itemLevel;
+        out.weapon = random.nextBoolean();
+        out.rarity = RARITIES[rarities.sample(random)];
+        out.prefix = -1;
+        out.suffix = -1;
+        double scale = out.rarity.getStatPercent() / 100.0;
+        if (out.weapon) {
+            out.base = random.nextInt(WEAPON_BASES.length);
+            out.attack = (int) ((2 + itemLevel + random.nextInt(5)) * scale);
+            out.defense = 0;
+            out.critical = 0.05 + random.nextDouble() * 0.1;
+            out.accuracy = 0.8 + random.nextDouble() * 0.15;
+            out.evasion = 0.0;
+            out.reduction = 0.0;
+            out.durability = 50 + random.nextInt(50) + out.rarity.getDurabilityBonus();
+        } else {
+            out.base = random.nextInt(ARMOR_BASES.length);
+            out.attack = 0;
+            out.defense = (int) ((1 + itemLevel + random.nextInt(4)) * scale);
+            out.critical = 0.0;
+            out.accuracy = 0.0;
+            out.evasion = 0.03 + random.nextDouble() * 0.07;
+            out.reduction = 0.05 + random.nextDouble() * 0.1;
+            out.durability = 60 + random.nextInt(60) + out.rarity.getDurabilityBonus();
+        }
+        
+        // 접사가 하나면 접두사와 접미사 중 하나, 둘이면 둘 다
+        int count = out.rarity.getAffixes();
+        boolean prefix = count >= 2 || (count == 1 && random.nextBoolean());
+        boolean suffix = count >= 2 || (count == 1 && !prefix);
+        double affixScale = out.rarity == Rarity.LEGENDARY ? LEGENDARY_AFFIX_SCALE : 1.0;
+        if (prefix) {
+            Affix[] table = out.weapon ? weaponPrefixes : armorPrefixes;
+            out.prefix = random.nextInt(table.length);
+            apply(table[out.prefix], random, affixScale, out);
+        }
+        if (suffix) {
+            Affix[] table = out.weapon ? weaponSuffixes : armorSuffixes;
+            out.suffix = random.nextInt(table.length);
+            apply(table[out.suffix], random, affixScale, out);
+        }
+        
+        out.critical = Math.min(0.5, out.critical);
+        out.accuracy = Math.min(0.99, out.accuracy);
+        out.evasion = Math.min(0.4, out.evasion);
+        out.reduction = Math.min(0.5, out.reduction);
+    }
+    
+    private static void apply(Affix affix, GameRandom random, double scale, Roll out) {
+        double value = affix.roll(random, out.level, scale);
+        switch (affix.getStat()) {
+            case ATTACK: out.attack += (int) value; break;
+            case DEFENSE: out.defense += (int) value; break;
+            case CRITICAL: out.critical += value; break;
+            case ACCURACY: out.accuracy += value; break;
+            case EVASION: out.evasion += value; break;
+            case REDUCTION: out.reduction += value; break;
+            case DURABILITY: out.durability += (int) value; break;
+        }
+    }
+    
+    public String getName(Roll roll) {
+        String[][][] byBase = (roll.weapon ? weaponNames : armorNames)[roll.rarity.ordinal()];
+        return byBase[roll.base][roll.prefix + 1][roll.suffix + 1];
+    }
+    
+    // 굴린 값으로 장비를 만든다 (이름과 설명은 미리 만든 문자열을 함께 쓴다)
+    public Equipment build(Roll roll) {
+        String description = descriptions[roll.rarity.ordinal()][roll.weapon ? 0 : 1];
+        if (roll.weapon) {
+            return new Weapon(getName(roll), 0, roll.attack, roll.level, null, roll.durability, 
+                description, roll.critical, roll.accuracy);
+        }
+        return new Armor(getName(roll), 0, roll.defense, roll.level, null, roll.durability, 
+            description, roll.evasion, roll.reduction);
+    }
+    
+    public Equipment generate(GameRandom random, int itemLevel) {
+        Roll roll = new Roll();
+        roll(random, itemLevel, roll);
+        return build(roll);
+    }
+    
+    public List<Affix> getAffixes() { return Collections.unmodifiableList(affixes); }
+    
+    // count개를 굴려 통계만 모은다. 청크마다 시드가 정해져 있어 스레드 수와 상관없이 결과가 같다.
+    public ItemBatchStats generateBatch(long count, int itemLevel, long seed, ForkJoinPool pool) {
+        long chunks = (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        return pool.invoke(new BatchTask(count, itemLevel, seed, 0, chunks));
+    }
+    
+    private final class BatchTask extends RecursiveTask<ItemBatchStats> {
+        private static final long serialVersionUID = 1L;
+        
+        private final long count;
+        private final int itemLevel;
+        private final long seed;
+        private final long fromChunk;
+        private final long toChunk;
+        
+        BatchTask(long count, int itemLevel, long seed, long fromChunk, long toChunk) {
+            this.count = count;
+            this.itemLevel = itemLevel;
+            this.seed = seed;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+        }
+        
+        @Override
+        protected ItemBatchStats compute() {
+            if (toChunk - fromChunk <= 1) {
+                ItemBatchStats stats = new ItemBatchStats(affixes.size());
+                SplitMixRandom random = new SplitMixRandom(SplitMixRandom.mix64(seed + (fromChunk + 1) * SplitMixRandom.GOLDEN_GAMMA));
+                Roll roll = new Roll();
+                long end = Math.min(count, (fromChunk + 1) * CHUNK_SIZE);
+                for (long i = fromChunk * CHUNK_SIZE; i < end; i++) {
+                    ItemGenerator.this.roll(random, itemLevel, roll);
+                    stats.record(roll, roll.prefix < 0 ? null : (roll.weapon ? weaponPrefixes : armorPrefixes)[roll.prefix],
+                        roll.suffix < 0 ? null : (roll.weapon ? weaponSuffixes : armorSuffixes)[roll.suffix]);
+                }
+                return stats;
+            }
+            long mid = (fromChunk + toChunk) >>> 1;
+            BatchTask left = new BatchTask(count, itemLevel, seed, fromChunk, mid);
+            left.fork();
+            ItemBatchStats right = new BatchTask(count, itemLevel, seed, mid, toChunk).compute();
+            return left.join().merge(right);
+        }
+    }
+    
+    // items [개수] [아이템 레벨] [시드] [스레드]: 대량으로 굴려 등급별 비율과 평균 능력치, 접사 빈도를 본다
+    public static void run(String[] args) {
+        long count = args.length > 0 ? Long.parseLong(args[0]) : 5000000L;
+        int itemLevel = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42L;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        
+        ItemGenerator generator = SHARED;
+        SplitMixRandom random = new SplitMixRandom(seed);
+        System.out.println("예시:");
+        for (int i = 0; i < 5; i++) {
+            Equipment item = generator.generate(random, itemLevel);
+            System.out.printf("  %s (공격력 %d, 방어력 %d, 내구도 %d, 레벨 %d)\n", item.getName(), 
+                item.getAttack(), item.getDefense(), item.getMaxDurability(), item.getLevelRequirement());
+        }
+        
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        ItemBatchStats stats;
+        try {
+            stats = generator.generateBatch(count, itemLevel, seed, pool);
+        } finally {
+            pool.shutdown();
+        }
+        long elapsed = System.nanoTime() - start;
+        
+        stats.print(System.out, generator.affixes);
+        System.err.printf("장비 %d개: %.2f초 (%.0f만 개/초, %d 스레드)\n", count, elapsed / 1e9,
+            count / (elapsed / 1e9) / 1e4, threads);
+    }
+}
+
+// 장비 대량 생성 통계 (청크별로 모은 뒤 합친다)
+final class ItemBatchStats {
+    private final long[] byRarity = new long[Rarity.values().length];
+    private final long[] weapons = new long[Rarity.values().length];
+    private final long[] attackSum = new long[Rarity.values().length];
+    private final long[] defenseSum = new long[Rarity.values().length];
+    private final long[] durabilitySum = new long[Rarity.values().length];
+    private final int[] maxAttack = new int[Rarity.values().length];
+    private final int[] maxDefense = new int[Rarity.values().length];
+    private final long[] byAffix;
+    private long total;
+    
+    ItemBatchStats(int affixes) {
+        this.byAffix = new long[affixes];
+    }
+    
+    void record(ItemGenerator.Roll roll, Affix prefix, Affix suffix) {
+        int r = roll.rarity.ordinal();
+        total++;
+        byRarity[r]++;
+        durabilitySum[r] += roll.durability;
+        if (roll.weapon) {
+            weapons[r]++;
+            attackSum[r] += roll.attack;
+            maxAttack[r] = Math.max(maxAttack[r], roll.attack);
+        } else {
+            defenseSum[r] += roll.defense;
+            maxDefense[r] = Math.max(maxDefense[r], roll.defense);
+        }
+        if (prefix != null) byAffix[prefix.getId()]++;
+        if (suffix != null) byAffix[suffix.getId()]++;
+    }
+    
+    ItemBatchStats merge(ItemBatchStats other) {
+        total += other.total;
+        for (int r = 0; r < byRarity.length; r++) {
+            byRarity[r] += other.byRarity[r];
+            weapons[r] += other.weapons[r];
+            attackSum[r] += other.attackSum[r];
+            defenseSum[r] += other.defenseSum[r];
+            durabilitySum[r] += other.durabilitySum[r];
+            maxAttack[r] = Math.max(maxAttack[r], other.maxAttack[r]);
+            maxDefense[r] = Math.max(maxDefense[r], other.maxDefense[r]);
+        }
+        for (int i = 0; i < byAffix.length; i++) {
+            byAffix[i] += other.byAffix[i];
+        }
+        return this;
+    }
+    
+    public long getTotal() { return total; }
+    
+    public double getRate(Rarity rarity) {
+        return byRarity[rarity.ordinal()] / (double) Math.max(1, total);
+    }
+    
+    public void print(PrintStream out, List<Affix> affixes) {
+        int weightTotal = 0;
+        for (Rarity rarity : Rarity.values()) {
+            weightTotal += rarity.getWeight();
+        }
+        out.println("등급,비율,목표 비율,무기 평균 공격력,최대 공격력,방어구 평균 방어력,최대 방어력,평균 내구도");
+        for (Rarity rarity : Rarity.values()) {
+            int r = rarity.ordinal();
+            long armors = byRarity[r] - weapons[r];
+            out.printf("%s,%.4f,%.4f,%.2f,%d,%.2f,%d,%.1f\n", rarity.getName(), getRate(rarity), 
+                rarity.getWeight() / (double) weightTotal,
+                attackSum[r] / (double) Math.max(1, weapons[r]), maxAttack[r],
+                defenseSum[r] / (double) Math.max(1, armors), maxDefense[r],
+                durabilitySum[r] / (double) Math.max(1, byRarity[r]));
+        }
+        out.println("접사,능력치,장비당 빈도");
+        for (Affix affix : affixes) {
+            out.printf("%s,%s,%.4f\n", affix.getName(), affix.getStat().getName(), 
+                byAffix[affix.getId()] / (double) Math.max(1, total));
+        }
+    }
+}
+
+// 물약 인터페이스
+interface Potion extends Item {
+    void use(Player player);
+    int getAmount();
+    int getRemainingUses();
+    void setRemainingUses(int remainingUses);
 }
 
 // 체력 물약
@@ -344,6 +1474,11 @@ class HealthPotion implements Potion, Serializable {
     public int getRemainingUses() { return remainingUses; }
     public void setRemainingUses(int remainingUses) { this.remainingUses = remainingUses; }
     
+    @Override
+    public HealthPotion copy() {
+        return new HealthPotion(name, price, amount, remainingUses, levelRequirement, description);
+    }
+    
     @Override
     public void use(Player player) {
         if (remainingUses > 0) {
@@ -388,6 +1523,11 @@ class ManaPotion implements Potion, Serializable {
     public int getRemainingUses() { return remainingUses; }
     public void setRemainingUses(int remainingUses) { this.remainingUses = remainingUses; }
     
+    @Override
+    public ManaPotion copy() {
+        return new ManaPotion(name, price, amount, remainingUses, levelRequirement, description);
+    }
+    
     @Override
     public void use(Player player) {
         if (remainingUses > 0) {
@@ -432,6 +1572,11 @@ class StaminaPotion implements Potion, Serializable {
     public int getRemainingUses() { return remainingUses; }
     public void setRemainingUses(int remainingUses) { this.remainingUses = remainingUses; }
     
+    @Override
+    public StaminaPotion copy() {
+        return new StaminaPotion(name, price, amount, remainingUses, levelRequirement, description);
+    }
+    
     @Override
     public void use(Player player) {
         if (remainingUses > 0) {
@@ -481,6 +1626,12 @@ class UniversalPotion implements Potion, Serializable {
     public int getRemainingUses() { return remainingUses; }
     public void setRemainingUses(int remainingUses) { this.remainingUses = remainingUses; }
     
+    @Override
+    public UniversalPotion copy() {
+        return new UniversalPotion(name, price, healthAmount, manaAmount, staminaAmount, remainingUses, 
+            levelRequirement, description);
+    }
+    
     @Override
     public void use(Player player) {
         if (remainingUses > 0) {
@@ -520,6 +1671,12 @@ class Scroll implements Item, Serializable {
     public String getDescription() { return description; }
     public int getLevelRequirement() { return levelRequirement; }
     
+    // 바뀌는 상태가 없으므로 원본을 그대로 준다
+    @Override
+    public Scroll copy() {
+        return this;
+    }
+    
     public void use(Player player) {
         if (name.contains("귀환")) {
             player.setCurrentLocation("마을");
@@ -530,130 +1687,680 @@ class Scroll implements Item, Serializable {
     }
 }
 
-// 상태 이상 클래스
-class StatusEffect implements Serializable {
-    private StatusEffectType type;
-    private int duration;
-    private int remainingTurns;
+// 상태 이상 묶음 클래스 (플레이어와 몬스터가 함께 쓴다).
+// 걸린 종류는 비트마스크로, 남은 턴과 중첩 수는 종류별 기본형 배열로 두어 턴마다 객체를 만들지 않는다.
+class StatusEffects implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final StatusEffectType[] TYPES = StatusEffectType.values();
+    private static final int SKIP_MASK;
+    private static final int MODIFIER_MASK;
+    
+    static {
+        int skip = 0;
+        int modifier = 0;
+        for (StatusEffectType type : TYPES) {
+            if (type.skipsTurn()) skip |= 1 << type.ordinal();
+            if (type.getAttackPercent() != 0) modifier |= 1 << type.ordinal();
+        }
+        SKIP_MASK = skip;
+        MODIFIER_MASK = modifier;
+    }
     
-    public StatusEffect(StatusEffectType type, int duration) {
-        this.type = type;
-        this.duration = duration;
-        this.remainingTurns = duration;
+    private int active;   // 걸려 있는 종류 비트마스크 (서수 순)
+    private final int[] remaining = new int[TYPES.length];
+    private final int[] stacks = new int[TYPES.length];
+    private int version;  // 능력치에 영향을 주는 변화(걸림, 중첩, 해제)마다 증가
+    
+    public static StatusEffectType typeOf(int index) {
+        return TYPES[index];
+    }
+    
+    public void apply(StatusEffectType type, int turns) {
+        apply(type, turns, StatusRules.DEFAULT);
+    }
+    
+    public void apply(StatusEffectType type, int turns, StatusRules rules) {
+        if (turns <= 0) return;
+        int index = type.ordinal();
+        int bit = 1 << index;
+        if ((active & bit) == 0) {
+            active |= bit;
+            remaining[index] = turns;
+            stacks[index] = 1;
+            version++;
+            return;
+        }
+        switch (rules.getRule(type)) {
+            case EXTEND:
+                remaining[index] += turns;
+                break;
+            case STACK:
+                if (stacks[index] < rules.getMaxStacks(type)) {
+                    stacks[index]++;
+                    version++;
+                }
+                remaining[index] = Math.max(remaining[index], turns);
+                break;
+            case IGNORE:
+                break;
+            default:
+                remaining[index] = Math.max(remaining[index], turns);
+        }
+    }
+    
+    // 한 종류를 한 턴 진행하고 이번 턴의 지속 피해를 돌려준다 (행동 불가 효과는 consumeSkip에서 줄어든다)
+    public int tick(StatusEffectType type, int maxHp) {
+        int index = type.ordinal();
+        if ((active & (1 << index)) == 0 || type.skipsTurn()) return 0;
+        int damage = type.isDamageOverTime() ? (int)(maxHp * type.getDamageRatio()) * stacks[index] : 0;
+        if (--remaining[index] <= 0) {
+            remove(type);
+        }
+        return damage;
+    }
+    
+    public int tickAll(int maxHp) {
+        int damage = 0;
+        for (int bits = active; bits != 0; bits &= bits - 1) {
+            damage += tick(TYPES[Integer.numberOfTrailingZeros(bits)], maxHp);
+        }
+        return damage;
+    }
+    
+    // 행동 불가 상태면 한 턴을 소모하고 true
+    public boolean consumeSkip() {
+        int skip = active & SKIP_MASK;
+        if (skip == 0) return false;
+        for (int bits = skip; bits != 0; bits &= bits - 1) {
+            int index = Integer.numberOfTrailingZeros(bits);
+            if (--remaining[index] <= 0) {
+                remove(TYPES[index]);
+            }
+        }
+        return true;
     }
     
-    public StatusEffectType getType() { return type; }
-    public int getDuration() { return duration; }
-    public int getRemainingTurns() { return remainingTurns; }
+    // 능력치 수정치를 주는 상태 이상을 계산표에 바로 더한다 (collectModifiers와 같은 값, 할당 없음)
+    public void applyTo(StatSheet sheet) {
+        for (int bits = active & MODIFIER_MASK; bits != 0; bits &= bits - 1) {
+            int index = Integer.numberOfTrailingZeros(bits);
+            sheet.add(Stat.ATTACK, ModifierKind.PERCENT, TYPES[index].getAttackPercent() * stacks[index]);
+        }
+    }
+    
+    // 능력치 수정치를 주는 상태 이상을 출처 STATUS의 퍼센트 수정치로 내보낸다 (중첩 수만큼 더한다)
+    public void collectModifiers(List<StatModifier> modifiers) {
+        for (int bits = active & MODIFIER_MASK; bits != 0; bits &= bits - 1) {
+            int index = Integer.numberOfTrailingZeros(bits);
+            modifiers.add(new StatModifier(ModifierSource.STATUS, Stat.ATTACK, ModifierKind.PERCENT,
+                TYPES[index].getAttackPercent() * stacks[index]));
+        }
+    }
+    
+    public void remove(StatusEffectType type) {
+        if ((active & (1 << type.ordinal())) != 0) version++;
+        active &= ~(1 << type.ordinal());
+        remaining[type.ordinal()] = 0;
+        stacks[type.ordinal()] = 0;
+    }
+    
+    public void clear() {
+        if (active != 0) version++;
+        active = 0;
+        Arrays.fill(remaining, 0);
+        Arrays.fill(stacks, 0);
+    }
+    
+    public boolean has(StatusEffectType type) { return (active & (1 << type.ordinal())) != 0; }
+    public boolean isEmpty() { return active == 0; }
+    public int getMask() { return active; }
+    public int getRemainingTurns(StatusEffectType type) { return remaining[type.ordinal()]; }
+    public int getStacks(StatusEffectType type) { return stacks[type.ordinal()]; }
+    public int getVersion() { return version; }
+    
+    // 표시용 이름 목록 (예: "중독x2 빙결")
+    public String describe() {
+        StringBuilder text = new StringBuilder();
+        for (int bits = active; bits != 0; bits &= bits - 1) {
+            int index = Integer.numberOfTrailingZeros(bits);
+            if (text.length() > 0) text.append(' ');
+            text.append(TYPES[index].getName());
+            if (stacks[index] > 1) text.append('x').append(stacks[index]);
+        }
+        return text.toString();
+    }
+}
+
+// 능력치 종류
+enum Stat {
+    ATTACK("공격력"), DEFENSE("방어력"), EVASION("회피율");
+    
+    private String name;
+    
+    Stat(String name) {
+        this.name = name;
+    }
+    
+    public String getName() { return name; }
+}
+
+// 수정치 종류: 고정값은 기본값에 더하고, 퍼센트는 서로 더한 뒤 한 번 곱하고, 배율은 마지막에 차례로 곱한다
+enum ModifierKind {
+    FLAT, PERCENT, MULTIPLY
+}
+
+// 수정치 출처
+enum ModifierSource {
+    EQUIPMENT("장비"), ENHANCEMENT("강화"), STATUS("상태 이상");
+    
+    private String name;
+    
+    ModifierSource(String name) {
+        this.name = name;
+    }
+    
+    public String getName() { return name; }
+}
+
+// 능력치 수정치 클래스
+class StatModifier implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final ModifierSource source;
+    private final Stat stat;
+    private final ModifierKind kind;
+    private final double value;
+    
+    public StatModifier(ModifierSource source, Stat stat, ModifierKind kind, double value) {
+        this.source = source;
+        this.stat = stat;
+        this.kind = kind;
+        this.value = value;
+    }
+    
+    public ModifierSource getSource() { return source; }
+    public Stat getStat() { return stat; }
+    public ModifierKind getKind() { return kind; }
+    public double getValue() { return value; }
+    
+    @Override
+    public String toString() {
+        switch (kind) {
+            case PERCENT:
+                return String.format("%s %+.0f%% (%s)", stat.getName(), value, source.getName());
+            case MULTIPLY:
+                return String.format("%s x%.2f (%s)", stat.getName(), value, source.getName());
+            default:
+                return String.format(stat == Stat.EVASION ? "%s %+.2f (%s)" : "%s %+.0f (%s)", 
+                    stat.getName(), value, source.getName());
+        }
+    }
+}
+
+// 기본값에 수정치를 모아 유효 능력치를 계산한다.
+// 최종값 = (기본값 + 고정 합) × (100 + 퍼센트 합) / 100 × 배율 곱
+final class StatSheet {
+    private static final int STATS = Stat.values().length;
+    
+    private final double[] flat = new double[STATS];
+    private final double[] percent = new double[STATS];
+    private final double[] multiply = new double[STATS];
+    
+    public StatSheet() {
+        reset();
+    }
+    
+    public StatSheet(List<StatModifier> modifiers) {
+        this();
+        for (StatModifier modifier : modifiers) {
+            add(modifier);
+        }
+    }
+    
+    public void reset() {
+        Arrays.fill(flat, 0.0);
+        Arrays.fill(percent, 0.0);
+        Arrays.fill(multiply, 1.0);
+    }
+    
+    public void add(StatModifier modifier) {
+        add(modifier.getStat(), modifier.getKind(), modifier.getValue());
+    }
     
-    public void applyEffect(Player player) {
-        remainingTurns--;
-        if (type.isDamageOverTime()) {
-            int damage = (int)(player.getMaxHp() * (type == StatusEffectType.POISON ? 0.05 : 0.03));
-            player.takeDamage(damage);
-            System.out.printf("[%s] %s으로 인해 체력 %d 감소\n", 
-                type.getName(), type.getDescription(), damage);
+    public void add(Stat stat, ModifierKind kind, double value) {
+        int index = stat.ordinal();
+        switch (kind) {
+            case FLAT:
+                flat[index] += value;
+                break;
+            case PERCENT:
+                percent[index] += value;
+                break;
+            default:
+                multiply[index] *= value;
+        }
+    }
+    
+    public int resolve(Stat stat, int base) {
+        int index = stat.ordinal();
+        int value = base + (int) flat[index];
+        if (percent[index] != 0) {
+            value = (int)(value * (100 + percent[index]) / 100);
         }
+        if (multiply[index] != 1.0) {
+            value = (int)(value * multiply[index]);
+        }
+        return value;
     }
     
-    public boolean isExpired() {
-        return remainingTurns <= 0;
+    public double resolve(Stat stat, double base) {
+        int index = stat.ordinal();
+        double value = base + flat[index];
+        if (percent[index] != 0) {
+            value = value * (100 + percent[index]) / 100;
+        }
+        return value * multiply[index];
     }
+}
 
-	public void applyEffect(Monster monster) {
-		// TODO Auto-generated method stub
-		
-	}
+// 스킬 효과: 전투 엔진을 인자로 받아 상태를 캡처하지 않으므로 모든 전투가 같은 객체를 함께 쓴다
+@FunctionalInterface
+interface SkillEffect {
+    void apply(BattleEngine engine, Player player, Monster monster);
 }
 
 // 스킬 클래스
 class Skill implements Serializable {
+    static final int MAX_LEVEL = 5;
+    
+    private int id;                // 등록 순서 (전투 중 재사용 대기 배열의 색인)
+    private PlayerClass playerClass;
     private String name;
     private int manaCost;
+    private int cooldown;          // 사용 후 다시 쓸 수 없는 자기 턴 수
     private String description;
-    private BiConsumer<Player, Monster> effect;
+    private transient SkillEffect effect;
+    private PackSkill packSkill;   // 파티 전투용 스킬이면 그 종류 (1:1 전투용이면 null)
     private int levelRequirement;
     
-    public Skill(String name, int manaCost, String description, BiConsumer<Player, Monster> effect, int levelReq) {
+    public Skill(int id, PlayerClass playerClass, String name, int manaCost, int cooldown, 
+                 String description, SkillEffect effect, int levelReq) {
+        this.id = id;
+        this.playerClass = playerClass;
         this.name = name;
         this.manaCost = manaCost;
+        this.cooldown = cooldown;
         this.description = description;
         this.effect = effect;
         this.levelRequirement = levelReq;
     }
     
-    public void use(Player player, Monster monster) {
-        effect.accept(player, monster);
+    // 파티 전투용 스킬 (효과는 PackBattleEngine이 종류를 보고 적용한다)
+    public Skill(PackSkill packSkill) {
+        this(packSkill.ordinal(), packSkill.getPlayerClass(), packSkill.getName(), packSkill.getManaCost(), 0,
+            packSkill.getDescription(), null, packSkill.getLevelRequirement());
+        this.packSkill = packSkill;
     }
     
+    public void use(BattleEngine engine, Player player, Monster monster) {
+        effect.apply(engine, player, monster);
+    }
+    
+    public int getId() { return id; }
+    public PlayerClass getPlayerClass() { return playerClass; }
     public String getName() { return name; }
     public int getManaCost() { return manaCost; }
+    public int getCooldown() { return cooldown; }
     public String getDescription() { return description; }
+    public PackSkill getPackSkill() { return packSkill; }
     public int getLevelRequirement() { return levelRequirement; }
 }
 
-// 퀘스트 클래스
-class Quest implements Serializable {
-    private String title;
-    private String description;
-    private Predicate<Monster> condition;
-    private int requiredProgress;
-    private int currentProgress;
-    private int expReward;
-    private int goldReward;
-    private Item rewardItem;
-    private boolean isCompleted;
-    private int levelRequirement;
-    
-    public Quest(String title, String description, Predicate<Monster> condition, 
-                int requiredProgress, int expReward, int goldReward) {
-        this(title, description, condition, requiredProgress, expReward, goldReward, null, 1);
-    }
-    
-    public Quest(String title, String description, Predicate<Monster> condition, 
-                int requiredProgress, int expReward, int goldReward, Item rewardItem, int levelReq) {
-        this.title = title;
-        this.description = description;
-        this.condition = condition;
-        this.requiredProgress = requiredProgress;
-        this.currentProgress = 0;
-        this.expReward = expReward;
-        this.goldReward = goldReward;
-        this.rewardItem = rewardItem;
-        this.isCompleted = false;
-        this.levelRequirement = levelReq;
-    }
-    
-    public void updateProgress(Monster monster) {
-        if (!isCompleted && condition.test(monster)) {
-            currentProgress++;
-            if (currentProgress >= requiredProgress) {
-                isCompleted = true;
+// 직업별 스킬 등록부. 프로그램 시작 때 한 번 만들어 모든 전투와 세션이 함께 쓴다.
+// 직업마다 레벨 조건 순으로 정렬하고, 레벨 조건이 바뀌는 지점마다 쓸 수 있는 앞부분을 미리 잘라 둔다.
+final class SkillRegistry {
+    static final SkillRegistry DUEL = new SkillRegistry(SkillBook.load());
+    
+    static final SkillRegistry PACK = new SkillRegistry(
+        Arrays.stream(PackSkill.values()).map(Skill::new).collect(Collectors.toList()));
+    
+    private final Map<PlayerClass, int[]> levelSteps = new EnumMap<>(PlayerClass.class);
+    private final Map<PlayerClass, List<List<Skill>>> slices = new EnumMap<>(PlayerClass.class);
+    private final int size;
+    
+    private SkillRegistry(List<Skill> skills) {
+        this.size = skills.size();
+        for (PlayerClass playerClass : PlayerClass.values()) {
+            List<Skill> sorted = skills.stream()
+                .filter(skill -> skill.getPlayerClass() == playerClass)
+                .sorted(Comparator.comparingInt(Skill::getLevelRequirement))
+                .collect(Collectors.toList());
+            
+            // steps[i] 레벨부터 slice[i]를 쓸 수 있다
+            int[] steps = new int[sorted.size()];
+            List<List<Skill>> classSlices = new ArrayList<>();
+            int count = 0;
+            for (int i = 0; i < sorted.size(); i++) {
+                int level = sorted.get(i).getLevelRequirement();
+                if (i + 1 < sorted.size() && sorted.get(i + 1).getLevelRequirement() == level) continue;
+                steps[count++] = level;
+                classSlices.add(Collections.unmodifiableList(new ArrayList<>(sorted.subList(0, i + 1))));
             }
+            levelSteps.put(playerClass, Arrays.copyOf(steps, count));
+            slices.put(playerClass, classSlices);
         }
     }
     
-    public String getTitle() { return title; }
-    public String getDescription() { return description; }
-    public int getRequiredProgress() { return requiredProgress; }
-    public int getCurrentProgress() { return currentProgress; }
-    public int getExpReward() { return expReward; }
-    public int getGoldReward() { return goldReward; }
-    public Item getRewardItem() { return rewardItem; }
-    public boolean isCompleted() { return isCompleted; }
-    public int getLevelRequirement() { return levelRequirement; }
+    // 해당 레벨에서 쓸 수 있는 스킬 (할당 없이 미리 만든 목록을 돌려준다)
+    public List<Skill> available(PlayerClass playerClass, int level) {
+        int[] steps = levelSteps.get(playerClass);
+        int index = Arrays.binarySearch(steps, level);
+        if (index < 0) index = -index - 2;   // 레벨 이하인 마지막 지점
+        return index < 0 ? Collections.emptyList() : slices.get(playerClass).get(index);
+    }
+    
+    // 등록된 스킬 수 (id는 0부터 size - 1까지)
+    public int size() { return size; }
 }
 
-// 상점 클래스
-class Shop implements Serializable {
+// 데이터로 정의한 스킬의 종류
+enum SkillKind {
+    PHYSICAL("물리"), MAGIC("마법"), HEAL("회복"), BUFF("강화");
+    
     private String name;
-    private ShopType type;
-    private List<Item> items;
     
-    public Shop(String name, ShopType type) {
+    SkillKind(String name) {
         this.name = name;
-        this.type = type;
-        this.items = new ArrayList<>();
+    }
+    
+    public String getName() { return name; }
+}
+
+// 스킬 공식 "능력치*퍼센트%[+퍼센트%/레벨]"을 불러올 때 한 번 해석해 둔 계산기
+final class SkillFormula {
+    private static final java.util.regex.Pattern SYNTAX = 
+        java.util.regex.Pattern.compile("(.+?)\\*(\\d+)%(?:\\+(\\d+)%/레벨)?");
+    private static final Map<String, ToIntFunction<Player>> STATS = new LinkedHashMap<>();
+    
+    static {
+        STATS.put("공격력", Player::getAttack);
+        STATS.put("방어력", Player::getDefense);
+        STATS.put("민첩성", Player::getAgility);
+        STATS.put("지능", Player::getIntelligence);
+        STATS.put("최대 체력", Player::getMaxHp);
+    }
+    
+    private final ToIntFunction<Player> stat;
+    private final int basePercent;
+    private final int perLevelPercent;
+    
+    private SkillFormula(ToIntFunction<Player> stat, int basePercent, int perLevelPercent) {
+        this.stat = stat;
+        this.basePercent = basePercent;
+        this.perLevelPercent = perLevelPercent;
+    }
+    
+    public static SkillFormula parse(String text) {
+        java.util.regex.Matcher matcher = SYNTAX.matcher(text.replace(" ", ""));
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("공식 형식이 잘못되었습니다: " + text);
+        }
+        ToIntFunction<Player> stat = STATS.get(matcher.group(1));
+        if (stat == null && matcher.group(1).equals("최대체력")) {
+            stat = STATS.get("최대 체력");
+        }
+        if (stat == null) {
+            throw new IllegalArgumentException("알 수 없는 능력치: " + matcher.group(1) + " (가능: " + STATS.keySet() + ")");
+        }
+        int perLevel = matcher.group(3) != null ? Integer.parseInt(matcher.group(3)) : 0;
+        return new SkillFormula(stat, Integer.parseInt(matcher.group(2)), perLevel);
+    }
+    
+    // 스킬 레벨 1이면 기본 퍼센트, 레벨이 오를 때마다 레벨당 퍼센트를 더한다
+    public int evaluate(Player player, int skillLevel) {
+        return stat.applyAsInt(player) * (basePercent + perLevelPercent * (skillLevel - 1)) / 100;
+    }
+}
+
+// 스킬 정의 한 줄을 해석해 둔 값 (전투 중에는 다시 해석하지 않는다)
+final class SkillSpec {
+    private final String name;
+    private final SkillFormula formula;   // 강화 스킬은 null
+    private final int defenseDivisor;
+    private final int hits;
+    private final Element element;
+    private final StatusEffectType status;
+    private final int statusTurns;
+    private final String message;         // {시전자}, {대상}, {수치}를 %1$s, %2$s, %3$s로 바꾼 printf 형식
+    
+    public SkillSpec(String name, SkillFormula formula, int defenseDivisor, int hits, Element element,
+                     StatusEffectType status, int statusTurns, String message) {
+        this.name = name;
+        this.formula = formula;
+        this.defenseDivisor = defenseDivisor;
+        this.hits = hits;
+        this.element = element;
+        this.status = status;
+        this.statusTurns = statusTurns;
+        this.message = "\n" + message.replace("%", "%%")
+            .replace("{시전자}", "%1$s").replace("{대상}", "%2$s").replace("{수치}", "%3$s") + "\n";
+    }
+    
+    public int power(Player player) {
+        return formula.evaluate(player, player.getSkillLevel(name));
+    }
+    
+    public String getName() { return name; }
+    public int getDefenseDivisor() { return defenseDivisor; }
+    public int getHits() { return hits; }
+    public Element getElement() { return element; }
+    public StatusEffectType getStatus() { return status; }
+    public int getStatusTurns() { return statusTurns; }
+    public String getMessage() { return message; }
+}
+
+// 1:1 전투 스킬 정의 파일. 작업 디렉터리에 skills.txt가 있으면 그것을, 없으면 내장 기본값을 읽는다.
+// 한 줄이 스킬 하나이고 읽을 때 종류별 효과로 컴파일하므로 시전할 때 해석이나 리플렉션이 없다.
+final class SkillBook {
+    static final String FILE = "skills.txt";
+    
+    static final String[] DEFAULTS = {
+        "# 직업|이름|레벨|마나|재사용 대기|종류|공식|방어 나눔|타수|속성|대상|상태 이상|설명|메시지",
+        "# 공식: 능력치*퍼센트%[+퍼센트%/레벨] (능력치: 공격력, 방어력, 민첩성, 지능, 최대 체력), 강화 스킬은 -",
+        "# 상태 이상: 이름:턴 또는 -, 메시지: {시전자} {대상} {수치}",
+        "전사|강타|1|10|0|물리|공격력*200%+20%/레벨|1|1|타격|단일|-|강력한 한 방을 날립니다.|{시전자}이(가) 강타로 {대상}에게 {수치}의 데미지를 입혔습니다!",
+        "전사|방어 태세|3|15|0|강화|-|1|1|무속성|아군 전체|축복:3|방어력을 증가시킵니다.|{시전자}이(가) 방어 태세를 취해 방어력이 증가했습니다!",
+        "전사|분노의 일격|5|25|0|물리|공격력*300%+30%/레벨|2|1|타격|단일|-|분노를 담아 강력한 공격을 합니다.|{시전자}이(가) 분노의 일격으로 {대상}에게 {수치}의 데미지를 입혔습니다!",
+        "궁수|연속 사격|1|12|0|물리|공격력*100%+10%/레벨|1|2|관통|단일|-|빠르게 두 번 공격합니다.|{시전자}이(가) 연속 사격으로 {대상}에게 {수치}의 데미지를 입혔습니다!",
+        "궁수|저격|3|20|0|물리|공격력*300%+30%/레벨|2|1|관통|단일|-|강력한 한 방을 날립니다.|{시전자}이(가) 저격으로 {대상}에게 {수치}의 데미지를 입혔습니다!",
+        "궁수|독화살|5|18|0|물리|공격력*100%+10%/레벨|1|1|독|단일|중독:3|적을 중독시킵니다.|{시전자}이(가) 독화살로 {대상}에게 {수치}의 데미지를 입히고 중독시켰습니다!",
+        "마법사|파이어볼|1|15|0|마법|지능*200%+20%/레벨|1|1|화염|단일|-|불덩이를 날립니다.|{시전자}이(가) 파이어볼로 {대상}에게 {수치}의 데미지를 입혔습니다!",
+        "마법사|치유|3|20|0|회복|지능*300%+30%/레벨|1|1|무속성|아군 전체|-|체력을 회복합니다.|{시전자}이(가) 치유 마법으로 {수치} 체력을 회복했습니다!",
+        "마법사|빙결|5|30|2|마법|지능*100%+10%/레벨|1|1|냉기|단일|빙결:1|적을 얼려 행동 불가로 만듭니다.|{시전자}이(가) 빙결 마법으로 {대상}에게 {수치}의 데미지를 입히고 얼렸습니다!"
+    };
+    
+    private SkillBook() {}
+    
+    public static List<Skill> load() {
+        java.nio.file.Path path = java.nio.file.Paths.get(FILE);
+        if (java.nio.file.Files.exists(path)) {
+            try {
+                return parse(java.nio.file.Files.readAllLines(path, java.nio.charset.StandardCharsets.UTF_8), FILE);
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("스킬 정의를 불러오지 못해 기본값을 사용합니다: " + e.getMessage());
+            }
+        }
+        return parse(Arrays.asList(DEFAULTS), "기본 스킬 정의");
+    }
+    
+    public static List<Skill> parse(List<String> lines, String source) {
+        List<Skill> skills = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            try {
+                Skill skill = compile(skills.size(), line);
+                if (!names.add(skill.getName())) {
+                    throw new IllegalArgumentException("이름이 중복되었습니다: " + skill.getName());
+                }
+                skills.add(skill);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException(source + " " + (i + 1) + "행: " + e.getMessage(), e);
+            }
+        }
+        return skills;
+    }
+    
+    // 정의 한 줄을 종류별 효과가 묶인 Skill로 만든다
+    static Skill compile(int id, String line) {
+        String[] fields = line.split("\\|", -1);
+        if (fields.length != 14) {
+            throw new IllegalArgumentException("항목이 14개여야 합니다 (" + fields.length + "개)");
+        }
+        for (int i = 0; i < fields.length; i++) fields[i] = fields[i].trim();
+        
+        PlayerClass playerClass = lookup(PlayerClass.values(), PlayerClass::getTitle, fields[0], "직업");
+        String name = fields[1];
+        int levelReq = number(fields[2], "레벨", 1);
+        int manaCost = number(fields[3], "마나", 0);
+        int cooldown = number(fields[4], "재사용 대기", 0);
+        SkillKind kind = lookup(SkillKind.values(), SkillKind::getName, fields[5], "종류");
+        SkillFormula formula = fields[6].equals("-") ? null : SkillFormula.parse(fields[6]);
+        int defenseDivisor = number(fields[7], "방어 나눔", 1);
+        int hits = number(fields[8], "타수", 1);
+        Element element = lookup(Element.values(), Element::getName, fields[9], "속성");
+        TargetRule target = lookup(TargetRule.values(), TargetRule::getName, fields[10], "대상");
+        StatusEffectType status = null;
+        int statusTurns = 0;
+        if (!fields[11].equals("-")) {
+            String[] parts = fields[11].split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("상태 이상은 이름:턴 형식이어야 합니다: " + fields[11]);
+            }
+            status = lookup(StatusEffectType.values(), StatusEffectType::getName, parts[0].trim(), "상태 이상");
+            statusTurns = number(parts[1].trim(), "상태 이상 턴", 1);
+        }
+        
+        if (formula == null && kind != SkillKind.BUFF) {
+            throw new IllegalArgumentException(kind.getName() + " 스킬에는 공식이 필요합니다");
+        }
+        boolean selfTarget = target == TargetRule.ALL_ALLIES;
+        if (selfTarget != (kind == SkillKind.HEAL || kind == SkillKind.BUFF)) {
+            throw new IllegalArgumentException(kind.getName() + " 스킬에 맞지 않는 대상: " + target.getName());
+        }
+        
+        SkillSpec spec = new SkillSpec(name, formula, defenseDivisor, hits, element, status, statusTurns, fields[13]);
+        SkillEffect effect;
+        switch (kind) {
+            case PHYSICAL:
+                effect = (engine, p, m) -> engine.castDamage(spec, false, p, m);
+                break;
+            case MAGIC:
+                effect = (engine, p, m) -> engine.castDamage(spec, true, p, m);
+                break;
+            case HEAL:
+                effect = (engine, p, m) -> engine.castHeal(spec, p);
+                break;
+            default:
+                effect = (engine, p, m) -> engine.castBuff(spec, p);
+        }
+        return new Skill(id, playerClass, name, manaCost, cooldown, fields[12], effect, levelReq);
+    }
+    
+    static <E extends Enum<E>> E lookup(E[] values, Function<E, String> koreanName, String text, String column) {
+        for (E value : values) {
+            if (value.name().equalsIgnoreCase(text) || koreanName.apply(value).equals(text)) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException(column + " 값을 알 수 없습니다: " + text);
+    }
+    
+    static int number(String text, String column, int min) {
+        try {
+            int value = Integer.parseInt(text);
+            if (value >= min) return value;
+        } catch (NumberFormatException e) {
+            // 아래에서 같은 메시지로 알린다
+        }
+        throw new IllegalArgumentException(column + " 값은 " + min + " 이상의 정수여야 합니다: " + text);
+    }
+    
+    // skills [파일]: 내장 기본 정의를 파일로 내보낸다 (기획자가 고쳐 쓰는 출발점)
+    static void run(String[] args) {
+        String filename = args.length > 0 ? args[0] : FILE;
+        try {
+            java.nio.file.Files.write(java.nio.file.Paths.get(filename), Arrays.asList(DEFAULTS), 
+                java.nio.charset.StandardCharsets.UTF_8);
+            System.out.println("기본 스킬 정의 " + (DEFAULTS.length - 3) + "개를 " + filename + "에 저장했습니다.");
+        } catch (IOException e) {
+            System.out.println("저장 실패: " + e.getMessage());
+        }
+    }
+}
+
+// 퀘스트 클래스
+class Quest implements Serializable {
+    private String title;
+    private String description;
+    private Predicate<Monster> condition;
+    private int requiredProgress;
+    private int currentProgress;
+    private int expReward;
+    private int goldReward;
+    private Item rewardItem;
+    private boolean isCompleted;
+    private int levelRequirement;
+    
+    public Quest(String title, String description, Predicate<Monster> condition, 
+                int requiredProgress, int expReward, int goldReward) {
+        this(title, description, condition, requiredProgress, expReward, goldReward, null, 1);
+    }
+    
+    public Quest(String title, String description, Predicate<Monster> condition, 
+                int requiredProgress, int expReward, int goldReward, Item rewardItem, int levelReq) {
+        this.title = title;
+        this.description = description;
+        this.condition = condition;
+        this.requiredProgress = requiredProgress;
+        this.currentProgress = 0;
+        this.expReward = expReward;
+        this.goldReward = goldReward;
+        this.rewardItem = rewardItem;
+        this.isCompleted = false;
+        this.levelRequirement = levelReq;
+    }
+    
+    public void updateProgress(Monster monster) {
+        if (!isCompleted && condition.test(monster)) {
+            currentProgress++;
+            if (currentProgress >= requiredProgress) {
+                isCompleted = true;
+            }
+        }
+    }
+    
+    public String getTitle() { return title; }
+    public String getDescription() { return description; }
+    public int getRequiredProgress() { return requiredProgress; }
+    public int getCurrentProgress() { return currentProgress; }
+    public int getExpReward() { return expReward; }
+    public int getGoldReward() { return goldReward; }
+    public Item getRewardItem() { return rewardItem; }
+    public boolean isCompleted() { return isCompleted; }
+    public int getLevelRequirement() { return levelRequirement; }
+}
+
+// 상점 클래스
+class Shop implements Serializable {
+    private String name;
+    private ShopType type;
+    private List<Item> items;
+    
+    public Shop(String name, ShopType type) {
+        this.name = name;
+        this.type = type;
+        this.items = new ArrayList<>();
     }
     
     public void addItem(Item item) {
@@ -661,8 +2368,11 @@ class Shop implements Serializable {
     }
     
     public void restock() {
+        restock(RandomService.current());
+    }
+    
+    public void restock(GameRandom random) {
         items.clear();
-        Random random = new Random();
         
         switch (type) {
             case WEAPON:
@@ -723,11 +2433,13 @@ class Monster implements Serializable {
     private int goldReward;
     private int level;
     private MonsterType type;
-    private List<StatusEffect> statusEffects;
+    private StatusEffects statusEffects;
     private double criticalChance;
     private double evasion;
-    private List<Item> lootTable;
+    private LootTable lootTable;
     private int lootChance;
+    private int[] resistances;        // 속성별 개별 저항 % (null이면 없음)
+    private int revealedWeaknesses;   // 전투 중 드러난 약점 속성 비트마스크
     
     public Monster(String name, int maxHp, int attack, int defense, 
                   int expReward, int level, MonsterType type) {
@@ -746,22 +2458,62 @@ class Monster implements Serializable {
         this.goldReward = expReward / 2;
         this.level = level;
         this.type = type;
-        this.statusEffects = new ArrayList<>();
+        this.statusEffects = new StatusEffects();
         this.criticalChance = criticalChance;
         this.evasion = evasion;
-        this.lootTable = new ArrayList<>();
+        this.lootTable = LootTable.EMPTY;
         this.lootChance = lootChance;
-        
-        // 기본 루트 테이블 설정
-        if (random.nextDouble() < 0.5) {
-            lootTable.add(new HealthPotion("하급 체력 물약", 0, 30));
-        }
-        if (random.nextDouble() < 0.3) {
-            lootTable.add(new ManaPotion("하급 마나 물약", 0, 30));
-        }
     }
     
-    private static final Random random = new Random();
+    // 종 정의에서 새 개체를 만든다 (드롭 테이블과 저항은 정의의 것을 그대로 함께 쓴다)
+    Monster(MonsterTemplate template) {
+        this.statusEffects = new StatusEffects();
+        reset(template);
+    }
+    
+    // 풀에서 꺼낸 개체를 종 정의대로 다시 채운다 (체력 최대, 상태 이상과 드러난 약점 없음)
+    void reset(MonsterTemplate template) {
+        this.name = template.getName();
+        this.maxHp = template.getMaxHp();
+        this.hp = maxHp;
+        this.attack = template.getAttack();
+        this.defense = template.getDefense();
+        this.expReward = template.getExpReward();
+        this.goldReward = template.getGoldReward();
+        this.level = template.getLevel();
+        this.type = template.getType();
+        this.statusEffects.clear();
+        this.criticalChance = template.getCriticalChance();
+        this.evasion = template.getEvasion();
+        this.lootTable = template.getLootTable();
+        this.lootChance = template.getLootChance();
+        this.resistances = template.sharedResistances();
+        this.revealedWeaknesses = 0;
+    }
+    
+    // 같은 능력치와 드롭 테이블을 가진 새 개체 (체력은 최대치)
+    private Monster(Monster other) {
+        this.name = other.name;
+        this.maxHp = other.maxHp;
+        this.hp = other.maxHp;
+        this.attack = other.attack;
+        this.defense = other.defense;
+        this.expReward = other.expReward;
+        this.goldReward = other.goldReward;
+        this.level = other.level;
+        this.type = other.type;
+        this.statusEffects = new StatusEffects();
+        this.criticalChance = other.criticalChance;
+        this.evasion = other.evasion;
+        this.lootTable = other.lootTable;
+        this.lootChance = other.lootChance;
+        this.resistances = other.resistances;
+        this.revealedWeaknesses = other.revealedWeaknesses;
+    }
+    
+    public Monster copy() {
+        return new Monster(this);
+    }
     
     public void takeDamage(int damage) {
         hp = Math.max(0, hp - damage);
@@ -771,32 +2523,53 @@ class Monster implements Serializable {
         return hp > 0;
     }
     
-    public void addToLootTable(Item item, int weight) {
-        for (int i = 0; i < weight; i++) {
-            lootTable.add(item);
-        }
+    // 드롭 테이블과 저항 배열은 다른 개체와 함께 쓸 수 있으므로 고칠 때는 복사본을 만든다
+    public void addToLootTable(Item item, double weight) {
+        lootTable = lootTable.with(item, weight);
     }
     
-    public Item generateLoot() {
-        if (lootTable.isEmpty() || Math.random() * 100 > lootChance) {
-            return null;
-        }
-        return lootTable.get((int)(Math.random() * lootTable.size()));
+    // 처치했을 때의 드롭을 out에 더한다
+    public void rollLoot(GameRandom random, List<Item> out) {
+        lootTable.roll(random, lootChance, out);
     }
     
-    public void applyStatusEffect(StatusEffect effect) {
-        statusEffects.add(effect);
+    public void applyStatusEffect(StatusEffectType type, int turns) {
+        statusEffects.apply(type, turns);
     }
     
-    public void processStatusEffects() {
-        Iterator<StatusEffect> it = statusEffects.iterator();
-        while (it.hasNext()) {
-            StatusEffect effect = it.next();
-            effect.applyEffect(this);
-            if (effect.isExpired()) {
-                it.remove();
-            }
-        }
+    // 상태 이상을 한 턴 진행하고 지속 피해를 입는다. 입은 피해를 돌려준다
+    public int processStatusEffects() {
+        int damage = statusEffects.tickAll(maxHp);
+        takeDamage(damage);
+        return damage;
+    }
+    
+    // 양수면 그 속성 피해를 덜 받고 음수면 더 받는다 (100이면 면역)
+    public void setResistance(Element element, int percent) {
+        resistances = resistances == null ? new int[Element.values().length] : resistances.clone();
+        resistances[element.ordinal()] = percent;
+    }
+    
+    public int getResistance(Element element) {
+        return resistances != null ? resistances[element.ordinal()] : 0;
+    }
+    
+    // 이 몬스터가 받는 속성 피해 % (타입 상성에 개별 저항을 곱한다)
+    public int getDamagePercent(Element element) {
+        int percent = TypeChart.percent(element, type);
+        return resistances != null ? percent * (100 - resistances[element.ordinal()]) / 100 : percent;
+    }
+    
+    // 처음 드러난 약점이면 true
+    public boolean revealWeakness(Element element) {
+        int bit = 1 << element.ordinal();
+        if ((revealedWeaknesses & bit) != 0) return false;
+        revealedWeaknesses |= bit;
+        return true;
+    }
+    
+    public boolean isWeaknessRevealed(Element element) {
+        return (revealedWeaknesses & (1 << element.ordinal())) != 0;
     }
     
     public String getName() { return name; }
@@ -810,2104 +2583,8092 @@ class Monster implements Serializable {
     public MonsterType getType() { return type; }
     public double getCriticalChance() { return criticalChance; }
     public double getEvasion() { return evasion; }
-    public List<StatusEffect> getStatusEffects() { return statusEffects; }
+    public int getLootChance() { return lootChance; }
+    public LootTable getLootTable() { return lootTable; }
+    public StatusEffects getStatusEffects() { return statusEffects; }
     
     public void setHp(int hp) { this.hp = Math.min(hp, maxHp); }
 }
 
-// 플레이어 클래스
-class Player implements Serializable {
-    private String name;
-    private PlayerClass playerClass;
-    private int level;
-    private int hp;
-    private int maxHp;
-    private int mana;
-    private int maxMana;
-    private int stamina;
-    private int maxStamina;
-    private int baseAttack;
-    private int baseDefense;
-    private int agility;
-    private int intelligence;
-    private int exp;
-    private int maxExp;
-    private int gold;
-    private List<Item> inventory;
-    private List<Quest> activeQuests;
-    private List<Quest> completedQuests;
-    private Weapon equippedWeapon;
-    private Armor equippedArmor;
-    private String currentLocation;
-    private List<StatusEffect> statusEffects;
-    private int statPoints;
-    private Map<String, Integer> skillLevels;
-    private int fame;
-    private List<String> unlockedLocations;
-    private int consecutiveBattles;
+// 몬스터 종의 변하지 않는 정의. 전투에는 spawn()이나 MonsterPool로 만든 개체가 나가므로
+// 한 전투의 피해나 상태 이상이 다음 조우나 다른 세션으로 넘어가지 않는다.
+final class MonsterTemplate {
+    private final String name;
+    private final int maxHp;
+    private final int attack;
+    private final int defense;
+    private final int expReward;
+    private final int level;
+    private final MonsterType type;
+    private final double criticalChance;
+    private final double evasion;
+    private final int lootChance;
+    private final int tags;                 // MonsterTag 비트 (이름에서 불러올 때 한 번 정한다)
+    private final int[] resistances;        // 개체들이 함께 읽는다 (null이면 없음, 바꿀 때는 새 정의를 만든다)
+    private final LootTable extraLoot;      // 종마다 정한 추가 드롭
+    private volatile LootTable lootTable;   // 기본 물약 드롭을 더한 전체 드롭 테이블 (처음 필요할 때 만든다)
+    
+    // 모든 종이 함께 쓰는 기본 물약 하위 테이블. 뽑히면 체력 물약 50%, 마나 물약 30%, 나머지 20%는 빈 하위 테이블이라 아무것도 떨어지지 않는다.
+    static final LootTable DEFAULT_POTIONS = LootTable.EMPTY
+        .with(new HealthPotion("하급 체력 물약", 0, 30), 0.5)
+        .with(new ManaPotion("하급 마나 물약", 0, 30), 0.3)
+        .with(LootTable.EMPTY, 0.2);
+    
+    public MonsterTemplate(String name, int maxHp, int attack, int defense, 
+                           int expReward, int level, MonsterType type) {
+        this(name, maxHp, attack, defense, expReward, level, type, 0.1, 0.1, 30);
+    }
     
-    public Player(String name, PlayerClass playerClass) {
+    public MonsterTemplate(String name, int maxHp, int attack, int defense, 
+                           int expReward, int level, MonsterType type,
+                           double criticalChance, double evasion, int lootChance) {
+        this(name, maxHp, attack, defense, expReward, level, type, criticalChance, evasion, lootChance,
+            null, LootTable.EMPTY);
+    }
+    
+    private MonsterTemplate(String name, int maxHp, int attack, int defense, int expReward, int level, 
+                            MonsterType type, double criticalChance, double evasion, int lootChance,
+                            int[] resistances, LootTable extraLoot) {
         this.name = name;
-        this.playerClass = playerClass;
-        this.level = 1;
-        this.exp = 0;
-        this.maxExp = 100;
-        this.gold = 100;
-        this.inventory = new ArrayList<>();
-        this.activeQuests = new ArrayList<>();
-        this.completedQuests = new ArrayList<>();
-        this.currentLocation = "마을";
-        this.statusEffects = new ArrayList<>();
-        this.statPoints = 0;
-        this.skillLevels = new HashMap<>();
-        this.fame = 0;
-        this.unlockedLocations = new ArrayList<>(Arrays.asList("마을", "서쪽 숲"));
-        this.consecutiveBattles = 0;
-        
-        // 기본 스탯 설정
-        switch (playerClass) {
-            case WARRIOR:
-                this.maxHp = 120;
-                this.maxMana = 30;
-                this.maxStamina = 80;
-                this.baseAttack = 12;
-                this.baseDefense = 10;
-                this.agility = 5;
-                this.intelligence = 3;
-                break;
-            case ARCHER:
-                this.maxHp = 80;
-                this.maxMana = 50;
-                this.maxStamina = 100;
-                this.baseAttack = 10;
-                this.baseDefense = 6;
-                this.agility = 12;
-                this.intelligence = 6;
-                break;
-            case MAGE:
-                this.maxHp = 70;
-                this.maxMana = 120;
-                this.maxStamina = 60;
-                this.baseAttack = 6;
-                this.baseDefense = 4;
-                this.agility = 4;
-                this.intelligence = 15;
-                break;
-        }
-        
-        this.hp = maxHp;
-        this.mana = maxMana;
-        this.stamina = maxStamina;
-        
-        // 초기 아이템 지급
-        addItem(new HealthPotion("하급 체력 물약", 0, 30));
-        addItem(new ManaPotion("마나 물약", 0, 30));
-        
-        if (playerClass == PlayerClass.WARRIOR) {
-            equip(new Weapon("초보자 검", 0, 5, 1, PlayerClass.WARRIOR, 100, "초보자용 검", 0.05, 0.85));
-            equip(new Armor("초보자 갑옷", 0, 3, 1, PlayerClass.WARRIOR, 100, "초보자용 갑옷", 0.03, 0.1));
-        } else if (playerClass == PlayerClass.ARCHER) {
-            equip(new Weapon("초보자 활", 0, 4, 1, PlayerClass.ARCHER, 100, "초보자용 활", 0.1, 0.8));
-            equip(new Armor("초보자 가죽 갑옷", 0, 2, 1, PlayerClass.ARCHER, 100, "초보자용 가죽 갑옷", 0.1, 0.05));
-        } else {
-            equip(new Weapon("초보자 지팡이", 0, 3, 1, PlayerClass.MAGE, 100, "초보자용 지팡이", 0.03, 0.9));
-            equip(new Armor("초보자 로브", 0, 1, 1, PlayerClass.MAGE, 100, "초보자용 로브", 0.05, 0.03));
+        this.maxHp = maxHp;
+        this.attack = attack;
+        this.defense = defense;
+        this.expReward = expReward;
+        this.level = level;
+        this.type = type;
+        this.criticalChance = criticalChance;
+        this.evasion = evasion;
+        this.lootChance = lootChance;
+        this.tags = MonsterTag.of(name);
+        this.resistances = resistances;
+        this.extraLoot = extraLoot;
+    }
+    
+    // 임시로 만든 몬스터의 현재 능력치, 저항, 드롭 테이블을 그대로 정의로 굳힌다
+    public static MonsterTemplate of(Monster monster) {
+        int[] resistances = null;
+        for (Element element : Element.values()) {
+            if (monster.getResistance(element) != 0) {
+                if (resistances == null) resistances = new int[Element.values().length];
+                resistances[element.ordinal()] = monster.getResistance(element);
+            }
         }
+        MonsterTemplate template = new MonsterTemplate(monster.getName(), monster.getMaxHp(), monster.getAttack(),
+            monster.getDefense(), monster.getExpReward(), monster.getLevel(), monster.getType(),
+            monster.getCriticalChance(), monster.getEvasion(), monster.getLootChance(),
+            resistances, monster.getLootTable());
+        template.lootTable = template.extraLoot;
+        return template;
     }
     
-    public void takeDamage(int damage) {
-        hp = Math.max(0, hp - damage);
+    public MonsterTemplate withResistance(Element element, int percent) {
+        int[] copy = resistances != null ? resistances.clone() : new int[Element.values().length];
+        copy[element.ordinal()] = percent;
+        return new MonsterTemplate(name, maxHp, attack, defense, expReward, level, type,
+            criticalChance, evasion, lootChance, copy, extraLoot);
     }
     
-    public boolean isAlive() {
-        return hp > 0;
+    public MonsterTemplate withLoot(Item item, double weight) {
+        return withLootTable(extraLoot.with(item, weight));
     }
     
-    public void gainExp(int amount) {
-        // 연속 전투 보너스
-        if (consecutiveBattles >= 5) {
-            amount = (int)(amount * 1.1);
-        }
-        
-        exp += amount;
-        while (exp >= maxExp) {
-            levelUp();
+    public MonsterTemplate withLoot(LootTable subTable, double weight) {
+        return withLootTable(extraLoot.with(subTable, weight));
+    }
+    
+    public MonsterTemplate withGuaranteedLoot(Item item) {
+        return withLootTable(extraLoot.withGuaranteed(item));
+    }
+    
+    public MonsterTemplate withLootRolls(int rolls) {
+        return withLootTable(extraLoot.withRolls(rolls));
+    }
+    
+    private MonsterTemplate withLootTable(LootTable extraLoot) {
+        return new MonsterTemplate(name, maxHp, attack, defense, expReward, level, type,
+            criticalChance, evasion, lootChance, resistances, extraLoot);
+    }
+    
+    // 능력치만 바꾼 새 정의 (밸런스 조정 후보용)
+    public MonsterTemplate withStats(int maxHp, int attack, int defense) {
+        return new MonsterTemplate(name, maxHp, attack, defense, expReward, level, type,
+            criticalChance, evasion, lootChance, resistances, extraLoot);
+    }
+    
+    public Monster spawn() {
+        return new Monster(this);
+    }
+    
+    // 기본 물약 하위 테이블을 가중치 1 항목으로 두고 종마다 정한 추가 드롭을 뒤에 붙인다.
+    // 여러 스레드가 동시에 만들어도 결과가 같으므로 잠그지 않는다.
+    public LootTable getLootTable() {
+        LootTable table = lootTable;
+        if (table == null) {
+            table = LootTable.EMPTY.with(DEFAULT_POTIONS, 1).plus(extraLoot);
+            lootTable = table;
         }
+        return table;
     }
     
-    public void levelUp() {
-        level++;
-        exp -= maxExp;
-        maxExp = (int)(maxExp * 1.5);
-        statPoints += 3;
-        
-        // 기본 스탯 증가
-        maxHp += 10 + (playerClass == PlayerClass.WARRIOR ? 5 : 0);
-        maxMana += 5 + (playerClass == PlayerClass.MAGE ? 10 : 0);
-        maxStamina += 8 + (playerClass == PlayerClass.ARCHER ? 5 : 0);
-        
-        // 직업별 추가 보너스
-        switch(playerClass) {
-            case WARRIOR:
-                baseAttack += 2;
-                baseDefense += 1;
-                break;
-            case ARCHER:
-                agility += 2;
-                break;
-            case MAGE:
-                intelligence += 3;
-                break;
+    int[] sharedResistances() { return resistances; }
+    
+    public int getResistance(Element element) {
+        return resistances != null ? resistances[element.ordinal()] : 0;
+    }
+    
+    public String getName() { return name; }
+    public int getMaxHp() { return maxHp; }
+    public int getAttack() { return attack; }
+    public int getDefense() { return defense; }
+    public int getExpReward() { return expReward; }
+    public int getGoldReward() { return expReward / 2; }
+    public int getLevel() { return level; }
+    public MonsterType getType() { return type; }
+    public double getCriticalChance() { return criticalChance; }
+    public double getEvasion() { return evasion; }
+    public int getLootChance() { return lootChance; }
+    public int getTags() { return tags; }
+    
+    public boolean hasTag(MonsterTag tag) {
+        return (tags & tag.bit()) != 0;
+    }
+}
+
+// Vose의 별칭 방법으로 만든 가중치 표본기. 만들 때 O(n), 뽑을 때는 난수 한두 개로 O(1)이고 할당이 없다.
+// 모든 칸이 가득 찬 균등 표는 nextInt 한 번으로 끝난다.
+final class AliasSampler {
+    private final double[] prob;   // 칸 i에 남는 확률 (1이면 별칭을 보지 않는다)
+    private final int[] alias;
+    
+    public AliasSampler(double[] weights) {
+        int n = weights.length;
+        this.prob = new double[n];
+        this.alias = new int[n];
+        double total = 0.0;
+        for (double weight : weights) {
+            total += weight;
         }
-        
-        hp = maxHp;
-        mana = maxMana;
-        stamina = maxStamina;
-        
-        System.out.println("\n=========================");
-        System.out.println("  레벨 업! " + level + " 레벨이 되었습니다!");
-        System.out.println("=========================");
-        System.out.println("스탯 포인트 3점을 획득했습니다!");
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+            if (scaled[i] < 1.0) small[smallCount++] = i;
+            else large[largeCount++] = i;
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            prob[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+            if (scaled[more] < 1.0) small[smallCount++] = more;
+            else large[largeCount++] = more;
+        }
+        // 남은 칸은 반올림 오차만 있으므로 확률 1로 채운다
+        while (largeCount > 0) prob[large[--largeCount]] = 1.0;
+        while (smallCount > 0) prob[small[--smallCount]] = 1.0;
     }
     
-    public void distributeStatPoint(String stat) {
-        if (statPoints <= 0) return;
-        
-        switch(stat.toLowerCase()) {
-            case "공격력":
-                baseAttack++;
-                break;
-            case "방어력":
-                baseDefense++;
-                break;
-            case "민첩성":
-                agility++;
-                break;
-            case "지능":
-                intelligence++;
-                break;
-            case "체력":
-                maxHp += 5;
-                hp += 5;
-                break;
+    // 비어 있지 않은 표에서만 부른다
+    public int sample(GameRandom random) {
+        int i = random.nextInt(prob.length);
+        if (prob[i] < 1.0 && random.nextDouble() >= prob[i]) {
+            i = alias[i];
         }
-        statPoints--;
+        return i;
     }
     
-    public void gainGold(int amount) {
-        gold += amount;
+    public int size() { return prob.length; }
+}
+
+// 가중치 드롭 테이블. 항목은 아이템이거나 하위 테이블이고 가중치는 실수다.
+// 불러올 때 한 번 별칭 표를 만들어 종 정의끼리 함께 쓰고, 뽑기는 난수 한두 개로 O(1)이며 할당이 없다.
+// 바꿀 때는 with...로 새 테이블을 만든다.
+final class LootTable {
+    static final LootTable EMPTY = new LootTable(new Item[0], new LootTable[0], new double[0], new Item[0], 1);
+    
+    private final Item[] items;           // i번째 항목의 아이템 (하위 테이블이면 null)
+    private final LootTable[] subTables;  // i번째 항목의 하위 테이블 (아이템이면 null)
+    private final double[] weights;
+    private final Item[] guaranteed;      // 굴림과 상관없이 항상 떨어지는 아이템
+    private final int rolls;              // 드롭 확률을 따로 굴리는 횟수
+    private final AliasSampler sampler;
+    
+    private LootTable(Item[] items, LootTable[] subTables, double[] weights, Item[] guaranteed, int rolls) {
+        this.items = items;
+        this.subTables = subTables;
+        this.weights = weights;
+        this.guaranteed = guaranteed;
+        this.rolls = rolls;
+        this.sampler = new AliasSampler(weights);
     }
     
-    public void spendGold(int amount) {
-        gold = Math.max(0, gold - amount);
+    public LootTable with(Item item, double weight) {
+        return withEntry(item, null, weight);
     }
     
-    public void addItem(Item item) {
-        inventory.add(item);
+    // 하위 테이블 항목: 이 항목이 뽑히면 하위 테이블에서 한 번 더 뽑는다
+    public LootTable with(LootTable subTable, double weight) {
+        return withEntry(null, subTable, weight);
     }
     
-    public void removeItem(Item item) {
-        inventory.remove(item);
+    private LootTable withEntry(Item item, LootTable subTable, double weight) {
+        if (!(weight > 0)) {
+            throw new IllegalArgumentException("드롭 가중치는 양수여야 합니다: " + weight);
+        }
+        int n = weights.length;
+        Item[] newItems = Arrays.copyOf(items, n + 1);
+        LootTable[] newSubTables = Arrays.copyOf(subTables, n + 1);
+        double[] newWeights = Arrays.copyOf(weights, n + 1);
+        newItems[n] = item;
+        newSubTables[n] = subTable;
+        newWeights[n] = weight;
+        return new LootTable(newItems, newSubTables, newWeights, guaranteed, rolls);
     }
     
-    public void equip(Equipment equipment) {
-        if (equipment instanceof Weapon) {
-            if (equippedWeapon != null) {
-                unequipWeapon();
+    public LootTable withGuaranteed(Item item) {
+        Item[] newGuaranteed = Arrays.copyOf(guaranteed, guaranteed.length + 1);
+        newGuaranteed[guaranteed.length] = item;
+        return new LootTable(items, subTables, weights, newGuaranteed, rolls);
+    }
+    
+    public LootTable withRolls(int rolls) {
+        if (rolls < 1) {
+            throw new IllegalArgumentException("굴림 횟수는 1 이상이어야 합니다: " + rolls);
+        }
+        return new LootTable(items, subTables, weights, guaranteed, rolls);
+    }
+    
+    // 다른 테이블의 항목과 확정 드롭을 뒤에 붙인다 (굴림 횟수는 큰 쪽)
+    public LootTable plus(LootTable other) {
+        if (other.isEmpty() && other.guaranteed.length == 0) return withRolls(Math.max(rolls, other.rolls));
+        int n = weights.length;
+        int m = other.weights.length;
+        Item[] newItems = Arrays.copyOf(items, n + m);
+        LootTable[] newSubTables = Arrays.copyOf(subTables, n + m);
+        double[] newWeights = Arrays.copyOf(weights, n + m);
+        System.arraycopy(other.items, 0, newItems, n, m);
+        System.arraycopy(other.subTables, 0, newSubTables, n, m);
+        System.arraycopy(other.weights, 0, newWeights, n, m);
+        Item[] newGuaranteed = Arrays.copyOf(guaranteed, guaranteed.length + other.guaranteed.length);
+        System.arraycopy(other.guaranteed, 0, newGuaranteed, guaranteed.length, other.guaranteed.length);
+        return new LootTable(newItems, newSubTables, newWeights, newGuaranteed, Math.max(rolls, other.rolls));
+    }
+    
+    // 항목 하나를 뽑는다 (하위 테이블이면 그 안에서 다시 뽑는다). 비어 있으면 null.
+    public Item sample(GameRandom random) {
+        LootTable table = this;
+        while (table.weights.length > 0) {
+            int i = table.sampler.sample(random);
+            if (table.items[i] != null) {
+                return table.items[i];
             }
-            equippedWeapon = (Weapon) equipment;
-        } else if (equipment instanceof Armor) {
-            if (equippedArmor != null) {
-                unequipArmor();
+            table = table.subTables[i];
+        }
+        return null;
+    }
+    
+    // 전투 한 번의 드롭을 out에 더한다. 확정 드롭을 먼저 넣고, 굴림마다 chance%로 항목 하나를 뽑는다.
+    public void roll(GameRandom random, int chance, List<Item> out) {
+        for (Item item : guaranteed) {
+            out.add(item);
+        }
+        if (weights.length == 0) {
+            return;
+        }
+        for (int r = 0; r < rolls; r++) {
+            if (random.nextDouble() * 100 > chance) {
+                continue;
+            }
+            Item item = sample(random);
+            if (item != null) {
+                out.add(item);
             }
-            equippedArmor = (Armor) equipment;
         }
-        inventory.remove(equipment);
     }
     
-    public Weapon unequipWeapon() {
-        Weapon weapon = equippedWeapon;
-        if (weapon != null) {
-            inventory.add(weapon);
-            equippedWeapon = null;
+    // 전투 한 번에 아이템별로 떨어지는 기대 개수 (오프라인 보상 계산용)
+    public Map<Item, Double> expectedDrops(int chance) {
+        Map<Item, Double> expected = new LinkedHashMap<>();
+        for (Item item : guaranteed) {
+            expected.merge(item, 1.0, Double::sum);
         }
-        return weapon;
+        addExpected(expected, rolls * Math.min(1.0, chance / 100.0));
+        return expected;
     }
     
-    public Armor unequipArmor() {
-        Armor armor = equippedArmor;
-        if (armor != null) {
-            inventory.add(armor);
-            equippedArmor = null;
+    private void addExpected(Map<Item, Double> expected, double scale) {
+        double total = 0.0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        for (int i = 0; i < weights.length; i++) {
+            double share = scale * weights[i] / total;
+            if (items[i] != null) {
+                expected.merge(items[i], share, Double::sum);
+            } else {
+                subTables[i].addExpected(expected, share);
+            }
         }
-        return armor;
     }
     
-    public void useStamina(int amount) {
-        stamina = Math.max(0, stamina - amount);
+    public boolean isEmpty() { return weights.length == 0 && guaranteed.length == 0; }
+    public int size() { return weights.length; }
+    public int getRolls() { return rolls; }
+    
+    // loot [굴림 수] [시드]: 종마다 드롭을 굴려 굴림당 시간과 할당 바이트, 기대 드롭률과의 최대 오차를 잰다
+    public static void run(String[] args) {
+        int rolls = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42L;
+        
+        com.sun.management.ThreadMXBean threads = 
+            (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        List<MonsterTemplate> templates = new Game(seed, null).getMonsters();
+        SplitMixRandom random = new SplitMixRandom(seed);
+        List<Item> drops = new ArrayList<>();
+        
+        // JIT가 안정될 때까지 같은 굴림을 먼저 돌린다
+        for (MonsterTemplate template : templates) {
+            for (int i = 0; i < rolls / 10; i++) {
+                drops.clear();
+                template.getLootTable().roll(random, template.getLootChance(), drops);
+            }
+        }
+        
+        System.out.println("몬스터,항목 수,굴림당 나노초,굴림당 할당 바이트,최대 오차");
+        double worst = 0.0;
+        for (MonsterTemplate template : templates) {
+            LootTable table = template.getLootTable();
+            int chance = template.getLootChance();
+            long before = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < rolls; i++) {
+                drops.clear();
+                table.roll(random, chance, drops);
+            }
+            long nanos = System.nanoTime() - start;
+            long bytes = threads.getCurrentThreadAllocatedBytes() - before;
+            
+            Map<Item, Integer> counts = new HashMap<>();
+            for (int i = 0; i < rolls; i++) {
+                drops.clear();
+                table.roll(random, chance, drops);
+                for (Item item : drops) {
+                    counts.merge(item, 1, Integer::sum);
+                }
+            }
+            double error = 0.0;
+            for (Map.Entry<Item, Double> entry : table.expectedDrops(chance).entrySet()) {
+                double observed = counts.getOrDefault(entry.getKey(), 0) / (double) rolls;
+                error = Math.max(error, Math.abs(observed - entry.getValue()));
+            }
+            worst = Math.max(worst, error);
+            System.out.printf("%s,%d,%.1f,%.2f,%.4f\n", template.getName(), table.size(), 
+                nanos / (double) rolls, bytes / (double) rolls, error);
+        }
+        System.err.printf("드롭률 최대 오차: %.4f (종마다 굴림 %d회)\n", worst, rolls);
     }
+}
+
+// 몬스터 계열 태그. 이름에 든 계열 이름으로 불러올 때 한 번만 정하고, 조우 때는 비트로만 비교한다.
+enum MonsterTag {
+    GOBLIN("고블린"), ORC("오크"), TROLL("트롤"), HARPY("하피");
     
-    public void acceptQuest(Quest quest) {
-        activeQuests.add(quest);
+    private String keyword;
+    
+    MonsterTag(String keyword) {
+        this.keyword = keyword;
     }
     
-    public void completeQuest(Quest quest) {
-        activeQuests.remove(quest);
-        completedQuests.add(quest);
-        gainExp(quest.getExpReward());
-        gainGold(quest.getGoldReward());
-        if (quest.getRewardItem() != null) {
-            addItem(quest.getRewardItem());
+    public String getKeyword() { return keyword; }
+    
+    public int bit() { return 1 << ordinal(); }
+    
+    public static int of(String name) {
+        int tags = 0;
+        for (MonsterTag tag : values()) {
+            if (name.contains(tag.keyword)) {
+                tags |= tag.bit();
+            }
         }
-        fame += quest.getLevelRequirement() * 10;
+        return tags;
     }
     
-    public boolean hasActiveQuest(Quest quest) {
-        return activeQuests.contains(quest);
+    public static int mask(MonsterTag... tags) {
+        int mask = 0;
+        for (MonsterTag tag : tags) {
+            mask |= tag.bit();
+        }
+        return mask;
+    }
+}
+
+// 장소별 출현 규칙. 장소는 EventRule처럼 지역 이름, 지역 타입 이름 또는 *이다.
+// 타입이나 태그 중 하나라도 맞으면 출현 후보가 되고, 플레이어 레벨 + levelSlack 이하인 몬스터만 나온다.
+// 가중치가 낮고 levelSlack이 큰 규칙이 희귀 출현이다.
+final class SpawnRule {
+    static final String ANY = "*";
+    static final int DEFAULT_SLACK = 2;
+    static final int DEFAULT_WEIGHT = 10;
+    
+    // 기본 출현표 (같은 몬스터에 규칙이 여럿 맞으면 먼저 나온 규칙을 쓴다)
+    static final List<SpawnRule> DEFAULTS = Collections.unmodifiableList(Arrays.asList(
+        new SpawnRule(LocationType.FOREST.getKoreanName(), typeMask(MonsterType.BEAST, MonsterType.PLANT), 
+            MonsterTag.mask(MonsterTag.GOBLIN)),
+        new SpawnRule(LocationType.MOUNTAIN.getKoreanName(), 0, 
+            MonsterTag.mask(MonsterTag.ORC, MonsterTag.TROLL, MonsterTag.HARPY)),
+        new SpawnRule(LocationType.GRAVEYARD.getKoreanName(), typeMask(MonsterType.UNDEAD, MonsterType.GHOST), 0),
+        new SpawnRule(LocationType.DUNGEON.getKoreanName(), typeMask(MonsterType.BOSS, MonsterType.DEMON), 0),
+        new SpawnRule(LocationType.LAKE.getKoreanName(), typeMask(MonsterType.ELEMENTAL), 
+            MonsterTag.mask(MonsterTag.HARPY))));
+    
+    // 숲에서 만나는 고블린 무리의 구성원
+    static final List<SpawnRule> PACKS = Collections.singletonList(
+        new SpawnRule(LocationType.FOREST.getKoreanName(), 0, MonsterTag.mask(Game.PACK_TAG)));
+    
+    private final String place;
+    private final int typeMask;
+    private final int tagMask;
+    private final int weight;
+    private final int levelSlack;
+    
+    public SpawnRule(String place, int typeMask, int tagMask) {
+        this(place, typeMask, tagMask, DEFAULT_WEIGHT, DEFAULT_SLACK);
+    }
+    
+    public SpawnRule(String place, int typeMask, int tagMask, int weight, int levelSlack) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("출현 가중치는 양수여야 합니다: " + weight);
+        }
+        this.place = place;
+        this.typeMask = typeMask;
+        this.tagMask = tagMask;
+        this.weight = weight;
+        this.levelSlack = levelSlack;
     }
     
-    public boolean hasCompletedQuest(Quest quest) {
-        return completedQuests.contains(quest);
+    public static int typeMask(MonsterType... types) {
+        int mask = 0;
+        for (MonsterType type : types) {
+            mask |= 1 << type.ordinal();
+        }
+        return mask;
     }
     
-    public void applyStatusEffect(StatusEffect effect) {
-        statusEffects.add(effect);
+    public boolean matches(MonsterTemplate template) {
+        return (typeMask & (1 << template.getType().ordinal())) != 0 || (tagMask & template.getTags()) != 0;
     }
     
-    public void processStatusEffects() {
-        Iterator<StatusEffect> it = statusEffects.iterator();
-        while (it.hasNext()) {
-            StatusEffect effect = it.next();
-            effect.applyEffect(this);
-            if (effect.isExpired()) {
-                it.remove();
-            }
-        }
+    public boolean appliesTo(Location location) {
+        return place.equals(ANY) || place.equals(location.getName()) 
+            || place.equals(location.getType().getKoreanName());
     }
     
-    public void increaseConsecutiveBattles() {
-        consecutiveBattles++;
-        if (consecutiveBattles % 5 == 0) {
-            System.out.println("연속 전투 보너스! 획득 경험치 10% 증가!");
+    public String getPlace() { return place; }
+    public int getWeight() { return weight; }
+    public int getLevelSlack() { return levelSlack; }
+}
+
+// 한 지역과 레벨 구간의 출현 후보. 가중치로 만든 별칭 표에서 뽑으므로
+// 조우마다 난수 한두 개로 O(1)이고 할당이 없다.
+final class SpawnBand {
+    static final SpawnBand EMPTY = new SpawnBand(Collections.emptyList(), new int[0]);
+    
+    private final List<MonsterTemplate> candidates;
+    private final int[] weights;
+    private final int totalWeight;
+    private final AliasSampler sampler;
+    
+    SpawnBand(List<MonsterTemplate> candidates, int[] weights) {
+        this.candidates = Collections.unmodifiableList(new ArrayList<>(candidates));
+        this.weights = weights.clone();
+        double[] chances = new double[weights.length];
+        int total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            chances[i] = weights[i];
+            total += weights[i];
         }
+        this.totalWeight = total;
+        this.sampler = new AliasSampler(chances);
     }
     
-    public void resetConsecutiveBattles() {
-        consecutiveBattles = 0;
+    // 모든 몬스터가 같은 확률로 나오는 구간 (지역에 맞는 몬스터가 없을 때)
+    static SpawnBand uniform(List<MonsterTemplate> templates) {
+        int[] weights = new int[templates.size()];
+        Arrays.fill(weights, 1);
+        return new SpawnBand(templates, weights);
     }
     
-    public void unlockLocation(String location) {
-        if (!unlockedLocations.contains(location)) {
-            unlockedLocations.add(location);
-            System.out.println("새로운 지역 " + location + "이(가) 열렸습니다!");
-        }
+    public MonsterTemplate pick(GameRandom random) {
+        return candidates.get(sampler.sample(random));
     }
     
-    // Getter 메소드들
-    public String getName() { return name; }
-    public PlayerClass getPlayerClass() { return playerClass; }
-    public int getLevel() { return level; }
-    public int getHp() { return hp; }
-    public int getMaxHp() { return maxHp; }
-    public int getMana() { return mana; }
-    public int getMaxMana() { return maxMana; }
-    public int getStamina() { return stamina; }
-    public int getMaxStamina() { return maxStamina; }
-    public int getBaseAttack() { return baseAttack; }
-    public int getBaseDefense() { return baseDefense; }
-    public int getAgility() { return agility; }
-    public int getIntelligence() { return intelligence; }
-    public int getExp() { return exp; }
-    public int getMaxExp() { return maxExp; }
-    public int getGold() { return gold; }
-    public List<Item> getInventory() { return inventory; }
-    public List<Quest> getActiveQuests() { return activeQuests; }
-    public Weapon getEquippedWeapon() { return equippedWeapon; }
-    public Armor getEquippedArmor() { return equippedArmor; }
-    public String getCurrentLocation() { return currentLocation; }
-    public List<StatusEffect> getStatusEffects() { return statusEffects; }
-    public int getStatPoints() { return statPoints; }
-    public int getFame() { return fame; }
-    public List<String> getUnlockedLocations() { return unlockedLocations; }
-    public int getConsecutiveBattles() { return consecutiveBattles; }
+    public boolean isEmpty() { return candidates.isEmpty(); }
+    public List<MonsterTemplate> getCandidates() { return candidates; }
     
-    // Setter 메소드들
-    public void setHp(int hp) { this.hp = Math.min(hp, maxHp); }
-    public void setMana(int mana) { this.mana = Math.min(mana, maxMana); }
-    public void setStamina(int stamina) { this.stamina = Math.min(stamina, maxStamina); }
-    public void setCurrentLocation(String location) { this.currentLocation = location; }
+    // i번째 후보가 뽑힐 확률
+    public double getChance(int index) {
+        return weights[index] / (double) totalWeight;
+    }
     
-    public int getAttack() {
-        int attack = baseAttack;
-        if (equippedWeapon != null) {
-            attack += equippedWeapon.getAttack();
+    boolean sameAs(SpawnBand other) {
+        return candidates.equals(other.candidates) && Arrays.equals(weights, other.weights);
+    }
+}
+
+// 콘텐츠를 불러올 때 한 번 만드는 출현 색인. 지역 × 플레이어 레벨마다 구간을 미리 만들고,
+// 후보가 같은 연속 레벨은 같은 구간을 공유한다. 몬스터 최고 레벨 이상은 마지막 구간을 쓴다.
+final class SpawnIndex {
+    private final Map<String, SpawnBand[]> bands = new HashMap<>();
+    
+    public SpawnIndex(List<MonsterTemplate> templates, List<SpawnRule> rules, Collection<Location> locations) {
+        int maxLevel = 0;
+        for (MonsterTemplate template : templates) {
+            maxLevel = Math.max(maxLevel, template.getLevel());
         }
-        
-        // 상태 이상 효과 적용
-        for (StatusEffect effect : statusEffects) {
-            if (effect.getType() == StatusEffectType.BLESS) {
-                attack = (int)(attack * 1.1);
+        for (Location location : locations) {
+            SpawnBand[] byLevel = new SpawnBand[maxLevel + 1];
+            for (int level = 0; level <= maxLevel; level++) {
+                SpawnBand band = build(templates, rules, location, level);
+                byLevel[level] = level > 0 && band.sameAs(byLevel[level - 1]) ? byLevel[level - 1] : band;
             }
+            bands.put(location.getName(), byLevel);
         }
-        
-        return attack;
     }
     
-    public int getDefense() {
-        int defense = baseDefense;
-        if (equippedArmor != null) {
-            defense += equippedArmor.getDefense();
+    private static SpawnBand build(List<MonsterTemplate> templates, List<SpawnRule> rules, 
+                                   Location location, int level) {
+        List<MonsterTemplate> candidates = new ArrayList<>();
+        int[] weights = new int[templates.size()];
+        for (MonsterTemplate template : templates) {
+            for (SpawnRule rule : rules) {
+                if (rule.appliesTo(location) && rule.matches(template)) {
+                    if (template.getLevel() <= level + rule.getLevelSlack()) {
+                        weights[candidates.size()] = rule.getWeight();
+                        candidates.add(template);
+                    }
+                    break;
+                }
+            }
         }
-        return defense;
+        return candidates.isEmpty() ? SpawnBand.EMPTY 
+            : new SpawnBand(candidates, Arrays.copyOf(weights, candidates.size()));
     }
     
-    public double getEvasion() {
-        double evasion = 0.0;
-        if (equippedArmor != null) {
-            evasion += equippedArmor.getEvasion();
+    // 색인에 없는 지역은 빈 구간
+    public SpawnBand band(Location location, int playerLevel) {
+        SpawnBand[] byLevel = bands.get(location.getName());
+        if (byLevel == null) {
+            return SpawnBand.EMPTY;
         }
-        evasion += agility * 0.01;
-        return Math.min(evasion, 0.5); // 최대 50% 회피율
+        return byLevel[Math.max(0, Math.min(playerLevel, byLevel.length - 1))];
     }
 }
 
-// 전투 클래스
-class Battle {
-    private Player player;
-    private Monster monster;
-    private Game game;
-    private Scanner scanner;
-    private Random random;
-    private List<Consumer<Player>> postBattleActions;
+// 세션 하나가 쓰는 몬스터 개체 풀. 전투가 끝난 개체를 돌려받아 다음 조우 때 정의대로 다시 채워 쓴다.
+// 한 세션 안에서만 쓰므로 잠그지 않는다.
+final class MonsterPool {
+    // 한 번에 살아 있을 수 있는 최대 개체 수 (무리 전투 한 번)
+    private static final int CAPACITY = PackBattleEngine.MAX_PACK;
+    
+    private final Monster[] free = new Monster[CAPACITY];
+    private int size;
+    
+    public Monster spawn(MonsterTemplate template) {
+        if (size == 0) {
+            return template.spawn();
+        }
+        Monster monster = free[--size];
+        free[size] = null;
+        monster.reset(template);
+        return monster;
+    }
     
-    public Battle(Player player, Monster monster, Game game) {
-        this.player = player;
-        this.monster = monster;
-        this.game = game;
-        this.scanner = new Scanner(System.in);
-        this.random = new Random();
-        this.postBattleActions = new ArrayList<>();
+    // 전투가 끝나 더 이상 아무도 참조하지 않는 개체만 돌려준다
+    public void release(Monster monster) {
+        if (size < CAPACITY) {
+            free[size++] = monster;
+        }
     }
+}
+
+// 플레이어 클래스
+class Player implements Serializable {
+    private String name;
+    private PlayerClass playerClass;
+    private int level;
+    private int hp;
+    private int maxHp;
+    private int mana;
+    private int maxMana;
+    private int stamina;
+    private int maxStamina;
+    private int baseAttack;
+    private int baseDefense;
+    private int agility;
+    private int intelligence;
+    private int exp;
+    private int maxExp;
+    private int gold;
+    private List<Item> inventory;
+    private List<Quest> activeQuests;
+    private List<Quest> completedQuests;
+    private Weapon equippedWeapon;
+    private Armor equippedArmor;
+    private String currentLocation;
+    private StatusEffects statusEffects;
+    private int statPoints;
+    private Map<String, Integer> skillLevels;
+    private int fame;
+    private List<String> unlockedLocations;
+    private int consecutiveBattles;
+    private transient boolean silent;
     
-    public void start() {
-        System.out.println("\n===== 전투 시작! =====");
-        
-        boolean playerFirst = isPlayerFirst();
+    // 유효 능력치 캐시: 능력치를 바꾸는 변경이 있거나 상태 이상 버전이 달라졌을 때만 다시 계산한다
+    private transient boolean statsValid;
+    private transient int statsStatusVersion;
+    private transient int effectiveAttack;
+    private transient int effectiveDefense;
+    private transient double effectiveEvasion;
+    private transient StatSheet statSheet;
+    
+    public Player(String name, PlayerClass playerClass) {
+        this.name = name;
+        this.playerClass = playerClass;
+        this.level = 1;
+        this.exp = 0;
+        this.maxExp = 100;
+        this.gold = 100;
+        this.inventory = new ArrayList<>();
+        this.activeQuests = new ArrayList<>();
+        this.completedQuests = new ArrayList<>();
+        this.currentLocation = "마을";
+        this.statusEffects = new StatusEffects();
+        this.statPoints = 0;
+        this.skillLevels = new HashMap<>();
+        this.fame = 0;
+        this.unlockedLocations = new ArrayList<>(Arrays.asList("마을", "서쪽 숲"));
+        this.consecutiveBattles = 0;
         
-        while (player.isAlive() && monster.isAlive()) {
-            showStatus();
-            
-            if (playerFirst) {
-                playerTurn();
-                if (!monster.isAlive()) break;
-                
-                monsterTurn();
-                if (!player.isAlive()) break;
-            } else {
-                monsterTurn();
-                if (!player.isAlive()) break;
-                
-                playerTurn();
-                if (!monster.isAlive()) break;
-            }
-            
-            // 상태 이상 처리
-            player.processStatusEffects();
-            monster.processStatusEffects();
-            
-            player.setStamina(Math.min(player.getMaxStamina(), player.getStamina() + 5));
+        // 기본 스탯 설정
+        switch (playerClass) {
+            case WARRIOR:
+                this.maxHp = 120;
+                this.maxMana = 30;
+                this.maxStamina = 80;
+                this.baseAttack = 12;
+                this.baseDefense = 10;
+                this.agility = 5;
+                this.intelligence = 3;
+                break;
+            case ARCHER:
+                this.maxHp = 80;
+                this.maxMana = 50;
+                this.maxStamina = 100;
+                this.baseAttack = 10;
+                this.baseDefense = 6;
+                this.agility = 12;
+                this.intelligence = 6;
+                break;
+            case MAGE:
+                this.maxHp = 70;
+                this.maxMana = 120;
+                this.maxStamina = 60;
+                this.baseAttack = 6;
+                this.baseDefense = 4;
+                this.agility = 4;
+                this.intelligence = 15;
+                break;
         }
         
-        if (player.isAlive()) {
-            playerWin();
-            executePostBattleActions();
+        this.hp = maxHp;
+        this.mana = maxMana;
+        this.stamina = maxStamina;
+        
+        // 초기 아이템 지급
+        addItem(new HealthPotion("하급 체력 물약", 0, 30));
+        addItem(new ManaPotion("마나 물약", 0, 30));
+        
+        if (playerClass == PlayerClass.WARRIOR) {
+            equip(new Weapon("초보자 검", 0, 5, 1, PlayerClass.WARRIOR, 100, "초보자용 검", 0.05, 0.85));
+            equip(new Armor("초보자 갑옷", 0, 3, 1, PlayerClass.WARRIOR, 100, "초보자용 갑옷", 0.03, 0.1));
+        } else if (playerClass == PlayerClass.ARCHER) {
+            equip(new Weapon("초보자 활", 0, 4, 1, PlayerClass.ARCHER, 100, "초보자용 활", 0.1, 0.8));
+            equip(new Armor("초보자 가죽 갑옷", 0, 2, 1, PlayerClass.ARCHER, 100, "초보자용 가죽 갑옷", 0.1, 0.05));
         } else {
-            game.setGameState(GameState.GAME_OVER);
-        }
-    }
-    
-    private void executePostBattleActions() {
-        for (Consumer<Player> action : postBattleActions) {
-            action.accept(player);
+            equip(new Weapon("초보자 지팡이", 0, 3, 1, PlayerClass.MAGE, 100, "초보자용 지팡이", 0.03, 0.9));
+            equip(new Armor("초보자 로브", 0, 1, 1, PlayerClass.MAGE, 100, "초보자용 로브", 0.05, 0.03));
         }
-        postBattleActions.clear();
     }
     
-    public void addPostBattleAction(Consumer<Player> action) {
-        postBattleActions.add(action);
+    public void takeDamage(int damage) {
+        hp = Math.max(0, hp - damage);
     }
     
-    private boolean isPlayerFirst() {
-        int playerAgility = player.getAgility();
-        int monsterAgility = monster.getLevel() * 5;
-        return random.nextInt(playerAgility + monsterAgility) > monsterAgility;
+    public boolean isAlive() {
+        return hp > 0;
     }
     
-    private void showStatus() {
-        System.out.println("\n-----------------------");
-        System.out.println(player.getName() + " (Lv." + player.getLevel() + ")");
-        System.out.printf("HP: %d/%d | 마나: %d/%d | 스태미나: %d/%d\n", 
-            player.getHp(), player.getMaxHp(), 
-            player.getMana(), player.getMaxMana(),
-            player.getStamina(), player.getMaxStamina());
-        
-        // 플레이어 상태 이상 표시
-        if (!player.getStatusEffects().isEmpty()) {
-            System.out.print("상태 이상: ");
-            for (StatusEffect effect : player.getStatusEffects()) {
-                System.out.print(effect.getType().getName() + " ");
-            }
-            System.out.println();
+    public void gainExp(int amount) {
+        // 연속 전투 보너스
+        if (consecutiveBattles >= 5) {
+            amount = (int)(amount * 1.1);
         }
         
-        System.out.println("\nVS");
-        
-        System.out.println("\n" + monster.getName() + " (Lv." + monster.getLevel() + ")");
-        System.out.printf("HP: %d/%d\n", monster.getHp(), monster.getMaxHp());
-        
-        // 몬스터 상태 이상 표시
-        if (!monster.getStatusEffects().isEmpty()) {
-            System.out.print("상태 이상: ");
-            for (StatusEffect effect : monster.getStatusEffects()) {
-                System.out.print(effect.getType().getName() + " ");
-            }
-            System.out.println();
+        exp += amount;
+        while (exp >= maxExp) {
+            levelUp();
         }
-        
-        System.out.println("-----------------------");
     }
     
-    private void playerTurn() {
-        System.out.println("\n[당신의 턴]");
-        System.out.println("1. 기본 공격");
-        System.out.println("2. 스킬 사용");
-        System.out.println("3. 아이템 사용");
-        System.out.print("선택: ");
+    public void levelUp() {
+        levelUp(true);
+    }
+    
+    public void levelUp(boolean announce) {
+        level++;
+        exp -= maxExp;
+        maxExp = (int)(maxExp * 1.5);
+        statPoints += 3;
         
-        int choice = scanner.nextInt();
-        scanner.nextLine();
+        // 기본 스탯 증가
+        maxHp += 10 + (playerClass == PlayerClass.WARRIOR ? 5 : 0);
+        maxMana += 5 + (playerClass == PlayerClass.MAGE ? 10 : 0);
+        maxStamina += 8 + (playerClass == PlayerClass.ARCHER ? 5 : 0);
         
-        switch (choice) {
-            case 1:
-                basicAttack();
+        // 직업별 추가 보너스
+        switch(playerClass) {
+            case WARRIOR:
+                baseAttack += 2;
+                baseDefense += 1;
                 break;
-            case 2:
-                useSkill();
+            case ARCHER:
+                agility += 2;
                 break;
-            case 3:
-                useItem();
+            case MAGE:
+                intelligence += 3;
                 break;
-            default:
-                System.out.println("잘못된 선택입니다. 기본 공격을 합니다.");
-                basicAttack();
-        }
-    }
-    
-    private void basicAttack() {
-        if (player.getEquippedWeapon() == null) {
-            System.out.println("무기가 없어 맨손으로 공격합니다!");
-        }
-        
-        int damage = calculateDamage(player.getAttack(), monster.getDefense());
-        
-        // 크리티컬 여부 확인
-        boolean isCritical = player.getEquippedWeapon() != null && 
-                            player.getEquippedWeapon().isCriticalHit();
-        
-        if (isCritical) {
-            damage *= 2;
-            System.out.println("크리티컬 히트!");
-        }
-        
-        monster.takeDamage(damage);
-        System.out.printf("\n%s이(가) %s에게 %d의 데미지를 입혔습니다!\n", 
-            player.getName(), monster.getName(), damage);
-        
-        player.useStamina(5);
-    }
-    
-    private void useSkill() {
-        System.out.println("\n사용할 스킬을 선택하세요:");
-        
-        List<Skill> availableSkills = getAvailableSkills();
-        if (availableSkills.isEmpty()) {
-            System.out.println("사용할 수 있는 스킬이 없습니다. 기본 공격을 합니다.");
-            basicAttack();
-            return;
         }
         
-        for (int i = 0; i < availableSkills.size(); i++) {
-            Skill skill = availableSkills.get(i);
-            System.out.printf("%d. %s (마나: %d) - %s\n", 
-                i + 1, skill.getName(), skill.getManaCost(), skill.getDescription());
-        }
+        hp = maxHp;
+        mana = maxMana;
+        stamina = maxStamina;
+        statsValid = false;
         
-        System.out.print("선택: ");
-        int choice = scanner.nextInt();
-        scanner.nextLine();
+        if (!announce || silent) return;
         
-        if (choice > 0 && choice <= availableSkills.size()) {
-            Skill selectedSkill = availableSkills.get(choice - 1);
-            
-            if (player.getMana() < selectedSkill.getManaCost()) {
-                System.out.println("마나가 부족합니다! 기본 공격을 합니다.");
-                basicAttack();
-                return;
-            }
-            
-            player.setMana(player.getMana() - selectedSkill.getManaCost());
-            selectedSkill.use(player, monster);
-        } else {
-            System.out.println("잘못된 선택입니다. 기본 공격을 합니다.");
-            basicAttack();
-        }
+        System.out.println("\n=========================");
+        System.out.println("  레벨 업! " + level + " 레벨이 되었습니다!");
+        System.out.println("=========================");
+        System.out.println("스탯 포인트 3점을 획득했습니다!");
     }
     
-    private List<Skill> getAvailableSkills() {
-        List<Skill> skills = new ArrayList<>();
+    public void distributeStatPoint(String stat) {
+        if (statPoints <= 0) return;
         
-        switch (player.getPlayerClass()) {
-            case WARRIOR:
-                if (player.getLevel() >= 1) {
-                    skills.add(new Skill("강타", 10, "강력한 한 방을 날립니다.", 
-                        (p, m) -> {
-                            int damage = calculateDamage(p.getAttack() * 2, m.getDefense());
-                            m.takeDamage(damage);
-                            System.out.printf("\n%s이(가) 강타로 %s에게 %d의 데미지를 입혔습니다!\n", 
-                                p.getName(), m.getName(), damage);
-                        }, 1));
-                }
-                if (player.getLevel() >= 3) {
-                    skills.add(new Skill("방어 태세", 15, "방어력을 증가시킵니다.", 
-                        (p, m) -> {
-                            p.applyStatusEffect(new StatusEffect(StatusEffectType.BLESS, 3));
-                            System.out.printf("\n%s이(가) 방어 태세를 취해 방어력이 증가했습니다!\n", p.getName());
-                        }, 3));
-                }
-                if (player.getLevel() >= 5) {
-                    skills.add(new Skill("분노의 일격", 25, "분노를 담아 강력한 공격을 합니다.", 
-                        (p, m) -> {
-                            int damage = calculateDamage(p.getAttack() * 3, m.getDefense() / 2);
-                            m.takeDamage(damage);
-                            System.out.printf("\n%s이(가) 분노의 일격으로 %s에게 %d의 데미지를 입혔습니다!\n", 
-                                p.getName(), m.getName(), damage);
-                        }, 5));
-                }
-                break;
-            case ARCHER:
-                if (player.getLevel() >= 1) {
-                    skills.add(new Skill("연속 사격", 12, "빠르게 두 번 공격합니다.", 
-                        (p, m) -> {
-                            int damage1 = calculateDamage(p.getAttack(), m.getDefense());
-                            int damage2 = calculateDamage(p.getAttack(), m.getDefense());
-                            m.takeDamage(damage1);
-                            m.takeDamage(damage2);
-                            System.out.printf("\n%s이(가) 연속 사격으로 %s에게 %d와 %d의 데미지를 입혔습니다!\n", 
-                                p.getName(), m.getName(), damage1, damage2);
-                        }, 1));
-                }
-                if (player.getLevel() >= 3) {
-                    skills.add(new Skill("저격", 20, "강력한 한 방을 날립니다.", 
-                        (p, m) -> {
-                            int damage = calculateDamage(p.getAttack() * 3, m.getDefense() / 2);
-                            m.takeDamage(damage);
-                            System.out.printf("\n%s이(가) 저격으로 %s에게 %d의 데미지를 입혔습니다!\n", 
-                                p.getName(), m.getName(), damage);
-                        }, 3));
-                }
-                if (player.getLevel() >= 5) {
-                    skills.add(new Skill("독화살", 18, "적을 중독시킵니다.", 
-                        (p, m) -> {
-                            int damage = calculateDamage(p.getAttack(), m.getDefense());
-                            m.takeDamage(damage);
-                            m.applyStatusEffect(new StatusEffect(StatusEffectType.POISON, 3));
-                            System.out.printf("\n%s이(가) 독화살로 %s에게 %d의 데미지를 입히고 중독시켰습니다!\n", 
-                                p.getName(), m.getName(), damage);
-                        }, 5));
-                }
+        switch(stat.toLowerCase()) {
+            case "공격력":
+                baseAttack++;
                 break;
-            case MAGE:
-                if (player.getLevel() >= 1) {
-                    skills.add(new Skill("파이어볼", 15, "불덩이를 날립니다.", 
-                        (p, m) -> {
-                            int damage = calculateMagicDamage(p.getIntelligence() * 2, m.getDefense());
-                            m.takeDamage(damage);
-                            System.out.printf("\n%s이(가) 파이어볼로 %s에게 %d의 데미지를 입혔습니다!\n", 
-                                p.getName(), m.getName(), damage);
-                        }, 1));
-                }
-                if (player.getLevel() >= 3) {
-                    skills.add(new Skill("치유", 20, "체력을 회복합니다.", 
-                        (p, m) -> {
-                            int healAmount = p.getIntelligence() * 3;
-                            p.setHp(p.getHp() + healAmount);
-                            System.out.printf("\n%s이(가) 치유 마법으로 %d 체력을 회복했습니다!\n", 
-                                p.getName(), healAmount);
-                        }, 3));
-                }
-                if (player.getLevel() >= 5) {
-                    skills.add(new Skill("빙결", 30, "적을 얼려 행동 불가로 만듭니다.", 
-                        (p, m) -> {
-                            int damage = calculateMagicDamage(p.getIntelligence(), m.getDefense());
-                            m.takeDamage(damage);
-                            m.applyStatusEffect(new StatusEffect(StatusEffectType.FREEZE, 1));
-                            System.out.printf("\n%s이(가) 빙결 마법으로 %s에게 %d의 데미지를 입히고 얼렸습니다!\n", 
-                                p.getName(), m.getName(), damage);
-                        }, 5));
-                }
+            case "방어력":
+                baseDefense++;
+                break;
+            case "민첩성":
+                agility++;
+                break;
+            case "지능":
+                intelligence++;
+                break;
+            case "체력":
+                maxHp += 5;
+                hp += 5;
                 break;
         }
-        
-        return skills;
+        statPoints--;
+        statsValid = false;
     }
     
-    private void useItem() {
-        List<Potion> potions = player.getInventory().stream()
-            .filter(item -> item instanceof Potion)
-            .map(item -> (Potion) item)
-            .collect(Collectors.toList());
-        
-        if (potions.isEmpty()) {
-            System.out.println("사용할 수 있는 아이템이 없습니다. 기본 공격을 합니다.");
-            basicAttack();
-            return;
-        }
-        
-        System.out.println("\n사용할 아이템을 선택하세요:");
-        for (int i = 0; i < potions.size(); i++) {
-            Potion potion = potions.get(i);
-            String effect = potion instanceof HealthPotion ? "체력 +" + potion.getAmount() :
-                          potion instanceof ManaPotion ? "마나 +" + potion.getAmount() :
-                          "스태미나 +" + potion.getAmount();
-            System.out.printf("%d. %s - %s\n", i + 1, potion.getName(), effect);
+    // 스탯 포인트 1점으로 스킬 레벨을 올린다 (최대 Skill.MAX_LEVEL)
+    public boolean trainSkill(String skillName) {
+        if (statPoints <= 0 || getSkillLevel(skillName) >= Skill.MAX_LEVEL) return false;
+        skillLevels.put(skillName, getSkillLevel(skillName) + 1);
+        statPoints--;
+        return true;
+    }
+    
+    public void gainGold(int amount) {
+        gold += amount;
+    }
+    
+    public void spendGold(int amount) {
+        gold = Math.max(0, gold - amount);
+    }
+    
+    public void addItem(Item item) {
+        inventory.add(item);
+    }
+    
+    public void removeItem(Item item) {
+        inventory.remove(item);
+    }
+    
+    public void equip(Equipment equipment) {
+        if (equipment instanceof Weapon) {
+            if (equippedWeapon != null) {
+                unequipWeapon();
+            }
+            equippedWeapon = (Weapon) equipment;
+        } else if (equipment instanceof Armor) {
+            if (equippedArmor != null) {
+                unequipArmor();
+            }
+            equippedArmor = (Armor) equipment;
         }
-        
-        System.out.print("선택: ");
-        int choice = scanner.nextInt();
-        scanner.nextLine();
-        
-        if (choice > 0 && choice <= potions.size()) {
-            Potion selectedPotion = potions.get(choice - 1);
-            selectedPotion.use(player);
-            player.removeItem(selectedPotion);
-            System.out.printf("\n%s이(가) %s을(를) 사용했습니다!\n", 
-                player.getName(), selectedPotion.getName());
-        } else {
-            System.out.println("잘못된 선택입니다. 기본 공격을 합니다.");
-            basicAttack();
+        inventory.remove(equipment);
+        statsValid = false;
+    }
+    
+    public Weapon unequipWeapon() {
+        Weapon weapon = equippedWeapon;
+        if (weapon != null) {
+            inventory.add(weapon);
+            equippedWeapon = null;
+            statsValid = false;
         }
+        return weapon;
     }
     
-    private void monsterTurn() {
-        System.out.printf("\n[%s의 턴]\n", monster.getName());
-        
-        // 회피 여부 확인
-        if (Math.random() < player.getEvasion()) {
-            System.out.printf("%s의 공격을 회피했습니다!\n", monster.getName());
-            return;
+    public Armor unequipArmor() {
+        Armor armor = equippedArmor;
+        if (armor != null) {
+            inventory.add(armor);
+            equippedArmor = null;
+            statsValid = false;
         }
-        
-        if (random.nextDouble() < 0.8 || monster.getLevel() < 3) {
-            int damage = calculateDamage(monster.getAttack(), player.getDefense());
-            
-            // 방어구 데미지 감소 적용
-            if (player.getEquippedArmor() != null) {
-                damage = player.getEquippedArmor().calculateReducedDamage(damage);
-            }
-            
-            player.takeDamage(damage);
-            System.out.printf("%s이(가) %s에게 %d의 데미지를 입혔습니다!\n", 
-                monster.getName(), player.getName(), damage);
-        } else {
-            int damage = calculateDamage(monster.getAttack() * 2, player.getDefense());
-            
-            // 방어구 데미지 감소 적용
-            if (player.getEquippedArmor() != null) {
-                damage = player.getEquippedArmor().calculateReducedDamage(damage);
-            }
-            
-            player.takeDamage(damage);
-            System.out.printf("%s이(가) 강력한 공격으로 %s에게 %d의 데미지를 입혔습니다!\n", 
-                monster.getName(), player.getName(), damage);
+        return armor;
+    }
+    
+    public void enhance(Equipment equipment) {
+        equipment.enhance();
+        statsValid = false;
+    }
+    
+    public void useStamina(int amount) {
+        stamina = Math.max(0, stamina - amount);
+    }
+    
+    public void acceptQuest(Quest quest) {
+        activeQuests.add(quest);
+    }
+    
+    public void completeQuest(Quest quest) {
+        activeQuests.remove(quest);
+        completedQuests.add(quest);
+        gainExp(quest.getExpReward());
+        gainGold(quest.getGoldReward());
+        if (quest.getRewardItem() != null) {
+            addItem(quest.getRewardItem());
         }
-        
-        // 무기 내구도 감소
-        if (player.getEquippedWeapon() != null) {
-            player.getEquippedWeapon().reduceDurability(1);
-            if (player.getEquippedWeapon().isBroken()) {
-                System.out.println(player.getEquippedWeapon().getName() + "이(가) 부서졌습니다!");
-                player.unequipWeapon();
-            }
+        fame += quest.getLevelRequirement() * 10;
+    }
+    
+    public boolean hasActiveQuest(Quest quest) {
+        return activeQuests.contains(quest);
+    }
+    
+    public boolean hasCompletedQuest(Quest quest) {
+        return completedQuests.contains(quest);
+    }
+    
+    public void applyStatusEffect(StatusEffectType type, int turns) {
+        statusEffects.apply(type, turns);
+    }
+    
+    // 상태 이상을 한 턴 진행하고 지속 피해를 입는다. 입은 피해를 돌려준다
+    public int processStatusEffects() {
+        int damage = statusEffects.tickAll(maxHp);
+        takeDamage(damage);
+        return damage;
+    }
+    
+    public void increaseConsecutiveBattles() {
+        consecutiveBattles++;
+        if (consecutiveBattles % 5 == 0 && !silent) {
+            System.out.println("연속 전투 보너스! 획득 경험치 10% 증가!");
         }
-        
-        // 방어구 내구도 감소
-        if (player.getEquippedArmor() != null) {
-            player.getEquippedArmor().reduceDurability(1);
-            if (player.getEquippedArmor().isBroken()) {
-                System.out.println(player.getEquippedArmor().getName() + "이(가) 부서졌습니다!");
-                player.unequipArmor();
+    }
+    
+    public void resetConsecutiveBattles() {
+        consecutiveBattles = 0;
+    }
+    
+    public void unlockLocation(String location) {
+        if (!unlockedLocations.contains(location)) {
+            unlockedLocations.add(location);
+            if (!silent) {
+                System.out.println("새로운 지역 " + location + "이(가) 열렸습니다!");
             }
         }
     }
     
-    private int calculateDamage(int attack, int defense) {
-        int baseDamage = Math.max(1, attack - defense);
-        int randomFactor = random.nextInt(baseDamage / 2 + 1);
-        return baseDamage + randomFactor;
+    // Getter 메소드들
+    public String getName() { return name; }
+    public PlayerClass getPlayerClass() { return playerClass; }
+    public int getLevel() { return level; }
+    public int getHp() { return hp; }
+    public int getMaxHp() { return maxHp; }
+    public int getMana() { return mana; }
+    public int getMaxMana() { return maxMana; }
+    public int getStamina() { return stamina; }
+    public int getMaxStamina() { return maxStamina; }
+    public int getBaseAttack() { return baseAttack; }
+    public int getBaseDefense() { return baseDefense; }
+    public int getAgility() { return agility; }
+    public int getIntelligence() { return intelligence; }
+    public int getExp() { return exp; }
+    public int getMaxExp() { return maxExp; }
+    public int getGold() { return gold; }
+    public List<Item> getInventory() { return inventory; }
+    public List<Quest> getActiveQuests() { return activeQuests; }
+    public Weapon getEquippedWeapon() { return equippedWeapon; }
+    public Armor getEquippedArmor() { return equippedArmor; }
+    public String getCurrentLocation() { return currentLocation; }
+    public StatusEffects getStatusEffects() { return statusEffects; }
+    public int getStatPoints() { return statPoints; }
+    public int getSkillLevel(String skillName) { return skillLevels.getOrDefault(skillName, 1); }
+    public int getFame() { return fame; }
+    public List<String> getUnlockedLocations() { return unlockedLocations; }
+    public int getConsecutiveBattles() { return consecutiveBattles; }
+    
+    // Setter 메소드들
+    public void setHp(int hp) { this.hp = Math.min(hp, maxHp); }
+    public void setMana(int mana) { this.mana = Math.min(mana, maxMana); }
+    public void setStamina(int stamina) { this.stamina = Math.min(stamina, maxStamina); }
+    public void setCurrentLocation(String location) { this.currentLocation = location; }
+    public void setSilent(boolean silent) { this.silent = silent; }
+    
+    public int getAttack() {
+        refreshStats();
+        return effectiveAttack;
     }
     
-    private int calculateMagicDamage(int magicPower, int defense) {
-        int baseDamage = Math.max(1, magicPower - defense / 2);
-        int randomFactor = random.nextInt(baseDamage / 2 + 1);
-        return baseDamage + randomFactor;
+    public int getDefense() {
+        refreshStats();
+        return effectiveDefense;
     }
     
-    private void playerWin() {
-        int exp = monster.getExpReward();
-        int gold = monster.getGoldReward();
-        
-        System.out.println("\n" + monster.getName() + "을(를) 처치했습니다!");
-        System.out.println(exp + " 경험치를 얻었습니다!");
-        System.out.println(gold + " 골드를 얻었습니다!");
-        
-        player.gainExp(exp);
-        player.gainGold(gold);
-        player.increaseConsecutiveBattles();
-        
-        game.updateQuestProgress(monster);
-        
-        // 드롭 아이템 확인
-        Item droppedItem = monster.generateLoot();
-        if (droppedItem != null) {
-            player.addItem(droppedItem);
-            System.out.println(droppedItem.getName() + "을(를) 획득했습니다!");
+    public double getEvasion() {
+        refreshStats();
+        return effectiveEvasion;
+    }
+    
+    // 지금 적용 중인 모든 수정치 (장비, 강화, 상태 이상 순)
+    public List<StatModifier> getModifiers() {
+        List<StatModifier> all = new ArrayList<>();
+        if (equippedWeapon != null) {
+            all.add(new StatModifier(ModifierSource.EQUIPMENT, Stat.ATTACK, ModifierKind.FLAT, 
+                equippedWeapon.getAttack() - equippedWeapon.getEnhanceBonus()));
+            if (equippedWeapon.getEnhanceBonus() != 0) {
+                all.add(new StatModifier(ModifierSource.ENHANCEMENT, Stat.ATTACK, ModifierKind.FLAT, 
+                    equippedWeapon.getEnhanceBonus()));
+            }
+        }
+        if (equippedArmor != null) {
+            all.add(new StatModifier(ModifierSource.EQUIPMENT, Stat.DEFENSE, ModifierKind.FLAT, 
+                equippedArmor.getDefense() - equippedArmor.getEnhanceBonus()));
+            if (equippedArmor.getEnhanceBonus() != 0) {
+                all.add(new StatModifier(ModifierSource.ENHANCEMENT, Stat.DEFENSE, ModifierKind.FLAT, 
+                    equippedArmor.getEnhanceBonus()));
+            }
+            all.add(new StatModifier(ModifierSource.EQUIPMENT, Stat.EVASION, ModifierKind.FLAT, 
+                equippedArmor.getEvasion()));
         }
+        statusEffects.collectModifiers(all);
+        return all;
+    }
+    
+    private void refreshStats() {
+        if (statsValid && statsStatusVersion == statusEffects.getVersion()) return;
         
-        // 레벨에 따라 새로운 지역 해금
-        if (player.getLevel() >= 3 && !player.getUnlockedLocations().contains("동쪽 산")) {
-            player.unlockLocation("동쪽 산");
+        // getModifiers()와 같은 수정치를 목록 없이 바로 더한다 (전투 중 버프가 걸리고 풀릴 때마다 불리므로)
+        if (statSheet == null) {
+            statSheet = new StatSheet();
         }
-        if (player.getLevel() >= 5 && !player.getUnlockedLocations().contains("북쪽 묘지")) {
-            player.unlockLocation("북쪽 묘지");
+        StatSheet sheet = statSheet;
+        sheet.reset();
+        if (equippedWeapon != null) {
+            sheet.add(Stat.ATTACK, ModifierKind.FLAT, equippedWeapon.getAttack());
+        }
+        if (equippedArmor != null) {
+            sheet.add(Stat.DEFENSE, ModifierKind.FLAT, equippedArmor.getDefense());
+            sheet.add(Stat.EVASION, ModifierKind.FLAT, equippedArmor.getEvasion());
         }
+        statusEffects.applyTo(sheet);
+        effectiveAttack = sheet.resolve(Stat.ATTACK, baseAttack);
+        effectiveDefense = sheet.resolve(Stat.DEFENSE, baseDefense);
+        effectiveEvasion = Math.min(sheet.resolve(Stat.EVASION, agility * 0.01), 0.5); // 최대 50% 회피율
+        statsStatusVersion = statusEffects.getVersion();
+        statsValid = true;
     }
 }
 
-// 게임 메인 클래스
-class Game {
+// 전투 클래스
+// 세션마다 하나만 만들어 조우할 때마다 다시 쓴다 (엔진, 콘솔 정책, 후처리 목록을 매번 새로 만들지 않는다)
+class Battle {
     private Player player;
-    private List<Monster> monsters;
-    private List<Quest> quests;
-    private Scanner scanner;
-    private Random random;
-    private boolean isRunning;
-    private GameState gameState;
-    private Map<String, Location> worldMap;
-    private List<Shop> shops;
-    private List<NPC> npcs;
-    private int gameDay;
-    private boolean autoSave;
-    private int autoSaveInterval;
-    private int battleCount;
+    private Monster monster;
+    private Game game;
+    private PrintStream out;
+    private List<Consumer<Player>> postBattleActions;
+    private BattleEngine engine;
+    private ConsoleActionPolicy consolePolicy;
     
-    public Game() {
-        this.scanner = new Scanner(System.in);
-        this.random = new Random();
-        this.monsters = new ArrayList<>();
-        this.quests = new ArrayList<>();
-        this.shops = new ArrayList<>();
-        this.npcs = new ArrayList<>();
-        this.gameState = GameState.MAIN_MENU;
-        this.gameDay = 1;
-        this.autoSave = true;
-        this.autoSaveInterval = 5;
-        this.battleCount = 0;
-        
-        initializeGameWorld();
-    }
-
-    private void initializeGameWorld() {
-        initializeMonsters();
-        initializeQuests();
-        initializeShops();
-        initializeNPCs();
-        initializeWorldMap();
+    public Battle(Game game) {
+        this.game = game;
+        this.postBattleActions = new ArrayList<>();
+        this.engine = new BattleEngine(game.getRandom());
+        this.engine.setSpeedTimeline(true);
+        this.engine.setRevealWeakness(true);
+        this.consolePolicy = new ConsoleActionPolicy(game.getInput());
     }
-
-    private void initializeMonsters() {
-        // 일반 몬스터들
-        monsters.add(new Monster("고블린 졸병", 40, 8, 4, 15, 1, MonsterType.NORMAL));
-        monsters.add(new Monster("고블린 투사", 60, 12, 6, 25, 2, MonsterType.NORMAL));
-        monsters.add(new Monster("고블린 샤먼", 50, 15, 3, 30, 2, MonsterType.NORMAL));
-        
-        // 숲 지역 몬스터들
-        monsters.add(new Monster("독침 늑대", 70, 14, 5, 30, 2, MonsterType.BEAST));
-        monsters.add(new Monster("거대 거미", 55, 10, 8, 25, 2, MonsterType.BEAST));
-        monsters.add(new Monster("식인 식물", 80, 12, 10, 35, 3, MonsterType.PLANT));
-        
-        // 산 지역 몬스터들
-        monsters.add(new Monster("오크 전사", 100, 18, 8, 40, 3, MonsterType.NORMAL));
-        monsters.add(new Monster("오크 샤먼", 70, 22, 5, 45, 3, MonsterType.NORMAL));
-        monsters.add(new Monster("트롤", 150, 20, 12, 60, 4, MonsterType.GIANT));
-        monsters.add(new Monster("하피", 65, 16, 7, 40, 3, MonsterType.FLYING));
-        
-        // 묘지 지역 몬스터들
-        monsters.add(new Monster("해골 전사", 60, 14, 6, 30, 2, MonsterType.UNDEAD));
-        monsters.add(new Monster("망령", 45, 18, 3, 35, 3, MonsterType.GHOST));
-        monsters.add(new Monster("좀비", 90, 12, 5, 25, 2, MonsterType.UNDEAD));
-        monsters.add(new Monster("리치", 80, 25, 10, 70, 5, MonsterType.UNDEAD));
-        
-        // 던전 지역 몬스터들
-        monsters.add(new Monster("미노타우르스", 180, 25, 15, 100, 6, MonsterType.BOSS));
-        monsters.add(new Monster("화염 정령", 70, 30, 5, 60, 5, MonsterType.ELEMENTAL));
-        monsters.add(new Monster("어둠의 기사", 120, 22, 18, 80, 6, MonsterType.DEMON));
+    
+    public void start(Player player, Monster monster) {
+        this.player = player;
+        this.monster = monster;
+        // 헤드리스 전환이나 AI 교체가 조우 사이에 일어날 수 있으므로 시작할 때마다 다시 맞춘다
+        this.out = game.getOutput();
+        engine.setOutput(game.isHeadless() ? null : out);
+        engine.setMonsterAI(game.getMonsterAI());
+        engine.setCombatLog(game.getCombatLog());
+        
+        out.println("\n===== 전투 시작! =====");
+        
+        // 헤드리스 모드에서는 아무도 읽지 않으므로 예측 계산을 건너뛴다.
+        // 계산기는 80/20 공격만 알므로 AI가 행동을 탐색하는 몬스터는 근사치임을 밝힌다.
+        if (!game.isHeadless()) {
+            FightOdds odds = game.getOddsCalculator().calculate(player, monster);
+            boolean searched = game.getMonsterAI() != null && !MonsterBehavior.of(monster.getType()).isClassic();
+            out.printf("[전투 예측] 승률 %.1f%% | 예상 %.1f턴 | 예상 체력 손실 %.0f (기본 공격 기준%s)\n",
+                odds.getWinProbability() * 100, odds.getExpectedTurns(), odds.getExpectedHpLoss(),
+                searched ? ", 특수 행동은 반영하지 않은 근사치" : "");
+        }
         
-        // 특수 몬스터들
-        monsters.add(new Monster("드래곤", 250, 35, 20, 150, 8, MonsterType.DRAGON));
-        monsters.add(new Monster("골렘", 200, 28, 25, 90, 7, MonsterType.CONSTRUCT));
+        BattleOutcome outcome = engine.resolve(player, monster, 
+            game.getBattlePolicy() != null ? game.getBattlePolicy() : consolePolicy);
+        game.recordBattle(monster, outcome);
         
-        // 몬스터별 드롭 아이템 설정
-        for (Monster monster : monsters) {
-            if (monster.getType() == MonsterType.BOSS || monster.getType() == MonsterType.DRAGON) {
-                monster.addToLootTable(new UniversalPotion("고급 만능 물약", 0, 100, 100, 100), 1);
-                monster.addToLootTable(new Weapon("전설의 무기", 0, 30, 10, null, 200, "전설의 무기", 0.2, 0.9), 1);
-            } else if (monster.getLevel() >= 5) {
-                monster.addToLootTable(new HealthPotion("고급 체력 물약", 0, 100), 1);
-                monster.addToLootTable(new ManaPotion("고급 마나 물약", 0, 100), 1);
-            }
+        if (outcome.isPlayerWin()) {
+            playerWin(outcome);
+            executePostBattleActions();
+            game.setGameState(GameState.EXPLORATION);
+        } else {
+            postBattleActions.clear();
+            game.setGameState(GameState.GAME_OVER);
         }
+        game.releaseMonster(monster);
+        this.player = null;
+        this.monster = null;
     }
-
-    private void initializeQuests() {
-        quests.add(new Quest("초보자의 첫 걸음", "고블린 3마리 처치", 
-            monster -> monster.getName().contains("고블린"), 3, 50, 100));
-        quests.add(new Quest("오크 사냥꾼", "오크 2마리 처치", 
-            monster -> monster.getName().contains("오크"), 2, 80, 150));
-        quests.add(new Quest("언데드 퇴치", "언데드 타입 몬스터 5마리 처치", 
-            monster -> monster.getType() == MonsterType.UNDEAD, 5, 150, 300,
-            new Armor("성스러운 갑옷", 0, 10, 5, null, 150, "언데드에 강한 갑옷", 0.05, 0.2), 3));
-        quests.add(new Quest("드래곤 슬레이어", "드래곤 1마리 처치", 
-            monster -> monster.getType() == MonsterType.DRAGON, 1, 500, 1000,
-            new Weapon("드래곤 슬레이어", 0, 30, 10, null, 200, "드래곤을 잡은 자의 무기", 0.25, 0.95), 5));
-        quests.add(new Quest("숲의 정화", "숲의 몬스터 10마리 처치", 
-            monster -> worldMap.get(player.getCurrentLocation()).getType() == LocationType.FOREST, 10, 200, 300));
+    
+    private void executePostBattleActions() {
+        for (Consumer<Player> action : postBattleActions) {
+            action.accept(player);
+        }
+        postBattleActions.clear();
     }
-
-    private void initializeShops() {
-        // 무기 상점
-        Shop weaponShop = new Shop("무기 상점", ShopType.WEAPON);
-        
-        // 전사용 무기
-        weaponShop.addItem(new Weapon("단검", 100, 5, 1, PlayerClass.WARRIOR, 100, "기본적인 단검", 0.05, 0.85));
-        weaponShop.addItem(new Weapon("양손검", 300, 12, 3, PlayerClass.WARRIOR, 120, "양손으로 사용하는 큰 검", 0.1, 0.8));
-        weaponShop.addItem(new Weapon("도끼", 250, 10, 2, PlayerClass.WARRIOR, 110, "무거운 전투 도끼", 0.15, 0.75));
-        weaponShop.addItem(new Weapon("철퇴", 350, 8, 4, PlayerClass.WARRIOR, 130, "강력한 타격을 주는 철퇴", 0.2, 0.7));
-        
-        // 궁수용 무기
-        weaponShop.addItem(new Weapon("숏보우", 120, 6, 1, PlayerClass.ARCHER, 100, "짧은 활", 0.1, 0.85));
-        weaponShop.addItem(new Weapon("롱보우", 320, 14, 3, PlayerClass.ARCHER, 110, "긴 사정거리의 활", 0.15, 0.8));
-        weaponShop.addItem(new Weapon("석궁", 400, 16, 4, PlayerClass.ARCHER, 90, "강력한 석궁", 0.2, 0.75));
-        weaponShop.addItem(new Weapon("듀얼 대거", 280, 8, 2, PlayerClass.ARCHER, 100, "한 쌍의 단검", 0.25, 0.85));
-        
-        // 마법사용 무기
-        weaponShop.addItem(new Weapon("오크 지팡이", 150, 3, 1, PlayerClass.MAGE, 100, "오크 나무로 만든 지팡이", 0.05, 0.9));
-        weaponShop.addItem(new Weapon("마법봉", 350, 5, 3, PlayerClass.MAGE, 120, "마력이 담긴 봉", 0.1, 0.95));
-        weaponShop.addItem(new Weapon("주문서", 400, 8, 4, PlayerClass.MAGE, 80, "마법 주문이 적힌 두루마리", 0.15, 0.9));
-        weaponShop.addItem(new Weapon("마력의 구슬", 500, 10, 5, PlayerClass.MAGE, 150, "순수한 마력이 담긴 구슬", 0.2, 0.95));
-        
-        shops.add(weaponShop);
-        
-        // 방어구 상점
-        Shop armorShop = new Shop("방어구 상점", ShopType.ARMOR);
-        
-        // 전사용 방어구
-        armorShop.addItem(new Armor("가죽 갑옷", 80, 3, 1, PlayerClass.WARRIOR, 100, "기본적인 가죽 갑옷", 0.05, 0.1));
-        armorShop.addItem(new Armor("사슬 갑옷", 250, 8, 3, PlayerClass.WARRIOR, 120, "사슬로 만든 갑옷", 0.03, 0.15));
-        armorShop.addItem(new Armor("판금 갑옷", 600, 15, 5, PlayerClass.WARRIOR, 150, "강철 판금 갑옷", 0.01, 0.25));
-        armorShop.addItem(new Armor("용사의 갑옷", 1200, 20, 8, PlayerClass.WARRIOR, 200, "용사만이 착용할 수 있는 갑옷", 0.05, 0.3));
-        
-        // 궁수용 방어구
-        armorShop.addItem(new Armor("가죽 튜닉", 70, 2, 1, PlayerClass.ARCHER, 100, "가벼운 가죽 튜닉", 0.1, 0.05));
-        armorShop.addItem(new Armor("엘븐 메일", 300, 5, 4, PlayerClass.ARCHER, 110, "엘프의 기술로 만든 갑옷", 0.15, 0.1));
-        armorShop.addItem(new Armor("레인저 코트", 500, 8, 6, PlayerClass.ARCHER, 120, "레인저용 코트", 0.2, 0.15));
-        armorShop.addItem(new Armor("그림자 복장", 1000, 12, 10, PlayerClass.ARCHER, 150, "그림자처럼 움직일 수 있는 복장", 0.25, 0.2));
-        
-        // 마법사용 방어구
-        armorShop.addItem(new Armor("마법사 로브", 60, 1, 1, PlayerClass.MAGE, 100, "기본적인 마법사 로브", 0.1, 0.03));
-        armorShop.addItem(new Armor("룬 메일", 280, 3, 5, PlayerClass.MAGE, 120, "룬 문양이 새겨진 로브", 0.15, 0.05));
-        armorShop.addItem(new Armor("신비의 가운", 450, 5, 8, PlayerClass.MAGE, 130, "신비한 힘이 깃든 가운", 0.2, 0.08));
-        armorShop.addItem(new Armor("대마법사의 의복", 900, 8, 12, PlayerClass.MAGE, 180, "대마법사만이 착용할 수 있는 의복", 0.25, 0.1));
+    
+    public void addPostBattleAction(Consumer<Player> action) {
+        postBattleActions.add(action);
+    }
+    
+    private void playerWin(BattleOutcome outcome) {
+        int exp = monster.getExpReward();
+        int gold = monster.getGoldReward();
         
-        shops.add(armorShop);
+        out.println("\n" + monster.getName() + "을(를) 처치했습니다!");
+        out.println(exp + " 경험치를 얻었습니다!");
+        out.println(gold + " 골드를 얻었습니다!");
         
-        // 물약 상점
-        Shop potionShop = new Shop("물약 상점", ShopType.POTION);
-        potionShop.addItem(new HealthPotion("하급 체력 물약", 50, 30, 1, 1, "체력을 30 회복하는 물약"));
-        potionShop.addItem(new HealthPotion("중급 체력 물약", 120, 70, 1, 3, "체력을 70 회복하는 물약"));
-        potionShop.addItem(new HealthPotion("상급 체력 물약", 250, 150, 1, 5, "체력을 150 회복하는 물약"));
-        potionShop.addItem(new ManaPotion("하급 마나 물약", 60, 30, 1, 1, "마나를 30 회복하는 물약"));
-        potionShop.addItem(new ManaPotion("중급 마나 물약", 150, 70, 1, 3, "마나를 70 회복하는 물약"));
-        potionShop.addItem(new ManaPotion("상급 마나 물약", 300, 150, 1, 5, "마나를 150 회복하는 물약"));
-        potionShop.addItem(new StaminaPotion("활력 물약", 80, 40, 1, 1, "스태미나를 40 회복하는 물약"));
-        potionShop.addItem(new StaminaPotion("정신력 물약", 180, 80, 1, 3, "스태미나를 80 회복하는 물약"));
+        player.gainExp(exp);
+        player.gainGold(gold);
+        player.increaseConsecutiveBattles();
         
-        shops.add(potionShop);
+        game.updateQuestProgress(monster);
         
-        // 특수 상점
-        Shop specialShop = new Shop("특수 아이템 상점", ShopType.SPECIAL);
-        specialShop.addItem(new Scroll("귀환 두루마리", 200, "마을로 순간이동하는 두루마리", 1));
-        specialShop.addItem(new Scroll("정화 두루마리", 300, "모든 상태 이상을 치료하는 두루마리", 3));
-        specialShop.addItem(new UniversalPotion("만능 물약", 500, 50, 50, 50, 1, 5, "체력, 마나, 스태미나를 모두 회복"));
-        specialShop.addItem(new Armor("행운의 반지", 1000, 0, 0, null, 100, "행운을 가져다주는 반지", 0.1, 0.05));
+        // 드롭 아이템 확인
+        for (Item droppedItem : outcome.getLoot()) {
+            player.addItem(droppedItem.copy());
+            out.println(droppedItem.getName() + "을(를) 획득했습니다!");
+        }
         
-        shops.add(specialShop);
+        game.checkLocationUnlocks();
     }
+}
 
-    private void initializeNPCs() {
-        npcs.add(new NPC("무기 상인", "좋은 무기들이 많이 있습니다. 직업에 맞는 무기를 선택하세요!", ShopType.WEAPON));
-        npcs.add(new NPC("방어구 상인", "튼튼한 방어구들이 준비되어 있습니다.", ShopType.ARMOR));
-        npcs.add(new NPC("물약 상인", "모험에 필요한 각종 물약을 판매합니다.", ShopType.POTION));
-        npcs.add(new NPC("특수 아이템 상인", "특별한 아이템들을 구경해 보세요!", ShopType.SPECIAL));
-        npcs.add(new NPC("경비병", "마을을 지켜주세요. 서쪽 숲에서 고블린들이 출몰하고 있습니다."));
-        npcs.add(new NPC("대장장이", "특별 주문도 받습니다. 원하는 무기가 있으면 말씀하세요."));
-        npcs.add(new NPC("여관 주인", "휴식하시겠습니까? 하루 숙박에 50골드입니다."));
+// 전투 행동 선택 인터페이스 (선택지는 1부터 시작)
+interface ActionPolicy {
+    int ATTACK = 1;
+    int SKILL = 2;
+    int ITEM = 3;
+    
+    // 기본 공격만 반복하는 정책
+    ActionPolicy BASIC_ATTACK = (player, monster) -> ATTACK;
+    
+    // 첫 번째 스킬을 계속 사용하는 정책 (마나가 모자라면 엔진이 기본 공격으로 대신한다)
+    ActionPolicy FIRST_SKILL = (player, monster) -> SKILL;
+    
+    int chooseAction(Player player, Monster monster);
+    
+    default int chooseSkill(Player player, Monster monster, List<Skill> skills) {
+        return 1;
     }
-
-    private void initializeWorldMap() {
-        worldMap = new HashMap<>();
-        worldMap.put("마을", new Location("마을", "평화로운 시작의 마을", LocationType.TOWN, 1, 10));
-        worldMap.put("서쪽 숲", new Location("서쪽 숲", "고블린과 늑대가 서식하는 위험한 숲", LocationType.FOREST, 1, 5));
-        worldMap.put("동쪽 산", new Location("동쪽 산", "오크와 트롤이 살고 있는 험준한 산", LocationType.MOUNTAIN, 3, 7));
-        worldMap.put("북쪽 묘지", new Location("북쪽 묘지", "언데드가 돌아다니는 음침한 묘지", LocationType.GRAVEYARD, 5, 8));
-        worldMap.put("용의 둥지", new Location("용의 둥지", "강력한 드래곤이 서식하는 위험지역", LocationType.DUNGEON, 7, 10));
-        worldMap.put("남쪽 호수", new Location("남쪽 호수", "아름답지만 위험한 생물들이 서식하는 호수", LocationType.LAKE, 2, 6));
+    
+    default int chooseItem(Player player, Monster monster, List<Potion> potions) {
+        return 1;
     }
+}
 
-    public void start() {
-        System.out.println("====================================");
-        System.out.println("          RPG 게임에 오신 것을 환영합니다!");
-        System.out.println("====================================");
-        
-        createPlayer();
-        isRunning = true;
-        gameState = GameState.MAIN_MENU;
-        
-        while (isRunning) {
-            switch (gameState) {
-                case MAIN_MENU:
-                    showMainMenu();
-                    break;
-                case EXPLORATION:
-                    showExplorationMenu();
-                    break;
-                case BATTLE:
-                    // 전투는 Battle 클래스에서 처리
-                    break;
-                case SHOP:
-                    showShopMenu();
-                    break;
-                case QUEST:
-                    showQuestMenu();
-                    break;
-                case INVENTORY:
-                    showInventoryMenu();
-                    break;
-                case GAME_OVER:
-                    handleGameOver();
-                    break;
-                case SAVE_LOAD:
-                    showSaveLoadMenu();
-                    break;
-            }
-        }
+// 콘솔 입력으로 행동을 고르는 정책
+class ConsoleActionPolicy implements ActionPolicy {
+    private GameInput input;
+    
+    public ConsoleActionPolicy(GameInput input) {
+        this.input = input;
     }
-
-    private void createPlayer() {
-        System.out.print("\n플레이어 이름을 입력하세요: ");
-        String name = scanner.nextLine();
-        
-        System.out.println("\n직업을 선택하세요:");
-        System.out.println("1. 전사 - 높은 체력과 공격력");
-        System.out.println("2. 궁수 - 빠른 공격과 회피");
-        System.out.println("3. 마법사 - 강력한 마법 공격");
+    
+    @Override
+    public int chooseAction(Player player, Monster monster) {
+        System.out.println("\n[당신의 턴]");
+        System.out.println("1. 기본 공격");
+        System.out.println("2. 스킬 사용");
+        System.out.println("3. 아이템 사용");
         System.out.print("선택: ");
         
-        int classChoice = scanner.nextInt();
-        scanner.nextLine(); // 버퍼 비우기
-        
-        PlayerClass playerClass;
-        switch (classChoice) {
-            case 1:
-                playerClass = PlayerClass.WARRIOR;
-                break;
-            case 2:
-                playerClass = PlayerClass.ARCHER;
-                break;
-            case 3:
-                playerClass = PlayerClass.MAGE;
-                break;
-            default:
-                System.out.println("잘못된 선택입니다. 전사로 설정됩니다.");
-                playerClass = PlayerClass.WARRIOR;
+        return readChoice();
+    }
+    
+    @Override
+    public int chooseSkill(Player player, Monster monster, List<Skill> skills) {
+        System.out.println("\n사용할 스킬을 선택하세요:");
+        for (int i = 0; i < skills.size(); i++) {
+            Skill skill = skills.get(i);
+            System.out.printf("%d. %s Lv.%d (마나: %d%s) - %s\n", 
+                i + 1, skill.getName(), player.getSkillLevel(skill.getName()), skill.getManaCost(), 
+                skill.getCooldown() > 0 ? ", 재사용 대기 " + skill.getCooldown() + "턴" : "", skill.getDescription());
         }
         
-        this.player = new Player(name, playerClass);
-        System.out.printf("\n%s %s 캐릭터가 생성되었습니다!\n", playerClass.getTitle(), name);
-    }
-
-    private void showMainMenu() {
-        System.out.println("\n====================================");
-        System.out.printf(" Day %d | %s | 위치: %s\n", gameDay, getTimeOfDay(), player.getCurrentLocation());
-        System.out.println("====================================");
-        System.out.println("1. 상태 보기");
-        System.out.println("2. 탐험하기");
-        System.out.println("3. 상점 가기");
-        System.out.println("4. 퀘스트");
-        System.out.println("5. 인벤토리");
-        System.out.println("6. NPC와 대화하기");
-        System.out.println("7. 휴식하기 (하루가 지납니다)");
-        System.out.println("8. 저장/불러오기");
-        System.out.println("9. 게임 종료");
         System.out.print("선택: ");
+        return readChoice();
+    }
+    
+    @Override
+    public int chooseItem(Player player, Monster monster, List<Potion> potions) {
+        System.out.println("\n사용할 아이템을 선택하세요:");
+        for (int i = 0; i < potions.size(); i++) {
+            Potion potion = potions.get(i);
+            String effect = potion instanceof HealthPotion ? "체력 +" + potion.getAmount() :
+                          potion instanceof ManaPotion ? "마나 +" + potion.getAmount() :
+                          "스태미나 +" + potion.getAmount();
+            System.out.printf("%d. %s - %s\n", i + 1, potion.getName(), effect);
+        }
         
+        System.out.print("선택: ");
+        return readChoice();
+    }
+    
+    // 숫자가 아니면 잘못된 선택(0)으로 처리해 전투가 중간에 끊기지 않게 한다
+    private int readChoice() {
         try {
-            int choice = scanner.nextInt();
-            scanner.nextLine(); // 버퍼 비우기
-            
-            switch (choice) {
-                case 1:
-                    showPlayerStatus();
-                    break;
-                case 2:
-                    gameState = GameState.EXPLORATION;
-                    break;
-                case 3:
-                    gameState = GameState.SHOP;
-                    break;
+            int choice = input.nextInt();
+            input.nextLine();
+            return choice;
+        } catch (InputMismatchException e) {
+            input.nextLine(); // 잘못된 입력 비우기
+            return 0;
+        }
+    }
+}
+
+// 전투 결과 클래스
+class BattleOutcome {
+    private final boolean playerWin;
+    private final int turns;
+    private final int damageDealt;
+    private final int damageTaken;
+    private final List<Item> loot;
+    private final int durabilityUsed;
+    
+    public BattleOutcome(boolean playerWin, int turns, int damageDealt, int damageTaken,
+                        List<Item> loot, int durabilityUsed) {
+        this.playerWin = playerWin;
+        this.turns = turns;
+        this.damageDealt = damageDealt;
+        this.damageTaken = damageTaken;
+        this.loot = loot;
+        this.durabilityUsed = durabilityUsed;
+    }
+    
+    public boolean isPlayerWin() { return playerWin; }
+    public int getTurns() { return turns; }
+    public int getDamageDealt() { return damageDealt; }
+    public int getDamageTaken() { return damageTaken; }
+    public List<Item> getLoot() { return loot; }
+    public int getDurabilityUsed() { return durabilityUsed; }
+}
+
+// 전투 엔진 클래스 (콘솔 없이 한 전투를 끝까지 진행)
+class BattleEngine {
+    private GameRandom random;
+    private PrintStream out;
+    private Player player;
+    private Monster monster;
+    private ActionPolicy policy;
+    private int turns;
+    private int damageDealt;
+    private int damageTaken;
+    private int durabilityUsed;
+    
+    // 몬스터 AI (null이면 모든 몬스터가 예전처럼 80/20 무작위로 공격한다)
+    private MonsterAI monsterAI;
+    private MonsterAI.Search aiSearch;   // 결정마다 다시 채워 쓰는 탐색 문맥
+    private MonsterBehavior behavior;
+    private int strongCooldown;
+    private int specialCooldown;
+    private boolean monsterGuarding;
+    
+    // 속도 순서표 (null이면 처음 한 번 선공을 정하고 번갈아 행동한다)
+    private TurnTimeline timeline;
+    
+    // true면 상성 배율이 걸린 타격을 알리고 처음 찌른 약점을 상태창에 보여준다
+    private boolean revealWeakness;
+    
+    private StatusRules statusRules = StatusRules.DEFAULT;
+    
+    // 스킬 id별 남은 재사용 대기 (자기 턴 시작마다 1씩 줄어든다)
+    private final int[] skillCooldowns = new int[SkillRegistry.DUEL.size()];
+    private int[] hitDamages = new int[2];
+    private final List<Potion> potionBuffer = new ArrayList<>();
+    private final List<Item> lootBuffer = new ArrayList<>();
+    
+    // 전투 기록 (null이면 남기지 않는다). 전투마다 장소와 몬스터 번호를 한 번 찾아 두고 원시 값만 넘긴다
+    private CombatLog combatLog;
+    private int logBattle;
+    private int logLocation;
+    private int logMonster;
+    private int currentSkill;
+    
+    public BattleEngine(GameRandom random) {
+        this(random, null);
+    }
+    
+    // out이 null이면 아무것도 출력하지 않는다
+    public BattleEngine(GameRandom random, PrintStream out) {
+        this.random = random;
+        this.out = out;
+    }
+    
+    public BattleOutcome resolve(Player player, Monster monster, ActionPolicy policy) {
+        this.player = player;
+        this.monster = monster;
+        this.policy = policy;
+        this.turns = 0;
+        this.damageDealt = 0;
+        this.damageTaken = 0;
+        this.durabilityUsed = 0;
+        this.behavior = monsterAI != null ? MonsterBehavior.of(monster.getType()) : MonsterBehavior.CLASSIC;
+        this.strongCooldown = 0;
+        this.specialCooldown = 0;
+        this.monsterGuarding = false;
+        Arrays.fill(skillCooldowns, 0);
+        if (combatLog != null) {
+            logBattle = combatLog.beginBattle();
+            logLocation = combatLog.locationId(player.getCurrentLocation());
+            logMonster = combatLog.monsterId(monster.getName());
+        }
+        
+        if (timeline != null) {
+            resolveOnTimeline();
+            return finish();
+        }
+        
+        boolean playerFirst = isPlayerFirst();
+        
+        while (player.isAlive() && monster.isAlive()) {
+            turns++;
+            showStatus();
+            
+            if (playerFirst) {
+                playerTurn();
+                if (!monster.isAlive()) break;
+                
+                monsterTurn();
+                if (!player.isAlive()) break;
+            } else {
+                monsterTurn();
+                if (!player.isAlive()) break;
+                
+                playerTurn();
+                if (!monster.isAlive()) break;
+            }
+            
+            // 상태 이상 처리
+            processStatusEffects();
+            
+            player.setStamina(Math.min(player.getMaxStamina(), player.getStamina() + 5));
+        }
+        
+        return finish();
+    }
+    
+    private BattleOutcome finish() {
+        log(CombatEventKind.END, CombatLog.PLAYER, -1, null, player.isAlive() ? CombatLog.WIN : 0, 
+            damageDealt, player.getHp());
+        return new BattleOutcome(player.isAlive(), turns, damageDealt, damageTaken, rollLoot(), durabilityUsed);
+    }
+    
+    // 이긴 전투의 드롭 (대부분은 아무것도 떨어지지 않으므로 그때는 빈 목록을 그대로 쓴다)
+    private List<Item> rollLoot() {
+        if (!player.isAlive()) {
+            return Collections.emptyList();
+        }
+        lootBuffer.clear();
+        monster.rollLoot(random, lootBuffer);
+        return lootBuffer.isEmpty() ? Collections.emptyList() : new ArrayList<>(lootBuffer);
+    }
+    
+    // 여러 전투를 연속으로 처리 (매 전투마다 새 플레이어와 몬스터를 받는다)
+    public BattleOutcome[] resolveBatch(int fights, Supplier<Player> players, 
+                                       Supplier<Monster> monsters, ActionPolicy policy) {
+        BattleOutcome[] outcomes = new BattleOutcome[fights];
+        for (int i = 0; i < fights; i++) {
+            outcomes[i] = resolve(players.get(), monsters.get(), policy);
+        }
+        return outcomes;
+    }
+    
+    public void setMonsterAI(MonsterAI monsterAI) {
+        if (monsterAI != this.monsterAI) {
+            this.aiSearch = monsterAI != null ? monsterAI.newSearch() : null;
+        }
+        this.monsterAI = monsterAI;
+    }
+    
+    // null이면 아무것도 출력하지 않는다
+    public void setOutput(PrintStream out) {
+        this.out = out;
+    }
+    
+    // null이면 기록하지 않는다
+    public void setCombatLog(CombatLog combatLog) {
+        this.combatLog = combatLog;
+    }
+    
+    // true면 번갈아 행동하는 대신 속도 순서표로 행동 순서를 정한다
+    public void setSpeedTimeline(boolean enabled) {
+        this.timeline = enabled ? new TurnTimeline(2) : null;
+    }
+    
+    public void setRevealWeakness(boolean revealWeakness) {
+        this.revealWeakness = revealWeakness;
+    }
+    
+    public void setStatusRules(StatusRules statusRules) {
+        this.statusRules = statusRules;
+    }
+    
+    // 속도 순서표 진행: 민첩(몬스터는 레벨×5)이 높을수록 자주 행동한다.
+    // 플레이어가 한 번 행동할 때마다 한 턴으로 세고, 상태 이상과 스태미나 회복도 그때 처리한다.
+    private void resolveOnTimeline() {
+        timeline.clear();
+        int playerSlot = timeline.add(player.getAgility(), random);
+        timeline.add(monster.getLevel() * 5, random);
+        
+        while (player.isAlive() && monster.isAlive()) {
+            if (timeline.next() == playerSlot) {
+                turns++;
+                showStatus();
+                playerTurn();
+                if (!monster.isAlive()) break;
+                
+                processStatusEffects();
+                player.setStamina(Math.min(player.getMaxStamina(), player.getStamina() + 5));
+            } else {
+                monsterTurn();
+            }
+        }
+    }
+    
+    private boolean isPlayerFirst() {
+        int playerAgility = player.getAgility();
+        int monsterAgility = monster.getLevel() * 5;
+        return random.nextInt(playerAgility + monsterAgility) > monsterAgility;
+    }
+    
+    private void showStatus() {
+        if (out == null) return;
+        
+        out.println("\n-----------------------");
+        out.println(player.getName() + " (Lv." + player.getLevel() + ")");
+        out.printf("HP: %d/%d | 마나: %d/%d | 스태미나: %d/%d\n", 
+            player.getHp(), player.getMaxHp(), 
+            player.getMana(), player.getMaxMana(),
+            player.getStamina(), player.getMaxStamina());
+        
+        // 플레이어 상태 이상 표시
+        if (!player.getStatusEffects().isEmpty()) {
+            out.println("상태 이상: " + player.getStatusEffects().describe());
+        }
+        
+        out.println("\nVS");
+        
+        out.println("\n" + monster.getName() + " (Lv." + monster.getLevel() + ")");
+        out.printf("HP: %d/%d\n", monster.getHp(), monster.getMaxHp());
+        if (revealWeakness) {
+            String weaknesses = TypeChart.describeRevealed(monster);
+            if (!weaknesses.isEmpty()) {
+                out.println("약점: " + weaknesses);
+            }
+        }
+        
+        // 몬스터 상태 이상 표시
+        if (!monster.getStatusEffects().isEmpty()) {
+            out.println("상태 이상: " + monster.getStatusEffects().describe());
+        }
+        
+        out.println("-----------------------");
+    }
+    
+    private void playerTurn() {
+        for (int i = 0; i < skillCooldowns.length; i++) {
+            if (skillCooldowns[i] > 0) skillCooldowns[i]--;
+        }
+        
+        if (player.getStatusEffects().consumeSkip()) {
+            printf("\n%s이(가) 움직일 수 없습니다!\n", player.getName());
+            log(CombatEventKind.SKIP, CombatLog.PLAYER, -1, null, 0, 0, player.getHp());
+            return;
+        }
+        
+        switch (policy.chooseAction(player, monster)) {
+            case ActionPolicy.ATTACK:
+                basicAttack();
+                break;
+            case ActionPolicy.SKILL:
+                useSkill();
+                break;
+            case ActionPolicy.ITEM:
+                useItem();
+                break;
+            default:
+                println("잘못된 선택입니다. 기본 공격을 합니다.");
+                basicAttack();
+        }
+    }
+    
+    private void basicAttack() {
+        if (player.getEquippedWeapon() == null) {
+            println("무기가 없어 맨손으로 공격합니다!");
+        }
+        
+        int damage = calculateDamage(player.getAttack(), monster.getDefense());
+        
+        // 크리티컬 여부 확인
+        boolean isCritical = player.getEquippedWeapon() != null && 
+                            player.getEquippedWeapon().isCriticalHit(random);
+        
+        if (isCritical) {
+            damage *= 2;
+            println("크리티컬 히트!");
+        }
+        
+        int dealt = damageMonster(monster, damage);
+        printf("\n%s이(가) %s에게 %d의 데미지를 입혔습니다!\n", 
+            player.getName(), monster.getName(), damage);
+        log(CombatEventKind.ATTACK, CombatLog.PLAYER, -1, null, isCritical ? CombatLog.CRITICAL : 0, 
+            dealt, monster.getHp());
+        
+        player.useStamina(5);
+    }
+    
+    private void useSkill() {
+        List<Skill> availableSkills = SkillRegistry.DUEL.available(player.getPlayerClass(), player.getLevel());
+        if (availableSkills.isEmpty()) {
+            println("사용할 수 있는 스킬이 없습니다. 기본 공격을 합니다.");
+            basicAttack();
+            return;
+        }
+        
+        if (out != null) {
+            for (Skill skill : availableSkills) {
+                if (skillCooldowns[skill.getId()] > 0) {
+                    printf("[재사용 대기] %s: %d턴\n", skill.getName(), skillCooldowns[skill.getId()]);
+                }
+            }
+        }
+        
+        int choice = policy.chooseSkill(player, monster, availableSkills);
+        
+        if (choice > 0 && choice <= availableSkills.size()) {
+            Skill selectedSkill = availableSkills.get(choice - 1);
+            
+            if (skillCooldowns[selectedSkill.getId()] > 0) {
+                printf("%s은(는) 아직 쓸 수 없습니다! 기본 공격을 합니다.\n", selectedSkill.getName());
+                basicAttack();
+                return;
+            }
+            
+            if (player.getMana() < selectedSkill.getManaCost()) {
+                println("마나가 부족합니다! 기본 공격을 합니다.");
+                basicAttack();
+                return;
+            }
+            
+            player.setMana(player.getMana() - selectedSkill.getManaCost());
+            // 이번 턴 시작에 줄어드는 몫까지 더해 둔다
+            skillCooldowns[selectedSkill.getId()] = selectedSkill.getCooldown() + 1;
+            currentSkill = CombatLog.skillAction(selectedSkill);
+            if (combatLog != null) {
+                combatLog.nameSkill(selectedSkill);
+            }
+            selectedSkill.use(this, player, monster);
+        } else {
+            println("잘못된 선택입니다. 기본 공격을 합니다.");
+            basicAttack();
+        }
+    }
+    
+    // 데이터로 정의한 피해 스킬: 타수만큼 피해를 모두 계산한 뒤 차례로 입히고 상태 이상을 건다
+    void castDamage(SkillSpec spec, boolean magic, Player p, Monster m) {
+        int power = spec.power(p);
+        int hits = spec.getHits();
+        if (hitDamages.length < hits) {
+            hitDamages = new int[hits];
+        }
+        for (int i = 0; i < hits; i++) {
+            int defense = m.getDefense() / spec.getDefenseDivisor();
+            hitDamages[i] = magic ? calculateMagicDamage(power, defense, m, spec.getElement())
+                                  : calculateDamage(power, defense, m, spec.getElement());
+        }
+        for (int i = 0; i < hits; i++) {
+            int dealt = damageMonster(m, hitDamages[i]);
+            log(CombatEventKind.SKILL, CombatLog.PLAYER, currentSkill, null, 0, dealt, m.getHp());
+        }
+        // 속성에 면역인 대상(예: 언데드에게 독)에게는 상태 이상도 걸리지 않는다
+        boolean immune = spec.getStatus() != null && m.getDamagePercent(spec.getElement()) <= 0;
+        if (spec.getStatus() != null && !immune) {
+            m.getStatusEffects().apply(spec.getStatus(), spec.getStatusTurns(), statusRules);
+            log(CombatEventKind.STATUS_APPLY, CombatLog.PLAYER, currentSkill, spec.getStatus(), 0, 
+                spec.getStatusTurns(), m.getHp());
+        }
+        if (out != null) {
+            StringBuilder amounts = new StringBuilder().append(hitDamages[0]);
+            for (int i = 1; i < hits; i++) {
+                amounts.append("와 ").append(hitDamages[i]);
+            }
+            if (immune) {
+                // 스킬 메시지는 상태 이상이 걸렸다고 말하므로 면역일 때는 피해만 알린다
+                printf("\n%s이(가) %s에게 %s의 데미지를 입혔습니다!\n", p.getName(), m.getName(), amounts);
+                printf("%s은(는) %s에 걸리지 않습니다!\n", m.getName(), spec.getStatus().getName());
+            } else {
+                printf(spec.getMessage(), p.getName(), m.getName(), amounts);
+            }
+        }
+    }
+    
+    void castHeal(SkillSpec spec, Player p) {
+        int healAmount = spec.power(p);
+        p.setHp(p.getHp() + healAmount);
+        log(CombatEventKind.HEAL, CombatLog.PLAYER, currentSkill, null, 0, healAmount, p.getHp());
+        if (spec.getStatus() != null) {
+            p.getStatusEffects().apply(spec.getStatus(), spec.getStatusTurns(), statusRules);
+            log(CombatEventKind.STATUS_APPLY, CombatLog.PLAYER, currentSkill, spec.getStatus(), 0, 
+                spec.getStatusTurns(), p.getHp());
+        }
+        printf(spec.getMessage(), p.getName(), monster.getName(), healAmount);
+    }
+    
+    void castBuff(SkillSpec spec, Player p) {
+        if (spec.getStatus() != null) {
+            p.getStatusEffects().apply(spec.getStatus(), spec.getStatusTurns(), statusRules);
+            log(CombatEventKind.STATUS_APPLY, CombatLog.PLAYER, currentSkill, spec.getStatus(), 0, 
+                spec.getStatusTurns(), p.getHp());
+        }
+        printf(spec.getMessage(), p.getName(), monster.getName(), "");
+    }
+    
+    private void useItem() {
+        List<Potion> potions = potionBuffer;
+        potions.clear();
+        for (Item item : player.getInventory()) {
+            if (item instanceof Potion) {
+                potions.add((Potion) item);
+            }
+        }
+        
+        if (potions.isEmpty()) {
+            println("사용할 수 있는 아이템이 없습니다. 기본 공격을 합니다.");
+            basicAttack();
+            return;
+        }
+        
+        int choice = policy.chooseItem(player, monster, potions);
+        
+        if (choice > 0 && choice <= potions.size()) {
+            Potion selectedPotion = potions.get(choice - 1);
+            selectedPotion.use(player);
+            player.removeItem(selectedPotion);
+            log(CombatEventKind.ITEM, CombatLog.PLAYER, -1, null, 0, selectedPotion.getAmount(), player.getHp());
+            printf("\n%s이(가) %s을(를) 사용했습니다!\n", 
+                player.getName(), selectedPotion.getName());
+        } else {
+            println("잘못된 선택입니다. 기본 공격을 합니다.");
+            basicAttack();
+        }
+    }
+    
+    private void monsterTurn() {
+        printf("\n[%s의 턴]\n", monster.getName());
+        monsterGuarding = false;
+        
+        if (monster.getStatusEffects().consumeSkip()) {
+            printf("%s이(가) 움직일 수 없습니다!\n", monster.getName());
+            log(CombatEventKind.SKIP, CombatLog.MONSTER, -1, null, 0, 0, monster.getHp());
+            return;
+        }
+        
+        boolean attacked = behavior.isClassic() ? classicMonsterAttack() : performMonsterAction(chooseMonsterAction());
+        if (!attacked) {
+            return;
+        }
+        
+        // 무기 내구도 감소
+        if (player.getEquippedWeapon() != null) {
+            player.getEquippedWeapon().reduceDurability(1);
+            durabilityUsed++;
+            if (player.getEquippedWeapon().isBroken()) {
+                printf("%s이(가) 부서졌습니다!\n", player.getEquippedWeapon().getName());
+                log(CombatEventKind.BREAK, CombatLog.PLAYER, 0, null, 0, 0, player.getHp());
+                player.unequipWeapon();
+            }
+        }
+        
+        // 방어구 내구도 감소
+        if (player.getEquippedArmor() != null) {
+            player.getEquippedArmor().reduceDurability(1);
+            durabilityUsed++;
+            if (player.getEquippedArmor().isBroken()) {
+                printf("%s이(가) 부서졌습니다!\n", player.getEquippedArmor().getName());
+                log(CombatEventKind.BREAK, CombatLog.PLAYER, 1, null, 0, 0, player.getHp());
+                player.unequipArmor();
+            }
+        }
+    }
+    
+    private MonsterAction chooseMonsterAction() {
+        strongCooldown = Math.max(0, strongCooldown - 1);
+        specialCooldown = Math.max(0, specialCooldown - 1);
+        return aiSearch.bestAction(player, monster, behavior, strongCooldown, specialCooldown);
+    }
+    
+    // 예전 규칙: 80% 일반 공격, 20% 강한 공격 (3레벨 미만은 일반 공격만). 회피당하면 false
+    private boolean classicMonsterAttack() {
+        // 회피 여부 확인
+        if (random.nextDouble() < player.getEvasion()) {
+            printf("%s의 공격을 회피했습니다!\n", monster.getName());
+            log(CombatEventKind.ATTACK, CombatLog.MONSTER, MonsterAction.ATTACK.ordinal(), null, CombatLog.EVADED, 
+                0, player.getHp());
+            return false;
+        }
+        
+        if (random.nextDouble() < 0.8 || monster.getLevel() < 3) {
+            int damage = calculateDamage(monster.getAttack(), player.getDefense());
+            
+            // 방어구 데미지 감소 적용
+            if (player.getEquippedArmor() != null) {
+                damage = player.getEquippedArmor().calculateReducedDamage(damage);
+            }
+            
+            int dealt = damagePlayer(damage);
+            printf("%s이(가) %s에게 %d의 데미지를 입혔습니다!\n", 
+                monster.getName(), player.getName(), damage);
+            log(CombatEventKind.ATTACK, CombatLog.MONSTER, MonsterAction.ATTACK.ordinal(), null, 0, 
+                dealt, player.getHp());
+        } else {
+            int damage = calculateDamage(monster.getAttack() * 2, player.getDefense());
+            
+            // 방어구 데미지 감소 적용
+            if (player.getEquippedArmor() != null) {
+                damage = player.getEquippedArmor().calculateReducedDamage(damage);
+            }
+            
+            int dealt = damagePlayer(damage);
+            printf("%s이(가) 강력한 공격으로 %s에게 %d의 데미지를 입혔습니다!\n", 
+                monster.getName(), player.getName(), damage);
+            log(CombatEventKind.ATTACK, CombatLog.MONSTER, MonsterAction.STRONG_ATTACK.ordinal(), null, 0, 
+                dealt, player.getHp());
+        }
+        return true;
+    }
+    
+    // AI가 고른 행동을 실행한다. 공격하지 않았거나 회피당하면 false
+    private boolean performMonsterAction(MonsterAction action) {
+        if (action == MonsterAction.STRONG_ATTACK) {
+            strongCooldown = behavior.getStrongCooldown();
+        } else if (action.isSpecial()) {
+            specialCooldown = behavior.getSpecialCooldown();
+        }
+        
+        if (action == MonsterAction.GUARD) {
+            monsterGuarding = true;
+            int heal = monster.getMaxHp() * MonsterAI.GUARD_HEAL_PERCENT / 100;
+            monster.setHp(monster.getHp() + heal);
+            printf("%s이(가) 방어 자세를 취하고 체력을 %d 회복했습니다!\n", monster.getName(), heal);
+            log(CombatEventKind.HEAL, CombatLog.MONSTER, action.ordinal(), null, 0, heal, monster.getHp());
+            return false;
+        }
+        
+        // 브레스는 회피할 수 없다
+        if (action != MonsterAction.BREATH && random.nextDouble() < player.getEvasion()) {
+            printf("%s의 공격을 회피했습니다!\n", monster.getName());
+            log(CombatEventKind.ATTACK, CombatLog.MONSTER, action.ordinal(), null, CombatLog.EVADED, 0, player.getHp());
+            return false;
+        }
+        
+        int damage;
+        switch (action) {
+            case STRONG_ATTACK:
+                damage = calculateDamage(monster.getAttack() * 2, player.getDefense());
+                break;
+            case BLAST:
+                damage = calculateMagicDamage(monster.getAttack(), player.getDefense());
+                break;
+            case BREATH:
+                damage = calculateDamage(monster.getAttack() * 3 / 2, player.getDefense());
+                break;
+            default:
+                damage = calculateDamage(monster.getAttack(), player.getDefense());
+        }
+        
+        // 방어구 데미지 감소 (마법과 브레스는 방어구를 무시한다)
+        if (player.getEquippedArmor() != null && !action.ignoresArmor()) {
+            damage = player.getEquippedArmor().calculateReducedDamage(damage);
+        }
+        
+        int dealt = damagePlayer(damage);
+        printf("%s이(가) %s(으)로 %s에게 %d의 데미지를 입혔습니다!\n", 
+            monster.getName(), action.getName(), player.getName(), damage);
+        log(CombatEventKind.ATTACK, CombatLog.MONSTER, action.ordinal(), null, 0, dealt, player.getHp());
+        
+        if (action == MonsterAction.DRAIN) {
+            int heal = dealt / 2;
+            monster.setHp(monster.getHp() + heal);
+            printf("%s이(가) 생명력을 흡수해 체력을 %d 회복했습니다!\n", monster.getName(), heal);
+            log(CombatEventKind.HEAL, CombatLog.MONSTER, action.ordinal(), null, 0, heal, monster.getHp());
+        }
+        return true;
+    }
+    
+    // 플레이어가 행동한 뒤 양쪽 상태 이상을 한 턴 진행한다 (지속 피해는 방어 자세와 상관없이 들어간다)
+    private void processStatusEffects() {
+        StatusEffects effects = player.getStatusEffects();
+        for (int bits = effects.getMask(); bits != 0; bits &= bits - 1) {
+            StatusEffectType type = StatusEffects.typeOf(Integer.numberOfTrailingZeros(bits));
+            int damage = effects.tick(type, player.getMaxHp());
+            if (damage > 0) {
+                int dealt = damagePlayer(damage);
+                printf("[%s] %s으로 인해 체력 %d 감소\n", type.getName(), type.getDescription(), damage);
+                log(CombatEventKind.STATUS_TICK, CombatLog.MONSTER, -1, type, 0, dealt, player.getHp());
+            }
+        }
+        
+        effects = monster.getStatusEffects();
+        for (int bits = effects.getMask(); bits != 0; bits &= bits - 1) {
+            StatusEffectType type = StatusEffects.typeOf(Integer.numberOfTrailingZeros(bits));
+            int damage = effects.tick(type, monster.getMaxHp());
+            if (damage > 0) {
+                int hpBefore = monster.getHp();
+                monster.takeDamage(damage);
+                damageDealt += hpBefore - monster.getHp();
+                printf("[%s] %s의 체력 %d 감소\n", type.getName(), monster.getName(), damage);
+                log(CombatEventKind.STATUS_TICK, CombatLog.PLAYER, -1, type, 0, hpBefore - monster.getHp(), 
+                    monster.getHp());
+            }
+        }
+    }
+    
+    // 실제로 줄어든 체력을 돌려준다
+    private int damageMonster(Monster target, int damage) {
+        // 방어 자세인 몬스터는 다음 자기 턴까지 받는 피해가 절반
+        if (monsterGuarding && target == monster) {
+            damage = Math.max(1, damage / 2);
+        }
+        int hpBefore = target.getHp();
+        target.takeDamage(damage);
+        damageDealt += hpBefore - target.getHp();
+        return hpBefore - target.getHp();
+    }
+    
+    private int damagePlayer(int damage) {
+        int hpBefore = player.getHp();
+        player.takeDamage(damage);
+        damageTaken += hpBefore - player.getHp();
+        return hpBefore - player.getHp();
+    }
+    
+    // 기록이 켜져 있으면 한 건 남긴다. 피해로 대상의 체력이 0이 되었으면 처치로 표시한다
+    private void log(CombatEventKind kind, int actor, int action, StatusEffectType status, int flags, 
+                     int amount, int targetHp) {
+        if (combatLog == null) return;
+        if (targetHp <= 0 && amount > 0 && kind != CombatEventKind.END && kind != CombatEventKind.HEAL) {
+            flags |= CombatLog.KILLED;
+        }
+        combatLog.append(logBattle, turns, kind, actor, 0, 0, action, status == null ? 0 : status.ordinal() + 1, 
+            flags, amount, targetHp, logLocation, logMonster, player.getLevel(), monster.getLevel(), 
+            player.getPlayerClass().ordinal());
+    }
+    
+    private int calculateDamage(int attack, int defense) {
+        int baseDamage = Math.max(1, attack - defense);
+        int randomFactor = random.nextInt(baseDamage / 2 + 1);
+        return baseDamage + randomFactor;
+    }
+    
+    private int calculateMagicDamage(int magicPower, int defense) {
+        int baseDamage = Math.max(1, magicPower - defense / 2);
+        int randomFactor = random.nextInt(baseDamage / 2 + 1);
+        return baseDamage + randomFactor;
+    }
+    
+    // 속성 스킬 피해: 난수는 무속성과 똑같이 뽑고 대상의 상성 배율만 곱한다
+    private int calculateDamage(int attack, int defense, Monster target, Element element) {
+        return applyEffectiveness(calculateDamage(attack, defense), target, element);
+    }
+    
+    private int calculateMagicDamage(int magicPower, int defense, Monster target, Element element) {
+        return applyEffectiveness(calculateMagicDamage(magicPower, defense), target, element);
+    }
+    
+    private int applyEffectiveness(int damage, Monster target, Element element) {
+        int percent = target.getDamagePercent(element);
+        if (revealWeakness && out != null && percent != 100) {
+            TypeChart.announce(out, target, element, percent);
+        }
+        return TypeChart.scale(damage, percent);
+    }
+    
+    private void println(String message) {
+        if (out != null) {
+            out.println(message);
+        }
+    }
+    
+    // 가변 인자 대신 인자 모양별로 나눠 둔다. 정수는 out을 확인한 뒤에 박싱하므로
+    // 출력을 끈 전투에서는 인자 배열도 박싱도 생기지 않는다
+    private void printf(String format, Object a) {
+        if (out != null) {
+            out.printf(format, a);
+        }
+    }
+    
+    private void printf(String format, Object a, int b) {
+        if (out != null) {
+            out.printf(format, a, b);
+        }
+    }
+    
+    private void printf(String format, Object a, Object b) {
+        if (out != null) {
+            out.printf(format, a, b);
+        }
+    }
+    
+    private void printf(String format, Object a, Object b, int c) {
+        if (out != null) {
+            out.printf(format, a, b, c);
+        }
+    }
+    
+    private void printf(String format, Object a, Object b, Object c) {
+        if (out != null) {
+            out.printf(format, a, b, c);
+        }
+    }
+    
+    private void printf(String format, Object a, Object b, Object c, int d) {
+        if (out != null) {
+            out.printf(format, a, b, c, d);
+        }
+    }
+}
+
+// 전투 기록 사건 종류 (기록에는 순서 + 1을 쓴다. 0은 아직 쓰지 않은 칸)
+enum CombatEventKind {
+    ATTACK("공격"), SKILL("스킬"), HEAL("회복"), ITEM("아이템"), STATUS_APPLY("상태 이상 부여"),
+    STATUS_TICK("상태 이상 피해"), SKIP("행동 불가"), BREAK("장비 파손"), END("전투 종료");
+    
+    private static final CombatEventKind[] VALUES = values();
+    
+    private String name;
+    
+    CombatEventKind(String name) {
+        this.name = name;
+    }
+    
+    public String getName() { return name; }
+    
+    int code() { return ordinal() + 1; }
+    
+    static CombatEventKind of(int code) { return VALUES[code - 1]; }
+}
+
+// 추가만 하는 전투 기록. 고정 크기 기록을 메모리 매핑한 세그먼트 파일에 쓴다.
+// 쓰는 쪽은 칸 번호를 원자적으로 받아 매핑된 메모리에 바로 쓰므로 잠금도 입출력 대기도 없다.
+// 다음 세그먼트는 매핑 스레드가 미리 만들어 두고, 제때 준비되지 않으면 기다리는 대신 버린 수만 센다.
+final class CombatLog implements Closeable {
+    static final int RECORD_SIZE = 32;
+    static final int DEFAULT_SEGMENT_RECORDS = 1 << 20;   // 세그먼트 하나에 32MB
+    static final String INDEX_FILE = "combat.idx";
+    static final String MAGIC = "rpg-combat-log";
+    static final int VERSION = 1;
+    
+    static final int PLAYER = 0;
+    static final int MONSTER = 1;
+    
+    static final int CRITICAL = 1;
+    static final int EVADED = 2;
+    static final int KILLED = 4;   // 이 사건으로 대상이 쓰러졌다
+    static final int WIN = 8;      // 전투 종료 기록에서 플레이어 승리
+    
+    // 기록 배치 (리틀 엔디언, 바이트 위치)
+    static final int BATTLE = 0;          // int 전투 번호
+    static final int TURN = 4;            // short 턴
+    static final int KIND = 6;            // byte 사건 종류 (마지막에 쓴다)
+    static final int FLAGS = 7;           // byte
+    static final int ACTION = 8;          // short 스킬 id 또는 몬스터 행동 순서 (-1이면 기본 공격 등)
+    static final int LOCATION = 10;       // short 장소 id
+    static final int MONSTER_ID = 12;     // short 몬스터 id
+    static final int ACTOR = 14;          // byte 행동한 쪽 (상태 이상 피해는 건 쪽)
+    static final int STATUS = 15;         // byte 상태 이상 순서 + 1 (0이면 없음)
+    static final int AMOUNT = 16;         // int 실제로 들어간 피해나 회복량
+    static final int TARGET_HP = 20;      // int 대상의 남은 체력
+    static final int PLAYER_LEVEL = 24;   // short
+    static final int MONSTER_LEVEL = 26;  // short
+    static final int PLAYER_CLASS = 28;   // byte 직업 순서
+    static final int PARTY_SLOT = 29;     // byte 기록된 파티원의 파티 안 순서 (1:1 전투는 0)
+    static final int PACK_SLOT = 30;      // byte 기록된 몬스터의 무리 안 순서 (31은 비워 둔다)
+    
+    static final int NO_SLOT = -1;        // 그쪽 참가자가 없는 사건 (예: 파티원이 물약을 쓴 기록의 몬스터 쪽)
+    
+    private static final int AHEAD = 2;   // 쓰는 중인 세그먼트 뒤로 미리 만들어 둘 수
+    private static final int RING = 8;
+    private static final int PAGE = 4096;
+    
+    private final File dir;
+    private final int segmentRecords;
+    private final int shift;
+    private final long mask;
+    private final AtomicLong cursor = new AtomicLong();
+    private final AtomicInteger battles = new AtomicInteger();
+    private final AtomicInteger nextName = new AtomicInteger();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicReferenceArray<Segment> ring = new AtomicReferenceArray<>(RING);
+    private final ConcurrentHashMap<String, Integer> locations = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Integer> monsters = new ConcurrentHashMap<>();
+    private final String[] skillNames = new String[SkillRegistry.DUEL.size() + SkillRegistry.PACK.size()];
+    private final Thread mapper;
+    private long mapped = -1;   // 만들어 둔 마지막 세그먼트 (시작 뒤에는 매핑 스레드만 쓴다)
+    private volatile boolean closed;
+    private volatile IOException failure;
+    
+    private static final class Segment {
+        final long number;
+        final MappedByteBuffer buffer;
+        
+        Segment(long number, MappedByteBuffer buffer) {
+            this.number = number;
+            this.buffer = buffer;
+        }
+    }
+    
+    public CombatLog(File dir) throws IOException {
+        this(dir, DEFAULT_SEGMENT_RECORDS);
+    }
+    
+    // segmentRecords는 2의 거듭제곱이어야 한다
+    public CombatLog(File dir, int segmentRecords) throws IOException {
+        if (Integer.bitCount(segmentRecords) != 1) {
+            throw new IllegalArgumentException("세그먼트 기록 수는 2의 거듭제곱이어야 합니다: " + segmentRecords);
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("기록 폴더를 만들 수 없습니다: " + dir);
+        }
+        this.dir = dir;
+        this.segmentRecords = segmentRecords;
+        this.shift = Integer.numberOfTrailingZeros(segmentRecords);
+        this.mask = segmentRecords - 1;
+        while (mapped < AHEAD) {
+            mapped++;
+            ring.set((int) (mapped % RING), map(mapped));
+        }
+        this.mapper = new Thread(this::prepare, "combat-log-mapper");
+        mapper.setDaemon(true);
+        mapper.start();
+    }
+    
+    static File segmentFile(File dir, long number) {
+        return new File(dir, String.format("combat-%06d.seg", number));
+    }
+    
+    // 파일을 비운 뒤 새로 매핑하고, 쓰는 쪽이 처음 닿을 때 페이지 폴트로 멈추지 않도록 페이지를 미리 건드린다
+    private Segment map(long number) throws IOException {
+        long size = (long) segmentRecords * RECORD_SIZE;
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile(dir, number), "rw")) {
+            file.setLength(0);
+            file.setLength(size);
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < size; i += PAGE) {
+                buffer.put(i, (byte) 0);
+            }
+            return new Segment(number, buffer);
+        }
+    }
+    
+    // 매핑 스레드: 쓰는 쪽이 새 세그먼트에 들어설 때마다 깨어나 AHEAD개 앞까지 만들어 둔다
+    private void prepare() {
+        try {
+            while (true) {
+                long needed = (cursor.get() >>> shift) + AHEAD;
+                while (mapped < needed) {
+                    mapped++;
+                    // 고리에서 밀려나는 세그먼트는 close에서 다시 볼 수 없으므로 여기서 디스크에 내린다
+                    Segment evicted = ring.getAndSet((int) (mapped % RING), map(mapped));
+                    if (evicted != null) {
+                        evicted.buffer.force();
+                    }
+                }
+                if (closed) return;
+                LockSupport.park(this);
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+    
+    public int beginBattle() {
+        return battles.getAndIncrement();
+    }
+    
+    // 이름마다 번호를 한 번 정한다 (처음 보는 이름만 맵에 넣고, 경쟁에서 진 번호는 건너뛴다)
+    public int locationId(String name) {
+        return idOf(locations, name);
+    }
+    
+    public int monsterId(String name) {
+        return idOf(monsters, name);
+    }
+    
+    private int idOf(ConcurrentHashMap<String, Integer> names, String name) {
+        Integer id = names.get(name);
+        if (id == null) {
+            Integer fresh = nextName.getAndIncrement();
+            id = names.putIfAbsent(name, fresh);
+            if (id == null) id = fresh;
+        }
+        return id;
+    }
+    
+    public void nameSkill(Skill skill) {
+        int action = skillAction(skill);
+        if (skillNames[action] == null) {
+            skillNames[action] = skill.getName();
+        }
+    }
+    
+    // 기록의 스킬 번호: 1:1 전투 스킬은 id 그대로, 파티 전투 스킬은 그 뒤에 이어 붙인다
+    static int skillAction(Skill skill) {
+        return skill.getPackSkill() == null ? skill.getId() : SkillRegistry.DUEL.size() + skill.getId();
+    }
+    
+    // 기록 하나를 쓴다. 원시 값만 받으므로 할당이 없고, 사건 종류를 마지막에 써서 다 쓴 칸만 읽히게 한다
+    public void append(int battle, int turn, CombatEventKind kind, int actor, int partySlot, int packSlot,
+                       int action, int status, int flags, int amount, int targetHp, int location, int monster,
+                       int playerLevel, int monsterLevel, int playerClass) {
+        long slot = cursor.getAndIncrement();
+        long number = slot >>> shift;
+        int offset = (int) (slot & mask) * RECORD_SIZE;
+        if (offset == 0) {
+            LockSupport.unpark(mapper);
+        }
+        Segment segment = ring.get((int) (number % RING));
+        if (segment == null || segment.number != number) {
+            dropped.increment();
+            return;
+        }
+        MappedByteBuffer buffer = segment.buffer;
+        buffer.putInt(offset + BATTLE, battle);
+        buffer.putShort(offset + TURN, (short) turn);
+        buffer.put(offset + FLAGS, (byte) flags);
+        buffer.putShort(offset + ACTION, (short) action);
+        buffer.putShort(offset + LOCATION, (short) location);
+        buffer.putShort(offset + MONSTER_ID, (short) monster);
+        buffer.put(offset + ACTOR, (byte) actor);
+        buffer.put(offset + STATUS, (byte) status);
+        buffer.putInt(offset + AMOUNT, amount);
+        buffer.putInt(offset + TARGET_HP, targetHp);
+        buffer.putShort(offset + PLAYER_LEVEL, (short) playerLevel);
+        buffer.putShort(offset + MONSTER_LEVEL, (short) monsterLevel);
+        buffer.put(offset + PLAYER_CLASS, (byte) playerClass);
+        buffer.put(offset + PARTY_SLOT, (byte) partySlot);
+        buffer.put(offset + PACK_SLOT, (byte) packSlot);
+        buffer.put(offset + KIND, (byte) kind.code());
+    }
+    
+    public long getRecords() { return cursor.get() - dropped.sum(); }
+    public long getDropped() { return dropped.sum(); }
+    public File getDir() { return dir; }
+    
+    // 매핑 스레드를 멈추고 세그먼트를 디스크에 내린 뒤, 기록 수와 이름표를 색인 파일에 쓴다.
+    // 쓰는 쪽이 모두 끝난 뒤에 불러야 한다
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        LockSupport.unpark(mapper);
+        try {
+            mapper.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        
+        long slots = cursor.get();
+        long lastUsed = slots == 0 ? -1 : (slots - 1) >>> shift;
+        for (int i = 0; i < RING; i++) {
+            Segment segment = ring.get(i);
+            if (segment != null && segment.number <= lastUsed) {
+                segment.buffer.force();
+            }
+        }
+        for (long number = lastUsed + 1; number <= mapped; number++) {
+            segmentFile(dir, number).delete();
+        }
+        
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(
+                new FileOutputStream(new File(dir, INDEX_FILE)), "UTF-8"))) {
+            writer.println(MAGIC + "\t" + VERSION);
+            writer.println("record\t" + RECORD_SIZE);
+            writer.println("segment\t" + segmentRecords);
+            writer.println("slots\t" + slots);
+            writer.println("dropped\t" + dropped.sum());
+            writer.println("battles\t" + battles.get());
+            locations.forEach((name, id) -> writer.println("location\t" + id + "\t" + name));
+            monsters.forEach((name, id) -> writer.println("monster\t" + id + "\t" + name));
+            for (int i = 0; i < skillNames.length; i++) {
+                if (skillNames[i] != null) {
+                    writer.println("skill\t" + i + "\t" + skillNames[i]);
+                }
+            }
+        }
+    }
+    
+    // combatlog <폴더>: 기록을 분석한다
+    // combatlog play <폴더>: 기록을 남기며 게임을 한다
+    public static void run(String[] args) {
+        if (args.length == 0) {
+            System.out.println("사용법: combatlog <폴더> | combatlog play <폴더>");
+            return;
+        }
+        try {
+            if (args[0].equals("play")) {
+                CombatLog log = new CombatLog(new File(args.length > 1 ? args[1] : "combatlog"));
+                try {
+                    Game game = new Game();
+                    game.setCombatLog(log);
+                    game.start();
+                } finally {
+                    log.close();
+                }
+                System.out.printf("전투 기록 %d건을 %s에 남겼습니다.\n", log.getRecords(), log.getDir());
+                return;
+            }
+            
+            CombatLogReader reader = CombatLogReader.open(new File(args[0]));
+            CombatLogStats stats = new CombatLogStats(reader);
+            long start = System.nanoTime();
+            long records = reader.scan(stats);
+            long elapsed = System.nanoTime() - start;
+            stats.print(System.out);
+            System.err.printf("기록 %d건: %.3f초 (%.1f백만 건/초, 버림 %d건)\n", records, elapsed / 1e9,
+                records / (elapsed / 1e9) / 1e6, reader.getDropped());
+        } catch (IOException e) {
+            System.out.println("전투 기록을 처리할 수 없습니다: " + e.getMessage());
+        }
+    }
+}
+
+// 전투 기록 한 칸을 읽는 커서 (기록마다 객체를 만들지 않고 위치만 옮긴다)
+final class CombatRecord {
+    private static final StatusEffectType[] STATUSES = StatusEffectType.values();
+    
+    private ByteBuffer buffer;
+    private int offset;
+    
+    void moveTo(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+    }
+    
+    public int getBattle() { return buffer.getInt(offset + CombatLog.BATTLE); }
+    public int getTurn() { return buffer.getShort(offset + CombatLog.TURN); }
+    public CombatEventKind getKind() { return CombatEventKind.of(buffer.get(offset + CombatLog.KIND)); }
+    public int getFlags() { return buffer.get(offset + CombatLog.FLAGS); }
+    public boolean has(int flag) { return (getFlags() & flag) != 0; }
+    public int getAction() { return buffer.getShort(offset + CombatLog.ACTION); }
+    public int getLocation() { return buffer.getShort(offset + CombatLog.LOCATION); }
+    public int getMonster() { return buffer.getShort(offset + CombatLog.MONSTER_ID); }
+    public boolean isPlayerActor() { return buffer.get(offset + CombatLog.ACTOR) == CombatLog.PLAYER; }
+    
+    // 상태 이상이 없으면 null
+    public StatusEffectType getStatus() {
+        int status = buffer.get(offset + CombatLog.STATUS);
+        return status == 0 ? null : STATUSES[status - 1];
+    }
+    
+    public int getAmount() { return buffer.getInt(offset + CombatLog.AMOUNT); }
+    public int getTargetHp() { return buffer.getInt(offset + CombatLog.TARGET_HP); }
+    public int getPlayerLevel() { return buffer.getShort(offset + CombatLog.PLAYER_LEVEL); }
+    public int getMonsterLevel() { return buffer.getShort(offset + CombatLog.MONSTER_LEVEL); }
+    public int getPlayerClass() { return buffer.get(offset + CombatLog.PLAYER_CLASS); }
+    public int getPartySlot() { return buffer.get(offset + CombatLog.PARTY_SLOT); }
+    public int getPackSlot() { return buffer.get(offset + CombatLog.PACK_SLOT); }
+    
+    // 행동한 쪽의 슬롯 (상태 이상 피해처럼 건 쪽을 모르면 NO_SLOT)
+    public int getActorSlot() { return isPlayerActor() ? getPartySlot() : getPackSlot(); }
+}
+
+// 전투 기록을 읽는 쪽
+interface CombatRecordVisitor {
+    void visit(CombatRecord record);
+}
+
+// 색인 파일로 기록 수와 이름표를 읽고, 세그먼트를 읽기 전용으로 매핑해 차례로 훑는다
+final class CombatLogReader {
+    private final File dir;
+    private int segmentRecords;
+    private long slots;
+    private long dropped;
+    private int battles;
+    private final Map<Integer, String> locations = new HashMap<>();
+    private final Map<Integer, String> monsters = new HashMap<>();
+    private final Map<Integer, String> skills = new HashMap<>();
+    
+    private CombatLogReader(File dir) {
+        this.dir = dir;
+    }
+    
+    public static CombatLogReader open(File dir) throws IOException {
+        CombatLogReader reader = new CombatLogReader(dir);
+        File index = new File(dir, CombatLog.INDEX_FILE);
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(index), "UTF-8"))) {
+            String header = in.readLine();
+            if (header == null || !header.equals(CombatLog.MAGIC + "\t" + CombatLog.VERSION)) {
+                throw new IOException(index + ": 전투 기록 색인이 아닙니다");
+            }
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split("\t", 3);
+                switch (fields[0]) {
+                    case "record":
+                        if (Integer.parseInt(fields[1]) != CombatLog.RECORD_SIZE) {
+                            throw new IOException(index + ": 기록 크기가 다릅니다 (" + fields[1] + ")");
+                        }
+                        break;
+                    case "segment": reader.segmentRecords = Integer.parseInt(fields[1]); break;
+                    case "slots": reader.slots = Long.parseLong(fields[1]); break;
+                    case "dropped": reader.dropped = Long.parseLong(fields[1]); break;
+                    case "battles": reader.battles = Integer.parseInt(fields[1]); break;
+                    case "location": reader.locations.put(Integer.parseInt(fields[1]), fields[2]); break;
+                    case "monster": reader.monsters.put(Integer.parseInt(fields[1]), fields[2]); break;
+                    case "skill": reader.skills.put(Integer.parseInt(fields[1]), fields[2]); break;
+                    default:
+                        // 모르는 줄은 뒤 버전에서 더한 것으로 보고 건너뛴다
+                }
+            }
+        }
+        if (reader.segmentRecords <= 0) {
+            throw new IOException(index + ": 세그먼트 크기가 없습니다");
+        }
+        return reader;
+    }
+    
+    // 쓴 칸을 모두 훑어 visitor에 넘기고 읽은 기록 수를 돌려준다 (버려진 빈 칸은 건너뛴다)
+    public long scan(CombatRecordVisitor visitor) throws IOException {
+        CombatRecord record = new CombatRecord();
+        long visited = 0;
+        for (long first = 0, number = 0; first < slots; first += segmentRecords, number++) {
+            int count = (int) Math.min(segmentRecords, slots - first);
+            try (RandomAccessFile file = new RandomAccessFile(CombatLog.segmentFile(dir, number), "r")) {
+                MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, 
+                    (long) count * CombatLog.RECORD_SIZE);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                int end = count * CombatLog.RECORD_SIZE;
+                for (int offset = 0; offset < end; offset += CombatLog.RECORD_SIZE) {
+                    if (buffer.get(offset + CombatLog.KIND) == 0) continue;
+                    record.moveTo(buffer, offset);
+                    visitor.visit(record);
+                    visited++;
+                }
+            }
+        }
+        return visited;
+    }
+    
+    public long getDropped() { return dropped; }
+    public int getBattles() { return battles; }
+    
+    public String locationName(int id) { return locations.getOrDefault(id, "장소 #" + id); }
+    public String monsterName(int id) { return monsters.getOrDefault(id, "몬스터 #" + id); }
+    public String skillName(int id) { return skills.getOrDefault(id, "스킬 #" + id); }
+    
+    public int maxLocationId() { return locations.keySet().stream().mapToInt(Integer::intValue).max().orElse(-1); }
+}
+
+// 전투 기록 분석: 플레이어 행동별 피해, 몬스터 행동별 피해, 장소별 전투 결과와 사망 원인
+final class CombatLogStats implements CombatRecordVisitor {
+    private static final StatusEffectType[] STATUSES = StatusEffectType.values();
+    private static final MonsterAction[] MONSTER_ACTIONS = MonsterAction.values();
+    
+    private final CombatLogReader reader;
+    // 행동 번호: 0 기본 공격, 1..스킬 수 스킬, 그 뒤로 상태 이상 피해 (몬스터는 행동 순서 뒤로 상태 이상)
+    private final long[][] player;
+    private final long[][] monster;
+    private final int skillCount = SkillRegistry.DUEL.size() + SkillRegistry.PACK.size();
+    private final long[] fights;
+    private final long[] wins;
+    private final Map<Integer, Map<String, Long>> deathCauses = new HashMap<>();
+    
+    // 행동별 칸: 횟수, 총 피해, 치명타, 회피, 처치
+    private static final int COUNT = 0, DAMAGE = 1, CRITS = 2, EVADES = 3, KILLS = 4;
+    
+    CombatLogStats(CombatLogReader reader) {
+        this.reader = reader;
+        this.player = new long[1 + skillCount + STATUSES.length][5];
+        this.monster = new long[MONSTER_ACTIONS.length + STATUSES.length][5];
+        this.fights = new long[reader.maxLocationId() + 1];
+        this.wins = new long[fights.length];
+    }
+    
+    @Override
+    public void visit(CombatRecord record) {
+        CombatEventKind kind = record.getKind();
+        int flags = record.getFlags();
+        if (kind == CombatEventKind.END) {
+            int location = record.getLocation();
+            if (location >= 0 && location < fights.length) {
+                fights[location]++;
+                if ((flags & CombatLog.WIN) != 0) wins[location]++;
+            }
+            return;
+        }
+        
+        int index;
+        if (kind == CombatEventKind.STATUS_TICK) {
+            index = (record.isPlayerActor() ? 1 + skillCount : MONSTER_ACTIONS.length) + record.getStatus().ordinal();
+        } else if (kind == CombatEventKind.ATTACK || kind == CombatEventKind.SKILL) {
+            index = record.isPlayerActor() ? 1 + record.getAction() : record.getAction();
+        } else {
+            return;
+        }
+        long[] row = (record.isPlayerActor() ? player : monster)[index];
+        row[COUNT]++;
+        row[DAMAGE] += record.getAmount();
+        if ((flags & CombatLog.CRITICAL) != 0) row[CRITS]++;
+        if ((flags & CombatLog.EVADED) != 0) row[EVADES]++;
+        if ((flags & CombatLog.KILLED) != 0) {
+            row[KILLS]++;
+            if (!record.isPlayerActor()) {
+                String cause = reader.monsterName(record.getMonster()) + " " + monsterActionName(index);
+                deathCauses.computeIfAbsent(record.getLocation(), id -> new HashMap<>()).merge(cause, 1L, Long::sum);
+            }
+        }
+    }
+    
+    private String playerActionName(int index) {
+        if (index == 0) return "기본 공격";
+        if (index <= skillCount) return reader.skillName(index - 1);
+        return "[" + STATUSES[index - 1 - skillCount].getName() + "]";
+    }
+    
+    private String monsterActionName(int index) {
+        if (index < MONSTER_ACTIONS.length) return MONSTER_ACTIONS[index].getName();
+        return "[" + STATUSES[index - MONSTER_ACTIONS.length].getName() + "]";
+    }
+    
+    public void print(PrintStream out) {
+        out.println("플레이어 행동,횟수,총 피해,평균 피해,치명타율,처치");
+        printRows(out, player, this::playerActionName, false);
+        out.println("몬스터 행동,횟수,회피당함,총 피해,평균 피해,처치");
+        printRows(out, monster, this::monsterActionName, true);
+        
+        out.println("장소,전투,승리,사망,주요 사망 원인");
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 0; id < fights.length; id++) {
+            if (fights[id] > 0) ids.add(id);
+        }
+        ids.sort(Comparator.comparing(reader::locationName));
+        for (int id : ids) {
+            Map<String, Long> causes = deathCauses.getOrDefault(id, Collections.emptyMap());
+            String top = causes.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(3)
+                .map(e -> e.getKey() + " " + e.getValue())
+                .collect(Collectors.joining(" / "));
+            out.printf("%s,%d,%d,%d,%s\n", reader.locationName(id), fights[id], wins[id], fights[id] - wins[id], top);
+        }
+    }
+    
+    private static void printRows(PrintStream out, long[][] rows, IntFunction<String> names, boolean monsterRows) {
+        List<Integer> used = new ArrayList<>();
+        for (int i = 0; i < rows.length; i++) {
+            if (rows[i][COUNT] > 0) used.add(i);
+        }
+        used.sort(Comparator.comparing(names::apply));
+        for (int i : used) {
+            long[] row = rows[i];
+            long hits = row[COUNT] - row[EVADES];
+            if (monsterRows) {
+                out.printf("%s,%d,%d,%d,%.2f,%d\n", names.apply(i), row[COUNT], row[EVADES], row[DAMAGE],
+                    row[DAMAGE] / (double) Math.max(1, hits), row[KILLS]);
+            } else {
+                out.printf("%s,%d,%d,%.2f,%.4f,%d\n", names.apply(i), row[COUNT], row[DAMAGE],
+                    row[DAMAGE] / (double) Math.max(1, hits), row[CRITS] / (double) row[COUNT], row[KILLS]);
+            }
+        }
+    }
+}
+
+// 세션마다 똑같은 세계 정의 (몬스터 종, 출현 색인, 지역). 모든 세션과 스레드가 한 벌을 함께 읽는다.
+// 퀘스트 진행, 상점 재고, NPC 친밀도처럼 세션마다 바뀌는 상태는 Game이 따로 만든다.
+final class WorldContent {
+    static final WorldContent SHARED = new WorldContent();
+    
+    private final List<MonsterTemplate> monsters;
+    private final SpawnIndex spawnIndex;
+    private final SpawnIndex packIndex;
+    private final SpawnBand anyMonster;
+    private final Map<String, Location> worldMap;
+    
+    private WorldContent() {
+        this.monsters = createMonsters();
+        this.worldMap = createWorldMap();
+        this.spawnIndex = new SpawnIndex(monsters, SpawnRule.DEFAULTS, worldMap.values());
+        this.packIndex = new SpawnIndex(monsters, SpawnRule.PACKS, worldMap.values());
+        this.anyMonster = SpawnBand.uniform(monsters);
+    }
+    
+    private static List<MonsterTemplate> createMonsters() {
+        List<MonsterTemplate> monsters = new ArrayList<>();
+        // 일반 몬스터들
+        monsters.add(new MonsterTemplate("고블린 졸병", 40, 8, 4, 15, 1, MonsterType.NORMAL));
+        monsters.add(new MonsterTemplate("고블린 투사", 60, 12, 6, 25, 2, MonsterType.NORMAL));
+        monsters.add(new MonsterTemplate("고블린 샤먼", 50, 15, 3, 30, 2, MonsterType.NORMAL));
+        
+        // 숲 지역 몬스터들
+        monsters.add(new MonsterTemplate("독침 늑대", 70, 14, 5, 30, 2, MonsterType.BEAST));
+        monsters.add(new MonsterTemplate("거대 거미", 55, 10, 8, 25, 2, MonsterType.BEAST));
+        monsters.add(new MonsterTemplate("식인 식물", 80, 12, 10, 35, 3, MonsterType.PLANT));
+        
+        // 산 지역 몬스터들
+        monsters.add(new MonsterTemplate("오크 전사", 100, 18, 8, 40, 3, MonsterType.NORMAL));
+        monsters.add(new MonsterTemplate("오크 샤먼", 70, 22, 5, 45, 3, MonsterType.NORMAL));
+        monsters.add(new MonsterTemplate("트롤", 150, 20, 12, 60, 4, MonsterType.GIANT));
+        monsters.add(new MonsterTemplate("하피", 65, 16, 7, 40, 3, MonsterType.FLYING));
+        
+        // 묘지 지역 몬스터들
+        monsters.add(new MonsterTemplate("해골 전사", 60, 14, 6, 30, 2, MonsterType.UNDEAD));
+        monsters.add(new MonsterTemplate("망령", 45, 18, 3, 35, 3, MonsterType.GHOST));
+        monsters.add(new MonsterTemplate("좀비", 90, 12, 5, 25, 2, MonsterType.UNDEAD));
+        monsters.add(new MonsterTemplate("리치", 80, 25, 10, 70, 5, MonsterType.UNDEAD));
+        
+        // 던전 지역 몬스터들
+        monsters.add(new MonsterTemplate("미노타우르스", 180, 25, 15, 100, 6, MonsterType.BOSS));
+        monsters.add(new MonsterTemplate("화염 정령", 70, 30, 5, 60, 5, MonsterType.ELEMENTAL));
+        monsters.add(new MonsterTemplate("어둠의 기사", 120, 22, 18, 80, 6, MonsterType.DEMON));
+        
+        // 특수 몬스터들
+        monsters.add(new MonsterTemplate("드래곤", 250, 35, 20, 150, 8, MonsterType.DRAGON));
+        monsters.add(new MonsterTemplate("골렘", 200, 28, 25, 90, 7, MonsterType.CONSTRUCT));
+        
+        // 몬스터별 속성 저항 (타입 상성에 곱해진다. 음수면 약점)
+        for (int i = 0; i < monsters.size(); i++) {
+            MonsterTemplate monster = monsters.get(i);
+            switch (monster.getName()) {
+                case "거대 거미":
+                    monster = monster.withResistance(Element.POISON, 100);
+                    break;
+                case "트롤":
+                    monster = monster.withResistance(Element.FIRE, -50);
+                    break;
+                case "망령":
+                    monster = monster.withResistance(Element.FIRE, -50);
+                    break;
+                case "리치":
+                    monster = monster.withResistance(Element.ICE, 50);
+                    break;
+                case "화염 정령":
+                    monster = monster.withResistance(Element.FIRE, 100).withResistance(Element.ICE, -60);
+                    break;
+                case "골렘":
+                    monster = monster.withResistance(Element.ICE, 50);
+                    break;
+                default:
+                    break;
+            }
+            monsters.set(i, monster);
+        }
+        
+        // 몬스터별 드롭 아이템 설정
+        for (int i = 0; i < monsters.size(); i++) {
+            MonsterTemplate monster = monsters.get(i);
+            if (monster.getType() == MonsterType.BOSS || monster.getType() == MonsterType.DRAGON) {
+                monster = monster.withLoot(new UniversalPotion("고급 만능 물약", 0, 100, 100, 100), 1)
+                    .withLoot(new Weapon("전설의 무기", 0, 30, 10, null, 200, "전설의 무기", 0.2, 0.9), 1);
+            } else if (monster.getLevel() >= 5) {
+                monster = monster.withLoot(new HealthPotion("고급 체력 물약", 0, 100), 1)
+                    .withLoot(new ManaPotion("고급 마나 물약", 0, 100), 1);
+            }
+            monsters.set(i, monster);
+        }
+        
+        return Collections.unmodifiableList(monsters);
+    }
+    
+    private static Map<String, Location> createWorldMap() {
+        Map<String, Location> worldMap = new HashMap<>();
+        worldMap.put("마을", new Location("마을", "평화로운 시작의 마을", LocationType.TOWN, 1, 10));
+        worldMap.put("서쪽 숲", new Location("서쪽 숲", "고블린과 늑대가 서식하는 위험한 숲", LocationType.FOREST, 1, 5));
+        worldMap.put("동쪽 산", new Location("동쪽 산", "오크와 트롤이 살고 있는 험준한 산", LocationType.MOUNTAIN, 3, 7));
+        worldMap.put("북쪽 묘지", new Location("북쪽 묘지", "언데드가 돌아다니는 음침한 묘지", LocationType.GRAVEYARD, 5, 8));
+        worldMap.put("용의 둥지", new Location("용의 둥지", "강력한 드래곤이 서식하는 위험지역", LocationType.DUNGEON, 7, 10));
+        worldMap.put("남쪽 호수", new Location("남쪽 호수", "아름답지만 위험한 생물들이 서식하는 호수", LocationType.LAKE, 2, 6));
+        // 사건표를 미리 찾아 두어 여러 스레드가 읽기만 하게 한다
+        for (Location location : worldMap.values()) {
+            location.getEvents();
+        }
+        return Collections.unmodifiableMap(worldMap);
+    }
+    
+    public List<MonsterTemplate> getMonsters() { return monsters; }
+    public SpawnIndex getSpawnIndex() { return spawnIndex; }
+    public SpawnIndex getPackIndex() { return packIndex; }
+    public SpawnBand getAnyMonster() { return anyMonster; }
+    public Map<String, Location> getWorldMap() { return worldMap; }
+}
+
+// 게임 메인 클래스
+class Game {
+    private Player player;
+    private List<MonsterTemplate> monsters;
+    private MonsterPool monsterPool = new MonsterPool();
+    private SpawnIndex spawnIndex;
+    private SpawnIndex packIndex;
+    private SpawnBand anyMonster;
+    private List<Quest> quests;
+    private GameInput input;
+    private PrintStream out;
+    private ActionPolicy battlePolicy;
+    private boolean headless;
+    private long seed;
+    private GameRandom random;
+    private FightOddsCalculator oddsCalculator;
+    private CombatLog combatLog;
+    private MonsterAI monsterAI;
+    private boolean isRunning;
+    private GameState gameState;
+    private Map<String, Location> worldMap;
+    private List<Shop> shops;
+    private List<NPC> npcs;
+    private int gameDay;
+    private boolean autoSave;
+    private int autoSaveInterval;
+    private boolean replaying;
+    private int battleCount;
+    private AutoExploreSummary autoExploreSummary;
+    private Battle battle;
+    private PackBattle packBattle;
+    private Shop travelingMerchant;
+    // 사건 처리기 (GameEvent 순서, 세션을 만들 때 한 번 등록한다)
+    private final EventHandler[] eventHandlers = new EventHandler[GameEvent.values().length];
+    
+    // 오프라인 보상에서 현실 시간 1시간을 게임 하루로 본다
+    static final long OFFLINE_MILLIS_PER_DAY = 60 * 60 * 1000L;
+    // 숲 전투 중 고블린 무리를 만날 확률
+    static final double PACK_CHANCE = 0.25;
+    // 탐색 중 아이템을 찾았을 때 하나 더 찾을 확률
+    static final double EXTRA_ITEM_CHANCE = 0.1;
+    static final MonsterTag PACK_TAG = MonsterTag.GOBLIN;
+    static final String PACK_KIND = PACK_TAG.getKeyword();
+    
+    public Game() {
+        this(RandomService.newSeed(), new ConsoleInput(new Scanner(System.in)));
+    }
+    
+    // 같은 시드와 같은 입력이면 몬스터 선택, 전리품, 이벤트, 상점 재입고까지 똑같이 진행된다
+    public Game(long seed, GameInput input) {
+        this.input = input;
+        this.out = System.out;
+        this.seed = seed;
+        this.random = new SplitMixRandom(seed);
+        RandomService.bind(random);
+        this.oddsCalculator = new FightOddsCalculator(256, true);
+        this.monsterAI = MonsterAI.SHARED;
+        WorldContent content = WorldContent.SHARED;
+        this.monsters = content.getMonsters();
+        this.spawnIndex = content.getSpawnIndex();
+        this.packIndex = content.getPackIndex();
+        this.anyMonster = content.getAnyMonster();
+        this.worldMap = content.getWorldMap();
+        this.quests = new ArrayList<>();
+        this.shops = new ArrayList<>();
+        this.npcs = new ArrayList<>();
+        this.gameState = GameState.MAIN_MENU;
+        this.gameDay = 1;
+        this.autoSave = true;
+        this.autoSaveInterval = 5;
+        this.battleCount = 0;
+        
+        initializeGameWorld();
+    }
+
+    private void initializeGameWorld() {
+        initializeQuests();
+        initializeShops();
+        initializeNPCs();
+        registerEventHandlers();
+    }
+
+    private void initializeQuests() {
+        quests.add(new Quest("초보자의 첫 걸음", "고블린 3마리 처치", 
+            monster -> monster.getName().contains("고블린"), 3, 50, 100));
+        quests.add(new Quest("오크 사냥꾼", "오크 2마리 처치", 
+            monster -> monster.getName().contains("오크"), 2, 80, 150));
+        quests.add(new Quest("언데드 퇴치", "언데드 타입 몬스터 5마리 처치", 
+            monster -> monster.getType() == MonsterType.UNDEAD, 5, 150, 300,
+            new Armor("성스러운 갑옷", 0, 10, 5, null, 150, "언데드에 강한 갑옷", 0.05, 0.2), 3));
+        quests.add(new Quest("드래곤 슬레이어", "드래곤 1마리 처치", 
+            monster -> monster.getType() == MonsterType.DRAGON, 1, 500, 1000,
+            new Weapon("드래곤 슬레이어", 0, 30, 10, null, 200, "드래곤을 잡은 자의 무기", 0.25, 0.95), 5));
+        quests.add(new Quest("숲의 정화", "숲의 몬스터 10마리 처치", 
+            monster -> worldMap.get(player.getCurrentLocation()).getType() == LocationType.FOREST, 10, 200, 300));
+    }
+
+    private void initializeShops() {
+        // 무기 상점
+        Shop weaponShop = new Shop("무기 상점", ShopType.WEAPON);
+        
+        // 전사용 무기
+        weaponShop.addItem(new Weapon("단검", 100, 5, 1, PlayerClass.WARRIOR, 100, "기본적인 단검", 0.05, 0.85));
+        weaponShop.addItem(new Weapon("양손검", 300, 12, 3, PlayerClass.WARRIOR, 120, "양손으로 사용하는 큰 검", 0.1, 0.8));
+        weaponShop.addItem(new Weapon("도끼", 250, 10, 2, PlayerClass.WARRIOR, 110, "무거운 전투 도끼", 0.15, 0.75));
+        weaponShop.addItem(new Weapon("철퇴", 350, 8, 4, PlayerClass.WARRIOR, 130, "강력한 타격을 주는 철퇴", 0.2, 0.7));
+        
+        // 궁수용 무기
+        weaponShop.addItem(new Weapon("숏보우", 120, 6, 1, PlayerClass.ARCHER, 100, "짧은 활", 0.1, 0.85));
+        weaponShop.addItem(new Weapon("롱보우", 320, 14, 3, PlayerClass.ARCHER, 110, "긴 사정거리의 활", 0.15, 0.8));
+        weaponShop.addItem(new Weapon("석궁", 400, 16, 4, PlayerClass.ARCHER, 90, "강력한 석궁", 0.2, 0.75));
+        weaponShop.addItem(new Weapon("듀얼 대거", 280, 8, 2, PlayerClass.ARCHER, 100, "한 쌍의 단검", 0.25, 0.85));
+        
+        // 마법사용 무기
+        weaponShop.addItem(new Weapon("오크 지팡이", 150, 3, 1, PlayerClass.MAGE, 100, "오크 나무로 만든 지팡이", 0.05, 0.9));
+        weaponShop.addItem(new Weapon("마법봉", 350, 5, 3, PlayerClass.MAGE, 120, "마력이 담긴 봉", 0.1, 0.95));
+        weaponShop.addItem(new Weapon("주문서", 400, 8, 4, PlayerClass.MAGE, 80, "마법 주문이 적힌 두루마리", 0.15, 0.9));
+        weaponShop.addItem(new Weapon("마력의 구슬", 500, 10, 5, PlayerClass.MAGE, 150, "순수한 마력이 담긴 구슬", 0.2, 0.95));
+        
+        shops.add(weaponShop);
+        
+        // 방어구 상점
+        Shop armorShop = new Shop("방어구 상점", ShopType.ARMOR);
+        
+        // 전사용 방어구
+        armorShop.addItem(new Armor("가죽 갑옷", 80, 3, 1, PlayerClass.WARRIOR, 100, "기본적인 가죽 갑옷", 0.05, 0.1));
+        armorShop.addItem(new Armor("사슬 갑옷", 250, 8, 3, PlayerClass.WARRIOR, 120, "사슬로 만든 갑옷", 0.03, 0.15));
+        armorShop.addItem(new Armor("판금 갑옷", 600, 15, 5, PlayerClass.WARRIOR, 150, "강철 판금 갑옷", 0.01, 0.25));
+        armorShop.addItem(new Armor("용사의 갑옷", 1200, 20, 8, PlayerClass.WARRIOR, 200, "용사만이 착용할 수 있는 갑옷", 0.05, 0.3));
+        
+        // 궁수용 방어구
+        armorShop.addItem(new Armor("가죽 튜닉", 70, 2, 1, PlayerClass.ARCHER, 100, "가벼운 가죽 튜닉", 0.1, 0.05));
+        armorShop.addItem(new Armor("엘븐 메일", 300, 5, 4, PlayerClass.ARCHER, 110, "엘프의 기술로 만든 갑옷", 0.15, 0.1));
+        armorShop.addItem(new Armor("레인저 코트", 500, 8, 6, PlayerClass.ARCHER, 120, "레인저용 코트", 0.2, 0.15));
+        armorShop.addItem(new Armor("그림자 복장", 1000, 12, 10, PlayerClass.ARCHER, 150, "그림자처럼 움직일 수 있는 복장", 0.25, 0.2));
+        
+        // 마법사용 방어구
+        armorShop.addItem(new Armor("마법사 로브", 60, 1, 1, PlayerClass.MAGE, 100, "기본적인 마법사 로브", 0.1, 0.03));
+        armorShop.addItem(new Armor("룬 메일", 280, 3, 5, PlayerClass.MAGE, 120, "룬 문양이 새겨진 로브", 0.15, 0.05));
+        armorShop.addItem(new Armor("신비의 가운", 450, 5, 8, PlayerClass.MAGE, 130, "신비한 힘이 깃든 가운", 0.2, 0.08));
+        armorShop.addItem(new Armor("대마법사의 의복", 900, 8, 12, PlayerClass.MAGE, 180, "대마법사만이 착용할 수 있는 의복", 0.25, 0.1));
+        
+        shops.add(armorShop);
+        
+        // 물약 상점
+        Shop potionShop = new Shop("물약 상점", ShopType.POTION);
+        potionShop.addItem(new HealthPotion("하급 체력 물약", 50, 30, 1, 1, "체력을 30 회복하는 물약"));
+        potionShop.addItem(new HealthPotion("중급 체력 물약", 120, 70, 1, 3, "체력을 70 회복하는 물약"));
+        potionShop.addItem(new HealthPotion("상급 체력 물약", 250, 150, 1, 5, "체력을 150 회복하는 물약"));
+        potionShop.addItem(new ManaPotion("하급 마나 물약", 60, 30, 1, 1, "마나를 30 회복하는 물약"));
+        potionShop.addItem(new ManaPotion("중급 마나 물약", 150, 70, 1, 3, "마나를 70 회복하는 물약"));
+        potionShop.addItem(new ManaPotion("상급 마나 물약", 300, 150, 1, 5, "마나를 150 회복하는 물약"));
+        potionShop.addItem(new StaminaPotion("활력 물약", 80, 40, 1, 1, "스태미나를 40 회복하는 물약"));
+        potionShop.addItem(new StaminaPotion("정신력 물약", 180, 80, 1, 3, "스태미나를 80 회복하는 물약"));
+        
+        shops.add(potionShop);
+        
+        // 특수 상점
+        Shop specialShop = new Shop("특수 아이템 상점", ShopType.SPECIAL);
+        specialShop.addItem(new Scroll("귀환 두루마리", 200, "마을로 순간이동하는 두루마리", 1));
+        specialShop.addItem(new Scroll("정화 두루마리", 300, "모든 상태 이상을 치료하는 두루마리", 3));
+        specialShop.addItem(new UniversalPotion("만능 물약", 500, 50, 50, 50, 1, 5, "체력, 마나, 스태미나를 모두 회복"));
+        specialShop.addItem(new Armor("행운의 반지", 1000, 0, 0, null, 100, "행운을 가져다주는 반지", 0.1, 0.05));
+        
+        shops.add(specialShop);
+        
+        // 탐색 중 특수 사건으로만 만나는 떠돌이 상인 (상점 메뉴에는 없다)
+        travelingMerchant = new Shop("떠돌이 상인", ShopType.SPECIAL);
+        travelingMerchant.addItem(new HealthPotion("신비한 체력 물약", 200, 100));
+        travelingMerchant.addItem(new ManaPotion("신비한 마나 물약", 180, 80));
+        travelingMerchant.addItem(new Weapon("전설의 검", 1000, 25, 10, null, 200, "전설로 전해지는 검", 0.2, 0.95));
+    }
+
+    private void initializeNPCs() {
+        npcs.add(new NPC("무기 상인", "좋은 무기들이 많이 있습니다. 직업에 맞는 무기를 선택하세요!", ShopType.WEAPON));
+        npcs.add(new NPC("방어구 상인", "튼튼한 방어구들이 준비되어 있습니다.", ShopType.ARMOR));
+        npcs.add(new NPC("물약 상인", "모험에 필요한 각종 물약을 판매합니다.", ShopType.POTION));
+        npcs.add(new NPC("특수 아이템 상인", "특별한 아이템들을 구경해 보세요!", ShopType.SPECIAL));
+        npcs.add(new NPC("경비병", "마을을 지켜주세요. 서쪽 숲에서 고블린들이 출몰하고 있습니다."));
+        npcs.add(new NPC("대장장이", "특별 주문도 받습니다. 원하는 무기가 있으면 말씀하세요."));
+        npcs.add(new NPC("여관 주인", "휴식하시겠습니까? 하루 숙박에 50골드입니다."));
+    }
+
+    public void start() {
+        RandomService.bind(random);
+        out.println("====================================");
+        out.println("          RPG 게임에 오신 것을 환영합니다!");
+        out.println("====================================");
+        
+        createPlayer();
+        isRunning = true;
+        gameState = GameState.MAIN_MENU;
+        
+        while (isRunning) {
+            switch (gameState) {
+                case MAIN_MENU:
+                    showMainMenu();
+                    break;
+                case EXPLORATION:
+                    showExplorationMenu();
+                    break;
+                case BATTLE:
+                    // 전투는 Battle 클래스에서 끝까지 처리하므로, 여기 왔다면 중간에 끊긴 전투다
+                    gameState = GameState.EXPLORATION;
+                    break;
+                case SHOP:
+                    showShopMenu();
+                    break;
+                case QUEST:
+                    showQuestMenu();
+                    break;
+                case INVENTORY:
+                    showInventoryMenu();
+                    break;
+                case GAME_OVER:
+                    handleGameOver();
+                    break;
+                case SAVE_LOAD:
+                    showSaveLoadMenu();
+                    break;
+            }
+        }
+    }
+
+    private void createPlayer() {
+        out.print("\n플레이어 이름을 입력하세요: ");
+        String name = input.nextLine();
+        
+        out.println("\n직업을 선택하세요:");
+        out.println("1. 전사 - 높은 체력과 공격력");
+        out.println("2. 궁수 - 빠른 공격과 회피");
+        out.println("3. 마법사 - 강력한 마법 공격");
+        out.print("선택: ");
+        
+        int classChoice = input.nextInt();
+        input.nextLine(); // 버퍼 비우기
+        
+        PlayerClass playerClass;
+        switch (classChoice) {
+            case 1:
+                playerClass = PlayerClass.WARRIOR;
+                break;
+            case 2:
+                playerClass = PlayerClass.ARCHER;
+                break;
+            case 3:
+                playerClass = PlayerClass.MAGE;
+                break;
+            default:
+                out.println("잘못된 선택입니다. 전사로 설정됩니다.");
+                playerClass = PlayerClass.WARRIOR;
+        }
+        
+        setPlayer(new Player(name, playerClass));
+        out.printf("\n%s %s 캐릭터가 생성되었습니다!\n", playerClass.getTitle(), name);
+    }
+
+    private void showMainMenu() {
+        out.println("\n====================================");
+        out.printf(" Day %d | %s | 위치: %s\n", gameDay, getTimeOfDay(), player.getCurrentLocation());
+        out.println("====================================");
+        out.println("1. 상태 보기");
+        out.println("2. 탐험하기");
+        out.println("3. 상점 가기");
+        out.println("4. 퀘스트");
+        out.println("5. 인벤토리");
+        out.println("6. NPC와 대화하기");
+        out.println("7. 휴식하기 (하루가 지납니다)");
+        out.println("8. 저장/불러오기");
+        out.println("9. 게임 종료");
+        out.print("선택: ");
+        
+        try {
+            int choice = input.nextInt();
+            input.nextLine(); // 버퍼 비우기
+            
+            switch (choice) {
+                case 1:
+                    showPlayerStatus();
+                    break;
+                case 2:
+                    gameState = GameState.EXPLORATION;
+                    break;
+                case 3:
+                    gameState = GameState.SHOP;
+                    break;
+                case 4:
+                    gameState = GameState.QUEST;
+                    break;
+                case 5:
+                    gameState = GameState.INVENTORY;
+                    break;
+                case 6:
+                    talkToNPC();
+                    break;
+                case 7:
+                    rest();
+                    break;
+                case 8:
+                    gameState = GameState.SAVE_LOAD;
+                    break;
+                case 9:
+                    isRunning = false;
+                    out.println("게임을 종료합니다.");
+                    break;
+                default:
+                    out.println("잘못된 선택입니다.");
+            }
+        } catch (InputMismatchException e) {
+            out.println("숫자를 입력해주세요.");
+            input.nextLine(); // 잘못된 입력 비우기
+        }
+    }
+
+    private String getTimeOfDay() {
+        return TimeOfDay.of(gameDay).getName();
+    }
+
+    private void showPlayerStatus() {
+        out.println("\n===== 캐릭터 상태 =====");
+        out.printf("이름: %s (%s)\n", player.getName(), player.getPlayerClass().getTitle());
+        out.printf("레벨: %d (경험치: %d/%d)\n", 
+            player.getLevel(), player.getExp(), player.getMaxExp());
+        out.printf("체력: %d/%d\n", player.getHp(), player.getMaxHp());
+        out.printf("마나: %d/%d\n", player.getMana(), player.getMaxMana());
+        out.printf("스태미나: %d/%d\n", player.getStamina(), player.getMaxStamina());
+        out.println("--- 능력치 ---");
+        out.printf("공격력: %d (+%d)\n", 
+            player.getBaseAttack(), player.getEquippedWeapon() != null ? player.getEquippedWeapon().getAttack() : 0);
+        out.printf("방어력: %d (+%d)\n", 
+            player.getBaseDefense(), player.getEquippedArmor() != null ? player.getEquippedArmor().getDefense() : 0);
+        out.printf("민첩성: %d\n", player.getAgility());
+        out.printf("지능: %d\n", player.getIntelligence());
+        out.printf("유효 능력치: 공격력 %d | 방어력 %d | 회피율 %.0f%%\n", 
+            player.getAttack(), player.getDefense(), player.getEvasion() * 100);
+        for (StatModifier modifier : player.getModifiers()) {
+            if (modifier.getSource() != ModifierSource.EQUIPMENT) {
+                out.println("  " + modifier);
+            }
+        }
+        out.println("--- 장비 ---");
+        out.printf("무기: %s\n", 
+            player.getEquippedWeapon() != null ? player.getEquippedWeapon().getName() + " (공격력 +" + player.getEquippedWeapon().getAttack() + ")" : "없음");
+        out.printf("방어구: %s\n", 
+            player.getEquippedArmor() != null ? player.getEquippedArmor().getName() + " (방어력 +" + player.getEquippedArmor().getDefense() + ")" : "없음");
+        out.printf("골드: %d G\n", player.getGold());
+        
+        // 상태 이상 표시
+        if (!player.getStatusEffects().isEmpty()) {
+            out.println("\n--- 상태 이상 ---");
+            StatusEffects effects = player.getStatusEffects();
+            for (int bits = effects.getMask(); bits != 0; bits &= bits - 1) {
+                StatusEffectType type = StatusEffects.typeOf(Integer.numberOfTrailingZeros(bits));
+                out.printf("%s: %s (%d턴 남음%s)\n", type.getName(), type.getDescription(), effects.getRemainingTurns(type),
+                    effects.getStacks(type) > 1 ? ", " + effects.getStacks(type) + "중첩" : "");
+            }
+        }
+        
+        out.println("================");
+        
+        out.println("\n계속하려면 엔터를 누르세요...");
+        input.nextLine();
+    }
+
+    private void showExplorationMenu() {
+        out.println("\n===== 탐험 =====");
+        out.println("현재 위치: " + player.getCurrentLocation());
+        out.println("1. 마을로 돌아가기");
+        
+        // 해금된 지역만 표시
+        List<String> unlockedLocations = player.getUnlockedLocations();
+        int option = 2;
+        for (String location : unlockedLocations) {
+            if (!location.equals("마을") && !location.equals(player.getCurrentLocation())) {
+                out.printf("%d. %s로 이동\n", option++, location);
+            }
+        }
+        
+        out.printf("%d. 주변 탐색하기\n", option++);
+        int autoOption = option++;
+        out.printf("%d. 자동 탐색\n", autoOption);
+        out.print("선택: ");
+        
+        try {
+            int choice = input.nextInt();
+            input.nextLine(); // 버퍼 비우기
+            
+            if (choice == 1) {
+                player.setCurrentLocation("마을");
+                gameState = GameState.MAIN_MENU;
+                out.println("마을로 돌아왔습니다.");
+            } 
+            else if (choice == autoOption) {
+                configureAutoExplore();
+            } 
+            else if (choice > 1 && choice < autoOption) {
+                String[] locations = unlockedLocations.stream()
+                    .filter(l -> !l.equals("마을") && !l.equals(player.getCurrentLocation()))
+                    .toArray(String[]::new);
+                
+                if (choice - 2 < locations.length) {
+                    moveToLocation(locations[choice - 2]);
+                } else {
+                    exploreArea();
+                }
+            } 
+            else if (choice == autoOption - 1) {
+                exploreArea();
+            } 
+            else {
+                out.println("잘못된 선택입니다.");
+            }
+        } catch (InputMismatchException e) {
+            out.println("숫자를 입력해주세요.");
+            input.nextLine(); // 잘못된 입력 비우기
+        }
+    }
+
+    private void configureAutoExplore() {
+        out.println("\n===== 자동 탐색 설정 =====");
+        try {
+            out.print("탐색 횟수 (0: 스태미나가 떨어질 때까지): ");
+            int runs = input.nextInt();
+            input.nextLine();
+            List<Skill> skills = SkillRegistry.DUEL.available(player.getPlayerClass(), player.getLevel());
+            for (int i = 0; i < skills.size(); i++) {
+                out.printf("%d. %s (마나: %d)\n", i + 1, skills.get(i).getName(), skills.get(i).getManaCost());
+            }
+            out.print("사용할 스킬 번호 (0: 기본 공격만): ");
+            int skillSlot = input.nextInt();
+            input.nextLine();
+            out.print("물약을 마실 체력 % (0: 사용 안 함): ");
+            int potionPercent = Math.max(0, Math.min(100, input.nextInt()));
+            input.nextLine();
+            out.print("휴식하러 돌아갈 체력 % (0~100): ");
+            int retreatPercent = Math.max(0, Math.min(100, input.nextInt()));
+            input.nextLine();
+            
+            AutoExploreSummary summary = autoExplore(
+                new AutoExplorePolicy(skillSlot, potionPercent / 100.0, retreatPercent / 100.0), Math.max(0, runs));
+            summary.print(out);
+        } catch (InputMismatchException e) {
+            out.println("숫자를 입력해주세요.");
+            input.nextLine(); // 잘못된 입력 비우기
+        }
+    }
+    
+    // 메뉴 없이 현재 지역을 반복 탐색한다 (runs가 0이면 스태미나가 떨어질 때까지).
+    // 탐색과 전투는 평소 로직 그대로 진행하되 출력은 버리고, 끝나면 요약만 돌려준다.
+    AutoExploreSummary autoExplore(AutoExplorePolicy policy, int runs) {
+        AutoExploreSummary summary = new AutoExploreSummary(player, gameDay);
+        PrintStream savedOut = out;
+        ActionPolicy savedPolicy = battlePolicy;
+        boolean savedHeadless = headless;
+        boolean savedAutoSave = autoSave;
+        
+        out = SilentPrintStream.INSTANCE;
+        battlePolicy = policy;
+        headless = true;
+        autoSave = false;
+        player.setSilent(true);
+        autoExploreSummary = summary;
+        try {
+            while (runs == 0 || summary.getRuns() < runs) {
+                if (needsRest(policy)) {
+                    if (runs == 0) {
+                        summary.setStopReason(player.getStamina() < 20 ? "스태미나 소진" : "체력 부족으로 후퇴");
+                        break;
+                    }
+                    rest();
+                    summary.recordRest();
+                    // 쉬어도 기준을 채우지 못하면 계속 쉬기만 하게 되므로 멈춘다
+                    if (needsRest(policy)) {
+                        summary.setStopReason("휴식 후에도 후퇴 기준 미달");
+                        break;
+                    }
+                    continue;
+                }
+                
+                Set<Item> before = Collections.newSetFromMap(new IdentityHashMap<>());
+                before.addAll(player.getInventory());
+                gameState = GameState.EXPLORATION;
+                exploreArea();
+                summary.recordRun(before, player.getInventory());
+                
+                if (gameState == GameState.GAME_OVER) {
+                    summary.setStopReason("전투 패배");
+                    break;
+                }
+            }
+        } finally {
+            autoExploreSummary = null;
+            out = savedOut;
+            battlePolicy = savedPolicy;
+            headless = savedHeadless;
+            autoSave = savedAutoSave;
+            player.setSilent(savedHeadless);
+        }
+        summary.finish(player, gameDay);
+        return summary;
+    }
+    
+    private boolean needsRest(AutoExplorePolicy policy) {
+        return player.getHp() < player.getMaxHp() * policy.getRetreatHpRatio() || player.getStamina() < 20;
+    }
+    
+    void moveToLocation(String locationName) {
+        if (player.getStamina() < 15) {
+            out.println("스태미나가 부족하여 이동할 수 없습니다.");
+            return;
+        }
+
+        Location destination = worldMap.get(locationName);
+        if (destination == null) {
+            out.println("존재하지 않는 지역입니다.");
+            return;
+        }
+        
+        if (!destination.isSuitableFor(player.getLevel())) {
+            out.println("이 지역은 레벨 " + destination.getMinLevel() + " 이상 " + 
+                              destination.getMaxLevel() + " 이하의 플레이어에게 적합합니다.");
+            return;
+        }
+
+        player.useStamina(15);
+        player.setCurrentLocation(locationName);
+        out.println(locationName + "에 도착했습니다.");
+
+        if (random.nextDouble() < 0.5) {
+            triggerTravelEvent();
+        }
+    }
+
+    private void triggerTravelEvent() {
+        rollEvent(EventContext.TRAVEL, worldMap.get(player.getCurrentLocation()));
+    }
+
+    void exploreArea() {
+        Location currentLoc = worldMap.get(player.getCurrentLocation());
+        out.println("\n" + currentLoc.getName() + "을(를) 탐색합니다...");
+        
+        if (player.getStamina() < 20) {
+            out.println("스태미나가 부족하여 탐색할 수 없습니다.");
+            return;
+        }
+        player.useStamina(20);
+        player.increaseConsecutiveBattles();
+        
+        rollEvent(EventContext.EXPLORE, currentLoc);
+        
+        // 자동 저장 체크
+        battleCount++;
+        if (autoSave && battleCount % autoSaveInterval == 0) {
+            autoSave();
+        }
+    }
+
+    // 숲에서는 일정 확률로 고블린 무리를 만난다 (레벨이 오를수록 무리가 커진다). 무리가 아니면 null
+    private List<Monster> rollMonsterPack(Location location) {
+        if (location.getType() != LocationType.FOREST || random.nextDouble() >= PACK_CHANCE) {
+            return null;
+        }
+        SpawnBand goblins = packIndex.band(location, player.getLevel());
+        if (goblins.isEmpty()) {
+            return null;
+        }
+        
+        int size = 2 + random.nextInt(Math.min(3, player.getLevel()));
+        List<Monster> pack = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            pack.add(monsterPool.spawn(goblins.pick(random)));
+        }
+        return pack;
+    }
+    
+    // 조우할 때마다 정의대로 채운 개체 (이전 전투의 피해가 남지 않도록)
+    private Monster getRandomMonsterForLocation(Location location) {
+        return monsterPool.spawn(getSpawnBand(location).pick(random));
+    }
+    
+    // 전투가 끝난 개체를 풀로 돌려보낸다
+    void releaseMonster(Monster monster) {
+        monsterPool.release(monster);
+    }
+    
+    // 현재 레벨로 이 지역에서 만날 수 있는 몬스터와 확률 (맞는 몬스터가 없으면 전체 몬스터 중에서 만난다)
+    SpawnBand getSpawnBand(Location location) {
+        SpawnBand band = spawnIndex.band(location, player.getLevel());
+        return band.isEmpty() ? anyMonster : band;
+    }
+
+    public Item generateRandomItem() {
+        int roll = random.nextInt(100);
+        
+        if (roll < 40) {
+            return new HealthPotion("체력 물약", 0, 30 + random.nextInt(20));
+        } else if (roll < 70) {
+            return new ManaPotion("마나 물약", 0, 20 + random.nextInt(15));
+        } else if (roll < 85) {
+            return new StaminaPotion("스태미나 물약", 0, 25 + random.nextInt(15));
+        } else {
+            return generateRandomEquipment();
+        }
+    }
+    
+    // 아이템 레벨은 플레이어 레벨 근처에서 정해지고 레벨 제한이 있으므로 플레이어 레벨을 넘지 않는다
+    Item generateRandomEquipment() {
+        int itemLevel = Math.max(1, Math.min(player.getLevel(), player.getLevel() - 1 + random.nextInt(3)));
+        return ItemGenerator.SHARED.generate(random, itemLevel);
+    }
+
+    // 지역과 시간대, 레벨에 맞는 사건표를 굴려 등록된 처리기에 넘긴다 (굴림 자체는 할당이 없다)
+    void rollEvent(EventContext context, Location location) {
+        EventTable table = location.getEvents().table(context, TimeOfDay.of(gameDay), player.getLevel());
+        eventHandlers[table.roll(random).ordinal()].handle(context, location);
+    }
+    
+    private void registerEventHandlers() {
+        eventHandlers[GameEvent.BATTLE.ordinal()] = this::encounterMonster;
+        eventHandlers[GameEvent.ITEM.ordinal()] = this::findItem;
+        eventHandlers[GameEvent.SPECIAL.ordinal()] = (context, location) -> rollEvent(EventContext.SPECIAL, location);
+        eventHandlers[GameEvent.NOTHING.ordinal()] = (context, location) -> 
+            out.println(context == EventContext.TRAVEL ? "\n조용히 이동했습니다..." : "\n아무것도 발견하지 못했습니다...");
+        eventHandlers[GameEvent.FOUNTAIN.ordinal()] = (context, location) -> drinkFromFountain();
+        eventHandlers[GameEvent.TREASURE.ordinal()] = (context, location) -> openTreasure();
+        eventHandlers[GameEvent.MERCHANT.ordinal()] = (context, location) -> meetMerchant();
+        eventHandlers[GameEvent.TRAP.ordinal()] = (context, location) -> springTrap();
+        eventHandlers[GameEvent.RUINS.ordinal()] = (context, location) -> exploreRuins();
+    }
+    
+    private void encounterMonster(EventContext context, Location location) {
+        // 무리는 탐색 중에만 만난다
+        if (context == EventContext.EXPLORE) {
+            List<Monster> pack = rollMonsterPack(location);
+            if (pack != null) {
+                out.println("\n" + PACK_KIND + " 무리 " + pack.size() + "마리를 만났습니다!");
+                
+                if (packBattle == null) {
+                    packBattle = new PackBattle(this);
+                }
+                gameState = GameState.BATTLE;
+                packBattle.start(player, pack);
+                return;
+            }
+        }
+        
+        Monster monster = getRandomMonsterForLocation(location);
+        out.println("\n" + (context == EventContext.TRAVEL ? "이동 중 " : "") + monster.getName() + "을(를) 만났습니다!");
+        
+        gameState = GameState.BATTLE;
+        getBattle().start(player, monster);
+    }
+    
+    private void findItem(EventContext context, Location location) {
+        Item item = generateRandomItem();
+        out.println("\n" + (context == EventContext.TRAVEL ? "이동 중 " : "") + item.getName() + "을(를) 발견했습니다!");
+        player.addItem(item);
+        
+        if (context == EventContext.EXPLORE && random.nextDouble() < EXTRA_ITEM_CHANCE) {
+            Item extraItem = generateRandomItem();
+            out.println("추가로 " + extraItem.getName() + "을(를) 발견했습니다!");
+            player.addItem(extraItem);
+        }
+    }
+    
+    private void drinkFromFountain() {
+        out.println("\n신비한 분수가 발견되었습니다! 체력과 마나가 모두 회복됩니다.");
+        player.setHp(player.getMaxHp());
+        player.setMana(player.getMaxMana());
+    }
+    
+    private void openTreasure() {
+        out.println("\n보물 상자를 발견했습니다!");
+        int goldFound = 50 + random.nextInt(100);
+        player.gainGold(goldFound);
+        out.println(goldFound + " 골드를 얻었습니다!");
+    }
+    
+    private void meetMerchant() {
+        out.println("\n떠돌이 상인을 만났습니다. 특별한 아이템을 판매하고 있습니다.");
+        if (!headless) {
+            showShopMenu(travelingMerchant);
+        }
+    }
+    
+    private void springTrap() {
+        out.println("\n함정에 걸렸습니다! 피해를 입습니다.");
+        int damage = 10 + random.nextInt(20);
+        player.takeDamage(damage);
+        out.println(damage + " 피해를 입었습니다!");
+    }
+    
+    private void exploreRuins() {
+        out.println("\n고대의 유적을 발견했습니다. 경험치를 얻습니다!");
+        int expGain = 30 + random.nextInt(50);
+        player.gainExp(expGain);
+        out.println(expGain + " 경험치를 얻었습니다!");
+    }
+
+    private void showShopMenu() {
+        out.println("\n===== 상점 =====");
+        out.println("1. 무기 상점");
+        out.println("2. 방어구 상점");
+        out.println("3. 물약 상점");
+        out.println("4. 특수 아이템 상점");
+        out.println("5. 상점 나가기");
+        out.print("선택: ");
+        
+        int choice = input.nextInt();
+        input.nextLine(); // 버퍼 비우기
+        
+        if (choice >= 1 && choice <= 4) {
+            showShopMenu(shops.get(choice - 1));
+        } else if (choice == 5) {
+            gameState = GameState.MAIN_MENU;
+        } else {
+            out.println("잘못된 선택입니다.");
+        }
+    }
+
+    private void showShopMenu(Shop shop) {
+        boolean inShop = true;
+        
+        while (inShop) {
+            out.println("\n===== " + shop.getName() + " =====");
+            out.println("보유 골드: " + player.getGold() + " G");
+            out.println("1. 아이템 구매");
+            out.println("2. 아이템 판매");
+            out.println("3. 장비 수리");
+            out.println("4. 상점 나가기");
+            out.print("선택: ");
+            
+            int choice = input.nextInt();
+            input.nextLine(); // 버퍼 비우기
+            
+            switch (choice) {
+                case 1:
+                    buyItems(shop);
+                    break;
+                case 2:
+                    sellItems();
+                    break;
+                case 3:
+                    repairEquipment();
+                    break;
+                case 4:
+                    inShop = false;
+                    break;
+                default:
+                    out.println("잘못된 선택입니다.");
+            }
+        }
+    }
+
+    private void buyItems(Shop shop) {
+        List<Item> availableItems = getBuyableItems(shop);
+        
+        if (availableItems.isEmpty()) {
+            out.println("\n현재 구매 가능한 아이템이 없습니다.");
+            return;
+        }
+        
+        out.println("\n===== 구매 가능한 아이템 =====");
+        for (int i = 0; i < availableItems.size(); i++) {
+            Item item = availableItems.get(i);
+            out.printf("%d. %s - %d G", i + 1, item.getName(), item.getPrice());
+            
+            if (item instanceof Equipment) {
+                Equipment equip = (Equipment) item;
+                out.printf(" (공격력: +%d, 방어력: +%d, 레벨 제한: %d)", 
+                    equip.getAttack(), equip.getDefense(), equip.getLevelRequirement());
+            } else if (item instanceof Potion) {
+                Potion potion = (Potion) item;
+                out.printf(" (효과: %s +%d)", 
+                    potion instanceof HealthPotion ? "체력" : 
+                    potion instanceof ManaPotion ? "마나" : "스태미나", 
+                    potion.getAmount());
+            }
+            
+            out.println();
+        }
+        
+        out.print("구매할 아이템 번호를 선택하세요 (0: 취소): ");
+        int choice = input.nextInt();
+        input.nextLine(); // 버퍼 비우기
+        
+        if (choice > 0 && choice <= availableItems.size()) {
+            buyItem(availableItems.get(choice - 1));
+        }
+    }
+    
+    // 직업 제한에 맞는 상점 물품
+    List<Item> getBuyableItems(Shop shop) {
+        return shop.getItems().stream()
+            .filter(item -> {
+                if (item instanceof Equipment) {
+                    Equipment equip = (Equipment) item;
+                    return equip.getRequiredClass() == null || 
+                           equip.getRequiredClass() == player.getPlayerClass();
+                }
+                return true;
+            })
+            .collect(Collectors.toList());
+    }
+    
+    boolean buyItem(Item selectedItem) {
+        if (selectedItem.getPrice() > player.getGold()) {
+            out.println("골드가 부족합니다!");
+            return false;
+        }
+        
+        if (selectedItem instanceof Equipment) {
+            Equipment equip = (Equipment) selectedItem;
+            if (player.getLevel() < equip.getLevelRequirement()) {
+                out.println("레벨이 부족하여 구매할 수 없습니다!");
+                return false;
+            }
+        }
+        
+        player.addItem(selectedItem);
+        player.spendGold(selectedItem.getPrice());
+        out.println(selectedItem.getName() + "을(를) 구매했습니다!");
+        return true;
+    }
+
+    private void sellItems() {
+        List<Item> sellableItems = player.getInventory().stream()
+            .filter(item -> item.getPrice() > 0)
+            .collect(Collectors.toList());
+        
+        if (sellableItems.isEmpty()) {
+            out.println("판매할 수 있는 아이템이 없습니다.");
+            return;
+        }
+        
+        out.println("\n===== 판매 가능한 아이템 =====");
+        for (int i = 0; i < sellableItems.size(); i++) {
+            Item item = sellableItems.get(i);
+            int sellPrice = item.getSellPrice();
+            out.printf("%d. %s - %d G\n", i + 1, item.getName(), sellPrice);
+        }
+        
+        out.print("판매할 아이템 번호를 선택하세요 (0: 취소): ");
+        int choice = input.nextInt();
+        input.nextLine();
+        
+        if (choice > 0 && choice <= sellableItems.size()) {
+            Item selectedItem = sellableItems.get(choice - 1);
+            int sellPrice = selectedItem.getSellPrice();
+            
+            player.removeItem(selectedItem);
+            player.gainGold(sellPrice);
+            out.println(selectedItem.getName() + "을(를) " + sellPrice + " G에 판매했습니다!");
+        }
+    }
+    
+    private void repairEquipment() {
+        List<Equipment> equipments = new ArrayList<>();
+        if (player.getEquippedWeapon() != null) equipments.add(player.getEquippedWeapon());
+        if (player.getEquippedArmor() != null) equipments.add(player.getEquippedArmor());
+        
+        equipments.addAll(player.getInventory().stream()
+            .filter(item -> item instanceof Equipment)
+            .map(item -> (Equipment) item)
+            .collect(Collectors.toList()));
+        
+        if (equipments.isEmpty()) {
+            out.println("수리할 장비가 없습니다.");
+            return;
+        }
+        
+        out.println("\n===== 수리 가능한 장비 =====");
+        for (int i = 0; i < equipments.size(); i++) {
+            Equipment equip = equipments.get(i);
+            int repairCost = (int)(equip.getPrice() * 0.1 * 
+            	    (1.0 - (equip.getDurability() / (double)equip.getMaxDurability())));
+            out.printf("%d. %s - 내구도 %d/%d (수리 비용: %d G)\n", 
+                i + 1, equip.getName(), equip.getDurability(), equip.getMaxDurability(), repairCost);
+        }
+        
+        out.print("수리할 장비 번호를 선택하세요 (0: 취소): ");
+        int choice = input.nextInt();
+        input.nextLine();
+        
+        if (choice > 0 && choice <= equipments.size()) {
+            Equipment selectedEquip = equipments.get(choice - 1);
+            int repairCost = (int)(selectedEquip.getPrice() * 0.1 * 
+                (1.0 - (selectedEquip.getDurability() / (double)selectedEquip.getMaxDurability())));
+            
+            if (player.getGold() < repairCost) {
+                out.println("골드가 부족합니다!");
+                return;
+            }
+            
+            selectedEquip.repair();
+            player.spendGold(repairCost);
+            out.println(selectedEquip.getName() + "을(를) 수리했습니다! (" + repairCost + " G 사용)");
+        }
+    }
+
+    private void showQuestMenu() {
+        out.println("\n===== 퀘스트 =====");
+        out.println("1. 수락한 퀘스트 보기");
+        out.println("2. 새로운 퀘스트 보기");
+        out.println("3. 퀘스트 보상 받기");
+        out.println("4. 퀘스트 메뉴 나가기");
+        out.print("선택: ");
+        
+        int choice = input.nextInt();
+        input.nextLine();
+        
+        switch (choice) {
+            case 1:
+                showActiveQuests();
+                break;
+            case 2:
+                showAvailableQuests();
+                break;
+            case 3:
+                claimQuestRewards();
+                break;
+            case 4:
+                gameState = GameState.MAIN_MENU;
+                break;
+            default:
+                out.println("잘못된 선택입니다.");
+        }
+    }
+
+    private void showActiveQuests() {
+        List<Quest> activeQuests = player.getActiveQuests();
+        
+        if (activeQuests.isEmpty()) {
+            out.println("\n수락한 퀘스트가 없습니다.");
+            return;
+        }
+        
+        out.println("\n===== 수락한 퀘스트 =====");
+        for (int i = 0; i < activeQuests.size(); i++) {
+            Quest quest = activeQuests.get(i);
+            out.printf("%d. %s - %s\n", i + 1, quest.getTitle(), quest.getDescription());
+            out.printf("   진행 상황: %d/%d\n", quest.getCurrentProgress(), quest.getRequiredProgress());
+        }
+        
+        out.println("\n계속하려면 엔터를 누르세요...");
+        input.nextLine();
+    }
+
+    private void showAvailableQuests() {
+        List<Quest> availableQuests = getAvailableQuests();
+        
+        if (availableQuests.isEmpty()) {
+            out.println("\n새로운 퀘스트가 없습니다.");
+            return;
+        }
+        
+        out.println("\n===== 새로운 퀘스트 =====");
+        for (int i = 0; i < availableQuests.size(); i++) {
+            Quest quest = availableQuests.get(i);
+            out.printf("%d. %s - %s\n", i + 1, quest.getTitle(), quest.getDescription());
+            out.printf("   보상: %d 경험치, %d 골드\n", quest.getExpReward(), quest.getGoldReward());
+            out.printf("   권장 레벨: %d\n", quest.getLevelRequirement());
+        }
+        
+        out.print("\n수락할 퀘스트 번호를 선택하세요 (0: 취소): ");
+        int choice = input.nextInt();
+        input.nextLine();
+        
+        if (choice > 0 && choice <= availableQuests.size()) {
+            Quest selectedQuest = availableQuests.get(choice - 1);
+            player.acceptQuest(selectedQuest);
+            out.println("\n퀘스트 '" + selectedQuest.getTitle() + "'를 수락했습니다!");
+        }
+    }
+
+    // 수락할 수 있는 퀘스트
+    List<Quest> getAvailableQuests() {
+        return quests.stream()
+            .filter(q -> !player.hasActiveQuest(q) && 
+                !player.hasCompletedQuest(q) &&
+                q.getLevelRequirement() <= player.getLevel())
+            .collect(Collectors.toList());
+    }
+    
+    // 보상을 받을 수 있는 퀘스트
+    List<Quest> getCompletableQuests() {
+        return player.getActiveQuests().stream()
+            .filter(Quest::isCompleted)
+            .collect(Collectors.toList());
+    }
+
+    private void claimQuestRewards() {
+        List<Quest> completableQuests = getCompletableQuests();
+        
+        if (completableQuests.isEmpty()) {
+            out.println("\n완료한 퀘스트가 없습니다.");
+            return;
+        }
+        
+        out.println("\n===== 완료한 퀘스트 =====");
+        for (int i = 0; i < completableQuests.size(); i++) {
+            Quest quest = completableQuests.get(i);
+            out.printf("%d. %s - %s\n", i + 1, quest.getTitle(), quest.getDescription());
+            out.printf("   보상: %d 경험치, %d 골드\n", quest.getExpReward(), quest.getGoldReward());
+        }
+        
+        out.print("\n보상을 받을 퀘스트 번호를 선택하세요 (0: 취소): ");
+        int choice = input.nextInt();
+        input.nextLine();
+        
+        if (choice > 0 && choice <= completableQuests.size()) {
+            claimQuestReward(completableQuests.get(choice - 1));
+        }
+    }
+    
+    void claimQuestReward(Quest completedQuest) {
+        player.completeQuest(completedQuest);
+        
+        out.println("\n퀘스트 '" + completedQuest.getTitle() + "' 완료!");
+        out.printf("%d 경험치와 %d 골드를 얻었습니다!\n", 
+            completedQuest.getExpReward(), completedQuest.getGoldReward());
+        
+        if (completedQuest.getRewardItem() != null) {
+            out.println("추가 보상: " + completedQuest.getRewardItem().getName());
+        }
+    }
+
+    private void showInventoryMenu() {
+        boolean inInventory = true;
+        
+        while (inInventory) {
+            out.println("\n===== 인벤토리 =====");
+            out.println("보유 골드: " + player.getGold() + " G");
+            out.println("1. 아이템 사용");
+            out.println("2. 장비 착용");
+            out.println("3. 장비 해제");
+            out.println("4. 스탯 포인트 분배");
+            out.println("5. 인벤토리 나가기");
+            out.print("선택: ");
+            
+            try {
+                int choice = input.nextInt();
+                input.nextLine();
+                
+                switch (choice) {
+                    case 1:
+                        useItem();
+                        break;
+                    case 2:
+                        equipItem();
+                        break;
+                    case 3:
+                        unequipItem();
+                        break;
+                    case 4:
+                        distributeStatPoints();
+                        break;
+                    case 5:
+                        inInventory = false;
+                        gameState = GameState.MAIN_MENU;
+                        return;
+                    default:
+                        out.println("잘못된 선택입니다.");
+                }
+            } catch (InputMismatchException e) {
+                out.println("숫자를 입력해주세요.");
+                input.nextLine();
+            }
+        }
+    }
+
+    private void useItem() {
+        List<Potion> potions = player.getInventory().stream()
+            .filter(item -> item instanceof Potion)
+            .map(item -> (Potion) item)
+            .collect(Collectors.toList());
+        
+        if (potions.isEmpty()) {
+            out.println("\n사용할 수 있는 아이템이 없습니다.");
+            return;
+        }
+        
+        out.println("\n===== 사용 가능한 아이템 =====");
+        for (int i = 0; i < potions.size(); i++) {
+            Potion potion = potions.get(i);
+            String effect = potion instanceof HealthPotion ? "체력 +" + potion.getAmount() :
+                          potion instanceof ManaPotion ? "마나 +" + potion.getAmount() :
+                          "스태미나 +" + potion.getAmount();
+            out.printf("%d. %s - %s\n", i + 1, potion.getName(), effect);
+        }
+        
+        out.print("\n사용할 아이템 번호를 선택하세요 (0: 취소): ");
+        int choice = input.nextInt();
+        input.nextLine();
+        
+        if (choice > 0 && choice <= potions.size()) {
+            Potion selectedPotion = potions.get(choice - 1);
+            selectedPotion.use(player);
+            player.removeItem(selectedPotion);
+            out.println("\n" + selectedPotion.getName() + "을(를) 사용했습니다!");
+        }
+    }
+
+    private void equipItem() {
+        List<Equipment> equipments = getEquippableItems();
+        
+        if (equipments.isEmpty()) {
+            out.println("\n착용할 수 있는 장비가 없습니다.");
+            return;
+        }
+        
+        out.println("\n===== 착용 가능한 장비 =====");
+        for (int i = 0; i < equipments.size(); i++) {
+            Equipment equip = equipments.get(i);
+            String type = equip instanceof Weapon ? "무기" : "방어구";
+            out.printf("%d. %s (%s) - 공격력: +%d, 방어력: +%d, 레벨 제한: %d\n", 
+                i + 1, equip.getName(), type, equip.getAttack(), equip.getDefense(), 
+                equip.getLevelRequirement());
+        }
+        
+        out.print("\n착용할 장비 번호를 선택하세요 (0: 취소): ");
+        int choice = input.nextInt();
+        input.nextLine();
+        
+        if (choice > 0 && choice <= equipments.size()) {
+            equipItem(equipments.get(choice - 1));
+        }
+    }
+    
+    // 레벨 제한을 만족하는 인벤토리 장비
+    List<Equipment> getEquippableItems() {
+        return player.getInventory().stream()
+            .filter(item -> item instanceof Equipment)
+            .map(item -> (Equipment) item)
+            .filter(equip -> player.getLevel() >= equip.getLevelRequirement())
+            .collect(Collectors.toList());
+    }
+    
+    void equipItem(Equipment selectedEquip) {
+        player.equip(selectedEquip);
+        out.println("\n" + selectedEquip.getName() + "을(를) 착용했습니다!");
+    }
+
+    private void unequipItem() {
+        out.println("\n===== 현재 착용 중인 장비 =====");
+        out.println("1. 무기: " + 
+            (player.getEquippedWeapon() != null ? player.getEquippedWeapon().getName() : "없음"));
+        out.println("2. 방어구: " + 
+            (player.getEquippedArmor() != null ? player.getEquippedArmor().getName() : "없음"));
+        out.print("\n해제할 장비 번호를 선택하세요 (0: 취소): ");
+        
+        int choice = input.nextInt();
+        input.nextLine();
+        
+        if (choice == 1) {
+            if (player.getEquippedWeapon() != null) {
+                Equipment unequipped = player.unequipWeapon();
+                out.println("\n" + unequipped.getName() + "을(를) 해제했습니다!");
+            } else {
+                out.println("\n착용 중인 무기가 없습니다.");
+            }
+        } else if (choice == 2) {
+            if (player.getEquippedArmor() != null) {
+                Equipment unequipped = player.unequipArmor();
+                out.println("\n" + unequipped.getName() + "을(를) 해제했습니다!");
+            } else {
+                out.println("\n착용 중인 방어구가 없습니다.");
+            }
+        }
+    }
+    
+    private void distributeStatPoints() {
+        if (player.getStatPoints() <= 0) {
+            out.println("분배할 스탯 포인트가 없습니다.");
+            return;
+        }
+        
+        boolean distributing = true;
+        
+        while (distributing && player.getStatPoints() > 0) {
+            out.println("\n===== 스탯 포인트 분배 =====");
+            out.println("보유 포인트: " + player.getStatPoints());
+            out.println("1. 공격력 (" + player.getBaseAttack() + ")");
+            out.println("2. 방어력 (" + player.getBaseDefense() + ")");
+            out.println("3. 민첩성 (" + player.getAgility() + ")");
+            out.println("4. 지능 (" + player.getIntelligence() + ")");
+            out.println("5. 체력 (" + player.getMaxHp() + ")");
+            out.println("6. 분배 종료");
+            out.println("7. 스킬 숙련");
+            out.print("선택: ");
+            
+            int choice = input.nextInt();
+            input.nextLine();
+            
+            switch (choice) {
+                case 1:
+                    player.distributeStatPoint("공격력");
+                    out.println("공격력이 증가했습니다! (" + player.getBaseAttack() + ")");
+                    break;
+                case 2:
+                    player.distributeStatPoint("방어력");
+                    out.println("방어력이 증가했습니다! (" + player.getBaseDefense() + ")");
+                    break;
+                case 3:
+                    player.distributeStatPoint("민첩성");
+                    out.println("민첩성이 증가했습니다! (" + player.getAgility() + ")");
+                    break;
                 case 4:
-                    gameState = GameState.QUEST;
+                    player.distributeStatPoint("지능");
+                    out.println("지능이 증가했습니다! (" + player.getIntelligence() + ")");
                     break;
                 case 5:
-                    gameState = GameState.INVENTORY;
+                    player.distributeStatPoint("체력");
+                    out.println("최대 체력이 증가했습니다! (" + player.getMaxHp() + ")");
                     break;
                 case 6:
-                    talkToNPC();
+                    distributing = false;
                     break;
                 case 7:
-                    rest();
+                    trainSkill();
                     break;
-                case 8:
-                    gameState = GameState.SAVE_LOAD;
+                default:
+                    out.println("잘못된 선택입니다.");
+            }
+        }
+    }
+    
+    private void trainSkill() {
+        List<Skill> skills = SkillRegistry.DUEL.available(player.getPlayerClass(), player.getLevel());
+        if (skills.isEmpty()) {
+            out.println("익힐 수 있는 스킬이 없습니다.");
+            return;
+        }
+        for (int i = 0; i < skills.size(); i++) {
+            String name = skills.get(i).getName();
+            out.printf("%d. %s (Lv.%d/%d)\n", i + 1, name, player.getSkillLevel(name), Skill.MAX_LEVEL);
+        }
+        out.print("선택: ");
+        int choice = input.nextInt();
+        input.nextLine();
+        if (choice < 1 || choice > skills.size()) {
+            out.println("잘못된 선택입니다.");
+            return;
+        }
+        String name = skills.get(choice - 1).getName();
+        if (player.trainSkill(name)) {
+            out.printf("%s 레벨이 올랐습니다! (Lv.%d)\n", name, player.getSkillLevel(name));
+        } else {
+            out.println("더 이상 올릴 수 없습니다.");
+        }
+    }
+
+    private void talkToNPC() {
+        out.println("\n===== NPC 목록 =====");
+        for (int i = 0; i < npcs.size(); i++) {
+            out.printf("%d. %s\n", i + 1, npcs.get(i).getName());
+        }
+        
+        out.print("\n대화할 NPC 번호를 선택하세요 (0: 취소): ");
+        int choice = input.nextInt();
+        input.nextLine();
+        
+        if (choice > 0 && choice <= npcs.size()) {
+            NPC npc = npcs.get(choice - 1);
+            out.println("\n[" + npc.getName() + "] " + npc.getDialogue());
+            
+            if (npc.getShopType() != null) {
+                out.print("상점을 이용하시겠습니까? (1: 예, 2: 아니오): ");
+                int shopChoice = input.nextInt();
+                input.nextLine();
+                
+                if (shopChoice == 1) {
+                    Shop npcShop = shops.stream()
+                        .filter(shop -> shop.getType() == npc.getShopType())
+                        .findFirst()
+                        .orElse(null);
+                    
+                    if (npcShop != null) {
+                        gameState = GameState.SHOP;
+                        showShopMenu(npcShop);
+                    }
+                }
+            } else if (npc.getName().equals("경비병")) {
+                out.println("\n경비병: 서쪽 숲에서 고블린들이 마을을 위협하고 있습니다. 처치해 주시겠습니까?");
+                out.println("1. 퀘스트 수락하기");
+                out.println("2. 거절하기");
+                out.print("선택: ");
+                
+                int questChoice = input.nextInt();
+                input.nextLine();
+                
+                if (questChoice == 1) {
+                    Quest goblinQuest = quests.get(0);
+                    if (!player.hasActiveQuest(goblinQuest) && !player.hasCompletedQuest(goblinQuest)) {
+                        player.acceptQuest(goblinQuest);
+                        out.println("\n퀘스트 '" + goblinQuest.getTitle() + "'를 수락했습니다!");
+                    } else {
+                        out.println("\n이미 해당 퀘스트를 수락했거나 완료했습니다.");
+                    }
+                }
+            } else if (npc.getName().equals("여관 주인")) {
+                out.print("\n하루 숙박에 50골드입니다. 휴식하시겠습니까? (1: 예, 2: 아니오): ");
+                int restChoice = input.nextInt();
+                input.nextLine();
+                
+                if (restChoice == 1) {
+                    if (player.getGold() >= 50) {
+                        player.spendGold(50);
+                        rest();
+                    } else {
+                        out.println("골드가 부족합니다!");
+                    }
+                }
+            }
+        }
+        
+        out.println("\n계속하려면 엔터를 누르세요...");
+        input.nextLine();
+    }
+
+    void rest() {
+        out.println("\n하루를 쉬며 체력을 회복합니다...");
+        player.setHp(player.getMaxHp());
+        player.setMana(player.getMaxMana());
+        player.setStamina(player.getMaxStamina());
+        player.resetConsecutiveBattles();
+        
+        // 상태 이상 치료
+        player.getStatusEffects().clear();
+        
+        gameDay++;
+        out.println("새로운 날이 밝았습니다. (Day " + gameDay + ")");
+        
+        // 상점 물품 갱신
+        shops.forEach(shop -> {
+            shop.restock(random);
+            out.println(shop.getName() + "의 물품이 갱신되었습니다!");
+        });
+        
+        // 몬스터 리젠
+        if (gameDay % 3 == 0) {
+            out.println("몬스터들이 다시 생성되었습니다.");
+        }
+    }
+
+    private void handleGameOver() {
+        out.println("\n===== GAME OVER =====");
+        out.println(player.getName() + "은(는) 패배했습니다...");
+        out.println("1. 마을에서 재시작 (체력 50% 회복)");
+        out.println("2. 게임 종료");
+        out.print("선택: ");
+        
+        int choice = input.nextInt();
+        input.nextLine();
+        
+        if (choice == 1) {
+            restartInTown();
+        } else {
+            isRunning = false;
+        }
+    }
+    
+    void restartInTown() {
+        player.setHp(player.getMaxHp() / 2);
+        player.setCurrentLocation("마을");
+        gameState = GameState.MAIN_MENU;
+    }
+    
+    private void showSaveLoadMenu() {
+        boolean inMenu = true;
+        
+        while (inMenu) {
+            out.println("\n===== 저장/불러오기 =====");
+            out.println("1. 게임 저장");
+            out.println("2. 게임 불러오기");
+            out.println("3. 메인 메뉴로 돌아가기");
+            out.print("선택: ");
+            
+            int choice = input.nextInt();
+            input.nextLine();
+            
+            switch (choice) {
+                case 1:
+                    saveGame();
                     break;
-                case 9:
-                    isRunning = false;
-                    System.out.println("게임을 종료합니다.");
+                case 2:
+                    loadGame();
+                    break;
+                case 3:
+                    inMenu = false;
+                    gameState = GameState.MAIN_MENU;
                     break;
                 default:
-                    System.out.println("잘못된 선택입니다.");
+                    out.println("잘못된 선택입니다.");
+            }
+        }
+    }
+    
+    private void saveGame() {
+        out.print("\n저장할 파일 이름을 입력하세요 (예: save1.sav): ");
+        String filename = input.nextLine();
+        if (replaying) {
+            out.println("재생 중에는 게임을 저장하지 않습니다.");
+            return;
+        }
+        
+        try {
+            saveGame(filename);
+            out.println("게임이 성공적으로 저장되었습니다!");
+        } catch (IOException e) {
+            out.println("게임 저장 중 오류가 발생했습니다: " + e.getMessage());
+        }
+    }
+    
+    private void loadGame() {
+        out.print("\n불러올 파일 이름을 입력하세요 (예: save1.sav): ");
+        String filename = input.nextLine();
+        
+        try {
+            loadGame(filename);
+            out.println("게임이 성공적으로 불러와졌습니다!");
+        } catch (IOException | ClassNotFoundException e) {
+            out.println("게임 불러오기 중 오류가 발생했습니다: " + e.getMessage());
+        }
+    }
+    
+    public void saveGame(String filename) throws IOException {
+        try (ObjectOutputStream oos = new ObjectOutputStream(
+            new FileOutputStream(filename))) {
+            oos.writeObject(player);
+            oos.writeObject(gameDay);
+            oos.writeObject(player.getCurrentLocation());
+            oos.writeObject(System.currentTimeMillis());
+            out.println("게임이 저장되었습니다!");
+        }
+    }
+    
+    public void loadGame(String filename) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(
+            new FileInputStream(filename))) {
+            player = (Player) ois.readObject();
+            gameDay = (int) ois.readObject();
+            String location = (String) ois.readObject();
+            player.setCurrentLocation(location);
+            long savedAt;
+            try {
+                savedAt = (Long) ois.readObject();
+            } catch (EOFException e) {
+                savedAt = 0; // 저장 시각이 없는 예전 저장 파일
+            }
+            out.println("게임을 불러왔습니다!");
+            
+            // 시각은 입력에서 읽으므로 기록한 세션을 재생하면 당시와 같은 일수가 나온다
+            long now = input != null ? input.currentTimeMillis() : System.currentTimeMillis();
+            long awayDays = savedAt > 0 ? (now - savedAt) / OFFLINE_MILLIS_PER_DAY : 0;
+            if (awayDays > 0) {
+                grantOfflineRewards((int) Math.min(awayDays, Integer.MAX_VALUE - gameDay)).print(out);
+            }
+        }
+    }
+    
+    // 자리를 비운 일수만큼의 기대 보상을 한 번에 지급한다 (전투를 재현하지 않으므로 비용은 일수와 무관)
+    OfflineRewards grantOfflineRewards(int days) {
+        OfflineRewards rewards = OfflineProgress.estimate(this, player, days);
+        boolean wasSilent = headless;
+        player.setSilent(true);
+        
+        player.gainGold((int) Math.min(rewards.getGold(), Integer.MAX_VALUE - player.getGold()));
+        player.gainExp((int) Math.min(rewards.getExp(), Integer.MAX_VALUE / 2));
+        
+        int found = Math.min(OfflineProgress.MAX_FOUND_ITEMS, OfflineProgress.round(rewards.getFoundItems(), random));
+        for (int i = 0; i < found; i++) {
+            rewards.addGranted(generateRandomItem(), player);
+        }
+        for (Map.Entry<String, Double> loot : rewards.getLoot().entrySet()) {
+            int count = Math.min(OfflineProgress.MAX_LOOT_PER_ITEM, OfflineProgress.round(loot.getValue(), random));
+            for (int i = 0; i < count; i++) {
+                rewards.addGranted(rewards.getLootItem(loot.getKey()).copy(), player);
+            }
+        }
+        
+        player.setSilent(wasSilent);
+        gameDay += days;
+        shops.forEach(shop -> shop.restock(random));
+        rewards.finish(player);
+        return rewards;
+    }
+    
+    private void autoSave() {
+        try {
+            saveGame("autosave.sav");
+            out.println("\n게임이 자동 저장되었습니다.");
+        } catch (IOException e) {
+            out.println("\n자동 저장에 실패했습니다.");
+        }
+    }
+
+    public List<MonsterTemplate> getMonsters() {
+        return monsters;
+    }
+    
+    public GameRandom getRandom() {
+        return random;
+    }
+    
+    public GameInput getInput() {
+        return input;
+    }
+    
+    public PrintStream getOutput() {
+        return out;
+    }
+    
+    public ActionPolicy getBattlePolicy() {
+        return battlePolicy;
+    }
+    
+    public boolean isHeadless() {
+        return headless;
+    }
+    
+    // 콘솔 없이 진행 (출력을 버리고 전투 행동은 정책이 고른다)
+    public void setHeadless(ActionPolicy battlePolicy) {
+        this.headless = true;
+        this.out = SilentPrintStream.INSTANCE;
+        this.battlePolicy = battlePolicy;
+        this.autoSave = false;
+        if (player != null) {
+            player.setSilent(true);
+        }
+    }
+    
+    void setPlayer(Player player) {
+        this.player = player;
+        player.setSilent(headless);
+    }
+    
+    public GameState getGameState() {
+        return gameState;
+    }
+    
+    public List<Shop> getShops() {
+        return shops;
+    }
+    
+    public Collection<Location> getLocations() {
+        return worldMap.values();
+    }
+    
+    public FightOddsCalculator getOddsCalculator() {
+        return oddsCalculator;
+    }
+    
+    public MonsterAI getMonsterAI() {
+        return monsterAI;
+    }
+    
+    public CombatLog getCombatLog() {
+        return combatLog;
+    }
+    
+    // null이면 전투 기록을 남기지 않는다
+    public void setCombatLog(CombatLog combatLog) {
+        this.combatLog = combatLog;
+    }
+    
+    // 세션의 1:1 전투 문맥 (처음 조우할 때 만들어 계속 쓴다)
+    Battle getBattle() {
+        if (battle == null) {
+            battle = new Battle(this);
+        }
+        return battle;
+    }
+    
+    public Location getLocation(String name) {
+        return worldMap.get(name);
+    }
+    
+    public long getSeed() {
+        return seed;
+    }
+    
+    public Player getPlayer() {
+        return player;
+    }
+    
+    public int getGameDay() {
+        return gameDay;
+    }
+    
+    public void setAutoSave(boolean autoSave) {
+        this.autoSave = autoSave;
+    }
+    
+    // 기록된 입력을 재생하는 세션 (자동 저장을 끄고 저장 메뉴도 파일을 쓰지 않는다)
+    public void setReplaying(boolean replaying) {
+        this.replaying = replaying;
+        if (replaying) {
+            autoSave = false;
+        }
+    }
+    
+    // 자동 탐색 중이면 전투 결과를 요약에 기록한다
+    public void recordBattle(Monster monster, BattleOutcome outcome) {
+        if (autoExploreSummary != null) {
+            autoExploreSummary.recordBattle(monster.getExpReward(), outcome);
+        }
+    }
+    
+    public void recordPackBattle(PackOutcome outcome, int expReward) {
+        if (autoExploreSummary != null) {
+            autoExploreSummary.recordBattle(expReward, outcome.toBattleOutcome());
+        }
+    }
+    
+    // 레벨에 따라 새로운 지역 해금
+    public void checkLocationUnlocks() {
+        if (player.getLevel() >= 3 && !player.getUnlockedLocations().contains("동쪽 산")) {
+            player.unlockLocation("동쪽 산");
+        }
+        if (player.getLevel() >= 5 && !player.getUnlockedLocations().contains("북쪽 묘지")) {
+            player.unlockLocation("북쪽 묘지");
+        }
+    }
+    
+    public void updateQuestProgress(Monster monster) {
+        player.getActiveQuests().forEach(q -> q.updateProgress(monster));
+    }
+    
+    public void setGameState(GameState state) {
+        this.gameState = state;
+    }
+}
+
+// 분석 도구가 전투 엔진에 적용하는 규칙 묶음
+enum BattleRules {
+    CLASSIC("고전 규칙 (번갈아 행동, 80/20 몬스터)"),
+    GAME("게임 규칙 (속도 순서표, 몬스터 AI)");   // Battle과 같은 설정
+    
+    private String description;
+    
+    BattleRules(String description) {
+        this.description = description;
+    }
+    
+    public void configure(BattleEngine engine) {
+        engine.setSpeedTimeline(this == GAME);
+        engine.setMonsterAI(this == GAME ? MonsterAI.SHARED : null);
+    }
+    
+    public String getDescription() { return description; }
+    
+    // 이름(classic, game)으로 찾는다
+    public static BattleRules of(String name) {
+        return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+}
+
+// 밸런스 스윕 클래스 (몬스터 × 직업 × 레벨 격자를 fork/join으로 병렬 시뮬레이션)
+class BalanceSweep {
+    // 한 작업 단위가 처리하는 전투 수 (시드는 전투마다 고정되므로 스레드 수와 무관하게 결과가 같다)
+    private static final int CHUNK_SIZE = 1000;
+    
+    private List<MonsterTemplate> monsters;
+    private PlayerClass[] classes;
+    private int minLevel;
+    private int maxLevel;
+    private int fightsPerCell;
+    private long seed;
+    private ActionPolicy policy;
+    private BattleRules rules = BattleRules.CLASSIC;
+    private int chunksPerCell;
+    private long[] wins;
+    private long[] turns;
+    private long[] hpRemaining;
+    private long[] maxHpTotal;
+    
+    public BalanceSweep(List<MonsterTemplate> monsters, int minLevel, int maxLevel, 
+                       int fightsPerCell, long seed, ActionPolicy policy) {
+        this(monsters, PlayerClass.values(), minLevel, maxLevel, fightsPerCell, seed, policy);
+    }
+    
+    public BalanceSweep(List<MonsterTemplate> monsters, PlayerClass[] classes, int minLevel, int maxLevel, 
+                       int fightsPerCell, long seed, ActionPolicy policy) {
+        this.monsters = monsters;
+        this.classes = classes;
+        this.minLevel = minLevel;
+        this.maxLevel = maxLevel;
+        this.fightsPerCell = fightsPerCell;
+        this.seed = seed;
+        this.policy = policy;
+        this.chunksPerCell = (fightsPerCell + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+    
+    // sweep [전투 수] [최저 레벨] [최고 레벨] [시드] [스레드] [출력 파일 (-: 화면)] [규칙 (classic, game)]
+    public static void run(String[] args) {
+        int fights = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int minLevel = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        int maxLevel = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 42L;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+        BattleRules rules = args.length > 6 ? BattleRules.of(args[6]) : BattleRules.CLASSIC;
+        
+        BalanceSweep sweep = new BalanceSweep(new Game().getMonsters(), minLevel, maxLevel, 
+            fights, seed, ActionPolicy.FIRST_SKILL);
+        sweep.setRules(rules);
+        
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            sweep.run(pool);
+        } finally {
+            pool.shutdown();
+        }
+        long elapsed = System.nanoTime() - start;
+        
+        if (args.length > 5 && !args[5].equals("-")) {
+            try (PrintStream out = new PrintStream(new FileOutputStream(args[5]), false, "UTF-8")) {
+                sweep.writeCsv(out);
+            } catch (IOException e) {
+                System.out.println("결과 저장 중 오류가 발생했습니다: " + e.getMessage());
+            }
+        } else {
+            sweep.writeCsv(System.out);
+        }
+        System.err.printf("%d개 셀, 셀당 %d전투: %.2f초 (%d 스레드)\n", 
+            sweep.getCellCount(), fights, elapsed / 1e9, threads);
+    }
+    
+    // 기본은 고전 규칙. GAME이면 게임의 Battle과 같은 규칙으로 싸운다
+    public void setRules(BattleRules rules) {
+        this.rules = rules;
+    }
+    
+    public BattleRules getRules() { return rules; }
+    
+    public void run(ForkJoinPool pool) {
+        pool.invoke(ForkJoinTask.adapt(this::compute));
+    }
+    
+    // fork/join 작업 안에서 호출 (여러 스윕을 같은 풀에서 동시에 돌릴 때)
+    public void compute() {
+        int units = getCellCount() * chunksPerCell;
+        long[] unitWins = new long[units];
+        long[] unitTurns = new long[units];
+        long[] unitHp = new long[units];
+        long[] unitMaxHp = new long[units];
+        
+        new SweepTask(0, units, unitWins, unitTurns, unitHp, unitMaxHp).invoke();
+        
+        int cells = getCellCount();
+        wins = new long[cells];
+        turns = new long[cells];
+        hpRemaining = new long[cells];
+        maxHpTotal = new long[cells];
+        for (int unit = 0; unit < units; unit++) {
+            int cell = unit / chunksPerCell;
+            wins[cell] += unitWins[unit];
+            turns[cell] += unitTurns[unit];
+            hpRemaining[cell] += unitHp[unit];
+            maxHpTotal[cell] += unitMaxHp[unit];
+        }
+    }
+    
+    private class SweepTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private int from;
+        private int to;
+        private long[] unitWins;
+        private long[] unitTurns;
+        private long[] unitHp;
+        private long[] unitMaxHp;
+        
+        SweepTask(int from, int to, long[] unitWins, long[] unitTurns, long[] unitHp, long[] unitMaxHp) {
+            this.from = from;
+            this.to = to;
+            this.unitWins = unitWins;
+            this.unitTurns = unitTurns;
+            this.unitHp = unitHp;
+            this.unitMaxHp = unitMaxHp;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                runUnit(from, unitWins, unitTurns, unitHp, unitMaxHp);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new SweepTask(from, mid, unitWins, unitTurns, unitHp, unitMaxHp),
+                      new SweepTask(mid, to, unitWins, unitTurns, unitHp, unitMaxHp));
+        }
+    }
+    
+    private void runUnit(int unit, long[] unitWins, long[] unitTurns, long[] unitHp, long[] unitMaxHp) {
+        int cell = unit / chunksPerCell;
+        int chunk = unit % chunksPerCell;
+        int fights = Math.min(CHUNK_SIZE, fightsPerCell - chunk * CHUNK_SIZE);
+        
+        MonsterTemplate template = monsters.get(getMonsterIndex(cell));
+        PlayerClass playerClass = classes[getClassIndex(cell)];
+        int level = getLevel(cell);
+        SplitMixRandom random = new SplitMixRandom(0);
+        BattleEngine engine = new BattleEngine(random);
+        rules.configure(engine);
+        
+        for (int i = 0; i < fights; i++) {
+            random.setSeed(mix(seed, (long) cell * fightsPerCell + chunk * CHUNK_SIZE + i));
+            Player player = createPlayer(playerClass, level);
+            BattleOutcome outcome = engine.resolve(player, template.spawn(), policy);
+            if (outcome.isPlayerWin()) {
+                unitWins[unit]++;
+            }
+            unitTurns[unit] += outcome.getTurns();
+            unitHp[unit] += player.getHp();
+            unitMaxHp[unit] += player.getMaxHp();
+        }
+    }
+    
+    // 해당 레벨까지 조용히 성장시킨 새 플레이어
+    public static Player createPlayer(PlayerClass playerClass, int level) {
+        Player player = new Player(playerClass.getTitle(), playerClass);
+        while (player.getLevel() < level) {
+            player.levelUp(false);
+        }
+        return player;
+    }
+    
+    // SplitMix64 혼합 함수로 전투별 시드를 만든다
+    private static long mix(long seed, long index) {
+        return SplitMixRandom.mix64(seed + (index + 1) * SplitMixRandom.GOLDEN_GAMMA);
+    }
+    
+    public void writeCsv(PrintStream out) {
+        out.println("# 전투 규칙: " + rules.getDescription());
+        out.println("몬스터,직업,레벨,승률,평균 턴,평균 잔여 HP(%)");
+        for (int cell = 0; cell < getCellCount(); cell++) {
+            out.printf("%s,%s,%d,%.4f,%.2f,%.1f\n",
+                monsters.get(getMonsterIndex(cell)).getName(),
+                classes[getClassIndex(cell)].getTitle(),
+                getLevel(cell),
+                getWinRate(cell),
+                getAverageTurns(cell),
+                getAverageHpRemaining(cell) * 100);
+        }
+        out.flush();
+    }
+    
+    public int getCellCount() {
+        return monsters.size() * classes.length * (maxLevel - minLevel + 1);
+    }
+    
+    public int getMonsterIndex(int cell) {
+        return cell / (classes.length * (maxLevel - minLevel + 1));
+    }
+    
+    public int getClassIndex(int cell) {
+        return cell / (maxLevel - minLevel + 1) % classes.length;
+    }
+    
+    public int getLevel(int cell) {
+        return minLevel + cell % (maxLevel - minLevel + 1);
+    }
+    
+    public double getWinRate(int cell) {
+        return wins[cell] / (double) fightsPerCell;
+    }
+    
+    public double getAverageTurns(int cell) {
+        return turns[cell] / (double) fightsPerCell;
+    }
+    
+    public double getAverageHpRemaining(int cell) {
+        return hpRemaining[cell] / (double) maxHpTotal[cell];
+    }
+}
+
+// 할당 예산 측정: 출력을 끈 전투에서 정상 상태의 한 턴이 힙에 할당하는 바이트 수.
+// 몬스터 체력만 다른 짧은 전투와 긴 전투의 할당량 차이를 턴 수 차이로 나누므로
+// 전투마다 한 번 생기는 결과 객체와 전리품은 빠지고 턴당 비용만 남는다.
+// 1:1 전투는 몬스터 타입마다, 무리 전투는 행동 정책마다 잰다.
+class AllocationBudget {
+    private static final int SHORT_HP = 30;
+    private static final int LONG_HP = 150;
+    
+    private final com.sun.management.ThreadMXBean threads = 
+        (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+    private static final int PACK_SIZE = 4;
+    // 가방이 비어 있으면 엔진이 기본 공격으로 대신하지만 물약 찾기는 매 턴 거친다
+    private static final ActionPolicy ITEM_FIRST = (player, monster) -> ActionPolicy.ITEM;
+    
+    private final SplitMixRandom random = new SplitMixRandom(0);
+    private final BattleEngine engine = new BattleEngine(random);
+    private final PackBattleEngine packEngine = new PackBattleEngine(random);
+    private final List<Player> party = new ArrayList<>(PackBattleEngine.MAX_PARTY);
+    private final List<Monster> pack = new ArrayList<>(PACK_SIZE);
+    private long bytes;
+    private long turns;
+    
+    public AllocationBudget() {
+        // 게임의 1:1 전투와 같은 설정
+        engine.setMonsterAI(MonsterAI.SHARED);
+        engine.setSpeedTimeline(true);
+        engine.setRevealWeakness(true);
+    }
+    
+    // 엔진 안에서 쓴 바이트만 센다 (플레이어와 몬스터 준비는 측정 밖)
+    private void measure(PlayerClass playerClass, Monster template, int fights, long seed) {
+        bytes = 0;
+        turns = 0;
+        for (int i = 0; i < fights; i++) {
+            Player player = BalanceSweep.createPlayer(playerClass, 10);
+            Monster monster = template.copy();
+            random.setSeed(seed + i);
+            long before = threads.getCurrentThreadAllocatedBytes();
+            BattleOutcome outcome = engine.resolve(player, monster, ActionPolicy.BASIC_ATTACK);
+            bytes += threads.getCurrentThreadAllocatedBytes() - before;
+            turns += outcome.getTurns();
+        }
+    }
+    
+    // 턴당 할당 바이트 (짧은 전투와 긴 전투의 차이)
+    public double bytesPerTurn(PlayerClass playerClass, MonsterType type, int fights, long seed) {
+        // 방어력을 공격력과 맞춰 한 타에 1씩만 깎이게 해 전투 길이를 체력으로 조절한다
+        int defense = BalanceSweep.createPlayer(playerClass, 10).getAttack();
+        Monster shortFight = new Monster("허수아비", SHORT_HP, 1, defense, 0, 1, type);
+        Monster longFight = new Monster("허수아비", LONG_HP, 1, defense, 0, 1, type);
+        
+        measure(playerClass, shortFight, fights, seed);
+        long shortBytes = bytes;
+        long shortTurns = turns;
+        measure(playerClass, longFight, fights, seed);
+        return (bytes - shortBytes) / (double) Math.max(1, turns - shortTurns);
+    }
+    
+    // 무리 전투는 파티원 한 명과 몬스터 한 마리의 행동을 모두 한 번씩으로 센다
+    private void measurePack(Monster template, ActionPolicy policy, int fights, long seed) {
+        PlayerClass[] classes = PlayerClass.values();
+        bytes = 0;
+        turns = 0;
+        for (int i = 0; i < fights; i++) {
+            party.clear();
+            pack.clear();
+            for (int m = 0; m < PackBattleEngine.MAX_PARTY; m++) {
+                Player member = BalanceSweep.createPlayer(classes[m % classes.length], 10);
+                // 능력치 표는 플레이어마다 처음 버프를 받을 때 한 번 만들어지므로 미리 만들어 측정에서 뺀다
+                member.getAttack();
+                party.add(member);
+            }
+            for (int m = 0; m < PACK_SIZE; m++) {
+                pack.add(template.copy());
+            }
+            random.setSeed(seed + i);
+            long before = threads.getCurrentThreadAllocatedBytes();
+            PackOutcome outcome = packEngine.resolve(party, pack, policy);
+            bytes += threads.getCurrentThreadAllocatedBytes() - before;
+            turns += outcome.getActions();
+        }
+    }
+    
+    // 행동당 할당 바이트 (짧은 무리 전투와 긴 무리 전투의 차이)
+    public double bytesPerPackAction(ActionPolicy policy, int fights, long seed) {
+        int defense = 0;
+        for (PlayerClass playerClass : PlayerClass.values()) {
+            defense = Math.max(defense, BalanceSweep.createPlayer(playerClass, 10).getAttack());
+        }
+        Monster shortFight = new Monster("허수아비", SHORT_HP, 1, defense, 0, 1, MonsterType.NORMAL);
+        Monster longFight = new Monster("허수아비", LONG_HP, 1, defense, 0, 1, MonsterType.NORMAL);
+        
+        measurePack(shortFight, policy, fights, seed);
+        long shortBytes = bytes;
+        long shortActions = turns;
+        measurePack(longFight, policy, fights, seed);
+        return (bytes - shortBytes) / (double) Math.max(1, turns - shortActions);
+    }
+    
+    // alloc [전투 수] [시드]: 몬스터 타입마다 턴당 할당 바이트를 재고 0을 넘으면 실패로 끝낸다
+    public static void run(String[] args) {
+        int fights = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42L;
+        
+        AllocationBudget budget = new AllocationBudget();
+        String[] packPolicyNames = {"기본 공격", "첫 번째 스킬", "아이템"};
+        ActionPolicy[] packPolicies = {ActionPolicy.BASIC_ATTACK, ActionPolicy.FIRST_SKILL, ITEM_FIRST};
+        // JIT가 안정될 때까지 같은 측정을 먼저 돌린다
+        for (MonsterType type : MonsterType.values()) {
+            budget.bytesPerTurn(PlayerClass.WARRIOR, type, fights, seed);
+        }
+        for (ActionPolicy policy : packPolicies) {
+            budget.bytesPerPackAction(policy, fights / 4, seed);
+        }
+        
+        boolean withinBudget = true;
+        System.out.println("타입,턴당 할당 바이트");
+        for (MonsterType type : MonsterType.values()) {
+            double perTurn = budget.bytesPerTurn(PlayerClass.WARRIOR, type, fights, seed);
+            System.out.printf("%s,%.2f\n", type.getKoreanName(), perTurn);
+            // 측정 자체의 잡음(스레드 할당 카운터 갱신 단위)을 넘는 값만 실패로 본다
+            if (perTurn >= 1.0) withinBudget = false;
+        }
+        System.out.println("무리 전투 정책,행동당 할당 바이트");
+        for (int p = 0; p < packPolicies.length; p++) {
+            double perAction = budget.bytesPerPackAction(packPolicies[p], fights / 4, seed);
+            System.out.printf("%s,%.2f\n", packPolicyNames[p], perAction);
+            if (perAction >= 1.0) withinBudget = false;
+        }
+        System.out.println(withinBudget ? "정상 상태 턴 할당: 0바이트 (통과)" : "정상 상태 턴 할당이 예산(0바이트)을 넘었습니다");
+        if (!withinBudget) System.exit(1);
+    }
+}
+
+// 구조체 배열(SoA) 전투 커널: 기본 공격만 하는 고전 규칙 전투(번갈아 행동, 80/20 몬스터)를
+// 원시 값 열에 모아 두고 레인마다 끝까지 진행한다. 게임의 Battle은 순서표와 몬스터 AI를 쓰므로
+// 이 커널은 그 규칙을 흉내 내지 않는다. 대량 균형 분석에서 객체 경로를 대신할 때만 쓴다.
+// BattleEngine + ActionPolicy.BASIC_ATTACK 과 같은 난수 소비 순서를 따르므로
+// 같은 시드의 SplitMixRandom을 쓴 엔진과 결과가 비트 단위로 일치한다 (kernel 명령이 대조한다).
+// 객체 그래프와 가상 호출을 건너뛰는 만큼만 빠르다 (정상 상태에서 대략 1.5~2.5배).
+class BatchCombatKernel {
+    private static final byte RUNNING = 0;
+    private static final byte PLAYER_WIN = 1;
+    private static final byte PLAYER_LOSS = 2;
+    private static final long NORMAL_HIT_THRESHOLD = threshold(0.8);
+    
+    private final int capacity;
+    private int size;
+    
+    // 플레이어 열 (전투 중 바뀌지 않는 값은 등록할 때 미리 계산해 둔다)
+    private final int[] playerHp;
+    private final int[] playerAgility;
+    private final int[] armedAttack;         // 기본 공격력 + 무기 공격력
+    private final int[] bareAttack;
+    private final long[] criticalThreshold;
+    private final int[] armoredDefense;      // 기본 방어력 + 방어구 방어력
+    private final int[] bareDefense;
+    private final long[] armoredEvasion;
+    private final long[] bareEvasion;
+    private final double[] damageTaken;      // 1 - 방어구 피해 감소율
+    private final int[] weaponDurability;    // -1이면 무기 없음
+    private final int[] armorDurability;     // -1이면 방어구 없음
+    private final int[] poisonDamage;
+    private final int[] burnDamage;
+    private final int[] poisonTurns;
+    private final int[] burnTurns;
+    private final int[] blessTurns;
+    
+    // 몬스터 열
+    private final int[] monsterHp;
+    private final int[] monsterAttack;
+    private final int[] monsterDefense;
+    private final int[] monsterAgility;      // 레벨 × 5
+    private final boolean[] heavyHits;       // 레벨 3 이상이면 20% 확률로 두 배 공격
+    
+    // 진행 상태 열
+    private final long[] seeds;
+    private final int[] turns;
+    private final byte[] results;
+    
+    // 지금 진행 중인 레인의 난수 상태 (SplitMixRandom과 같은 계산)
+    private long rng;
+    
+    public BatchCombatKernel(int capacity) {
+        this.capacity = capacity;
+        this.playerHp = new int[capacity];
+        this.playerAgility = new int[capacity];
+        this.armedAttack = new int[capacity];
+        this.bareAttack = new int[capacity];
+        this.criticalThreshold = new long[capacity];
+        this.armoredDefense = new int[capacity];
+        this.bareDefense = new int[capacity];
+        this.armoredEvasion = new long[capacity];
+        this.bareEvasion = new long[capacity];
+        this.damageTaken = new double[capacity];
+        this.weaponDurability = new int[capacity];
+        this.armorDurability = new int[capacity];
+        this.poisonDamage = new int[capacity];
+        this.burnDamage = new int[capacity];
+        this.poisonTurns = new int[capacity];
+        this.burnTurns = new int[capacity];
+        this.blessTurns = new int[capacity];
+        this.monsterHp = new int[capacity];
+        this.monsterAttack = new int[capacity];
+        this.monsterDefense = new int[capacity];
+        this.monsterAgility = new int[capacity];
+        this.heavyHits = new boolean[capacity];
+        this.seeds = new long[capacity];
+        this.turns = new int[capacity];
+        this.results = new byte[capacity];
+    }
+    
+    public void clear() {
+        size = 0;
+    }
+    
+    // 객체의 현재 상태를 읽어 새 전투를 등록 (객체는 변경하지 않는다)
+    public int add(Player player, Monster monster, long seed) {
+        int lane = size;
+        if (lane >= capacity) {
+            throw new IllegalStateException("커널 용량을 초과했습니다: " + capacity);
+        }
+        
+        int agility = player.getAgility();
+        int maxHp = player.getMaxHp();
+        playerHp[lane] = player.getHp();
+        playerAgility[lane] = agility;
+        bareAttack[lane] = player.getBaseAttack();
+        bareDefense[lane] = player.getBaseDefense();
+        bareEvasion[lane] = threshold(Math.min(0.0 + agility * 0.01, 0.5));
+        poisonDamage[lane] = (int)(maxHp * 0.05);
+        burnDamage[lane] = (int)(maxHp * 0.03);
+        
+        Weapon weapon = player.getEquippedWeapon();
+        armedAttack[lane] = bareAttack[lane] + (weapon != null ? weapon.getAttack() : 0);
+        weaponDurability[lane] = weapon != null ? weapon.getDurability() : -1;
+        criticalThreshold[lane] = weapon != null ? threshold(weapon.getCriticalChance()) : 0;
+        
+        Armor armor = player.getEquippedArmor();
+        armoredDefense[lane] = bareDefense[lane] + (armor != null ? armor.getDefense() : 0);
+        armorDurability[lane] = armor != null ? armor.getDurability() : -1;
+        armoredEvasion[lane] = armor != null ? threshold(Math.min(armor.getEvasion() + agility * 0.01, 0.5)) : 0;
+        damageTaken[lane] = armor != null ? 1.0 - armor.getDamageReduction() : 0.0;
+        
+        StatusEffects effects = player.getStatusEffects();
+        poisonTurns[lane] = effects.getRemainingTurns(StatusEffectType.POISON);
+        burnTurns[lane] = effects.getRemainingTurns(StatusEffectType.BURN);
+        blessTurns[lane] = effects.getRemainingTurns(StatusEffectType.BLESS);
+        
+        monsterHp[lane] = monster.getHp();
+        monsterAttack[lane] = monster.getAttack();
+        monsterDefense[lane] = monster.getDefense();
+        monsterAgility[lane] = monster.getLevel() * 5;
+        heavyHits[lane] = monster.getLevel() >= 3;
+        
+        seeds[lane] = seed;
+        turns[lane] = 0;
+        results[lane] = RUNNING;
+        size++;
+        return lane;
+    }
+    
+    // 등록된 모든 전투를 끝까지 진행
+    public void runToCompletion() {
+        for (int lane = 0; lane < size; lane++) {
+            if (results[lane] == RUNNING) {
+                resolve(lane);
+            }
+        }
+    }
+    
+    // BattleEngine.resolve의 고전 규칙 루프와 같은 순서: 선공 판정, 두 행동, 상태 이상, 턴 증가
+    private void resolve(int lane) {
+        rng = seeds[lane];
+        // BattleEngine.isPlayerFirst와 같은 순서로 난수를 소비
+        boolean playerFirst = nextInt(playerAgility[lane] + monsterAgility[lane]) > monsterAgility[lane];
+        if (playerHp[lane] <= 0 || monsterHp[lane] <= 0) {
+            results[lane] = playerHp[lane] > 0 ? PLAYER_WIN : PLAYER_LOSS;
+            return;
+        }
+        while (true) {
+            if (playerFirst ? playerAttack(lane) || monsterAttack(lane) : monsterAttack(lane) || playerAttack(lane)) {
+                turns[lane]++;
+                return;
+            }
+            tickStatus(lane);
+            turns[lane]++;
+            if (results[lane] != RUNNING) {
+                return;
+            }
+        }
+    }
+    
+    // 전투가 끝났으면 true
+    private boolean playerAttack(int lane) {
+        boolean hasWeapon = weaponDurability[lane] >= 0;
+        int attack = hasWeapon ? armedAttack[lane] : bareAttack[lane];
+        if (blessTurns[lane] > 0) {
+            attack = (int)(attack * 1.1);
+        }
+        int baseDamage = Math.max(1, attack - monsterDefense[lane]);
+        int damage = baseDamage + nextInt(baseDamage / 2 + 1);
+        if (hasWeapon && nextBits() < criticalThreshold[lane]) {
+            damage *= 2;
+        }
+        monsterHp[lane] = Math.max(0, monsterHp[lane] - damage);
+        if (monsterHp[lane] == 0) {
+            results[lane] = PLAYER_WIN;
+            return true;
+        }
+        return false;
+    }
+    
+    // 전투가 끝났으면 true. 회피하면 난수 하나만 쓰고 장비도 닳지 않는다
+    private boolean monsterAttack(int lane) {
+        boolean hasArmor = armorDurability[lane] >= 0;
+        if (nextBits() < (hasArmor ? armoredEvasion[lane] : bareEvasion[lane])) {
+            return false;
+        }
+        boolean heavy = nextBits() >= NORMAL_HIT_THRESHOLD && heavyHits[lane];
+        int attack = heavy ? monsterAttack[lane] * 2 : monsterAttack[lane];
+        int baseDamage = Math.max(1, attack - (hasArmor ? armoredDefense[lane] : bareDefense[lane]));
+        int damage = baseDamage + nextInt(baseDamage / 2 + 1);
+        if (hasArmor) {
+            damage = (int)(damage * damageTaken[lane]);
+        }
+        weaponDurability[lane] = wear(weaponDurability[lane]);
+        armorDurability[lane] = wear(armorDurability[lane]);
+        playerHp[lane] = Math.max(0, playerHp[lane] - damage);
+        if (playerHp[lane] == 0) {
+            results[lane] = PLAYER_LOSS;
+            return true;
+        }
+        return false;
+    }
+    
+    // 장착 중(0 이상)이면 내구도를 하나 줄이고, 0이 되면 -1(해제)로 만든다
+    private static int wear(int durability) {
+        if (durability < 0) return durability;
+        return durability == 1 ? -1 : durability - 1;
+    }
+    
+    private void tickStatus(int lane) {
+        int hp = playerHp[lane];
+        if (poisonTurns[lane] > 0) {
+            poisonTurns[lane]--;
+            hp = Math.max(0, hp - poisonDamage[lane]);
+        }
+        if (burnTurns[lane] > 0) {
+            burnTurns[lane]--;
+            hp = Math.max(0, hp - burnDamage[lane]);
+        }
+        if (blessTurns[lane] > 0) {
+            blessTurns[lane]--;
+        }
+        playerHp[lane] = hp;
+        if (hp == 0) {
+            results[lane] = PLAYER_LOSS;
+        }
+    }
+    
+    // nextDouble() < p 는 상위 53비트 정수와 ceil(p * 2^53)의 비교와 같다
+    private static long threshold(double probability) {
+        return (long) Math.ceil(probability * 0x1.0p53);
+    }
+    
+    // 이하 난수 함수는 SplitMixRandom과 같은 계산
+    private long nextLong() {
+        return SplitMixRandom.mix64(rng += SplitMixRandom.GOLDEN_GAMMA);
+    }
+    
+    private long nextBits() {
+        return nextLong() >>> 11;
+    }
+    
+    private int nextInt(int bound) {
+        long product = (nextLong() >>> 32) * bound;
+        int low = (int) product;
+        if (Integer.compareUnsigned(low, bound) < 0) {
+            int threshold = Integer.remainderUnsigned(-bound, bound);
+            while (Integer.compareUnsigned(low, threshold) < 0) {
+                product = (nextLong() >>> 32) * bound;
+                low = (int) product;
+            }
+        }
+        return (int)(product >>> 32);
+    }
+    
+    public int size() { return size; }
+    public boolean isFinished(int lane) { return results[lane] != RUNNING; }
+    public boolean isPlayerWin(int lane) { return results[lane] == PLAYER_WIN; }
+    public int getTurns(int lane) { return turns[lane]; }
+    public int getPlayerHp(int lane) { return playerHp[lane]; }
+    public int getMonsterHp(int lane) { return monsterHp[lane]; }
+    
+    public static void run(String[] args) {
+        int fights = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42L;
+        
+        int mismatches = verify(seed, Math.min(fights, 100000));
+        System.out.println("BattleEngine 대조 불일치: " + mismatches);
+        
+        benchmark(fights, seed);
+    }
+    
+    // 무작위 입력으로 BattleEngine 결과와 대조하여 불일치 수를 반환
+    public static int verify(long seed, int fights) {
+        SplitMixRandom inputs = new SplitMixRandom(seed);
+        BatchCombatKernel kernel = new BatchCombatKernel(fights);
+        Player[] players = new Player[fights];
+        Monster[] monsters = new Monster[fights];
+        long[] fightSeeds = new long[fights];
+        
+        for (int i = 0; i < fights; i++) {
+            PlayerClass playerClass = PlayerClass.values()[inputs.nextInt(PlayerClass.values().length)];
+            int level = 1 + inputs.nextInt(10);
+            int monsterHp = 20 + inputs.nextInt(280);
+            int monsterAttack = 5 + inputs.nextInt(36);
+            int monsterDefense = inputs.nextInt(26);
+            int monsterLevel = 1 + inputs.nextInt(8);
+            int weaponDurability = inputs.nextInt(4) == 0 ? 1 + inputs.nextInt(10) : 100;
+            int armorDurability = inputs.nextInt(4) == 0 ? 1 + inputs.nextInt(10) : 100;
+            int poison = inputs.nextInt(5) == 0 ? 1 + inputs.nextInt(4) : 0;
+            int burn = inputs.nextInt(5) == 0 ? 1 + inputs.nextInt(4) : 0;
+            int bless = inputs.nextInt(5) == 0 ? 1 + inputs.nextInt(4) : 0;
+            fightSeeds[i] = inputs.nextLong();
+            
+            Player kernelPlayer = createVerifyPlayer(playerClass, level, weaponDurability, armorDurability, poison, burn, bless);
+            Monster kernelMonster = new Monster("검증용 몬스터", monsterHp, monsterAttack, monsterDefense, 10, monsterLevel, MonsterType.NORMAL);
+            kernel.add(kernelPlayer, kernelMonster, fightSeeds[i]);
+            
+            players[i] = createVerifyPlayer(playerClass, level, weaponDurability, armorDurability, poison, burn, bless);
+            monsters[i] = kernelMonster.copy();
+        }
+        
+        kernel.runToCompletion();
+        
+        int mismatches = 0;
+        SplitMixRandom random = new SplitMixRandom(0);
+        BattleEngine engine = new BattleEngine(random);
+        for (int i = 0; i < fights; i++) {
+            random.setSeed(fightSeeds[i]);
+            BattleOutcome outcome = engine.resolve(players[i], monsters[i], ActionPolicy.BASIC_ATTACK);
+            if (outcome.isPlayerWin() != kernel.isPlayerWin(i)
+                    || outcome.getTurns() != kernel.getTurns(i)
+                    || players[i].getHp() != kernel.getPlayerHp(i)
+                    || monsters[i].getHp() != kernel.getMonsterHp(i)) {
+                mismatches++;
+            }
+        }
+        return mismatches;
+    }
+    
+    private static Player createVerifyPlayer(PlayerClass playerClass, int level, int weaponDurability, 
+                                             int armorDurability, int poison, int burn, int bless) {
+        Player player = BalanceSweep.createPlayer(playerClass, level);
+        Weapon weapon = player.getEquippedWeapon();
+        Armor armor = player.getEquippedArmor();
+        weapon.reduceDurability(weapon.getDurability() - weaponDurability);
+        armor.reduceDurability(armor.getDurability() - armorDurability);
+        player.applyStatusEffect(StatusEffectType.POISON, poison);
+        player.applyStatusEffect(StatusEffectType.BURN, burn);
+        player.applyStatusEffect(StatusEffectType.BLESS, bless);
+        return player;
+    }
+    
+    // 객체 기반 경로와 커널의 초당 전투 수 비교
+    // 양쪽 모두 같은 플레이어/몬스터 객체에서 시작하도록 블록마다 입력을 미리 만들어 두고
+    // 전투를 진행하는 시간만 잰다 (객체 생성과 커널 등록은 측정에서 뺀다)
+    public static void benchmark(int fights, long seed) {
+        List<MonsterTemplate> monsters = new Game().getMonsters();
+        PlayerClass[] classes = PlayerClass.values();
+        int block = Math.min(fights, 4096);
+        Player[] players = new Player[block];
+        Monster[] enemies = new Monster[block];
+        BatchCombatKernel kernel = new BatchCombatKernel(block);
+        SplitMixRandom random = new SplitMixRandom(0);
+        BattleEngine engine = new BattleEngine(random);
+        
+        for (int round = 0; round < 3; round++) {
+            long objectNanos = 0;
+            long kernelNanos = 0;
+            int objectWins = 0;
+            int kernelWins = 0;
+            for (int from = 0; from < fights; from += block) {
+                int count = Math.min(block, fights - from);
+                kernel.clear();
+                for (int j = 0; j < count; j++) {
+                    int i = from + j;
+                    players[j] = BalanceSweep.createPlayer(classes[i % classes.length], 5);
+                    enemies[j] = monsters.get(i % monsters.size()).spawn();
+                    kernel.add(players[j], enemies[j], seed + i);
+                }
+                
+                long start = System.nanoTime();
+                kernel.runToCompletion();
+                kernelNanos += System.nanoTime() - start;
+                for (int j = 0; j < count; j++) {
+                    if (kernel.isPlayerWin(j)) kernelWins++;
+                }
+                
+                start = System.nanoTime();
+                for (int j = 0; j < count; j++) {
+                    random.setSeed(seed + from + j);
+                    if (engine.resolve(players[j], enemies[j], ActionPolicy.BASIC_ATTACK).isPlayerWin()) {
+                        objectWins++;
+                    }
+                }
+                objectNanos += System.nanoTime() - start;
+            }
+            
+            System.out.printf("객체 경로: %.0f 전투/초 (승리 %d) | 커널: %.0f 전투/초 (승리 %d) | %.1f배\n",
+                fights / (objectNanos / 1e9), objectWins, fights / (kernelNanos / 1e9), kernelWins,
+                objectNanos / (double) kernelNanos);
+        }
+    }
+}
+
+// 게임 입력 인터페이스 (Scanner와 같은 방식으로 숫자와 줄을 읽는다)
+interface GameInput {
+    int nextInt();
+    String nextLine();
+    
+    // 게임 진행에 영향을 주는 현재 시각 (오프라인 보상 일수). 기록/재생은 이 값도 입력으로 다룬다
+    default long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+}
+
+// 콘솔 입력
+class ConsoleInput implements GameInput {
+    private Scanner scanner;
+    
+    public ConsoleInput(Scanner scanner) {
+        this.scanner = scanner;
+    }
+    
+    @Override
+    public int nextInt() {
+        return scanner.nextInt();
+    }
+    
+    @Override
+    public String nextLine() {
+        return scanner.nextLine();
+    }
+}
+
+// 입력 기록기 (받은 입력을 그대로 넘겨 주면서 가변 길이 정수로 기록한다)
+// 형식: "RPGR" + 버전 + 마스터 시드(8바이트), 이후 입력마다
+//   숫자 = varint(zigzag(값) + 1), 숫자가 아닌 입력 = 0
+//   줄   = varint(UTF-8 길이) + UTF-8 바이트
+//   시각 = varint(밀리초)
+class InputRecorder implements GameInput, Closeable {
+    static final int MAGIC = 0x52504752;
+    static final int VERSION = 1;
+    
+    private GameInput source;
+    private DataOutputStream out;
+    
+    public InputRecorder(GameInput source, OutputStream out, long seed) throws IOException {
+        this.source = source;
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.out.writeInt(MAGIC);
+        this.out.writeByte(VERSION);
+        this.out.writeLong(seed);
+        this.out.flush();
+    }
+    
+    @Override
+    public int nextInt() {
+        int value;
+        try {
+            value = source.nextInt();
+        } catch (InputMismatchException e) {
+            write(0);
+            throw e;
+        }
+        write((((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL) + 1);
+        return value;
+    }
+    
+    @Override
+    public String nextLine() {
+        String line = source.nextLine();
+        byte[] bytes = line.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        try {
+            writeVarint(bytes.length);
+            out.write(bytes);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return line;
+    }
+    
+    @Override
+    public long currentTimeMillis() {
+        long now = source.currentTimeMillis();
+        write(now);
+        return now;
+    }
+    
+    // 게임이 비정상 종료되어도 기록이 남도록 입력마다 비운다
+    private void write(long value) {
+        try {
+            writeVarint(value);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private void writeVarint(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+    
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
+
+// 입력 재생기 (기록 파일 전체를 메모리에 올려 바이트 배열에서 바로 읽는다)
+class InputReplay implements GameInput {
+    private byte[] data;
+    private int position;
+    private long seed;
+    private int inputCount;
+    
+    public InputReplay(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if (in.readInt() != InputRecorder.MAGIC) {
+            throw new IOException("재생 파일 형식이 아닙니다.");
+        }
+        int version = in.readByte();
+        if (version != InputRecorder.VERSION) {
+            throw new IOException("지원하지 않는 재생 파일 버전입니다: " + version);
+        }
+        this.seed = in.readLong();
+        this.data = data;
+        this.position = 13;
+    }
+    
+    public static InputReplay load(String filename) throws IOException {
+        return new InputReplay(java.nio.file.Files.readAllBytes(java.nio.file.Paths.get(filename)));
+    }
+    
+    // 기록이 끝나면 Scanner처럼 NoSuchElementException을 던진다
+    @Override
+    public int nextInt() {
+        long encoded = readVarint();
+        inputCount++;
+        if (encoded == 0) {
+            throw new InputMismatchException();
+        }
+        int zigzag = (int) (encoded - 1);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+    
+    @Override
+    public String nextLine() {
+        int length = (int) readVarint();
+        if (position + length > data.length) {
+            throw new NoSuchElementException();
+        }
+        String line = new String(data, position, length, java.nio.charset.StandardCharsets.UTF_8);
+        position += length;
+        inputCount++;
+        return line;
+    }
+    
+    // 기록할 때 읽은 시각을 그대로 돌려준다 (재생 시점과 상관없이 같은 오프라인 보상이 나온다)
+    @Override
+    public long currentTimeMillis() {
+        long now = readVarint();
+        inputCount++;
+        return now;
+    }
+    
+    private long readVarint() {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            if (position >= data.length) {
+                throw new NoSuchElementException();
+            }
+            byte b = data[position++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+    
+    public long getSeed() {
+        return seed;
+    }
+    
+    public int getInputCount() {
+        return inputCount;
+    }
+    
+    public boolean isFinished() {
+        return position >= data.length;
+    }
+    
+    public int getSize() {
+        return data.length;
+    }
+}
+
+// 세션 기록/재생 도구
+// 마스터 시드 하나와 플레이어 입력만으로 세션 전체를 재현한다.
+// 재생 중에는 콘솔 출력과 저장(자동/수동)을 끄고, 불러오기 메뉴는 당시와 같은 저장 파일이 있어야 재현된다.
+class SessionReplay {
+    // record <파일> [시드]
+    public static void record(String[] args) {
+        if (args.length < 1) {
+            System.out.println("사용법: record <파일> [시드]");
+            return;
+        }
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : RandomService.newSeed();
+        
+        try (InputRecorder recorder = new InputRecorder(new ConsoleInput(new Scanner(System.in)), 
+                new FileOutputStream(args[0]), seed)) {
+            System.out.printf("세션 기록 중 (시드: %d)\n", seed);
+            Game game = new Game(seed, recorder);
+            try {
+                game.start();
+            } catch (NoSuchElementException e) {
+                // 입력이 끝나면 기록도 끝난다
+            }
+            if (game.getPlayer() != null) {
+                System.out.printf("상태 지문: %016x\n", fingerprint(game));
+            }
+        } catch (IOException e) {
+            System.out.println("기록 파일 오류: " + e.getMessage());
+        }
+    }
+    
+    // replay <파일>
+    public static void replay(String[] args) {
+        if (args.length < 1) {
+            System.out.println("사용법: replay <파일>");
+            return;
+        }
+        
+        InputReplay input;
+        try {
+            input = InputReplay.load(args[0]);
+        } catch (IOException e) {
+            System.out.println("재생 파일 오류: " + e.getMessage());
+            return;
+        }
+        
+        PrintStream console = System.out;
+        long start = System.nanoTime();
+        System.setOut(SilentPrintStream.INSTANCE);
+        Game game = new Game(input.getSeed(), input);
+        game.setReplaying(true);
+        try {
+            game.start();
+        } catch (NoSuchElementException e) {
+            // 기록된 입력을 모두 소비함
+        } finally {
+            System.setOut(console);
+        }
+        long elapsed = System.nanoTime() - start;
+        
+        console.printf("입력 %d개 (%d바이트) 재생: %.3f초\n", input.getInputCount(), input.getSize(), elapsed / 1e9);
+        Player player = game.getPlayer();
+        if (player != null) {
+            console.printf("%s (%s) Lv.%d | 경험치 %d | 체력 %d/%d | 골드 %d | Day %d\n",
+                player.getName(), player.getPlayerClass().getTitle(), player.getLevel(), player.getExp(),
+                player.getHp(), player.getMaxHp(), player.getGold(), game.getGameDay());
+            console.printf("상태 지문: %016x\n", fingerprint(game));
+        }
+    }
+    
+    // 최종 상태 요약 해시 (회귀 테스트에서 비교용)
+    public static long fingerprint(Game game) {
+        Player player = game.getPlayer();
+        long hash = game.getSeed();
+        hash = SplitMixRandom.mix64(hash + player.getLevel());
+        hash = SplitMixRandom.mix64(hash + player.getExp());
+        hash = SplitMixRandom.mix64(hash + player.getHp());
+        hash = SplitMixRandom.mix64(hash + player.getMana());
+        hash = SplitMixRandom.mix64(hash + player.getGold());
+        hash = SplitMixRandom.mix64(hash + game.getGameDay());
+        for (Item item : player.getInventory()) {
+            hash = SplitMixRandom.mix64(hash + item.getName().hashCode());
+        }
+        return SplitMixRandom.mix64(hash + game.getRandom().stateHash());
+    }
+}
+
+// 전투 예상 결과 클래스
+class FightOdds {
+    private final double winProbability;
+    private final double expectedTurns;
+    private final double expectedHpLoss;
+    
+    public FightOdds(double winProbability, double expectedTurns, double expectedHpLoss) {
+        this.winProbability = winProbability;
+        this.expectedTurns = expectedTurns;
+        this.expectedHpLoss = expectedHpLoss;
+    }
+    
+    public double getWinProbability() { return winProbability; }
+    public double getExpectedTurns() { return expectedTurns; }
+    public double getExpectedHpLoss() { return expectedHpLoss; }
+}
+
+// 전투 확률 계산기 (기본 공격 전투의 승률, 기대 턴 수, 기대 체력 손실을 정확히 계산한다)
+// 양쪽의 공격 피해는 서로 독립이고 매 턴 같은 분포를 따르므로, (플레이어 체력, 몬스터 체력)
+// 마르코프 연쇄는 "몇 번 맞으면 쓰러지는가" 분포 두 개로 나뉜다.
+//   번갈아 행동: 플레이어 선공이면 승리 ⇔ Np ≤ Nm, 몬스터 선공이면 승리 ⇔ Np < Nm, 턴 수 = min(Np, Nm)
+//   속도 순서표: 플레이어의 k번째 행동 전에 몬스터가 행동한 횟수 M_k에 대해 승리 ⇔ Np = k, Nm > M_k
+// 몬스터는 예전 80/20 규칙으로 공격한다고 본다 (MonsterAI가 탐색하는 종은 근사치).
+// 전투 시작 시점의 능력치를 고정으로 보며, 전투 중 상태 이상 피해와 장비 파손은 반영하지 않는다.
+class FightOddsCalculator {
+    private static final double EPSILON = 1e-9;
+    
+    private final Map<Key, FightOdds> cache;
+    private final boolean speedTimeline;
+    private long hits;
+    private long misses;
+    
+    public FightOddsCalculator(int capacity) {
+        this(capacity, false);
+    }
+    
+    // speedTimeline: BattleEngine.setSpeedTimeline(true)인 전투처럼 속도 순서표로 행동 순서를 정한다
+    public FightOddsCalculator(int capacity, boolean speedTimeline) {
+        this.speedTimeline = speedTimeline;
+        this.cache = new LinkedHashMap<Key, FightOdds>(capacity * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, FightOdds> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+    
+    public FightOdds calculate(Player player, Monster monster) {
+        return calculate(player, monster, player.getHp());
+    }
+    
+    // playerHp: 현재 체력 대신 이 체력으로 전투를 시작한다고 보고 계산
+    public FightOdds calculate(Player player, Monster monster, int playerHp) {
+        Weapon weapon = player.getEquippedWeapon();
+        Armor armor = player.getEquippedArmor();
+        Key key = new Key(playerHp, player.getAttack(), player.getDefense(), player.getAgility(),
+            weapon != null ? weapon.getCriticalChance() : 0.0, player.getEvasion(),
+            armor != null ? armor.getDamageReduction() : -1.0,
+            monster.getHp(), monster.getAttack(), monster.getDefense(), monster.getLevel());
+        
+        synchronized (cache) {
+            FightOdds odds = cache.get(key);
+            if (odds != null) {
+                hits++;
+                return odds;
+            }
+            misses++;
+        }
+        
+        FightOdds odds = solve(key, speedTimeline);
+        synchronized (cache) {
+            cache.put(key, odds);
+        }
+        return odds;
+    }
+    
+    public long getHits() {
+        synchronized (cache) { return hits; }
+    }
+    
+    public long getMisses() {
+        synchronized (cache) { return misses; }
+    }
+    
+    private static FightOdds solve(Key key, boolean speedTimeline) {
+        if (key.playerHp <= 0) return new FightOdds(0.0, 0.0, 0.0);
+        if (key.monsterHp <= 0) return new FightOdds(1.0, 0.0, 0.0);
+        
+        // 플레이어 공격: 크리티컬이면 피해 2배
+        int base = Math.max(1, key.playerAttack - key.monsterDefense);
+        double[] playerDamage = new double[(base + base / 2) * 2 + 1];
+        addUniform(playerDamage, base, 1.0 - key.criticalChance, 1, -1.0);
+        addUniform(playerDamage, base, key.criticalChance, 2, -1.0);
+        
+        // 몬스터 공격: 회피 시 0, 3레벨 이상이면 20% 확률로 공격력 2배
+        int normalBase = Math.max(1, key.monsterAttack - key.playerDefense);
+        int strongBase = Math.max(1, key.monsterAttack * 2 - key.playerDefense);
+        double[] monsterDamage = new double[strongBase + strongBase / 2 + 1];
+        double hit = 1.0 - key.evasion;
+        double strong = key.monsterLevel < 3 ? 0.0 : 0.2;
+        monsterDamage[0] = key.evasion;
+        addUniform(monsterDamage, normalBase, hit * (1.0 - strong), 1, key.damageReduction);
+        addUniform(monsterDamage, strongBase, hit * strong, 1, key.damageReduction);
+        
+        if (speedTimeline) {
+            return solveTimeline(key, playerDamage, monsterDamage);
+        }
+        
+        // 두 쪽을 한 공격씩 함께 진행하다가 어느 한쪽이 거의 확실히 쓰러지면 멈춘다
+        //   killedAt[k]     = P(Np = k)
+        //   survive[j]      = 플레이어가 j번 공격받은 뒤 살아 있을 확률
+        //   lossIfAlive[j]  = 그때까지 살아 있는 경우의 누적 피해 기대값
+        HitChain monsterSide = new HitChain(playerDamage, key.monsterHp);
+        HitChain playerSide = new HitChain(monsterDamage, key.playerHp);
+        double[] killedAt = new double[key.monsterHp + 2];
+        double[] survive = new double[key.monsterHp + 2];
+        double[] lossIfAlive = new double[key.monsterHp + 2];
+        survive[0] = 1.0;
+        
+        int hitsToKill = 0;
+        double remaining = 1.0;
+        while (remaining > EPSILON && survive[hitsToKill] > EPSILON && hitsToKill < key.monsterHp) {
+            hitsToKill++;
+            killedAt[hitsToKill] = monsterSide.step();
+            remaining -= killedAt[hitsToKill];
+            survive[hitsToKill] = survive[hitsToKill - 1] - playerSide.step();
+            lossIfAlive[hitsToKill] = playerSide.expectedLossIfAlive();
+        }
+        
+        int agilitySum = key.playerAgility + key.monsterLevel * 5;
+        double playerFirst = agilitySum > 0 ? Math.max(0, key.playerAgility - 1) / (double) agilitySum : 0.0;
+        
+        double winFirst = 0.0, winSecond = 0.0, lossFirst = 0.0, lossSecond = 0.0, turns = 0.0;
+        double notYetKilled = 1.0;
+        for (int k = 1; k <= hitsToKill; k++) {
+            double p = killedAt[k];
+            winFirst += p * survive[k - 1];
+            winSecond += p * survive[k];
+            lossFirst += p * lossIfAlive[k - 1];
+            lossSecond += p * lossIfAlive[k];
+            turns += notYetKilled * survive[k - 1];
+            notYetKilled -= p;
+        }
+        lossFirst += (1.0 - winFirst) * key.playerHp;
+        lossSecond += (1.0 - winSecond) * key.playerHp;
+        
+        double win = playerFirst * winFirst + (1.0 - playerFirst) * winSecond;
+        double hpLoss = playerFirst * lossFirst + (1.0 - playerFirst) * lossSecond;
+        return new FightOdds(Math.min(1.0, win), turns, Math.max(0.0, hpLoss));
+    }
+    
+    // 속도 순서표: 플레이어는 Dp, 몬스터는 Dm 시간마다 행동하고 첫 행동 시각은 각자 [0, D)에서 균등하다.
+    //   P(M_k ≥ m) = P(Um - Up < (k-1)·Dp - (m-1)·Dm)
+    // M_k는 몇 개 값에만 몰려 있으므로 k마다 그 범위만 더한다. 플레이어가 행동할 때마다 한 턴으로 센다.
+    private static FightOdds solveTimeline(Key key, double[] playerDamage, double[] monsterDamage) {
+        double playerDelay = TurnTimeline.GAUGE / Math.max(1, TurnTimeline.BASE_SPEED + key.playerAgility);
+        double monsterDelay = TurnTimeline.GAUGE / Math.max(1, TurnTimeline.BASE_SPEED + key.monsterLevel * 5);
+        
+        //   survive[m]      = 플레이어가 m번 공격받은 뒤 살아 있을 확률
+        //   lossIfAlive[m]  = 그때까지 살아 있는 경우의 누적 피해 기대값
+        HitChain monsterSide = new HitChain(playerDamage, key.monsterHp);
+        HitChain playerSide = new HitChain(monsterDamage, key.playerHp);
+        int capacity = (int) Math.ceil(key.monsterHp * playerDelay / monsterDelay) + 3;
+        double[] survive = new double[capacity];
+        double[] lossIfAlive = new double[capacity];
+        survive[0] = 1.0;
+        int known = 0;
+        
+        double win = 0.0, hpLoss = 0.0, turns = 0.0;
+        double notYetKilled = 1.0;
+        for (int k = 1; k <= key.monsterHp && notYetKilled > EPSILON; k++) {
+            double killed = monsterSide.step();
+            int low = (int) Math.floor((k - 1) * playerDelay / monsterDelay);
+            int high = (int) Math.ceil(k * playerDelay / monsterDelay) + 1;
+            while (known < high) {
+                known++;
+                if (survive[known - 1] > EPSILON) {
+                    survive[known] = survive[known - 1] - playerSide.step();
+                    lossIfAlive[known] = playerSide.expectedLossIfAlive();
+                }
+            }
+            
+            double alive = 0.0, loss = 0.0;
+            for (int m = low; m < high; m++) {
+                double p = atLeast(k, m, playerDelay, monsterDelay) - atLeast(k, m + 1, playerDelay, monsterDelay);
+                alive += p * survive[m];
+                loss += p * lossIfAlive[m];
+            }
+            win += killed * alive;
+            hpLoss += killed * loss;
+            turns += notYetKilled * alive;
+            notYetKilled -= killed;
+            if (alive < EPSILON) break;
+        }
+        hpLoss += (1.0 - win) * key.playerHp;
+        return new FightOdds(Math.min(1.0, win), turns, Math.max(0.0, hpLoss));
+    }
+    
+    // P(M_k ≥ m): 몬스터의 m번째 행동이 플레이어의 k번째 행동보다 먼저일 확률
+    private static double atLeast(int k, int m, double playerDelay, double monsterDelay) {
+        if (m <= 0) return 1.0;
+        double c = (k - 1) * playerDelay - (m - 1) * monsterDelay;
+        return (ramp(c + playerDelay, monsterDelay) - ramp(c, monsterDelay)) / (playerDelay * monsterDelay);
+    }
+    
+    // ∫ clamp(t, 0, width) dt (-∞부터 x까지)
+    private static double ramp(double x, double width) {
+        if (x <= 0.0) return 0.0;
+        if (x <= width) return x * x / 2;
+        return width * width / 2 + width * (x - width);
+    }
+    
+    // calculateDamage와 같은 [base, base + base/2] 균등 분포를 배수와 방어구 감소를 적용해 더한다
+    // reduction이 음수이면 방어구가 없는 경우
+    private static void addUniform(double[] pmf, int base, double weight, int multiplier, double reduction) {
+        if (weight <= 0.0) return;
+        int count = base / 2 + 1;
+        for (int r = 0; r < count; r++) {
+            int damage = (base + r) * multiplier;
+            if (reduction >= 0.0) {
+                damage = (int)(damage * (1.0 - reduction));
+            }
+            pmf[damage] += weight / count;
+        }
+    }
+    
+    // 한쪽이 맞을 때마다의 남은 체력 분포
+    // 확률이 같은 연속 피해값을 구간으로 묶어 누적합으로 한 번에 더하고,
+    // 확률이 0이 아닌 체력 범위 [low, high]만 계산한다.
+    private static final class HitChain {
+        private final int[] runStart;
+        private final int[] runEnd;
+        private final double[] runProbability;
+        private final double[] lethal; // lethal[hp] = 피해가 hp 이상일 확률
+        private final int minDamage;
+        private final int maxDamage;
+        private final int maxHp;
+        private double[] alive;
+        private double[] next;
+        private final double[] prefix;
+        private int low;
+        private int high;
+        
+        HitChain(double[] pmf, int hp) {
+            List<int[]> runs = new ArrayList<>();
+            for (int d = 0; d < pmf.length; d++) {
+                if (pmf[d] <= 0.0) continue;
+                int end = d;
+                while (end + 1 < pmf.length && pmf[end + 1] == pmf[d]) end++;
+                runs.add(new int[] { d, end });
+                d = end;
+            }
+            runStart = new int[runs.size()];
+            runEnd = new int[runs.size()];
+            runProbability = new double[runs.size()];
+            for (int i = 0; i < runs.size(); i++) {
+                runStart[i] = runs.get(i)[0];
+                runEnd[i] = runs.get(i)[1];
+                runProbability[i] = pmf[runStart[i]];
+            }
+            minDamage = runStart[0];
+            maxDamage = runEnd[runEnd.length - 1];
+            lethal = new double[pmf.length + 1];
+            for (int d = pmf.length - 1; d >= 0; d--) {
+                lethal[d] = lethal[d + 1] + pmf[d];
+            }
+            
+            maxHp = hp;
+            alive = new double[hp + 1];
+            next = new double[hp + 1];
+            prefix = new double[hp + 2];
+            alive[hp] = 1.0;
+            low = hp;
+            high = hp;
+        }
+        
+        // 한 번 공격받은 뒤의 분포로 넘어가고 이번 공격에 쓰러진 확률을 반환
+        // next[hp] = Σ P(피해 d) × alive[hp + d]
+        double step() {
+            if (low > high) return 0.0;
+            
+            double killed = 0.0;
+            prefix[low] = 0.0;
+            for (int hp = low; hp <= high; hp++) {
+                prefix[hp + 1] = prefix[hp] + alive[hp];
+                if (hp < lethal.length) {
+                    killed += alive[hp] * lethal[hp];
+                }
+            }
+            
+            int nextLow = Math.max(1, low - maxDamage);
+            int nextHigh = high - minDamage;
+            for (int hp = nextLow; hp <= nextHigh; hp++) {
+                double sum = 0.0;
+                for (int r = 0; r < runStart.length; r++) {
+                    int from = Math.max(low, hp + runStart[r]);
+                    int to = Math.min(high, hp + runEnd[r]);
+                    if (from <= to) {
+                        sum += runProbability[r] * (prefix[to + 1] - prefix[from]);
+                    }
+                }
+                next[hp] = sum;
+            }
+            for (int hp = low; hp <= high; hp++) {
+                if (hp < nextLow || hp > nextHigh) alive[hp] = 0.0;
+            }
+            
+            double[] swap = alive; alive = next; next = swap;
+            for (int hp = nextLow; hp <= nextHigh; hp++) {
+                next[hp] = 0.0;
+            }
+            low = nextLow;
+            high = nextHigh;
+            return killed;
+        }
+        
+        // 살아 있는 경우의 누적 피해 기대값 (살아 있을 확률을 곱한 값)
+        double expectedLossIfAlive() {
+            double loss = 0.0;
+            for (int hp = low; hp <= high; hp++) {
+                loss += alive[hp] * (maxHp - hp);
+            }
+            return loss;
+        }
+    }
+    
+    // odds [레벨] [전투 수] [시드]: 몬스터 × 직업 별 계산값과 게임 전투(속도 순서표, 몬스터 AI)의 표본 결과를 비교
+    public static void run(String[] args) {
+        int level = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int fights = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42L;
+        
+        List<MonsterTemplate> monsters = WorldContent.SHARED.getMonsters();
+        FightOddsCalculator calculator = new FightOddsCalculator(1024, true);
+        SplitMixRandom random = new SplitMixRandom(0);
+        BattleEngine engine = new BattleEngine(random);
+        engine.setMonsterAI(MonsterAI.SHARED);
+        engine.setSpeedTimeline(true);
+        double worst = 0.0;
+        double worstSearched = 0.0;
+        
+        System.out.println("몬스터,직업,계산 승률,표본 승률,계산 턴,표본 턴,계산 체력 손실,표본 체력 손실");
+        for (MonsterTemplate monster : monsters) {
+            for (PlayerClass playerClass : PlayerClass.values()) {
+                FightOdds odds = calculator.calculate(BalanceSweep.createPlayer(playerClass, level), monster.spawn());
+                int wins = 0;
+                long turns = 0;
+                long hpLoss = 0;
+                for (int i = 0; i < fights; i++) {
+                    random.setSeed(seed + i);
+                    Player player = BalanceSweep.createPlayer(playerClass, level);
+                    BattleOutcome outcome = engine.resolve(player, monster.spawn(), ActionPolicy.BASIC_ATTACK);
+                    if (outcome.isPlayerWin()) wins++;
+                    turns += outcome.getTurns();
+                    hpLoss += player.getMaxHp() - player.getHp();
+                }
+                double sampled = wins / (double) fights;
+                if (MonsterBehavior.of(monster.getType()).isClassic()) {
+                    worst = Math.max(worst, Math.abs(sampled - odds.getWinProbability()));
+                } else {
+                    worstSearched = Math.max(worstSearched, Math.abs(sampled - odds.getWinProbability()));
+                }
+                System.out.printf("%s,%s,%.4f,%.4f,%.2f,%.2f,%.1f,%.1f\n", monster.getName(), playerClass.getTitle(),
+                    odds.getWinProbability(), sampled, odds.getExpectedTurns(), turns / (double) fights,
+                    odds.getExpectedHpLoss(), hpLoss / (double) fights);
+            }
+        }
+        System.err.printf("승률 최대 오차: %.4f, AI 탐색 몬스터 %.4f (전투 %d회 표본)\n", worst, worstSearched, fights);
+        
+        Player player = BalanceSweep.createPlayer(PlayerClass.WARRIOR, level);
+        Monster monster = monsters.get(monsters.size() - 1).spawn();
+        int queries = 100000;
+        long start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            new FightOddsCalculator(1).calculate(player, monster);
+        }
+        long cold = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            calculator.calculate(player, monster);
+        }
+        long cached = System.nanoTime() - start;
+        System.err.printf("%s 상대 계산: %.2f마이크로초, 캐시 조회: %.3f마이크로초\n", 
+            monster.getName(), cold / 1e3 / queries, cached / 1e3 / queries);
+    }
+    
+    // 캐시 키 (전투 결과를 결정하는 능력치 묶음)
+    private static final class Key {
+        final int playerHp, playerAttack, playerDefense, playerAgility;
+        final double criticalChance, evasion, damageReduction;
+        final int monsterHp, monsterAttack, monsterDefense, monsterLevel;
+        
+        Key(int playerHp, int playerAttack, int playerDefense, int playerAgility,
+            double criticalChance, double evasion, double damageReduction,
+            int monsterHp, int monsterAttack, int monsterDefense, int monsterLevel) {
+            this.playerHp = playerHp;
+            this.playerAttack = playerAttack;
+            this.playerDefense = playerDefense;
+            this.playerAgility = playerAgility;
+            this.criticalChance = criticalChance;
+            this.evasion = evasion;
+            this.damageReduction = damageReduction;
+            this.monsterHp = monsterHp;
+            this.monsterAttack = monsterAttack;
+            this.monsterDefense = monsterDefense;
+            this.monsterLevel = monsterLevel;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return playerHp == k.playerHp && playerAttack == k.playerAttack && playerDefense == k.playerDefense
+                && playerAgility == k.playerAgility && criticalChance == k.criticalChance
+                && evasion == k.evasion && damageReduction == k.damageReduction
+                && monsterHp == k.monsterHp && monsterAttack == k.monsterAttack
+                && monsterDefense == k.monsterDefense && monsterLevel == k.monsterLevel;
+        }
+        
+        @Override
+        public int hashCode() {
+            int h = playerHp;
+            h = h * 31 + playerAttack;
+            h = h * 31 + playerDefense;
+            h = h * 31 + playerAgility;
+            h = h * 31 + Double.hashCode(criticalChance);
+            h = h * 31 + Double.hashCode(evasion);
+            h = h * 31 + Double.hashCode(damageReduction);
+            h = h * 31 + monsterHp;
+            h = h * 31 + monsterAttack;
+            h = h * 31 + monsterDefense;
+            return h * 31 + monsterLevel;
+        }
+    }
+}
+
+// 몬스터 능력치 자동 조정기
+// 지역 레벨 구간의 각 레벨에서 목표 승률 곡선(최저 레벨 → 최고 레벨 직선)과 목표 전투 길이에
+// 맞도록 체력, 공격력, 방어력을 패턴 탐색한다. 후보마다 밸런스 스윕으로 점수를 매기고
+// 한 라운드의 이웃 후보들은 같은 fork/join 풀에서 동시에 평가한다.
+// 모든 후보가 같은 전투 시드를 쓰므로 후보끼리의 비교에 표본 잡음이 덜 섞인다.
+class MonsterTuner {
+    private static final double TURN_WEIGHT = 0.25;
+    private static final int MAX_ROUNDS = 40;
+    
+    private MonsterTemplate base;
+    private PlayerClass playerClass;
+    private int minLevel;
+    private int maxLevel;
+    private double minLevelWinRate;
+    private double maxLevelWinRate;
+    private double targetTurns;
+    private int fights;
+    private long seed;
+    private ForkJoinPool pool;
+    private BattleRules rules = BattleRules.GAME;
+    private Map<List<Integer>, Candidate> evaluated;
+    
+    public MonsterTuner(MonsterTemplate base, PlayerClass playerClass, int minLevel, int maxLevel,
+                       double minLevelWinRate, double maxLevelWinRate, double targetTurns,
+                       int fights, long seed, ForkJoinPool pool) {
+        this.base = base;
+        this.playerClass = playerClass;
+        this.minLevel = minLevel;
+        this.maxLevel = maxLevel;
+        this.minLevelWinRate = minLevelWinRate;
+        this.maxLevelWinRate = maxLevelWinRate;
+        this.targetTurns = targetTurns;
+        this.fights = fights;
+        this.seed = seed;
+        this.pool = pool;
+        this.evaluated = new HashMap<>();
+    }
+    
+    // tune <몬스터> <직업> <지역> [최저 레벨 승률] [최고 레벨 승률] [목표 턴] [전투 수] [시드] [스레드] [규칙]
+    public static void run(String[] args) {
+        if (args.length < 3) {
+            System.out.println("사용법: tune <몬스터> <직업> <지역> [최저 레벨 승률] [최고 레벨 승률] [목표 턴] [전투 수] [시드] [스레드] [규칙 (game, classic)]");
+            return;
+        }
+        Game game = new Game();
+        MonsterTemplate monster = game.getMonsters().stream()
+            .filter(m -> m.getName().equals(args[0]))
+            .findFirst().orElse(null);
+        PlayerClass playerClass = Arrays.stream(PlayerClass.values())
+            .filter(c -> c.getTitle().equals(args[1]) || c.name().equalsIgnoreCase(args[1]))
+            .findFirst().orElse(null);
+        Location location = game.getLocation(args[2]);
+        if (monster == null || playerClass == null || location == null) {
+            System.out.println("몬스터, 직업 또는 지역 이름이 올바르지 않습니다.");
+            return;
+        }
+        double minLevelWinRate = args.length > 3 ? Double.parseDouble(args[3]) : 0.6;
+        double maxLevelWinRate = args.length > 4 ? Double.parseDouble(args[4]) : 0.9;
+        double targetTurns = args.length > 5 ? Double.parseDouble(args[5]) : 5.0;
+        int fights = args.length > 6 ? Integer.parseInt(args[6]) : 2000;
+        long seed = args.length > 7 ? Long.parseLong(args[7]) : 42L;
+        int threads = args.length > 8 ? Integer.parseInt(args[8]) : Runtime.getRuntime().availableProcessors();
+        BattleRules rules = args.length > 9 ? BattleRules.of(args[9]) : BattleRules.GAME;
+        
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            MonsterTuner tuner = new MonsterTuner(monster, playerClass, location.getMinLevel(), location.getMaxLevel(),
+                minLevelWinRate, maxLevelWinRate, targetTurns, fights, seed, pool);
+            tuner.setRules(rules);
+            long start = System.nanoTime();
+            Candidate before = tuner.evaluate(Collections.singletonList(
+                new int[] { monster.getMaxHp(), monster.getAttack(), monster.getDefense() })).get(0);
+            Candidate after = tuner.tune();
+            long elapsed = System.nanoTime() - start;
+            
+            System.out.printf("\n%s / %s / %s (레벨 %d~%d)\n", monster.getName(), playerClass.getTitle(),
+                location.getName(), location.getMinLevel(), location.getMaxLevel());
+            System.out.println("# 전투 규칙: " + rules.getDescription());
+            System.out.println("레벨,목표 승률,기존 승률,조정 승률,기존 턴,조정 턴");
+            for (int i = 0; i < after.getWinRates().length; i++) {
+                System.out.printf("%d,%.3f,%.3f,%.3f,%.2f,%.2f\n", tuner.minLevel + i, tuner.getTargetWinRate(i),
+                    before.getWinRates()[i], after.getWinRates()[i], before.getTurns()[i], after.getTurns()[i]);
+            }
+            System.out.printf("오차: %.5f → %.5f (후보 %d개, %.1f초, %d 스레드)\n", before.getScore(), after.getScore(),
+                tuner.evaluated.size(), elapsed / 1e9, threads);
+            System.out.println(toSource(monster.withStats(after.getMaxHp(), after.getAttack(), after.getDefense())));
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    // 기본은 게임 규칙 (조정 결과를 게임에 그대로 붙여 넣으므로)
+    public void setRules(BattleRules rules) {
+        this.rules = rules;
+    }
+    
+    public Candidate tune() {
+        Candidate current = evaluate(Collections.singletonList(
+            new int[] { base.getMaxHp(), base.getAttack(), base.getDefense() })).get(0);
+        int[] step = { Math.max(1, base.getMaxHp() / 4), Math.max(1, base.getAttack() / 4), Math.max(1, base.getDefense() / 4) };
+        
+        for (int round = 0; round < MAX_ROUNDS; round++) {
+            List<int[]> neighbours = new ArrayList<>();
+            for (int dh = -1; dh <= 1; dh++) {
+                for (int da = -1; da <= 1; da++) {
+                    for (int dd = -1; dd <= 1; dd++) {
+                        if (dh == 0 && da == 0 && dd == 0) continue;
+                        int hp = current.getMaxHp() + dh * step[0];
+                        int attack = current.getAttack() + da * step[1];
+                        int defense = current.getDefense() + dd * step[2];
+                        if (hp >= 1 && attack >= 1 && defense >= 0) {
+                            neighbours.add(new int[] { hp, attack, defense });
+                        }
+                    }
+                }
+            }
+            
+            Candidate best = current;
+            for (Candidate candidate : evaluate(neighbours)) {
+                if (candidate.getScore() < best.getScore()) {
+                    best = candidate;
+                }
+            }
+            System.err.printf("라운드 %d: 체력 %d, 공격력 %d, 방어력 %d (오차 %.5f, 보폭 %d/%d/%d)\n", round + 1,
+                best.getMaxHp(), best.getAttack(), best.getDefense(), best.getScore(), step[0], step[1], step[2]);
+            
+            if (best != current) {
+                current = best;
+            } else if (step[0] == 1 && step[1] == 1 && step[2] == 1) {
+                break;
+            } else {
+                for (int i = 0; i < step.length; i++) {
+                    step[i] = Math.max(1, step[i] / 2);
+                }
+            }
+        }
+        return current;
+    }
+    
+    // 아직 평가하지 않은 후보들을 각각 밸런스 스윕 하나로 만들어 풀에서 동시에 실행
+    public List<Candidate> evaluate(List<int[]> stats) {
+        List<BalanceSweep> sweeps = new ArrayList<>();
+        List<int[]> pending = new ArrayList<>();
+        for (int[] s : stats) {
+            if (!evaluated.containsKey(key(s))) {
+                pending.add(s);
+                BalanceSweep sweep = new BalanceSweep(Collections.singletonList(base.withStats(s[0], s[1], s[2])),
+                    new PlayerClass[] { playerClass }, minLevel, maxLevel, fights, seed, ActionPolicy.FIRST_SKILL);
+                sweep.setRules(rules);
+                sweeps.add(sweep);
+            }
+        }
+        
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (BalanceSweep sweep : sweeps) {
+            tasks.add(ForkJoinTask.adapt(sweep::compute));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        
+        for (int i = 0; i < pending.size(); i++) {
+            evaluated.put(key(pending.get(i)), score(pending.get(i), sweeps.get(i)));
+        }
+        
+        List<Candidate> results = new ArrayList<>();
+        for (int[] s : stats) {
+            results.add(evaluated.get(key(s)));
+        }
+        return results;
+    }
+    
+    private Candidate score(int[] stats, BalanceSweep sweep) {
+        int levels = maxLevel - minLevel + 1;
+        double[] winRates = new double[levels];
+        double[] turns = new double[levels];
+        double winError = 0.0;
+        double turnError = 0.0;
+        for (int i = 0; i < levels; i++) {
+            winRates[i] = sweep.getWinRate(i);
+            turns[i] = sweep.getAverageTurns(i);
+            double w = winRates[i] - getTargetWinRate(i);
+            double t = (turns[i] - targetTurns) / targetTurns;
+            winError += w * w;
+            turnError += t * t;
+        }
+        double score = (winError + TURN_WEIGHT * turnError) / levels;
+        return new Candidate(stats[0], stats[1], stats[2], score, winRates, turns);
+    }
+    
+    // 레벨 구간 안에서 직선으로 보간한 목표 승률
+    public double getTargetWinRate(int levelIndex) {
+        if (maxLevel == minLevel) return maxLevelWinRate;
+        return minLevelWinRate + (maxLevelWinRate - minLevelWinRate) * levelIndex / (maxLevel - minLevel);
+    }
+    
+    private static List<Integer> key(int[] stats) {
+        return Arrays.asList(stats[0], stats[1], stats[2]);
+    }
+    
+    // initializeMonsters()에 붙여 넣을 생성자 호출문
+    public static String toSource(MonsterTemplate monster) {
+        if (monster.getCriticalChance() == 0.1 && monster.getEvasion() == 0.1 && monster.getLootChance() == 30) {
+            return String.format("monsters.add(new MonsterTemplate(\"%s\", %d, %d, %d, %d, %d, MonsterType.%s));",
+                monster.getName(), monster.getMaxHp(), monster.getAttack(), monster.getDefense(),
+                monster.getExpReward(), monster.getLevel(), monster.getType().name());
+        }
+        return String.format("monsters.add(new MonsterTemplate(\"%s\", %d, %d, %d, %d, %d, MonsterType.%s, %s, %s, %d));",
+            monster.getName(), monster.getMaxHp(), monster.getAttack(), monster.getDefense(),
+            monster.getExpReward(), monster.getLevel(), monster.getType().name(),
+            monster.getCriticalChance(), monster.getEvasion(), monster.getLootChance());
+    }
+    
+    // 조정 후보와 그 평가 결과
+    static class Candidate {
+        private final int maxHp;
+        private final int attack;
+        private final int defense;
+        private final double score;
+        private final double[] winRates;
+        private final double[] turns;
+        
+        Candidate(int maxHp, int attack, int defense, double score, double[] winRates, double[] turns) {
+            this.maxHp = maxHp;
+            this.attack = attack;
+            this.defense = defense;
+            this.score = score;
+            this.winRates = winRates;
+            this.turns = turns;
+        }
+        
+        public int getMaxHp() { return maxHp; }
+        public int getAttack() { return attack; }
+        public int getDefense() { return defense; }
+        public double getScore() { return score; }
+        public double[] getWinRates() { return winRates; }
+        public double[] getTurns() { return turns; }
+    }
+}
+
+// 아무것도 출력하지 않는 스트림 (문자열 서식 처리도 건너뛴다)
+final class SilentPrintStream extends PrintStream {
+    static final SilentPrintStream INSTANCE = new SilentPrintStream();
+    
+    private SilentPrintStream() {
+        super(OutputStream.nullOutputStream());
+    }
+    
+    @Override public void print(String s) {}
+    @Override public void print(Object obj) {}
+    @Override public void print(int i) {}
+    @Override public void print(char c) {}
+    @Override public void println() {}
+    @Override public void println(String x) {}
+    @Override public void println(Object x) {}
+    @Override public void println(int x) {}
+    @Override public PrintStream printf(String format, Object... args) { return this; }
+    @Override public PrintStream printf(Locale l, String format, Object... args) { return this; }
+    @Override public PrintStream format(String format, Object... args) { return this; }
+    @Override public PrintStream format(Locale l, String format, Object... args) { return this; }
+    @Override public void write(int b) {}
+    @Override public void write(byte[] buf, int off, int len) {}
+}
+
+// 봇 행동 정책 인터페이스 (메뉴 대신 매 결정 시점마다 다음 행동을 고른다)
+interface AgentPolicy {
+    int EXPLORE = 1;
+    int MOVE = 2;
+    int REST = 3;
+    int SHOP = 4;
+    
+    int chooseAction(Game game, Player player);
+    
+    // MOVE일 때 목적지
+    default String chooseDestination(Game game, Player player) { return null; }
+    
+    // 살 물건 (null이면 그만 산다)
+    default Item chooseItemToBuy(Player player, List<Item> items) { return null; }
+    
+    // 착용할 장비 (null이면 바꾸지 않는다)
+    default Equipment chooseEquipment(Player player, List<Equipment> equipments) { return null; }
+    
+    default ActionPolicy getBattlePolicy() { return ActionPolicy.FIRST_SKILL; }
+}
+
+// 기본 봇 정책: 체력이 낮으면 휴식, 더 좋은 장비를 살 수 있으면 구매,
+// 해금된 지역 중 레벨에 맞는 가장 높은 지역으로 이동해 탐색한다.
+class GreedyAgentPolicy implements AgentPolicy {
+    private double restHpRatio;
+    
+    public GreedyAgentPolicy(double restHpRatio) {
+        this.restHpRatio = restHpRatio;
+    }
+    
+    @Override
+    public int chooseAction(Game game, Player player) {
+        if (player.getHp() < player.getMaxHp() * restHpRatio) {
+            return REST;
+        }
+        for (Shop shop : game.getShops()) {
+            if (chooseItemToBuy(player, game.getBuyableItems(shop)) != null) {
+                return SHOP;
+            }
+        }
+        String destination = chooseDestination(game, player);
+        if (destination != null && !destination.equals(player.getCurrentLocation())) {
+            return player.getStamina() >= 15 ? MOVE : REST;
+        }
+        return player.getStamina() >= 20 ? EXPLORE : REST;
+    }
+    
+    @Override
+    public String chooseDestination(Game game, Player player) {
+        Location best = null;
+        for (Location location : game.getLocations()) {
+            if (location.getType() == LocationType.TOWN
+                || !player.getUnlockedLocations().contains(location.getName())
+                || !location.isSuitableFor(player.getLevel())) {
+                continue;
+            }
+            if (best == null || location.getMinLevel() > best.getMinLevel()
+                || (location.getMinLevel() == best.getMinLevel() && location.getName().compareTo(best.getName()) < 0)) {
+                best = location;
+            }
+        }
+        return best != null ? best.getName() : null;
+    }
+    
+    @Override
+    public Item chooseItemToBuy(Player player, List<Item> items) {
+        for (Item item : items) {
+            if (item.getPrice() > player.getGold() || !(item instanceof Equipment)) continue;
+            Equipment equip = (Equipment) item;
+            if (equip.getLevelRequirement() > player.getLevel() || player.getInventory().contains(equip)) continue;
+            if (isUpgrade(player, equip)) {
+                return equip;
+            }
+        }
+        return null;
+    }
+    
+    @Override
+    public Equipment chooseEquipment(Player player, List<Equipment> equipments) {
+        for (Equipment equip : equipments) {
+            if (isUpgrade(player, equip)) {
+                return equip;
+            }
+        }
+        return null;
+    }
+    
+    private static boolean isUpgrade(Player player, Equipment equip) {
+        if (equip instanceof Weapon) {
+            Weapon current = player.getEquippedWeapon();
+            return current != equip && (current == null || equip.getAttack() > current.getAttack());
+        }
+        if (equip instanceof Armor) {
+            Armor current = player.getEquippedArmor();
+            return current != equip && (current == null || equip.getDefense() > current.getDefense());
+        }
+        return false;
+    }
+}
+
+// 성장 시뮬레이터 (봇 플레이어들을 헤드리스 Game으로 정해진 일수만큼 진행)
+// 봇은 작업 단위마다 하나씩 끝까지 진행한 뒤 통계에 합치고 버리므로, 봇 수와 무관하게
+// 메모리는 작업 스레드 수 × 세션 하나 + 고정 크기 통계만 쓴다. 봇마다 시드가 고정되어
+// 결과는 스레드 수와 무관하다.
+class ProgressionSimulator {
+    static final int CHUNK_SIZE = 256;
+    static final int MAX_LEVEL = 30;
+    static final int ACTIONS_PER_DAY = 100;
+    
+    private int agents;
+    private int days;
+    private long seed;
+    private AgentPolicy policy;
+    private String[] locationNames;
+    private CombatLog combatLog;   // 여러 스레드가 함께 쓴다 (null이면 기록하지 않는다)
+    
+    public ProgressionSimulator(int agents, int days, long seed, AgentPolicy policy) {
+        this.agents = agents;
+        this.days = days;
+        this.seed = seed;
+        this.policy = policy;
+        this.locationNames = WorldContent.SHARED.getWorldMap().values().stream()
+            .sorted(Comparator.comparingInt(Location::getMinLevel).thenComparing(Location::getName))
+            .map(Location::getName)
+            .toArray(String[]::new);
+    }
+    
+    // simulate [봇 수] [일수] [시드] [스레드] [전투 기록 폴더]
+    public static void run(String[] args) {
+        int agents = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int days = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42L;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        
+        ProgressionSimulator simulator = new ProgressionSimulator(agents, days, seed, new GreedyAgentPolicy(0.4));
+        CombatLog combatLog = null;
+        if (args.length > 4) {
+            try {
+                combatLog = new CombatLog(new File(args[4]));
+            } catch (IOException e) {
+                System.out.println("전투 기록을 열 수 없습니다: " + e.getMessage());
+                return;
+            }
+        }
+        simulator.setCombatLog(combatLog);
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        ProgressionStats stats;
+        try {
+            stats = simulator.run(pool);
+        } finally {
+            pool.shutdown();
+            closeLog(combatLog);
+        }
+        long elapsed = System.nanoTime() - start;
+        
+        stats.print(System.out);
+        Runtime runtime = Runtime.getRuntime();
+        System.err.printf("봇 %d명 × %d일: %.2f초 (%.0f명/초, %d 스레드, 힙 사용 %d MB)\n", agents, days, 
+            elapsed / 1e9, agents / (elapsed / 1e9), threads, (runtime.totalMemory() - runtime.freeMemory()) >> 20);
+        if (combatLog != null) {
+            System.err.printf("전투 기록 %d건 (버림 %d건) → %s\n", combatLog.getRecords(), combatLog.getDropped(), 
+                combatLog.getDir());
+        }
+    }
+    
+    private static void closeLog(CombatLog combatLog) {
+        if (combatLog == null) return;
+        try {
+            combatLog.close();
+        } catch (IOException e) {
+            System.out.println("전투 기록을 닫을 수 없습니다: " + e.getMessage());
+        }
+    }
+    
+    public ProgressionStats run(ForkJoinPool pool) {
+        return pool.invoke(new AgentTask(0, agents));
+    }
+    
+    public void setCombatLog(CombatLog combatLog) {
+        this.combatLog = combatLog;
+    }
+    
+    private class AgentTask extends RecursiveTask<ProgressionStats> {
+        private static final long serialVersionUID = 1L;
+        private int from;
+        private int to;
+        
+        AgentTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected ProgressionStats compute() {
+            if (to - from <= CHUNK_SIZE) {
+                ProgressionStats stats = new ProgressionStats(days, locationNames);
+                for (int agent = from; agent < to; agent++) {
+                    simulate(agent, stats);
+                }
+                return stats;
+            }
+            int mid = (from + to) >>> 1;
+            AgentTask left = new AgentTask(from, mid);
+            left.fork();
+            ProgressionStats right = new AgentTask(mid, to).compute();
+            return left.join().merge(right);
+        }
+    }
+    
+    // 봇 하나를 끝까지 진행하고 결과를 통계에 더한다
+    void simulate(int agent, ProgressionStats stats) {
+        PlayerClass[] classes = PlayerClass.values();
+        Game game = new Game(SplitMixRandom.mix64(seed + (agent + 1) * SplitMixRandom.GOLDEN_GAMMA), null);
+        game.setHeadless(policy.getBattlePolicy());
+        game.setCombatLog(combatLog);
+        PlayerClass playerClass = classes[agent % classes.length];
+        game.setPlayer(new Player(playerClass.getTitle(), playerClass));
+        Player player = game.getPlayer();
+        
+        int level = player.getLevel();
+        int unlocked = player.getUnlockedLocations().size();
+        int actions = 0;
+        int maxActions = days * ACTIONS_PER_DAY;
+        stats.recordGold(playerClass, 1, player.getGold());
+        
+        while (game.getGameDay() <= days && actions < maxActions) {
+            int day = game.getGameDay();
+            takeTurn(game, player);
+            actions++;
+            
+            if (game.getGameState() == GameState.GAME_OVER) {
+                stats.recordDeath(playerClass, indexOf(player.getCurrentLocation()), player.getLevel());
+                game.restartInTown();
+            }
+            while (level < player.getLevel()) {
+                level++;
+                stats.recordLevel(playerClass, level, day, actions);
+            }
+            while (unlocked < player.getUnlockedLocations().size()) {
+                stats.recordUnlock(indexOf(player.getUnlockedLocations().get(unlocked++)), day);
+            }
+            if (game.getGameDay() > day && game.getGameDay() <= days) {
+                stats.recordGold(playerClass, game.getGameDay(), player.getGold());
             }
-        } catch (InputMismatchException e) {
-            System.out.println("숫자를 입력해주세요.");
-            scanner.nextLine(); // 잘못된 입력 비우기
         }
+        stats.recordAgent(playerClass, player.getLevel(), actions);
     }
-
-    private String getTimeOfDay() {
-        int hour = (gameDay % 3);
-        if (hour == 0) return "아침";
-        else if (hour == 1) return "낮";
-        else return "밤";
-    }
-
-    private void showPlayerStatus() {
-        System.out.println("\n===== 캐릭터 상태 =====");
-        System.out.printf("이름: %s (%s)\n", player.getName(), player.getPlayerClass().getTitle());
-        System.out.printf("레벨: %d (경험치: %d/%d)\n", 
-            player.getLevel(), player.getExp(), player.getMaxExp());
-        System.out.printf("체력: %d/%d\n", player.getHp(), player.getMaxHp());
-        System.out.printf("마나: %d/%d\n", player.getMana(), player.getMaxMana());
-        System.out.printf("스태미나: %d/%d\n", player.getStamina(), player.getMaxStamina());
-        System.out.println("--- 능력치 ---");
-        System.out.printf("공격력: %d (+%d)\n", 
-            player.getBaseAttack(), player.getEquippedWeapon() != null ? player.getEquippedWeapon().getAttack() : 0);
-        System.out.printf("방어력: %d (+%d)\n", 
-            player.getBaseDefense(), player.getEquippedArmor() != null ? player.getEquippedArmor().getDefense() : 0);
-        System.out.printf("민첩성: %d\n", player.getAgility());
-        System.out.printf("지능: %d\n", player.getIntelligence());
-        System.out.println("--- 장비 ---");
-        System.out.printf("무기: %s\n", 
-            player.getEquippedWeapon() != null ? player.getEquippedWeapon().getName() + " (공격력 +" + player.getEquippedWeapon().getAttack() + ")" : "없음");
-        System.out.printf("방어구: %s\n", 
-            player.getEquippedArmor() != null ? player.getEquippedArmor().getName() + " (방어력 +" + player.getEquippedArmor().getDefense() + ")" : "없음");
-        System.out.printf("골드: %d G\n", player.getGold());
-        
-        // 상태 이상 표시
-        if (!player.getStatusEffects().isEmpty()) {
-            System.out.println("\n--- 상태 이상 ---");
-            for (StatusEffect effect : player.getStatusEffects()) {
-                System.out.printf("%s: %s (%d턴 남음)\n", 
-                    effect.getType().getName(), effect.getType().getDescription(), effect.getRemainingTurns());
-            }
+    
+    private void takeTurn(Game game, Player player) {
+        for (Quest quest : game.getCompletableQuests()) {
+            game.claimQuestReward(quest);
+        }
+        for (Quest quest : game.getAvailableQuests()) {
+            player.acceptQuest(quest);
         }
         
-        System.out.println("================");
+        switch (policy.chooseAction(game, player)) {
+            case AgentPolicy.EXPLORE:
+                game.exploreArea();
+                break;
+            case AgentPolicy.MOVE:
+                String destination = policy.chooseDestination(game, player);
+                if (destination != null) {
+                    game.moveToLocation(destination);
+                }
+                break;
+            case AgentPolicy.SHOP:
+                for (Shop shop : game.getShops()) {
+                    Item item;
+                    while ((item = policy.chooseItemToBuy(player, game.getBuyableItems(shop))) != null 
+                           && game.buyItem(item)) {
+                        // 살 것이 없을 때까지 구매
+                    }
+                }
+                break;
+            default:
+                game.rest();
+        }
         
-        System.out.println("\n계속하려면 엔터를 누르세요...");
-        scanner.nextLine();
+        Equipment equip;
+        while ((equip = policy.chooseEquipment(player, game.getEquippableItems())) != null) {
+            game.equipItem(equip);
+        }
+    }
+    
+    private int indexOf(String locationName) {
+        for (int i = 0; i < locationNames.length; i++) {
+            if (locationNames[i].equals(locationName)) return i;
+        }
+        return 0;
     }
+}
 
-    private void showExplorationMenu() {
-        System.out.println("\n===== 탐험 =====");
-        System.out.println("현재 위치: " + player.getCurrentLocation());
-        System.out.println("1. 마을로 돌아가기");
-        
-        // 해금된 지역만 표시
-        List<String> unlockedLocations = player.getUnlockedLocations();
-        int option = 2;
-        for (String location : unlockedLocations) {
-            if (!location.equals("마을") && !location.equals(player.getCurrentLocation())) {
-                System.out.printf("%d. %s로 이동\n", option++, location);
+// 성장 시뮬레이션 통계 (고정 크기 배열만 쓰므로 봇 수와 무관하게 크기가 같다)
+class ProgressionStats {
+    private int days;
+    private String[] locationNames;
+    private long[] agents;
+    private long[] finalLevelSum;
+    private long[] actionSum;
+    private long[][] levelReached;     // [직업][레벨]
+    private long[][] levelDaySum;
+    private long[][] levelActionSum;
+    private long[][][] levelDayHistogram; // [직업][레벨][일차]
+    private long[][] goldSum;          // [직업][일차] 그날 시작 시점의 골드
+    private long[] deaths;
+    private long[] deathsByLocation;
+    private long[] deathsByLevel;
+    private long[] unlocks;
+    private long[] unlockDaySum;
+    
+    public ProgressionStats(int days, String[] locationNames) {
+        int classes = PlayerClass.values().length;
+        int levels = ProgressionSimulator.MAX_LEVEL + 1;
+        this.days = days;
+        this.locationNames = locationNames;
+        this.agents = new long[classes];
+        this.finalLevelSum = new long[classes];
+        this.actionSum = new long[classes];
+        this.levelReached = new long[classes][levels];
+        this.levelDaySum = new long[classes][levels];
+        this.levelActionSum = new long[classes][levels];
+        this.levelDayHistogram = new long[classes][levels][days + 1];
+        this.goldSum = new long[classes][days + 1];
+        this.deaths = new long[classes];
+        this.deathsByLocation = new long[locationNames.length];
+        this.deathsByLevel = new long[levels];
+        this.unlocks = new long[locationNames.length];
+        this.unlockDaySum = new long[locationNames.length];
+    }
+    
+    void recordAgent(PlayerClass playerClass, int finalLevel, int actions) {
+        agents[playerClass.ordinal()]++;
+        finalLevelSum[playerClass.ordinal()] += finalLevel;
+        actionSum[playerClass.ordinal()] += actions;
+    }
+    
+    void recordLevel(PlayerClass playerClass, int level, int day, int actions) {
+        if (level > ProgressionSimulator.MAX_LEVEL) return;
+        int c = playerClass.ordinal();
+        levelReached[c][level]++;
+        levelDaySum[c][level] += day;
+        levelActionSum[c][level] += actions;
+        levelDayHistogram[c][level][Math.min(day, days)]++;
+    }
+    
+    void recordGold(PlayerClass playerClass, int day, int gold) {
+        goldSum[playerClass.ordinal()][day] += gold;
+    }
+    
+    void recordDeath(PlayerClass playerClass, int location, int level) {
+        deaths[playerClass.ordinal()]++;
+        deathsByLocation[location]++;
+        deathsByLevel[Math.min(level, ProgressionSimulator.MAX_LEVEL)]++;
+    }
+    
+    void recordUnlock(int location, int day) {
+        unlocks[location]++;
+        unlockDaySum[location] += day;
+    }
+    
+    public ProgressionStats merge(ProgressionStats other) {
+        add(agents, other.agents);
+        add(finalLevelSum, other.finalLevelSum);
+        add(actionSum, other.actionSum);
+        add(deaths, other.deaths);
+        add(deathsByLocation, other.deathsByLocation);
+        add(deathsByLevel, other.deathsByLevel);
+        add(unlocks, other.unlocks);
+        add(unlockDaySum, other.unlockDaySum);
+        for (int c = 0; c < agents.length; c++) {
+            add(levelReached[c], other.levelReached[c]);
+            add(levelDaySum[c], other.levelDaySum[c]);
+            add(levelActionSum[c], other.levelActionSum[c]);
+            add(goldSum[c], other.goldSum[c]);
+            for (int level = 0; level < levelDayHistogram[c].length; level++) {
+                add(levelDayHistogram[c][level], other.levelDayHistogram[c][level]);
+            }
+        }
+        return this;
+    }
+    
+    private static void add(long[] target, long[] source) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] += source[i];
+        }
+    }
+    
+    // 해당 레벨에 도달한 봇 중 비율 q 이내가 도달한 일차
+    public int getLevelDayPercentile(PlayerClass playerClass, int level, double q) {
+        long[] histogram = levelDayHistogram[playerClass.ordinal()][level];
+        long target = (long) Math.ceil(levelReached[playerClass.ordinal()][level] * q);
+        long seen = 0;
+        for (int day = 0; day < histogram.length; day++) {
+            seen += histogram[day];
+            if (seen >= target && seen > 0) return day;
+        }
+        return -1;
+    }
+    
+    public void print(PrintStream out) {
+        long total = 0;
+        for (long a : agents) total += a;
+        
+        out.println("===== 레벨 도달 =====");
+        out.println("직업,레벨,도달 비율,평균 일차,중앙값 일차,90% 일차,평균 행동 수");
+        for (PlayerClass playerClass : PlayerClass.values()) {
+            int c = playerClass.ordinal();
+            for (int level = 2; level <= ProgressionSimulator.MAX_LEVEL; level++) {
+                if (levelReached[c][level] == 0) continue;
+                out.printf("%s,%d,%.4f,%.2f,%d,%d,%.1f\n", playerClass.getTitle(), level,
+                    levelReached[c][level] / (double) agents[c],
+                    levelDaySum[c][level] / (double) levelReached[c][level],
+                    getLevelDayPercentile(playerClass, level, 0.5),
+                    getLevelDayPercentile(playerClass, level, 0.9),
+                    levelActionSum[c][level] / (double) levelReached[c][level]);
             }
         }
         
-        System.out.printf("%d. 주변 탐색하기\n", option++);
-        System.out.print("선택: ");
-        
-        try {
-            int choice = scanner.nextInt();
-            scanner.nextLine(); // 버퍼 비우기
-            
-            if (choice == 1) {
-                player.setCurrentLocation("마을");
-                gameState = GameState.MAIN_MENU;
-                System.out.println("마을로 돌아왔습니다.");
-            } 
-            else if (choice > 1 && choice < option) {
-                String[] locations = unlockedLocations.stream()
-                    .filter(l -> !l.equals("마을") && !l.equals(player.getCurrentLocation()))
-                    .toArray(String[]::new);
-                
-                if (choice - 2 < locations.length) {
-                    moveToLocation(locations[choice - 2]);
-                } else {
-                    exploreArea();
-                }
-            } 
-            else if (choice == option - 1) {
-                exploreArea();
-            } 
-            else {
-                System.out.println("잘못된 선택입니다.");
+        out.println("\n===== 골드 곡선 (일차 시작 시점 평균) =====");
+        out.print("일차");
+        for (PlayerClass playerClass : PlayerClass.values()) out.print("," + playerClass.getTitle());
+        out.println();
+        for (int day = 1; day <= days; day++) {
+            out.print(day);
+            for (int c = 0; c < agents.length; c++) {
+                out.printf(",%.1f", goldSum[c][day] / (double) Math.max(1, agents[c]));
             }
-        } catch (InputMismatchException e) {
-            System.out.println("숫자를 입력해주세요.");
-            scanner.nextLine(); // 잘못된 입력 비우기
+            out.println();
         }
-    }
-
-    private void moveToLocation(String locationName) {
-        if (player.getStamina() < 15) {
-            System.out.println("스태미나가 부족하여 이동할 수 없습니다.");
-            return;
+        
+        out.println("\n===== 사망 =====");
+        for (PlayerClass playerClass : PlayerClass.values()) {
+            int c = playerClass.ordinal();
+            out.printf("%s: 봇당 %.3f회, 최종 평균 레벨 %.2f, 봇당 행동 %.1f\n", playerClass.getTitle(),
+                deaths[c] / (double) Math.max(1, agents[c]), finalLevelSum[c] / (double) Math.max(1, agents[c]),
+                actionSum[c] / (double) Math.max(1, agents[c]));
         }
-
-        Location destination = worldMap.get(locationName);
-        if (destination == null) {
-            System.out.println("존재하지 않는 지역입니다.");
-            return;
+        for (int i = 0; i < locationNames.length; i++) {
+            if (deathsByLocation[i] > 0) {
+                out.printf("%s: %d회\n", locationNames[i], deathsByLocation[i]);
+            }
+        }
+        for (int level = 1; level < deathsByLevel.length; level++) {
+            if (deathsByLevel[level] > 0) {
+                out.printf("레벨 %d: %d회\n", level, deathsByLevel[level]);
+            }
         }
         
-        if (!destination.isSuitableFor(player.getLevel())) {
-            System.out.println("이 지역은 레벨 " + destination.getMinLevel() + " 이상 " + 
-                              destination.getMaxLevel() + " 이하의 플레이어에게 적합합니다.");
-            return;
+        out.println("\n===== 지역 해금 =====");
+        for (int i = 0; i < locationNames.length; i++) {
+            out.printf("%s: %.4f (평균 %s일차)\n", locationNames[i], unlocks[i] / (double) Math.max(1, total),
+                unlocks[i] > 0 ? String.format("%.2f", unlockDaySum[i] / (double) unlocks[i]) : "-");
         }
+    }
+}
 
-        player.useStamina(15);
-        player.setCurrentLocation(locationName);
-        System.out.println(locationName + "에 도착했습니다.");
-
-        if (random.nextDouble() < 0.5) {
-            triggerTravelEvent();
+// 자동 탐색 전투 정책 (체력이 기준 아래면 회복 물약, 아니면 지정한 스킬, 마나가 모자라면 기본 공격)
+class AutoExplorePolicy implements ActionPolicy {
+    private int skillSlot;
+    private double potionHpRatio;
+    private double retreatHpRatio;
+    
+    // 체력 비율은 0~1로 자른다 (1을 넘는 후퇴 기준은 휴식으로도 채울 수 없다)
+    public AutoExplorePolicy(int skillSlot, double potionHpRatio, double retreatHpRatio) {
+        this.skillSlot = skillSlot;
+        this.potionHpRatio = Math.max(0.0, Math.min(1.0, potionHpRatio));
+        this.retreatHpRatio = Math.max(0.0, Math.min(1.0, retreatHpRatio));
+    }
+    
+    @Override
+    public int chooseAction(Player player, Monster monster) {
+        if (player.getHp() < player.getMaxHp() * potionHpRatio && findHealingPotion(player.getInventory()) >= 0) {
+            return ITEM;
         }
+        return skillSlot > 0 ? SKILL : ATTACK;
     }
+    
+    @Override
+    public int chooseSkill(Player player, Monster monster, List<Skill> skills) {
+        return Math.min(skillSlot, skills.size());
+    }
+    
+    @Override
+    public int chooseItem(Player player, Monster monster, List<Potion> potions) {
+        return findHealingPotion(potions) + 1;
+    }
+    
+    private static int findHealingPotion(List<? extends Item> items) {
+        int index = 0;
+        for (Item item : items) {
+            if (item instanceof HealthPotion || item instanceof UniversalPotion) {
+                return index;
+            }
+            if (item instanceof Potion) {
+                index++;
+            }
+        }
+        return -1;
+    }
+    
+    public double getRetreatHpRatio() { return retreatHpRatio; }
+}
 
-    private void triggerTravelEvent() {
-        double eventRoll = random.nextDouble();
-        
-        if (eventRoll < 0.4) {
-            Monster monster = getRandomMonsterForLocation(worldMap.get(player.getCurrentLocation()));
-            System.out.println("\n이동 중 " + monster.getName() + "을(를) 만났습니다!");
-            
-            Battle battle = new Battle(player, monster, this);
-            gameState = GameState.BATTLE;
-            battle.start();
-        } 
-        else if (eventRoll < 0.7) {
-            Item item = generateRandomItem();
-            System.out.println("\n이동 중 " + item.getName() + "을(를) 발견했습니다!");
-            player.addItem(item);
-        } 
-        else if (eventRoll < 0.85) {
-            triggerSpecialEvent();
-        } 
-        else {
-            System.out.println("\n조용히 이동했습니다...");
-        }
-    }
-
-    private void exploreArea() {
-        Location currentLoc = worldMap.get(player.getCurrentLocation());
-        System.out.println("\n" + currentLoc.getName() + "을(를) 탐색합니다...");
-        
-        if (player.getStamina() < 20) {
-            System.out.println("스태미나가 부족하여 탐색할 수 없습니다.");
-            return;
+// 자동 탐색 결과 요약
+class AutoExploreSummary {
+    private int runs;
+    private int battles;
+    private int wins;
+    private int turns;
+    private int damageTaken;
+    private int expFromBattles;
+    private int rests;
+    private int potionsUsed;
+    private Map<String, Integer> itemsFound;
+    private String stopReason;
+    private int startLevel;
+    private int startGold;
+    private int startDay;
+    private int endLevel;
+    private int endGold;
+    private int endDay;
+    private String location;
+    
+    public AutoExploreSummary(Player player, int gameDay) {
+        this.itemsFound = new TreeMap<>();
+        this.stopReason = "목표 횟수 완료";
+        this.startLevel = player.getLevel();
+        this.startGold = player.getGold();
+        this.startDay = gameDay;
+        this.location = player.getCurrentLocation();
+    }
+    
+    void recordBattle(int expReward, BattleOutcome outcome) {
+        battles++;
+        turns += outcome.getTurns();
+        damageTaken += outcome.getDamageTaken();
+        if (outcome.isPlayerWin()) {
+            wins++;
+            expFromBattles += expReward;
         }
-        player.useStamina(20);
-        player.increaseConsecutiveBattles();
-        
-        double eventRoll = random.nextDouble();
-        
-        if (eventRoll < 0.6) {
-            Monster monster = getRandomMonsterForLocation(currentLoc);
-            System.out.println("\n" + monster.getName() + "을(를) 만났습니다!");
-            
-            Battle battle = new Battle(player, monster, this);
-            gameState = GameState.BATTLE;
-            battle.start();
-        } 
-        else if (eventRoll < 0.85) {
-            Item item = generateRandomItem();
-            System.out.println("\n" + item.getName() + "을(를) 발견했습니다!");
-            player.addItem(item);
-            
-            if (random.nextDouble() < 0.1) {
-                Item extraItem = generateRandomItem();
-                System.out.println("추가로 " + extraItem.getName() + "을(를) 발견했습니다!");
-                player.addItem(extraItem);
+    }
+    
+    // 탐색 한 번 전후의 인벤토리를 비교해 새로 얻은 아이템과 마신 물약을 센다
+    void recordRun(Set<Item> before, List<Item> after) {
+        runs++;
+        Set<Item> remaining = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Item item : after) {
+            remaining.add(item);
+            if (!before.contains(item)) {
+                itemsFound.merge(item.getName(), 1, Integer::sum);
             }
-        } 
-        else if (eventRoll < 0.95) {
-            triggerSpecialEvent();
-        } 
-        else {
-            System.out.println("\n아무것도 발견하지 못했습니다...");
         }
-        
-        // 자동 저장 체크
-        battleCount++;
-        if (autoSave && battleCount % autoSaveInterval == 0) {
-            autoSave();
+        for (Item item : before) {
+            if (item instanceof Potion && !remaining.contains(item)) {
+                potionsUsed++;
+            }
+        }
+    }
+    
+    void recordRest() {
+        rests++;
+    }
+    
+    void setStopReason(String stopReason) {
+        this.stopReason = stopReason;
+    }
+    
+    void finish(Player player, int gameDay) {
+        this.endLevel = player.getLevel();
+        this.endGold = player.getGold();
+        this.endDay = gameDay;
+    }
+    
+    public void print(PrintStream out) {
+        out.println("\n===== 자동 탐색 결과 =====");
+        out.printf("지역: %s | 탐색 %d회 | 종료: %s\n", location, runs, stopReason);
+        out.printf("전투: %d회 (승리 %d, 패배 %d) | 평균 %.1f턴 | 받은 피해 %d\n", battles, wins, battles - wins,
+            battles > 0 ? turns / (double) battles : 0.0, damageTaken);
+        out.printf("전투 경험치: %d | 골드: %+d | 레벨: %d → %d\n", expFromBattles, endGold - startGold, startLevel, endLevel);
+        out.printf("휴식: %d회 (Day %d → %d) | 사용한 물약: %d개\n", rests, startDay, endDay, potionsUsed);
+        if (!itemsFound.isEmpty()) {
+            out.println("획득한 아이템:");
+            itemsFound.forEach((name, count) -> out.printf("  %s x%d\n", name, count));
         }
     }
+    
+    public int getRuns() { return runs; }
+    public int getBattles() { return battles; }
+    public int getWins() { return wins; }
+    public int getPotionsUsed() { return potionsUsed; }
+    public String getStopReason() { return stopReason; }
+}
 
-    private Monster getRandomMonsterForLocation(Location location) {
-        List<Monster> locationMonsters = monsters.stream()
-            .filter(m -> m.getLevel() <= player.getLevel() + 2)
-            .filter(m -> {
-                switch (location.getType()) {
-                    case FOREST:
-                        return m.getName().contains("고블린") || m.getType() == MonsterType.BEAST || m.getType() == MonsterType.PLANT;
-                    case MOUNTAIN:
-                        return m.getName().contains("오크") || m.getName().contains("트롤") || m.getName().contains("하피");
-                    case GRAVEYARD:
-                        return m.getType() == MonsterType.UNDEAD || m.getType() == MonsterType.GHOST;
-                    case DUNGEON:
-                        return m.getType() == MonsterType.BOSS || m.getType() == MonsterType.DEMON;
-                    case LAKE:
-                        return m.getType() == MonsterType.ELEMENTAL || m.getName().contains("하피");
-                    default:
-                        return false;
-                }
-            })
-            .collect(Collectors.toList());
+// 오프라인 진행 계산기 (지역별 조우 확률과 승률로 하루 기대 보상을 구한 뒤 일수를 곱한다)
+// 자리를 비운 동안 레벨과 장비는 접속 시점 그대로라고 보고, 매일 휴식 후 스태미나가 다하거나 질 때까지 탐색하며
+// 전투는 물약으로 회복해 최대 체력으로 시작한다고 가정한다.
+class OfflineProgress {
+    // 사건 확률은 지역의 사건표에서 시간대별로 고르게 평균 낸다 (보상 크기는 사건 처리기와 같다)
+    static final double TREASURE_GOLD = 50 + 99 / 2.0;
+    static final double RUINS_EXP = 30 + 49 / 2.0;
+    static final int EXPLORE_STAMINA = 20;
+    static final int ATTACK_STAMINA = 5;
+    
+    // 오래 비워도 가방이 넘치지 않도록 지급 개수를 제한
+    static final int MAX_FOUND_ITEMS = 20;
+    static final int MAX_LOOT_PER_ITEM = 10;
+    
+    public static OfflineRewards estimate(Game game, Player player, int days) {
+        Location location = chooseLocation(game, player);
+        SpawnBand band = game.getSpawnBand(location);
+        List<MonsterTemplate> pool = band.getCandidates();
+        
+        // 조우 한 번의 기대값 (몬스터는 출현 가중치대로 선택된다)
+        double winRate = 0.0;
+        double battleExp = 0.0;
+        double battleGold = 0.0;
+        Map<Item, Double> lootPerBattle = new LinkedHashMap<>();
+        for (int i = 0; i < pool.size(); i++) {
+            MonsterTemplate monster = pool.get(i);
+            FightOdds odds = game.getOddsCalculator().calculate(player, monster.spawn(), player.getMaxHp());
+            double weight = band.getChance(i);
+            double win = odds.getWinProbability();
+            winRate += weight * win;
+            battleExp += weight * win * monster.getExpReward();
+            battleGold += weight * win * monster.getGoldReward();
+            
+            double drop = weight * win;
+            monster.getLootTable().expectedDrops(monster.getLootChance())
+                .forEach((item, expected) -> lootPerBattle.merge(item, drop * expected, Double::sum));
+        }
         
-        if (locationMonsters.isEmpty()) {
-            return monsters.get(random.nextInt(monsters.size()));
+        // 탐색 한 번의 사건 확률 (특수 사건은 특수 표에서 한 번 더 나뉜다)
+        double battleChance = 0.0;
+        double itemChance = 0.0;
+        double treasureChance = 0.0;
+        double ruinsChance = 0.0;
+        TimeOfDay[] times = TimeOfDay.values();
+        for (TimeOfDay time : times) {
+            EventTable explore = location.getEvents().table(EventContext.EXPLORE, time, player.getLevel());
+            EventTable special = location.getEvents().table(EventContext.SPECIAL, time, player.getLevel());
+            double specialChance = explore.getChance(GameEvent.SPECIAL);
+            battleChance += explore.getChance(GameEvent.BATTLE) / times.length;
+            itemChance += explore.getChance(GameEvent.ITEM) / times.length;
+            treasureChance += specialChance * special.getChance(GameEvent.TREASURE) / times.length;
+            ruinsChance += specialChance * special.getChance(GameEvent.RUINS) / times.length;
         }
         
-        return locationMonsters.get(random.nextInt(locationMonsters.size()));
+        // 하루 탐색 횟수: 탐색에 20을 쓰고, 전투는 매 턴 회복되는 5가 공격 비용을 상쇄해 마지막 공격분 5만 남는다.
+        // 스태미나가 20 미만이 되거나 전투에서 지면 그날은 끝나므로, 남은 스태미나별 기대 탐색 횟수를
+        // 최대 스태미나 크기의 표로 구한다.
+        double[] remaining = new double[player.getMaxStamina() + 1];
+        for (int stamina = EXPLORE_STAMINA; stamina < remaining.length; stamina++) {
+            remaining[stamina] = 1 + (1 - battleChance) * remaining[stamina - EXPLORE_STAMINA]
+                + battleChance * winRate * remaining[Math.max(0, stamina - EXPLORE_STAMINA - ATTACK_STAMINA)];
+        }
+        double explorations = remaining[player.getMaxStamina()] * days;
+        
+        OfflineRewards rewards = new OfflineRewards(days, location.getName(), player);
+        rewards.setExplorations(explorations);
+        double battles = explorations * battleChance;
+        rewards.setBattles(battles, battles * winRate);
+        rewards.setExp(Math.round(explorations * (battleChance * battleExp + ruinsChance * RUINS_EXP)));
+        rewards.setGold(Math.round(explorations * (battleChance * battleGold + treasureChance * TREASURE_GOLD)));
+        rewards.setFoundItems(explorations * itemChance * (1 + Game.EXTRA_ITEM_CHANCE));
+        lootPerBattle.forEach((item, perBattle) -> rewards.addLoot(item, perBattle * battles));
+        return rewards;
+    }
+    
+    // 마을에 있었다면 해금된 지역 중 레벨에 맞는 가장 높은 곳에서 사냥한 것으로 본다
+    static Location chooseLocation(Game game, Player player) {
+        Location current = game.getLocation(player.getCurrentLocation());
+        if (current != null && current.getType() != LocationType.TOWN) {
+            return current;
+        }
+        String destination = new GreedyAgentPolicy(0.0).chooseDestination(game, player);
+        return destination != null ? game.getLocation(destination) : current;
     }
-
-    public Item generateRandomItem() {
-        int roll = random.nextInt(100);
-        
-        if (roll < 40) {
-            return new HealthPotion("체력 물약", 0, 30 + random.nextInt(20));
-        } else if (roll < 70) {
-            return new ManaPotion("마나 물약", 0, 20 + random.nextInt(15));
-        } else if (roll < 85) {
-            return new StaminaPotion("스태미나 물약", 0, 25 + random.nextInt(15));
-        } else if (roll < 95) {
-            if (random.nextBoolean()) {
-                return new Weapon("발견한 " + getRandomWeaponName(), 0, 
-                    3 + random.nextInt(5), 1 + random.nextInt(3), null, 50 + random.nextInt(50),
-                    "탐험 중 발견한 무기", 0.05 + random.nextDouble() * 0.1, 0.8 + random.nextDouble() * 0.15);
-            } else {
-                return new Armor("발견한 " + getRandomArmorName(), 0, 
-                    2 + random.nextInt(4), 1 + random.nextInt(2), null, 60 + random.nextInt(60),
-                    "탐험 중 발견한 방어구", 0.03 + random.nextDouble() * 0.07, 0.05 + random.nextDouble() * 0.1);
-            }
-        } else {
-            if (random.nextBoolean()) {
-                return new Weapon("희귀한 " + getRandomWeaponName(), 0, 
-                    8 + random.nextInt(7), 3 + random.nextInt(4), null, 80 + random.nextInt(70),
-                    "희귀한 무기", 0.15 + random.nextDouble() * 0.1, 0.85 + random.nextDouble() * 0.1);
-            } else {
-                return new Armor("희귀한 " + getRandomArmorName(), 0, 
-                    6 + random.nextInt(5), 3 + random.nextInt(3), null, 90 + random.nextInt(80),
-                    "희귀한 방어구", 0.1 + random.nextDouble() * 0.1, 0.15 + random.nextDouble() * 0.1);
+    
+    // 기대 개수를 정수로 (소수 부분은 그 확률로 올림)
+    static int round(double expected, GameRandom random) {
+        if (expected >= Integer.MAX_VALUE) return Integer.MAX_VALUE;
+        int whole = (int) expected;
+        return whole + (random.nextDouble() < expected - whole ? 1 : 0);
+    }
+    
+    // offline [직업] [레벨] [일수]: 오프라인 보상 예상치와 일수별 계산 시간
+    public static void run(String[] args) {
+        PlayerClass playerClass = args.length > 0 ? Arrays.stream(PlayerClass.values())
+            .filter(c -> c.getTitle().equals(args[0]) || c.name().equalsIgnoreCase(args[0]))
+            .findFirst().orElse(null) : PlayerClass.WARRIOR;
+        if (playerClass == null) {
+            System.out.println("직업 이름이 올바르지 않습니다.");
+            return;
+        }
+        int level = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int days = args.length > 2 ? Integer.parseInt(args[2]) : 7;
+        
+        Game game = new Game(42L, null);
+        game.setHeadless(ActionPolicy.BASIC_ATTACK);
+        game.setPlayer(BalanceSweep.createPlayer(playerClass, level));
+        game.getPlayer().setCurrentLocation("마을");
+        game.grantOfflineRewards(days).print(System.out);
+        
+        int queries = 10000;
+        for (int span : new int[] {1, 10000}) {
+            long start = System.nanoTime();
+            for (int i = 0; i < queries; i++) {
+                estimate(game, game.getPlayer(), span);
             }
+            System.err.printf("%d일 계산: %.2f마이크로초\n", span, (System.nanoTime() - start) / 1e3 / queries);
         }
     }
+}
 
-    private String getRandomWeaponName() {
-        String[] types = {"검", "도끼", "둔기", "창", "활", "석궁", "지팡이", "단검"};
-        String[] prefixes = {"날카로운", "강력한", "빛나는", "고대의", "마법의", "정교한"};
-        return prefixes[random.nextInt(prefixes.length)] + " " + types[random.nextInt(types.length)];
+// 오프라인 보상 (기대값과 실제 지급 결과)
+class OfflineRewards {
+    private int days;
+    private String location;
+    private double explorations;
+    private double battles;
+    private double wins;
+    private long exp;
+    private long gold;
+    private double foundItems;
+    private Map<String, Double> loot;
+    private Map<String, Item> lootItems;
+    private Map<String, Integer> granted;
+    private int startLevel;
+    private int endLevel;
+    
+    public OfflineRewards(int days, String location, Player player) {
+        this.days = days;
+        this.location = location;
+        this.loot = new LinkedHashMap<>();
+        this.lootItems = new HashMap<>();
+        this.granted = new TreeMap<>();
+        this.startLevel = player.getLevel();
+        this.endLevel = player.getLevel();
+    }
+    
+    void setExplorations(double explorations) { this.explorations = explorations; }
+    void setExp(long exp) { this.exp = exp; }
+    void setGold(long gold) { this.gold = gold; }
+    void setFoundItems(double foundItems) { this.foundItems = foundItems; }
+    
+    void setBattles(double battles, double wins) {
+        this.battles = battles;
+        this.wins = wins;
+    }
+    
+    // 몬스터마다 따로 가진 같은 이름의 전리품은 하나로 합친다
+    void addLoot(Item item, double expected) {
+        loot.merge(item.getName(), expected, Double::sum);
+        lootItems.putIfAbsent(item.getName(), item);
+    }
+    
+    void addGranted(Item item, Player player) {
+        player.addItem(item);
+        granted.merge(item.getName(), 1, Integer::sum);
+    }
+    
+    void finish(Player player) {
+        this.endLevel = player.getLevel();
+    }
+    
+    public void print(PrintStream out) {
+        out.println("\n===== 오프라인 보상 =====");
+        out.printf("자리를 비운 %d일 동안 %s에서 사냥했습니다.\n", days, location);
+        out.printf("탐색 %.0f회 | 전투 %.0f회 (승리 %.0f회)\n", explorations, battles, wins);
+        out.printf("경험치 %d | 골드 %d | 레벨 %d → %d\n", exp, gold, startLevel, endLevel);
+        if (!granted.isEmpty()) {
+            out.println("획득한 아이템:");
+            granted.forEach((name, count) -> out.printf("  %s x%d\n", name, count));
+        }
     }
+    
+    public int getDays() { return days; }
+    public String getLocation() { return location; }
+    public double getExplorations() { return explorations; }
+    public double getBattles() { return battles; }
+    public double getWins() { return wins; }
+    public long getExp() { return exp; }
+    public long getGold() { return gold; }
+    public double getFoundItems() { return foundItems; }
+    public Map<String, Double> getLoot() { return loot; }
+    public Item getLootItem(String name) { return lootItems.get(name); }
+}
 
-    private String getRandomArmorName() {
-        String[] types = {"갑옷", "투구", "장갑", "부츠", "망토", "방패"};
-        String[] prefixes = {"튼튼한", "가벼운", "빛나는", "고대의", "마법의", "정교한"};
-        return prefixes[random.nextInt(prefixes.length)] + " " + types[random.nextInt(types.length)];
+// 몬스터 행동 열거형
+enum MonsterAction {
+    ATTACK("공격", false, false),
+    STRONG_ATTACK("강한 공격", false, false),
+    DRAIN("생명력 흡수", true, false),
+    BLAST("마력 폭발", true, true),
+    BREATH("브레스", true, true),
+    GUARD("방어", true, false);
+    
+    private final String name;
+    private final boolean special;
+    private final boolean ignoresArmor;
+    
+    MonsterAction(String name, boolean special, boolean ignoresArmor) {
+        this.name = name;
+        this.special = special;
+        this.ignoresArmor = ignoresArmor;
     }
+    
+    public String getName() { return name; }
+    public boolean isSpecial() { return special; }
+    public boolean ignoresArmor() { return ignoresArmor; }
+}
 
-    private void triggerSpecialEvent() {
-        int eventType = random.nextInt(5);
-        
-        switch (eventType) {
-            case 0:
-                System.out.println("\n신비한 분수가 발견되었습니다! 체력과 마나가 모두 회복됩니다.");
-                player.setHp(player.getMaxHp());
-                player.setMana(player.getMaxMana());
-                break;
-            case 1:
-                System.out.println("\n보물 상자를 발견했습니다!");
-                int goldFound = 50 + random.nextInt(100);
-                player.gainGold(goldFound);
-                System.out.println(goldFound + " 골드를 얻었습니다!");
-                break;
-            case 2:
-                System.out.println("\n떠돌이 상인을 만났습니다. 특별한 아이템을 판매하고 있습니다.");
-                Shop travelingMerchant = new Shop("떠돌이 상인", ShopType.SPECIAL);
-                travelingMerchant.addItem(new HealthPotion("신비한 체력 물약", 200, 100));
-                travelingMerchant.addItem(new ManaPotion("신비한 마나 물약", 180, 80));
-                travelingMerchant.addItem(new Weapon("전설의 검", 1000, 25, 10, null, 200, "전설로 전해지는 검", 0.2, 0.95));
-                showShopMenu(travelingMerchant);
-                break;
-            case 3:
-                System.out.println("\n함정에 걸렸습니다! 피해를 입습니다.");
-                int damage = 10 + random.nextInt(20);
-                player.takeDamage(damage);
-                System.out.println(damage + " 피해를 입었습니다!");
-                break;
-            case 4:
-                System.out.println("\n고대의 유적을 발견했습니다. 경험치를 얻습니다!");
-                int expGain = 30 + random.nextInt(50);
-                player.gainExp(expGain);
-                System.out.println(expGain + " 경험치를 얻었습니다!");
-                break;
-        }
+// 몬스터 타입별 행동 방식 (쓸 수 있는 행동, 탐색 깊이, 재사용 대기 턴)
+class MonsterBehavior {
+    // 탐색하지 않고 80/20 무작위로 공격하는 예전 방식
+    static final MonsterBehavior CLASSIC = new MonsterBehavior(new MonsterAction[0], 0, 0, 0);
+    
+    private static final Map<MonsterType, MonsterBehavior> PROFILES = new EnumMap<>(MonsterType.class);
+    
+    // 행동은 강한 것부터 적는다. 기댓값이 같으면 앞의 행동을 고르므로, 탐색 범위 안에서
+    // 언제 써도 같아 보이는 강한 공격을 계속 미루는 일이 없다.
+    
+    static {
+        PROFILES.put(MonsterType.UNDEAD, new MonsterBehavior(
+            new MonsterAction[] {MonsterAction.STRONG_ATTACK, MonsterAction.DRAIN, MonsterAction.ATTACK}, 1, 4, 3));
+        PROFILES.put(MonsterType.ELEMENTAL, new MonsterBehavior(
+            new MonsterAction[] {MonsterAction.STRONG_ATTACK, MonsterAction.BLAST, MonsterAction.ATTACK}, 1, 4, 3));
+        PROFILES.put(MonsterType.DRAGON, new MonsterBehavior(
+            new MonsterAction[] {MonsterAction.STRONG_ATTACK, MonsterAction.BREATH, MonsterAction.ATTACK}, 2, 4, 4));
+        PROFILES.put(MonsterType.BOSS, new MonsterBehavior(
+            new MonsterAction[] {MonsterAction.STRONG_ATTACK, MonsterAction.GUARD, MonsterAction.ATTACK}, 3, 4, 3));
+    }
+    
+    private MonsterAction[] actions;
+    private int depth;
+    private int strongCooldown;
+    private int specialCooldown;
+    
+    public MonsterBehavior(MonsterAction[] actions, int depth, int strongCooldown, int specialCooldown) {
+        this.actions = actions;
+        this.depth = depth;
+        this.strongCooldown = strongCooldown;
+        this.specialCooldown = specialCooldown;
+    }
+    
+    public static MonsterBehavior of(MonsterType type) {
+        return PROFILES.getOrDefault(type, CLASSIC);
     }
+    
+    public boolean isClassic() { return depth == 0; }
+    public MonsterAction[] getActions() { return actions; }
+    public int getDepth() { return depth; }
+    public int getStrongCooldown() { return strongCooldown; }
+    public int getSpecialCooldown() { return specialCooldown; }
+}
 
-    private void showShopMenu() {
-        System.out.println("\n===== 상점 =====");
-        System.out.println("1. 무기 상점");
-        System.out.println("2. 방어구 상점");
-        System.out.println("3. 물약 상점");
-        System.out.println("4. 특수 아이템 상점");
-        System.out.println("5. 상점 나가기");
-        System.out.print("선택: ");
-        
-        int choice = scanner.nextInt();
-        scanner.nextLine(); // 버퍼 비우기
+// 몬스터 행동 결정 엔진 (몇 턴 앞까지 기댓값 최대화 탐색, 결과는 크기가 고정된 전치표에 저장)
+// 플레이어는 기본 공격만 한다고 보고, 피해량 분포는 아래/위 절반의 평균 두 값으로 근사한다.
+// 전치표 값은 다시 계산한 값과 똑같으므로 여러 세션이 같은 표를 나눠 써도 선택은 시드대로 재현된다.
+class MonsterAI {
+    static final int GUARD_HEAL_PERCENT = 5;
+    private static final double WIN = 2.0;
+    private static final double LOSS = -2.0;
+    
+    // 모든 세션이 함께 쓰는 기본 인스턴스 (항목 65536개, 약 1MB)
+    static final MonsterAI SHARED = new MonsterAI(1 << 16);
+    
+    // 잠금 없는 전치표: keys[i]에는 (상태 해시 ^ 값) 을 저장해, 다른 스레드가 쓰는 도중에 읽은
+    // 짝이 맞지 않는 항목은 해시가 어긋나 자연히 버려진다.
+    private final long[] keys;
+    private final long[] values;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    
+    public MonsterAI(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.keys = new long[size];
+        this.values = new long[size];
+        this.mask = size - 1;
+    }
+    
+    public MonsterAction chooseAction(Player player, Monster monster, MonsterBehavior behavior,
+                                      int strongCooldown, int specialCooldown) {
+        return newSearch().bestAction(player, monster, behavior, strongCooldown, specialCooldown);
+    }
+    
+    // 전투 엔진마다 하나씩 두고 결정할 때마다 다시 채워 쓰는 탐색 문맥 (스레드 간에 공유하지 않는다)
+    public Search newSearch() {
+        return new Search();
+    }
+    
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    
+    // 한 번의 결정에 쓰는 탐색 문맥 (전투 능력치에서 만든 결과표와 문맥 해시).
+    // 표는 크기가 고정이라 결정마다 제자리에서 다시 채우고 새로 할당하지 않는다.
+    class Search {
+        private MonsterBehavior behavior;
+        private int playerMaxHp;
+        private int monsterMaxHp;
+        private long context;
+        private final double[][] monsterChance = new double[MonsterAction.values().length][3];
+        private final int[][] monsterDamage = new int[MonsterAction.values().length][3];
+        private final int[][] monsterHeal = new int[MonsterAction.values().length][3];
+        private final int[] outcomeCount = new int[MonsterAction.values().length];
+        private final double[] playerChance = new double[4];
+        private final int[] playerDamage = new int[4];
+        private final int[] guardedDamage = new int[4];
+        private double monsterDamagePerTurn;
+        private double playerDamagePerTurn;
+        
+        private Search() {}
+        
+        MonsterAction bestAction(Player player, Monster monster, MonsterBehavior behavior,
+                                 int strongCooldown, int specialCooldown) {
+            prepare(player, monster, behavior);
+            return bestAction(player.getHp(), monster.getHp(), strongCooldown, specialCooldown);
+        }
         
-        if (choice >= 1 && choice <= 4) {
-            showShopMenu(shops.get(choice - 1));
-        } else if (choice == 5) {
-            gameState = GameState.MAIN_MENU;
-        } else {
-            System.out.println("잘못된 선택입니다.");
+        private void prepare(Player player, Monster monster, MonsterBehavior behavior) {
+            this.behavior = behavior;
+            this.playerMaxHp = player.getMaxHp();
+            this.monsterMaxHp = monster.getMaxHp();
+            
+            Weapon weapon = player.getEquippedWeapon();
+            Armor armor = player.getEquippedArmor();
+            double critical = weapon != null ? weapon.getCriticalChance() : 0.0;
+            double reduction = armor != null ? armor.getDamageReduction() : 0.0;
+            double evasion = player.getEvasion();
+            
+            long hash = behavior.getDepth() | behavior.getStrongCooldown() << 8 | behavior.getSpecialCooldown() << 16;
+            for (MonsterAction action : behavior.getActions()) {
+                hash = hash * 31 + action.ordinal() + 1;
+            }
+            hash = SplitMixRandom.mix64(hash ^ player.getAttack());
+            hash = SplitMixRandom.mix64(hash ^ player.getDefense());
+            hash = SplitMixRandom.mix64(hash ^ playerMaxHp);
+            hash = SplitMixRandom.mix64(hash ^ Double.doubleToLongBits(critical));
+            hash = SplitMixRandom.mix64(hash ^ Double.doubleToLongBits(evasion));
+            hash = SplitMixRandom.mix64(hash ^ (armor != null ? Double.doubleToLongBits(reduction) : -1L));
+            hash = SplitMixRandom.mix64(hash ^ monster.getAttack());
+            hash = SplitMixRandom.mix64(hash ^ monster.getDefense());
+            hash = SplitMixRandom.mix64(hash ^ monsterMaxHp);
+            this.context = hash;
+            
+            for (MonsterAction action : behavior.getActions()) {
+                buildMonsterOutcomes(action, monster, player.getDefense(), evasion, armor != null ? reduction : 0.0);
+            }
+            buildPlayerOutcomes(Math.max(1, player.getAttack() - monster.getDefense()), critical);
+            
+            // 평가 함수용 한 턴 평균 피해 (몬스터는 일반 공격 기준)
+            int attack = Math.max(1, monster.getAttack() - player.getDefense());
+            monsterDamagePerTurn = Math.max(1.0, (1.0 - evasion) 
+                * ((int) (lowBucket(attack) * (1.0 - reduction)) + (int) (highBucket(attack) * (1.0 - reduction))) / 2.0);
+            playerDamagePerTurn = 0.0;
+            for (int i = 0; i < playerDamage.length; i++) {
+                playerDamagePerTurn += playerChance[i] * playerDamage[i];
+            }
         }
-    }
-
-    private void showShopMenu(Shop shop) {
-        boolean inShop = true;
         
-        while (inShop) {
-            System.out.println("\n===== " + shop.getName() + " =====");
-            System.out.println("보유 골드: " + player.getGold() + " G");
-            System.out.println("1. 아이템 구매");
-            System.out.println("2. 아이템 판매");
-            System.out.println("3. 장비 수리");
-            System.out.println("4. 상점 나가기");
-            System.out.print("선택: ");
+        private void buildMonsterOutcomes(MonsterAction action, Monster monster, int defense, 
+                                          double evasion, double reduction) {
+            int index = action.ordinal();
+            if (action == MonsterAction.GUARD) {
+                outcomeCount[index] = 1;
+                monsterChance[index][0] = 1.0;
+                monsterDamage[index][0] = 0;
+                monsterHeal[index][0] = monsterMaxHp * GUARD_HEAL_PERCENT / 100;
+                return;
+            }
             
-            int choice = scanner.nextInt();
-            scanner.nextLine(); // 버퍼 비우기
+            int base;
+            switch (action) {
+                case STRONG_ATTACK: base = Math.max(1, monster.getAttack() * 2 - defense); break;
+                case BLAST: base = Math.max(1, monster.getAttack() - defense / 2); break;
+                case BREATH: base = Math.max(1, monster.getAttack() * 3 / 2 - defense); break;
+                default: base = Math.max(1, monster.getAttack() - defense);
+            }
+            double hit = action == MonsterAction.BREATH ? 1.0 : 1.0 - evasion;
             
-            switch (choice) {
-                case 1:
-                    buyItems(shop);
-                    break;
-                case 2:
-                    sellItems();
-                    break;
-                case 3:
-                    repairEquipment();
-                    break;
-                case 4:
-                    inShop = false;
-                    break;
-                default:
-                    System.out.println("잘못된 선택입니다.");
+            outcomeCount[index] = 3;
+            monsterChance[index][0] = 1.0 - hit;
+            monsterChance[index][1] = hit / 2;
+            monsterChance[index][2] = hit / 2;
+            monsterDamage[index][0] = 0;
+            monsterHeal[index][0] = 0;
+            for (int i = 0; i < 2; i++) {
+                int bucket = i == 0 ? lowBucket(base) : highBucket(base);
+                int damage = action.ignoresArmor() ? bucket : (int) (bucket * (1.0 - reduction));
+                monsterDamage[index][i + 1] = damage;
+                monsterHeal[index][i + 1] = action == MonsterAction.DRAIN ? damage / 2 : 0;
             }
         }
-    }
-
-    private void buyItems(Shop shop) {
-        List<Item> availableItems = shop.getItems().stream()
-            .filter(item -> {
-                if (item instanceof Equipment) {
-                    Equipment equip = (Equipment) item;
-                    return equip.getRequiredClass() == null || 
-                           equip.getRequiredClass() == player.getPlayerClass();
-                }
-                return true;
-            })
-            .collect(Collectors.toList());
         
-        if (availableItems.isEmpty()) {
-            System.out.println("\n현재 구매 가능한 아이템이 없습니다.");
-            return;
+        private void buildPlayerOutcomes(int base, double critical) {
+            playerChance[0] = (1 - critical) / 2;
+            playerChance[1] = (1 - critical) / 2;
+            playerChance[2] = critical / 2;
+            playerChance[3] = critical / 2;
+            playerDamage[0] = lowBucket(base);
+            playerDamage[1] = highBucket(base);
+            playerDamage[2] = lowBucket(base) * 2;
+            playerDamage[3] = highBucket(base) * 2;
+            for (int i = 0; i < playerDamage.length; i++) {
+                guardedDamage[i] = Math.max(1, playerDamage[i] / 2);
+            }
         }
         
-        System.out.println("\n===== 구매 가능한 아이템 =====");
-        for (int i = 0; i < availableItems.size(); i++) {
-            Item item = availableItems.get(i);
-            System.out.printf("%d. %s - %d G", i + 1, item.getName(), item.getPrice());
+        MonsterAction bestAction(int playerHp, int monsterHp, int strongCooldown, int specialCooldown) {
+            MonsterAction best = MonsterAction.ATTACK;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (MonsterAction action : behavior.getActions()) {
+                if (!isReady(action, strongCooldown, specialCooldown)) continue;
+                double value = expected(action, playerHp, monsterHp, strongCooldown, specialCooldown, behavior.getDepth());
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = action;
+                }
+            }
+            return best;
+        }
+        
+        // 몬스터 차례인 상태의 가치 (몬스터 입장, 클수록 몬스터에게 유리)
+        private double value(int playerHp, int monsterHp, int strongCooldown, int specialCooldown, int depth) {
+            long key = SplitMixRandom.mix64(context ^ (playerHp | (long) monsterHp << 20 
+                | (long) strongCooldown << 40 | (long) specialCooldown << 48 | (long) depth << 56));
+            int slot = (int) key & mask;
+            long bits = values[slot];
+            if ((keys[slot] ^ bits) == key) {
+                hits.increment();
+                return Double.longBitsToDouble(bits);
+            }
+            misses.increment();
             
-            if (item instanceof Equipment) {
-                Equipment equip = (Equipment) item;
-                System.out.printf(" (공격력: +%d, 방어력: +%d, 레벨 제한: %d)", 
-                    equip.getAttack(), equip.getDefense(), equip.getLevelRequirement());
-            } else if (item instanceof Potion) {
-                Potion potion = (Potion) item;
-                System.out.printf(" (효과: %s +%d)", 
-                    potion instanceof HealthPotion ? "체력" : 
-                    potion instanceof ManaPotion ? "마나" : "스태미나", 
-                    potion.getAmount());
+            double best = Double.NEGATIVE_INFINITY;
+            for (MonsterAction action : behavior.getActions()) {
+                if (isReady(action, strongCooldown, specialCooldown)) {
+                    best = Math.max(best, expected(action, playerHp, monsterHp, strongCooldown, specialCooldown, depth));
+                }
             }
             
-            System.out.println();
+            bits = Double.doubleToRawLongBits(best);
+            values[slot] = bits;
+            keys[slot] = key ^ bits;
+            return best;
         }
         
-        System.out.print("구매할 아이템 번호를 선택하세요 (0: 취소): ");
-        int choice = scanner.nextInt();
-        scanner.nextLine(); // 버퍼 비우기
+        // 탐색 끝 상태의 평가: 서로 쓰러뜨리는 데 걸리는 턴 수 경주 (-1 ~ 1)
+        private double evaluate(int playerHp, int monsterHp) {
+            double monsterTurns = monsterHp / playerDamagePerTurn;
+            double playerTurns = playerHp / monsterDamagePerTurn;
+            return (monsterTurns - playerTurns) / (monsterTurns + playerTurns);
+        }
         
-        if (choice > 0 && choice <= availableItems.size()) {
-            Item selectedItem = availableItems.get(choice - 1);
+        // 행동 하나의 기댓값: 몬스터 행동 결과 → 플레이어 기본 공격 결과 → 다음 몬스터 차례
+        private double expected(MonsterAction action, int playerHp, int monsterHp, 
+                                int strongCooldown, int specialCooldown, int depth) {
+            int index = action.ordinal();
+            int nextStrong = Math.max(0, (action == MonsterAction.STRONG_ATTACK ? behavior.getStrongCooldown() : strongCooldown) - 1);
+            int nextSpecial = Math.max(0, (action.isSpecial() ? behavior.getSpecialCooldown() : specialCooldown) - 1);
+            int[] responses = action == MonsterAction.GUARD ? guardedDamage : playerDamage;
             
-            if (selectedItem.getPrice() > player.getGold()) {
-                System.out.println("골드가 부족합니다!");
-                return;
+            double total = 0.0;
+            for (int i = 0; i < outcomeCount[index]; i++) {
+                double chance = monsterChance[index][i];
+                if (chance == 0.0) continue;
+                int playerLeft = playerHp - monsterDamage[index][i];
+                if (playerLeft <= 0) {
+                    total += chance * WIN;
+                    continue;
+                }
+                int monsterHealed = Math.min(monsterMaxHp, monsterHp + monsterHeal[index][i]);
+                
+                for (int j = 0; j < responses.length; j++) {
+                    if (playerChance[j] == 0.0) continue;
+                    int monsterLeft = monsterHealed - responses[j];
+                    double next;
+                    if (monsterLeft <= 0) {
+                        next = LOSS;
+                    } else if (depth <= 1) {
+                        next = evaluate(playerLeft, monsterLeft);
+                    } else {
+                        next = value(playerLeft, monsterLeft, nextStrong, nextSpecial, depth - 1);
+                    }
+                    total += chance * playerChance[j] * next;
+                }
             }
-            
-            if (selectedItem instanceof Equipment) {
-                Equipment equip = (Equipment) selectedItem;
-                if (player.getLevel() < equip.getLevelRequirement()) {
-                    System.out.println("레벨이 부족하여 구매할 수 없습니다!");
-                    return;
+            return total;
+        }
+    }
+    
+    private static boolean isReady(MonsterAction action, int strongCooldown, int specialCooldown) {
+        if (action == MonsterAction.STRONG_ATTACK) return strongCooldown == 0;
+        return !action.isSpecial() || specialCooldown == 0;
+    }
+    
+    // [base, base + base/2] 균등 분포를 아래 절반과 위 절반의 대표값 두 개로 근사
+    private static int lowBucket(int base) {
+        return base + base / 2 / 4;
+    }
+    
+    private static int highBucket(int base) {
+        int half = base / 2;
+        return base + half - half / 4;
+    }
+    
+    // ai [레벨] [전투 수] [시드]: 타입별 AI 몬스터와 예전 80/20 몬스터의 승률 비교, 결정 시간
+    public static void run(String[] args) {
+        int level = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+        int fights = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42L;
+        
+        MonsterAI ai = new MonsterAI(1 << 16);
+        SplitMixRandom random = new SplitMixRandom(0);
+        BattleEngine classic = new BattleEngine(random);
+        BattleEngine smart = new BattleEngine(random);
+        smart.setMonsterAI(ai);
+        
+        long decisions = 0;
+        long searchNanos = 0;
+        System.out.println("몬스터,타입,직업,예전 승률,AI 승률,예전 턴,AI 턴");
+        for (MonsterTemplate monster : new Game(seed, null).getMonsters()) {
+            MonsterBehavior behavior = MonsterBehavior.of(monster.getType());
+            if (behavior.isClassic()) continue;
+            for (PlayerClass playerClass : PlayerClass.values()) {
+                int[] wins = new int[2];
+                long[] turns = new long[2];
+                for (int variant = 0; variant < 2; variant++) {
+                    BattleEngine engine = variant == 0 ? classic : smart;
+                    long start = System.nanoTime();
+                    for (int i = 0; i < fights; i++) {
+                        random.setSeed(seed + i);
+                        BattleOutcome outcome = engine.resolve(BalanceSweep.createPlayer(playerClass, level), 
+                            monster.spawn(), ActionPolicy.BASIC_ATTACK);
+                        if (outcome.isPlayerWin()) wins[variant]++;
+                        turns[variant] += outcome.getTurns();
+                    }
+                    if (variant == 1) {
+                        searchNanos += System.nanoTime() - start;
+                        decisions += turns[variant];
+                    }
                 }
+                System.out.printf("%s,%s,%s,%.4f,%.4f,%.2f,%.2f\n", monster.getName(), monster.getType().getKoreanName(),
+                    playerClass.getTitle(), wins[0] / (double) fights, wins[1] / (double) fights,
+                    turns[0] / (double) fights, turns[1] / (double) fights);
             }
-            
-            player.addItem(selectedItem);
-            player.spendGold(selectedItem.getPrice());
-            System.out.println(selectedItem.getName() + "을(를) 구매했습니다!");
         }
+        System.err.printf("AI 전투 턴당 %.2f마이크로초 (탐색 포함), 전치표 적중률 %.1f%%\n", 
+            searchNanos / 1e3 / Math.max(1, decisions), 
+            100.0 * ai.getHits() / Math.max(1, ai.getHits() + ai.getMisses()));
     }
+}
 
-    private void sellItems() {
-        List<Item> sellableItems = player.getInventory().stream()
-            .filter(item -> item.getPrice() > 0)
-            .collect(Collectors.toList());
-        
-        if (sellableItems.isEmpty()) {
-            System.out.println("판매할 수 있는 아이템이 없습니다.");
-            return;
+// 속도 기반 행동 순서표 (행동 게이지가 가장 먼저 차는 참가자가 다음에 행동한다)
+// 참가자마다 다음 행동 시각을 두고 인덱스 이진 힙에서 가장 이른 참가자를 꺼내므로,
+// 참가자가 많아도 행동 하나를 정하고 다시 넣는 데 O(log n)이다.
+class TurnTimeline {
+    // 게이지 크기: 속도 s인 참가자는 GAUGE / s 시간마다 행동한다
+    static final long GAUGE = 1_000_000L;
+    // 능력치에 더하는 기본 속도 (민첩 5와 레벨 1 몬스터가 1:1로 번갈아 행동하도록)
+    static final int BASE_SPEED = 20;
+    
+    private long[] readyAt;
+    private long[] delay;
+    private int[] heap;
+    private int[] position;   // 참가자의 힙 위치 (-1이면 빠진 참가자)
+    private int size;
+    private int count;
+    private long now;
+    
+    public TurnTimeline(int capacity) {
+        this.readyAt = new long[capacity];
+        this.delay = new long[capacity];
+        this.heap = new int[capacity];
+        this.position = new int[capacity];
+    }
+    
+    public void clear() {
+        size = 0;
+        count = 0;
+        now = 0;
+    }
+    
+    // speedStat: 플레이어는 민첩, 몬스터는 레벨×5. 첫 행동 시각은 게이지 한 칸 안에서 무작위
+    public int add(int speedStat, GameRandom random) {
+        if (count == heap.length) {
+            int capacity = count * 2;
+            readyAt = Arrays.copyOf(readyAt, capacity);
+            delay = Arrays.copyOf(delay, capacity);
+            heap = Arrays.copyOf(heap, capacity);
+            position = Arrays.copyOf(position, capacity);
         }
-        
-        System.out.println("\n===== 판매 가능한 아이템 =====");
-        for (int i = 0; i < sellableItems.size(); i++) {
-            Item item = sellableItems.get(i);
-            int sellPrice = item.getSellPrice();
-            System.out.printf("%d. %s - %d G\n", i + 1, item.getName(), sellPrice);
+        int actor = count++;
+        delay[actor] = GAUGE / Math.max(1, BASE_SPEED + speedStat);
+        readyAt[actor] = now + (long) (random.nextDouble() * delay[actor]);
+        heap[size] = actor;
+        position[actor] = size;
+        siftUp(size++);
+        return actor;
+    }
+    
+    // 다음에 행동할 참가자를 돌려주고, 그 참가자의 다음 행동 시각을 한 칸 뒤로 미룬다
+    public int next() {
+        int actor = heap[0];
+        now = readyAt[actor];
+        readyAt[actor] += delay[actor];
+        siftDown(0);
+        return actor;
+    }
+    
+    // 쓰러진 참가자를 순서표에서 뺀다
+    public void remove(int actor) {
+        int index = position[actor];
+        if (index < 0) return;
+        position[actor] = -1;
+        int last = heap[--size];
+        if (index == size) return;
+        heap[index] = last;
+        position[last] = index;
+        siftDown(index);
+        siftUp(position[last]);
+    }
+    
+    public boolean contains(int actor) {
+        return actor < count && position[actor] >= 0;
+    }
+    
+    public int size() { return size; }
+    public long getTime() { return now; }
+    
+    // 같은 시각이면 먼저 들어온 참가자가 먼저 행동한다
+    private boolean before(int a, int b) {
+        return readyAt[a] < readyAt[b] || (readyAt[a] == readyAt[b] && a < b);
+    }
+    
+    private void siftUp(int index) {
+        int actor = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!before(actor, heap[parent])) break;
+            heap[index] = heap[parent];
+            position[heap[index]] = index;
+            index = parent;
         }
-        
-        System.out.print("판매할 아이템 번호를 선택하세요 (0: 취소): ");
-        int choice = scanner.nextInt();
-        scanner.nextLine();
-        
-        if (choice > 0 && choice <= sellableItems.size()) {
-            Item selectedItem = sellableItems.get(choice - 1);
-            int sellPrice = selectedItem.getSellPrice();
-            
-            player.removeItem(selectedItem);
-            player.gainGold(sellPrice);
-            System.out.println(selectedItem.getName() + "을(를) " + sellPrice + " G에 판매했습니다!");
+        heap[index] = actor;
+        position[actor] = index;
+    }
+    
+    private void siftDown(int index) {
+        int actor = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) break;
+            if (child + 1 < size && before(heap[child + 1], heap[child])) child++;
+            if (!before(heap[child], actor)) break;
+            heap[index] = heap[child];
+            position[heap[index]] = index;
+            index = child;
         }
+        heap[index] = actor;
+        position[actor] = index;
     }
+}
+
+// 파티 전투 대상 범위
+enum TargetRule {
+    SINGLE("단일"),            // 대상 지정 규칙으로 고른 적 하나
+    SPREAD("분산"),            // 타격마다 아직 맞지 않은 적 중 체력이 가장 낮은 적
+    ALL_ENEMIES("적 전체"),    // 살아 있는 적 전체
+    ALL_ALLIES("아군 전체");   // 살아 있는 파티원 전체 (1:1 전투에서는 시전자 자신)
     
-    private void repairEquipment() {
-        List<Equipment> equipments = new ArrayList<>();
-        if (player.getEquippedWeapon() != null) equipments.add(player.getEquippedWeapon());
-        if (player.getEquippedArmor() != null) equipments.add(player.getEquippedArmor());
-        
-        equipments.addAll(player.getInventory().stream()
-            .filter(item -> item instanceof Equipment)
-            .map(item -> (Equipment) item)
-            .collect(Collectors.toList()));
-        
-        if (equipments.isEmpty()) {
-            System.out.println("수리할 장비가 없습니다.");
-            return;
+    private String name;
+    
+    TargetRule(String name) {
+        this.name = name;
+    }
+    
+    public String getName() { return name; }
+}
+
+// 단일 대상을 고르는 규칙
+enum PackTargeting {
+    WEAKEST, FIRST, RANDOM
+}
+
+// 파티 전투용 스킬 (1:1 전투와 같은 이름이지만 범위가 넓다)
+enum PackSkill {
+    SMASH("강타", PlayerClass.WARRIOR, 1, 10, "강력한 한 방을 날립니다.", 
+        TargetRule.SINGLE, Element.STRIKE, false, 200, 1, 1, null, 0),
+    GUARD_STANCE("방어 태세", PlayerClass.WARRIOR, 3, 15, "파티 전원의 공격력을 높입니다.", 
+        TargetRule.ALL_ALLIES, Element.NONE, false, 0, 1, 0, StatusEffectType.BLESS, 3),
+    FURY("분노의 일격", PlayerClass.WARRIOR, 5, 25, "분노를 담아 강력한 공격을 합니다.", 
+        TargetRule.SINGLE, Element.STRIKE, false, 300, 2, 1, null, 0),
+    DOUBLE_SHOT("연속 사격", PlayerClass.ARCHER, 1, 12, "체력이 낮은 적 둘에게 한 발씩 쏩니다.", 
+        TargetRule.SPREAD, Element.PIERCE, false, 100, 1, 2, null, 0),
+    SNIPE("저격", PlayerClass.ARCHER, 3, 20, "강력한 한 방을 날립니다.", 
+        TargetRule.SINGLE, Element.PIERCE, false, 300, 2, 1, null, 0),
+    POISON_ARROW("독화살", PlayerClass.ARCHER, 5, 18, "적을 중독시킵니다.", 
+        TargetRule.SINGLE, Element.POISON, false, 100, 1, 1, StatusEffectType.POISON, 3),
+    FIREBALL("파이어볼", PlayerClass.MAGE, 1, 15, "적 전체에 불덩이를 터뜨려 화상을 입힙니다.", 
+        TargetRule.ALL_ENEMIES, Element.FIRE, true, 150, 1, 1, StatusEffectType.BURN, 2),
+    HEAL("치유", PlayerClass.MAGE, 3, 20, "파티 전원의 체력을 회복합니다.", 
+        TargetRule.ALL_ALLIES, Element.NONE, true, 200, 1, 0, null, 0),
+    FROST("빙결", PlayerClass.MAGE, 5, 30, "적을 얼려 행동 불가로 만듭니다.", 
+        TargetRule.SINGLE, Element.ICE, true, 100, 1, 1, StatusEffectType.FREEZE, 1);
+    
+    private final String name;
+    private final PlayerClass playerClass;
+    private final int levelRequirement;
+    private final int manaCost;
+    private final String description;
+    private final TargetRule target;
+    private final Element element;
+    private final boolean magic;
+    private final int powerPercent;      // 공격력(마법은 지능) 대비 위력. 아군 대상이면 회복량
+    private final int defenseDivisor;    // 대상 방어력을 이 값으로 나눠 계산한다
+    private final int hits;
+    private final StatusEffectType status;
+    private final int statusTurns;
+    
+    PackSkill(String name, PlayerClass playerClass, int levelRequirement, int manaCost, String description,
+             TargetRule target, Element element, boolean magic, int powerPercent, int defenseDivisor, int hits,
+             StatusEffectType status, int statusTurns) {
+        this.name = name;
+        this.playerClass = playerClass;
+        this.levelRequirement = levelRequirement;
+        this.manaCost = manaCost;
+        this.description = description;
+        this.target = target;
+        this.element = element;
+        this.magic = magic;
+        this.powerPercent = powerPercent;
+        this.defenseDivisor = defenseDivisor;
+        this.hits = hits;
+        this.status = status;
+        this.statusTurns = statusTurns;
+    }
+    
+    public String getName() { return name; }
+    public PlayerClass getPlayerClass() { return playerClass; }
+    public int getLevelRequirement() { return levelRequirement; }
+    public int getManaCost() { return manaCost; }
+    public String getDescription() { return description; }
+    public TargetRule getTarget() { return target; }
+    public Element getElement() { return element; }
+    public boolean isMagic() { return magic; }
+    public int getPowerPercent() { return powerPercent; }
+    public int getDefenseDivisor() { return defenseDivisor; }
+    public int getHits() { return hits; }
+    public StatusEffectType getStatus() { return status; }
+    public int getStatusTurns() { return statusTurns; }
+}
+
+// 파티 전투 결과 클래스
+class PackOutcome {
+    private final boolean partyWin;
+    private final int turns;
+    private final int actions;
+    private final int damageDealt;
+    private final int damageTaken;
+    private final int kills;
+    private final int survivors;
+    private final List<Item> loot;
+    private final int durabilityUsed;
+    
+    public PackOutcome(boolean partyWin, int turns, int actions, int damageDealt, int damageTaken,
+                      int kills, int survivors, List<Item> loot, int durabilityUsed) {
+        this.partyWin = partyWin;
+        this.turns = turns;
+        this.actions = actions;
+        this.damageDealt = damageDealt;
+        this.damageTaken = damageTaken;
+        this.kills = kills;
+        this.survivors = survivors;
+        this.loot = loot;
+        this.durabilityUsed = durabilityUsed;
+    }
+    
+    // 자동 탐색 통계처럼 1:1 결과를 받는 곳에 넘길 때 사용한다
+    public BattleOutcome toBattleOutcome() {
+        return new BattleOutcome(partyWin, turns, damageDealt, damageTaken, Collections.emptyList(), durabilityUsed);
+    }
+    
+    public boolean isPartyWin() { return partyWin; }
+    public int getTurns() { return turns; }
+    public int getActions() { return actions; }
+    public int getDamageDealt() { return damageDealt; }
+    public int getDamageTaken() { return damageTaken; }
+    public int getKills() { return kills; }
+    public int getSurvivors() { return survivors; }
+    public List<Item> getLoot() { return loot; }
+    public int getDurabilityUsed() { return durabilityUsed; }
+}
+
+// 파티(최대 4명) 대 무리(최대 8마리) 전투 엔진.
+// 참가자는 고정 배열 슬롯에 두고, 살아 있는 참가자와 범위 대상은 비트마스크로 나타낸다.
+// 상태 이상은 각 참가자의 StatusEffects에 바로 적용해 한 턴 동안 리스트를 만들거나 복사하지 않는다.
+class PackBattleEngine {
+    static final int MAX_PARTY = 4;
+    static final int MAX_PACK = 8;
+    
+    private GameRandom random;
+    private PrintStream out;
+    private PackTargeting targeting = PackTargeting.WEAKEST;
+    private boolean revealWeakness;
+    private StatusRules statusRules = StatusRules.DEFAULT;
+    
+    private final Player[] party = new Player[MAX_PARTY];
+    private final Monster[] pack = new Monster[MAX_PACK];
+    private final List<List<Skill>> partySkills = new ArrayList<>(Collections.nCopies(MAX_PARTY, Collections.emptyList()));
+    private final TurnTimeline timeline = new TurnTimeline(MAX_PARTY + MAX_PACK);
+    private final List<Potion> potionBuffer = new ArrayList<>();
+    
+    // 전투 기록 (null이면 남기지 않는다). 전투마다 장소와 슬롯별 몬스터 번호를 한 번 찾아 두고,
+    // 기록마다 행동한 쪽의 슬롯을 함께 적는다
+    private CombatLog combatLog;
+    private int logBattle;
+    private int logLocation;
+    private final int[] logMonsters = new int[MAX_PACK];
+    private int currentSkill;
+    
+    private ActionPolicy policy;
+    private int partySize;
+    private int packSize;
+    private int partyAlive;   // 살아 있는 파티원 비트마스크
+    private int packAlive;    // 살아 있는 몬스터 비트마스크
+    private int actingSlot;
+    private int turns;
+    private int actions;
+    private int damageDealt;
+    private int damageTaken;
+    private int durabilityUsed;
+    
+    public PackBattleEngine(GameRandom random) {
+        this(random, null);
+    }
+    
+    // out이 null이면 아무것도 출력하지 않는다
+    public PackBattleEngine(GameRandom random, PrintStream out) {
+        this.random = random;
+        this.out = out;
+    }
+    
+    public void setTargeting(PackTargeting targeting) {
+        this.targeting = targeting;
+    }
+    
+    public void setRevealWeakness(boolean revealWeakness) {
+        this.revealWeakness = revealWeakness;
+    }
+    
+    public void setStatusRules(StatusRules statusRules) {
+        this.statusRules = statusRules;
+    }
+    
+    // null이면 아무것도 출력하지 않는다
+    public void setOutput(PrintStream out) {
+        this.out = out;
+    }
+    
+    public void setCombatLog(CombatLog combatLog) {
+        this.combatLog = combatLog;
+    }
+    
+    // 파티원은 민첩, 몬스터는 레벨×5 속도로 한 순서표에서 행동한다.
+    // 파티원이 한 번 행동할 때마다 한 턴으로 센다.
+    public PackOutcome resolve(List<Player> members, List<Monster> monsters, ActionPolicy policy) {
+        if (members.isEmpty() || members.size() > MAX_PARTY || monsters.isEmpty() || monsters.size() > MAX_PACK) {
+            throw new IllegalArgumentException("파티는 1~" + MAX_PARTY + "명, 무리는 1~" + MAX_PACK + "마리여야 합니다.");
+        }
+        this.policy = policy;
+        this.partySize = members.size();
+        this.packSize = monsters.size();
+        this.partyAlive = 0;
+        this.packAlive = 0;
+        this.turns = 0;
+        this.actions = 0;
+        this.damageDealt = 0;
+        this.damageTaken = 0;
+        this.durabilityUsed = 0;
+        
+        timeline.clear();
+        for (int i = 0; i < partySize; i++) {
+            party[i] = members.get(i);
+            if (party[i].isAlive()) partyAlive |= 1 << i;
+            bindSkills(i);
+        }
+        for (int i = 0; i < packSize; i++) {
+            pack[i] = monsters.get(i);
+            if (pack[i].isAlive()) packAlive |= 1 << i;
+        }
+        if (combatLog != null) {
+            logBattle = combatLog.beginBattle();
+            logLocation = combatLog.locationId(party[0].getCurrentLocation());
+            for (int i = 0; i < packSize; i++) {
+                logMonsters[i] = combatLog.monsterId(pack[i].getName());
+            }
+        }
+        // 순서표 번호: 파티원은 0..partySize-1, 몬스터는 그 뒤
+        for (int i = 0; i < partySize; i++) {
+            timeline.add(party[i].getAgility(), random);
+        }
+        for (int i = 0; i < packSize; i++) {
+            timeline.add(pack[i].getLevel() * 5, random);
+        }
+        for (int i = 0; i < partySize; i++) {
+            if ((partyAlive & (1 << i)) == 0) timeline.remove(i);
+        }
+        for (int i = 0; i < packSize; i++) {
+            if ((packAlive & (1 << i)) == 0) timeline.remove(partySize + i);
         }
         
-        System.out.println("\n===== 수리 가능한 장비 =====");
-        for (int i = 0; i < equipments.size(); i++) {
-            Equipment equip = equipments.get(i);
-            int repairCost = (int)(equip.getPrice() * 0.1 * 
-            	    (1.0 - (equip.getDurability() / (double)equip.getMaxDurability())));
-            System.out.printf("%d. %s - 내구도 %d/%d (수리 비용: %d G)\n", 
-                i + 1, equip.getName(), equip.getDurability(), equip.getMaxDurability(), repairCost);
+        while (partyAlive != 0 && packAlive != 0) {
+            int actor = timeline.next();
+            actions++;
+            if (actor < partySize) {
+                memberTurn(actor);
+            } else {
+                monsterTurn(actor - partySize);
+            }
         }
         
-        System.out.print("수리할 장비 번호를 선택하세요 (0: 취소): ");
-        int choice = scanner.nextInt();
-        scanner.nextLine();
+        log(CombatEventKind.END, CombatLog.PLAYER, 0, CombatLog.NO_SLOT, -1, null, 
+            partyAlive != 0 ? CombatLog.WIN : 0, damageDealt, party[0].getHp());
         
-        if (choice > 0 && choice <= equipments.size()) {
-            Equipment selectedEquip = equipments.get(choice - 1);
-            int repairCost = (int)(selectedEquip.getPrice() * 0.1 * 
-                (1.0 - (selectedEquip.getDurability() / (double)selectedEquip.getMaxDurability())));
-            
-            if (player.getGold() < repairCost) {
-                System.out.println("골드가 부족합니다!");
-                return;
+        List<Item> loot = new ArrayList<>();
+        int kills = 0;
+        for (int i = 0; i < packSize; i++) {
+            if (pack[i].isAlive()) continue;
+            kills++;
+            if (partyAlive != 0) {
+                pack[i].rollLoot(random, loot);
             }
-            
-            selectedEquip.repair();
-            player.spendGold(repairCost);
-            System.out.println(selectedEquip.getName() + "을(를) 수리했습니다! (" + repairCost + " G 사용)");
         }
+        PackOutcome outcome = new PackOutcome(partyAlive != 0, turns, actions, damageDealt, damageTaken,
+            kills, Integer.bitCount(partyAlive), loot, durabilityUsed);
+        Arrays.fill(party, null);
+        Arrays.fill(pack, null);
+        return outcome;
     }
-
-    private void showQuestMenu() {
-        System.out.println("\n===== 퀘스트 =====");
-        System.out.println("1. 수락한 퀘스트 보기");
-        System.out.println("2. 새로운 퀘스트 보기");
-        System.out.println("3. 퀘스트 보상 받기");
-        System.out.println("4. 퀘스트 메뉴 나가기");
-        System.out.print("선택: ");
+    
+    // 파티원마다 공유 등록부에서 스킬 목록을 전투 시작 때 한 번 찾아 둔다
+    private void bindSkills(int slot) {
+        Player member = party[slot];
+        partySkills.set(slot, SkillRegistry.PACK.available(member.getPlayerClass(), member.getLevel()));
+    }
+    
+    private void memberTurn(int slot) {
+        Player member = party[slot];
+        actingSlot = slot;
+        turns++;
         
-        int choice = scanner.nextInt();
-        scanner.nextLine();
+        if (tickStatus(member.getStatusEffects(), member.getMaxHp(), member.getName())) {
+            return;
+        }
         
-        switch (choice) {
-            case 1:
-                showActiveQuests();
-                break;
-            case 2:
-                showAvailableQuests();
+        showStatus();
+        Monster target = pack[selectTarget()];
+        switch (policy.chooseAction(member, target)) {
+            case ActionPolicy.ATTACK:
+                basicAttack(member, target);
                 break;
-            case 3:
-                claimQuestRewards();
+            case ActionPolicy.SKILL:
+                useSkill(member, target);
                 break;
-            case 4:
-                gameState = GameState.MAIN_MENU;
+            case ActionPolicy.ITEM:
+                useItem(member, target);
                 break;
             default:
-                System.out.println("잘못된 선택입니다.");
+                println("잘못된 선택입니다. 기본 공격을 합니다.");
+                basicAttack(member, target);
         }
-    }
-
-    private void showActiveQuests() {
-        List<Quest> activeQuests = player.getActiveQuests();
         
-        if (activeQuests.isEmpty()) {
-            System.out.println("\n수락한 퀘스트가 없습니다.");
-            return;
+        member.setStamina(Math.min(member.getMaxStamina(), member.getStamina() + 5));
+    }
+    
+    // 자기 턴 시작에 상태 이상을 한 턴 진행한다. 쓰러졌거나 행동 불가면 true
+    private boolean tickStatus(StatusEffects effects, int maxHp, String name) {
+        for (int bits = effects.getMask(); bits != 0; bits &= bits - 1) {
+            StatusEffectType type = StatusEffects.typeOf(Integer.numberOfTrailingZeros(bits));
+            int damage = effects.tick(type, maxHp);
+            if (damage > 0) {
+                printf("[%s] %s의 체력 %d 감소\n", type.getName(), name, damage);
+                int dealt = hitActor(damage);
+                // 상태 이상 피해는 건 쪽이 행동한 것으로 남긴다 (건 참가자는 모르므로 그쪽 슬롯은 비운다)
+                logActing(CombatEventKind.STATUS_TICK, actingSlot < partySize ? CombatLog.MONSTER : CombatLog.PLAYER, 
+                    type, dealt);
+            }
         }
-        
-        System.out.println("\n===== 수락한 퀘스트 =====");
-        for (int i = 0; i < activeQuests.size(); i++) {
-            Quest quest = activeQuests.get(i);
-            System.out.printf("%d. %s - %s\n", i + 1, quest.getTitle(), quest.getDescription());
-            System.out.printf("   진행 상황: %d/%d\n", quest.getCurrentProgress(), quest.getRequiredProgress());
+        if (!isActingAlive()) {
+            return true;
         }
-        
-        System.out.println("\n계속하려면 엔터를 누르세요...");
-        scanner.nextLine();
+        if (effects.consumeSkip()) {
+            printf("%s이(가) 움직일 수 없습니다!\n", name);
+            logActing(CombatEventKind.SKIP, actingSlot < partySize ? CombatLog.PLAYER : CombatLog.MONSTER, null, 0);
+            return true;
+        }
+        return false;
     }
-
-    private void showAvailableQuests() {
-        List<Quest> availableQuests = quests.stream()
-            .filter(q -> !player.hasActiveQuest(q) && 
-                !player.hasCompletedQuest(q) &&
-                q.getLevelRequirement() <= player.getLevel())
-            .collect(Collectors.toList());
-        
-        if (availableQuests.isEmpty()) {
-            System.out.println("\n새로운 퀘스트가 없습니다.");
-            return;
+    
+    private void basicAttack(Player member, Monster target) {
+        int damage = calculateDamage(party[actingSlot].getAttack(), target.getDefense());
+        boolean isCritical = member.getEquippedWeapon() != null && member.getEquippedWeapon().isCriticalHit(random);
+        if (isCritical) {
+            damage *= 2;
+            println("크리티컬 히트!");
         }
-        
-        System.out.println("\n===== 새로운 퀘스트 =====");
-        for (int i = 0; i < availableQuests.size(); i++) {
-            Quest quest = availableQuests.get(i);
-            System.out.printf("%d. %s - %s\n", i + 1, quest.getTitle(), quest.getDescription());
-            System.out.printf("   보상: %d 경험치, %d 골드\n", quest.getExpReward(), quest.getGoldReward());
-            System.out.printf("   권장 레벨: %d\n", quest.getLevelRequirement());
+        int slot = indexOf(target);
+        int dealt = damageMonster(slot, damage);
+        log(CombatEventKind.ATTACK, CombatLog.PLAYER, actingSlot, slot, -1, null, isCritical ? CombatLog.CRITICAL : 0, 
+            dealt, target.getHp());
+        printf("\n%s이(가) %s에게 %d의 데미지를 입혔습니다!\n", member.getName(), target.getName(), damage);
+        member.useStamina(5);
+    }
+    
+    private void useSkill(Player member, Monster target) {
+        List<Skill> skills = partySkills.get(actingSlot);
+        if (skills.isEmpty()) {
+            println("사용할 수 있는 스킬이 없습니다. 기본 공격을 합니다.");
+            basicAttack(member, target);
+            return;
         }
         
-        System.out.print("\n수락할 퀘스트 번호를 선택하세요 (0: 취소): ");
-        int choice = scanner.nextInt();
-        scanner.nextLine();
-        
-        if (choice > 0 && choice <= availableQuests.size()) {
-            Quest selectedQuest = availableQuests.get(choice - 1);
-            player.acceptQuest(selectedQuest);
-            System.out.println("\n퀘스트 '" + selectedQuest.getTitle() + "'를 수락했습니다!");
+        int choice = policy.chooseSkill(member, target, skills);
+        if (choice <= 0 || choice > skills.size()) {
+            println("잘못된 선택입니다. 기본 공격을 합니다.");
+            basicAttack(member, target);
+            return;
         }
-    }
-
-    private void claimQuestRewards() {
-        List<Quest> completableQuests = player.getActiveQuests().stream()
-            .filter(Quest::isCompleted)
-            .collect(Collectors.toList());
-        
-        if (completableQuests.isEmpty()) {
-            System.out.println("\n완료한 퀘스트가 없습니다.");
+        Skill skill = skills.get(choice - 1);
+        if (member.getMana() < skill.getManaCost()) {
+            println("마나가 부족합니다! 기본 공격을 합니다.");
+            basicAttack(member, target);
             return;
         }
-        
-        System.out.println("\n===== 완료한 퀘스트 =====");
-        for (int i = 0; i < completableQuests.size(); i++) {
-            Quest quest = completableQuests.get(i);
-            System.out.printf("%d. %s - %s\n", i + 1, quest.getTitle(), quest.getDescription());
-            System.out.printf("   보상: %d 경험치, %d 골드\n", quest.getExpReward(), quest.getGoldReward());
+        member.setMana(member.getMana() - skill.getManaCost());
+        currentSkill = CombatLog.skillAction(skill);
+        if (combatLog != null) {
+            combatLog.nameSkill(skill);
         }
-        
-        System.out.print("\n보상을 받을 퀘스트 번호를 선택하세요 (0: 취소): ");
-        int choice = scanner.nextInt();
-        scanner.nextLine();
-        
-        if (choice > 0 && choice <= completableQuests.size()) {
-            Quest completedQuest = completableQuests.get(choice - 1);
-            player.completeQuest(completedQuest);
-            
-            System.out.println("\n퀘스트 '" + completedQuest.getTitle() + "' 완료!");
-            System.out.printf("%d 경험치와 %d 골드를 얻었습니다!\n", 
-                completedQuest.getExpReward(), completedQuest.getGoldReward());
-            
-            if (completedQuest.getRewardItem() != null) {
-                System.out.println("추가 보상: " + completedQuest.getRewardItem().getName());
+        cast(skill.getPackSkill(), member, target);
+    }
+    
+    // 스킬 범위에 해당하는 대상 묶음(비트마스크)에 피해와 상태 이상을 한 번에 적용한다
+    private void cast(PackSkill skill, Player caster, Monster target) {
+        switch (skill.getTarget()) {
+            case ALL_ALLIES: {
+                int heal = skill.getPowerPercent() > 0 ? caster.getIntelligence() * skill.getPowerPercent() / 100 : 0;
+                int healed = 0;
+                for (int bits = partyAlive; bits != 0; bits &= bits - 1) {
+                    int slot = Integer.numberOfTrailingZeros(bits);
+                    if (heal > 0) {
+                        int hpBefore = party[slot].getHp();
+                        party[slot].setHp(hpBefore + heal);
+                        healed += party[slot].getHp() - hpBefore;
+                    }
+                    applyStatus(party[slot].getStatusEffects(), skill);
+                }
+                // 파티 전체 효과는 시전자 기준으로 한 건씩 남긴다 (회복량은 파티 합계)
+                if (heal > 0) {
+                    log(CombatEventKind.HEAL, CombatLog.PLAYER, actingSlot, CombatLog.NO_SLOT, currentSkill, null, 0,
+                        healed, caster.getHp());
+                }
+                if (skill.getStatus() != null) {
+                    log(CombatEventKind.STATUS_APPLY, CombatLog.PLAYER, actingSlot, CombatLog.NO_SLOT, currentSkill,
+                        skill.getStatus(), 0, skill.getStatusTurns(), caster.getHp());
+                }
+                if (heal > 0) {
+                    printf("\n%s이(가) %s(으)로 파티 %d명에게 효과를 주었습니다! (체력 +%d)\n", caster.getName(), 
+                        skill.getName(), Integer.bitCount(partyAlive), heal);
+                } else {
+                    printf("\n%s이(가) %s(으)로 파티 %d명에게 효과를 주었습니다!\n", caster.getName(), skill.getName(),
+                        Integer.bitCount(partyAlive));
+                }
+                return;
             }
-        }
-    }
-
-    private void showInventoryMenu() {
-        boolean inInventory = true;
-        
-        while (inInventory) {
-            System.out.println("\n===== 인벤토리 =====");
-            System.out.println("보유 골드: " + player.getGold() + " G");
-            System.out.println("1. 아이템 사용");
-            System.out.println("2. 장비 착용");
-            System.out.println("3. 장비 해제");
-            System.out.println("4. 스탯 포인트 분배");
-            System.out.println("5. 인벤토리 나가기");
-            System.out.print("선택: ");
-            
-            try {
-                int choice = scanner.nextInt();
-                scanner.nextLine();
-                
-                switch (choice) {
-                    case 1:
-                        useItem();
-                        break;
-                    case 2:
-                        equipItem();
-                        break;
-                    case 3:
-                        unequipItem();
-                        break;
-                    case 4:
-                        distributeStatPoints();
-                        break;
-                    case 5:
-                        inInventory = false;
-                        gameState = GameState.MAIN_MENU;
-                        return;
-                    default:
-                        System.out.println("잘못된 선택입니다.");
+            case ALL_ENEMIES: {
+                int group = packAlive;
+                int total = 0;
+                for (int bits = group; bits != 0; bits &= bits - 1) {
+                    total += strike(Integer.numberOfTrailingZeros(bits), skill, caster);
                 }
-            } catch (InputMismatchException e) {
-                System.out.println("숫자를 입력해주세요.");
-                scanner.nextLine();
+                printf("\n%s이(가) %s(으)로 적 %d마리에게 총 %d의 데미지를 입혔습니다!\n", 
+                    caster.getName(), skill.getName(), Integer.bitCount(group), total);
+                return;
+            }
+            case SPREAD: {
+                int hitMask = 0;
+                int total = 0;
+                for (int hit = 0; hit < skill.getHits() && packAlive != 0; hit++) {
+                    int slot = weakest(packAlive & ~hitMask);
+                    if (slot < 0) slot = weakest(packAlive);
+                    hitMask |= 1 << slot;
+                    total += strike(slot, skill, caster);
+                }
+                printf("\n%s이(가) %s(으)로 적 %d마리에게 총 %d의 데미지를 입혔습니다!\n", 
+                    caster.getName(), skill.getName(), Integer.bitCount(hitMask), total);
+                return;
+            }
+            default: {
+                int slot = indexOf(target);
+                int total = 0;
+                for (int hit = 0; hit < skill.getHits() && pack[slot].isAlive(); hit++) {
+                    total += strike(slot, skill, caster);
+                }
+                printf("\n%s이(가) %s(으)로 %s에게 %d의 데미지를 입혔습니다!\n", 
+                    caster.getName(), skill.getName(), target.getName(), total);
             }
         }
     }
-
-    private void useItem() {
-        List<Potion> potions = player.getInventory().stream()
-            .filter(item -> item instanceof Potion)
-            .map(item -> (Potion) item)
-            .collect(Collectors.toList());
+    
+    // 몬스터 한 마리에게 스킬 한 타를 적용하고 입힌 피해를 돌려준다
+    private int strike(int slot, PackSkill skill, Player caster) {
+        Monster target = pack[slot];
+        int defense = target.getDefense() / skill.getDefenseDivisor();
+        int damage = skill.isMagic() 
+            ? calculateMagicDamage(caster.getIntelligence() * skill.getPowerPercent() / 100, defense)
+            : calculateDamage(party[actingSlot].getAttack() * skill.getPowerPercent() / 100, defense);
+        int percent = target.getDamagePercent(skill.getElement());
+        if (revealWeakness && out != null && percent != 100) {
+            TypeChart.announce(out, target, skill.getElement(), percent);
+        }
+        damage = TypeChart.scale(damage, percent);
+        int dealt = damageMonster(slot, damage);
+        log(CombatEventKind.SKILL, CombatLog.PLAYER, actingSlot, slot, currentSkill, null, 0, dealt, target.getHp());
+        if (target.isAlive() && percent > 0 && skill.getStatus() != null) {
+            applyStatus(target.getStatusEffects(), skill);
+            log(CombatEventKind.STATUS_APPLY, CombatLog.PLAYER, actingSlot, slot, currentSkill, skill.getStatus(), 0,
+                skill.getStatusTurns(), target.getHp());
+        }
+        return dealt;
+    }
+    
+    private void applyStatus(StatusEffects effects, PackSkill skill) {
+        if (skill.getStatus() != null) {
+            effects.apply(skill.getStatus(), skill.getStatusTurns(), statusRules);
+        }
+    }
+    
+    private void useItem(Player member, Monster target) {
+        // 탈출 분석이 꺼져 있어도 턴마다 반복자를 만들지 않도록 번호로 훑는다
+        List<Potion> potions = potionBuffer;
+        potions.clear();
+        List<Item> inventory = member.getInventory();
+        for (int i = 0; i < inventory.size(); i++) {
+            if (inventory.get(i) instanceof Potion) {
+                potions.add((Potion) inventory.get(i));
+            }
+        }
         
         if (potions.isEmpty()) {
-            System.out.println("\n사용할 수 있는 아이템이 없습니다.");
+            println("사용할 수 있는 아이템이 없습니다. 기본 공격을 합니다.");
+            basicAttack(member, target);
             return;
         }
         
-        System.out.println("\n===== 사용 가능한 아이템 =====");
-        for (int i = 0; i < potions.size(); i++) {
-            Potion potion = potions.get(i);
-            String effect = potion instanceof HealthPotion ? "체력 +" + potion.getAmount() :
-                          potion instanceof ManaPotion ? "마나 +" + potion.getAmount() :
-                          "스태미나 +" + potion.getAmount();
-            System.out.printf("%d. %s - %s\n", i + 1, potion.getName(), effect);
-        }
-        
-        System.out.print("\n사용할 아이템 번호를 선택하세요 (0: 취소): ");
-        int choice = scanner.nextInt();
-        scanner.nextLine();
-        
+        int choice = policy.chooseItem(member, target, potions);
         if (choice > 0 && choice <= potions.size()) {
             Potion selectedPotion = potions.get(choice - 1);
-            selectedPotion.use(player);
-            player.removeItem(selectedPotion);
-            System.out.println("\n" + selectedPotion.getName() + "을(를) 사용했습니다!");
+            selectedPotion.use(member);
+            member.removeItem(selectedPotion);
+            log(CombatEventKind.ITEM, CombatLog.PLAYER, actingSlot, CombatLog.NO_SLOT, -1, null, 0, 
+                selectedPotion.getAmount(), member.getHp());
+            printf("\n%s이(가) %s을(를) 사용했습니다!\n", member.getName(), selectedPotion.getName());
+        } else {
+            println("잘못된 선택입니다. 기본 공격을 합니다.");
+            basicAttack(member, target);
         }
     }
-
-    private void equipItem() {
-        List<Equipment> equipments = player.getInventory().stream()
-            .filter(item -> item instanceof Equipment)
-            .map(item -> (Equipment) item)
-            .filter(equip -> player.getLevel() >= equip.getLevelRequirement())
-            .collect(Collectors.toList());
-        
-        if (equipments.isEmpty()) {
-            System.out.println("\n착용할 수 있는 장비가 없습니다.");
+    
+    // 몬스터는 살아 있는 파티원 중 무작위로 한 명을 노린다 (80% 일반 공격, 20% 강한 공격)
+    private void monsterTurn(int slot) {
+        Monster monster = pack[slot];
+        actingSlot = partySize + slot;
+        if (tickStatus(monster.getStatusEffects(), monster.getMaxHp(), monster.getName())) {
             return;
         }
         
-        System.out.println("\n===== 착용 가능한 장비 =====");
-        for (int i = 0; i < equipments.size(); i++) {
-            Equipment equip = equipments.get(i);
-            String type = equip instanceof Weapon ? "무기" : "방어구";
-            System.out.printf("%d. %s (%s) - 공격력: +%d, 방어력: +%d, 레벨 제한: %d\n", 
-                i + 1, equip.getName(), type, equip.getAttack(), equip.getDefense(), 
-                equip.getLevelRequirement());
+        printf("\n[%s의 턴]\n", monster.getName());
+        int targetSlot = nthBit(partyAlive, random.nextInt(Integer.bitCount(partyAlive)));
+        Player target = party[targetSlot];
+        if (random.nextDouble() < target.getEvasion()) {
+            printf("%s이(가) %s의 공격을 회피했습니다!\n", target.getName(), monster.getName());
+            log(CombatEventKind.ATTACK, CombatLog.MONSTER, targetSlot, slot, MonsterAction.ATTACK.ordinal(), null, 
+                CombatLog.EVADED, 0, target.getHp());
+            return;
         }
         
-        System.out.print("\n착용할 장비 번호를 선택하세요 (0: 취소): ");
-        int choice = scanner.nextInt();
-        scanner.nextLine();
-        
-        if (choice > 0 && choice <= equipments.size()) {
-            Equipment selectedEquip = equipments.get(choice - 1);
-            player.equip(selectedEquip);
-            System.out.println("\n" + selectedEquip.getName() + "을(를) 착용했습니다!");
+        boolean strong = random.nextDouble() >= 0.8 && monster.getLevel() >= 3;
+        int damage = calculateDamage(strong ? monster.getAttack() * 2 : monster.getAttack(), target.getDefense());
+        if (target.getEquippedArmor() != null) {
+            damage = target.getEquippedArmor().calculateReducedDamage(damage);
         }
-    }
-
-    private void unequipItem() {
-        System.out.println("\n===== 현재 착용 중인 장비 =====");
-        System.out.println("1. 무기: " + 
-            (player.getEquippedWeapon() != null ? player.getEquippedWeapon().getName() : "없음"));
-        System.out.println("2. 방어구: " + 
-            (player.getEquippedArmor() != null ? player.getEquippedArmor().getName() : "없음"));
-        System.out.print("\n해제할 장비 번호를 선택하세요 (0: 취소): ");
-        
-        int choice = scanner.nextInt();
-        scanner.nextLine();
-        
-        if (choice == 1) {
-            if (player.getEquippedWeapon() != null) {
-                Equipment unequipped = player.unequipWeapon();
-                System.out.println("\n" + unequipped.getName() + "을(를) 해제했습니다!");
-            } else {
-                System.out.println("\n착용 중인 무기가 없습니다.");
+        int dealt = damageMember(targetSlot, damage);
+        log(CombatEventKind.ATTACK, CombatLog.MONSTER, targetSlot, slot, 
+            (strong ? MonsterAction.STRONG_ATTACK : MonsterAction.ATTACK).ordinal(), null, 0, dealt, target.getHp());
+        printf("%s이(가) %s%s에게 %d의 데미지를 입혔습니다!\n", 
+            monster.getName(), strong ? "강력한 공격으로 " : "", target.getName(), damage);
+        
+        // 맞은 파티원의 장비 내구도 감소
+        if (target.getEquippedWeapon() != null) {
+            target.getEquippedWeapon().reduceDurability(1);
+            durabilityUsed++;
+            if (target.getEquippedWeapon().isBroken()) {
+                println(target.getEquippedWeapon().getName() + "이(가) 부서졌습니다!");
+                log(CombatEventKind.BREAK, CombatLog.PLAYER, targetSlot, slot, 0, null, 0, 0, target.getHp());
+                target.unequipWeapon();
             }
-        } else if (choice == 2) {
-            if (player.getEquippedArmor() != null) {
-                Equipment unequipped = player.unequipArmor();
-                System.out.println("\n" + unequipped.getName() + "을(를) 해제했습니다!");
-            } else {
-                System.out.println("\n착용 중인 방어구가 없습니다.");
+        }
+        if (target.getEquippedArmor() != null) {
+            target.getEquippedArmor().reduceDurability(1);
+            durabilityUsed++;
+            if (target.getEquippedArmor().isBroken()) {
+                println(target.getEquippedArmor().getName() + "이(가) 부서졌습니다!");
+                log(CombatEventKind.BREAK, CombatLog.PLAYER, targetSlot, slot, 1, null, 0, 0, target.getHp());
+                target.unequipArmor();
             }
         }
     }
     
-    private void distributeStatPoints() {
-        if (player.getStatPoints() <= 0) {
-            System.out.println("분배할 스탯 포인트가 없습니다.");
-            return;
+    private int selectTarget() {
+        switch (targeting) {
+            case FIRST:
+                return Integer.numberOfTrailingZeros(packAlive);
+            case RANDOM:
+                return nthBit(packAlive, random.nextInt(Integer.bitCount(packAlive)));
+            default:
+                return weakest(packAlive);
         }
-        
-        boolean distributing = true;
-        
-        while (distributing && player.getStatPoints() > 0) {
-            System.out.println("\n===== 스탯 포인트 분배 =====");
-            System.out.println("보유 포인트: " + player.getStatPoints());
-            System.out.println("1. 공격력 (" + player.getBaseAttack() + ")");
-            System.out.println("2. 방어력 (" + player.getBaseDefense() + ")");
-            System.out.println("3. 민첩성 (" + player.getAgility() + ")");
-            System.out.println("4. 지능 (" + player.getIntelligence() + ")");
-            System.out.println("5. 체력 (" + player.getMaxHp() + ")");
-            System.out.println("6. 분배 종료");
-            System.out.print("선택: ");
-            
-            int choice = scanner.nextInt();
-            scanner.nextLine();
-            
-            switch (choice) {
-                case 1:
-                    player.distributeStatPoint("공격력");
-                    System.out.println("공격력이 증가했습니다! (" + player.getBaseAttack() + ")");
-                    break;
-                case 2:
-                    player.distributeStatPoint("방어력");
-                    System.out.println("방어력이 증가했습니다! (" + player.getBaseDefense() + ")");
-                    break;
-                case 3:
-                    player.distributeStatPoint("민첩성");
-                    System.out.println("민첩성이 증가했습니다! (" + player.getAgility() + ")");
-                    break;
-                case 4:
-                    player.distributeStatPoint("지능");
-                    System.out.println("지능이 증가했습니다! (" + player.getIntelligence() + ")");
-                    break;
-                case 5:
-                    player.distributeStatPoint("체력");
-                    System.out.println("최대 체력이 증가했습니다! (" + player.getMaxHp() + ")");
-                    break;
-                case 6:
-                    distributing = false;
-                    break;
-                default:
-                    System.out.println("잘못된 선택입니다.");
+    }
+    
+    // 마스크 안에서 체력이 가장 낮은 몬스터 슬롯 (없으면 -1)
+    private int weakest(int mask) {
+        int best = -1;
+        for (int bits = mask; bits != 0; bits &= bits - 1) {
+            int slot = Integer.numberOfTrailingZeros(bits);
+            if (best < 0 || pack[slot].getHp() < pack[best].getHp()) {
+                best = slot;
             }
         }
+        return best;
     }
-
-    private void talkToNPC() {
-        System.out.println("\n===== NPC 목록 =====");
-        for (int i = 0; i < npcs.size(); i++) {
-            System.out.printf("%d. %s\n", i + 1, npcs.get(i).getName());
+    
+    private static int nthBit(int mask, int n) {
+        for (int i = 0; i < n; i++) {
+            mask &= mask - 1;
         }
-        
-        System.out.print("\n대화할 NPC 번호를 선택하세요 (0: 취소): ");
-        int choice = scanner.nextInt();
-        scanner.nextLine();
-        
-        if (choice > 0 && choice <= npcs.size()) {
-            NPC npc = npcs.get(choice - 1);
-            System.out.println("\n[" + npc.getName() + "] " + npc.getDialogue());
-            
-            if (npc.getShopType() != null) {
-                System.out.print("상점을 이용하시겠습니까? (1: 예, 2: 아니오): ");
-                int shopChoice = scanner.nextInt();
-                scanner.nextLine();
-                
-                if (shopChoice == 1) {
-                    Shop npcShop = shops.stream()
-                        .filter(shop -> shop.getType() == npc.getShopType())
-                        .findFirst()
-                        .orElse(null);
-                    
-                    if (npcShop != null) {
-                        gameState = GameState.SHOP;
-                        showShopMenu(npcShop);
-                    }
-                }
-            } else if (npc.getName().equals("경비병")) {
-                System.out.println("\n경비병: 서쪽 숲에서 고블린들이 마을을 위협하고 있습니다. 처치해 주시겠습니까?");
-                System.out.println("1. 퀘스트 수락하기");
-                System.out.println("2. 거절하기");
-                System.out.print("선택: ");
-                
-                int questChoice = scanner.nextInt();
-                scanner.nextLine();
-                
-                if (questChoice == 1) {
-                    Quest goblinQuest = quests.get(0);
-                    if (!player.hasActiveQuest(goblinQuest) && !player.hasCompletedQuest(goblinQuest)) {
-                        player.acceptQuest(goblinQuest);
-                        System.out.println("\n퀘스트 '" + goblinQuest.getTitle() + "'를 수락했습니다!");
-                    } else {
-                        System.out.println("\n이미 해당 퀘스트를 수락했거나 완료했습니다.");
-                    }
-                }
-            } else if (npc.getName().equals("여관 주인")) {
-                System.out.print("\n하루 숙박에 50골드입니다. 휴식하시겠습니까? (1: 예, 2: 아니오): ");
-                int restChoice = scanner.nextInt();
-                scanner.nextLine();
-                
-                if (restChoice == 1) {
-                    if (player.getGold() >= 50) {
-                        player.spendGold(50);
-                        rest();
-                    } else {
-                        System.out.println("골드가 부족합니다!");
-                    }
-                }
-            }
+        return Integer.numberOfTrailingZeros(mask);
+    }
+    
+    private int indexOf(Monster monster) {
+        for (int i = 0; i < packSize; i++) {
+            if (pack[i] == monster) return i;
         }
-        
-        System.out.println("\n계속하려면 엔터를 누르세요...");
-        scanner.nextLine();
+        throw new IllegalStateException(monster.getName() + "은(는) 이 전투에 없습니다.");
     }
-
-    private void rest() {
-        System.out.println("\n하루를 쉬며 체력을 회복합니다...");
-        player.setHp(player.getMaxHp());
-        player.setMana(player.getMaxMana());
-        player.setStamina(player.getMaxStamina());
-        player.resetConsecutiveBattles();
-        
-        // 상태 이상 치료
-        player.getStatusEffects().clear();
-        
-        gameDay++;
-        System.out.println("새로운 날이 밝았습니다. (Day " + gameDay + ")");
-        
-        // 상점 물품 갱신
-        shops.forEach(shop -> {
-            shop.restock();
-            System.out.println(shop.getName() + "의 물품이 갱신되었습니다!");
-        });
-        
-        // 몬스터 리젠
-        if (gameDay % 3 == 0) {
-            System.out.println("몬스터들이 다시 생성되었습니다.");
+    
+    private boolean isActingAlive() {
+        return actingSlot < partySize ? party[actingSlot].isAlive() : pack[actingSlot - partySize].isAlive();
+    }
+    
+    // 상태 이상 피해를 지금 행동하는 참가자에게 입히고 실제로 줄어든 체력을 돌려준다
+    private int hitActor(int damage) {
+        if (actingSlot < partySize) {
+            return damageMember(actingSlot, damage);
+        }
+        return damageMonster(actingSlot - partySize, damage);
+    }
+    
+    private int damageMonster(int slot, int damage) {
+        Monster target = pack[slot];
+        int hpBefore = target.getHp();
+        target.takeDamage(damage);
+        int dealt = hpBefore - target.getHp();
+        damageDealt += dealt;
+        if (!target.isAlive() && (packAlive & (1 << slot)) != 0) {
+            packAlive &= ~(1 << slot);
+            timeline.remove(partySize + slot);
+            printf("%s이(가) 쓰러졌습니다!\n", target.getName());
         }
+        return dealt;
+    }
+    
+    private int damageMember(int slot, int damage) {
+        Player target = party[slot];
+        int hpBefore = target.getHp();
+        target.takeDamage(damage);
+        int dealt = hpBefore - target.getHp();
+        damageTaken += dealt;
+        if (!target.isAlive() && (partyAlive & (1 << slot)) != 0) {
+            partyAlive &= ~(1 << slot);
+            timeline.remove(slot);
+            printf("%s이(가) 쓰러졌습니다!\n", target.getName());
+        }
+        return dealt;
     }
-
-    private void handleGameOver() {
-        System.out.println("\n===== GAME OVER =====");
-        System.out.println(player.getName() + "은(는) 패배했습니다...");
-        System.out.println("1. 마을에서 재시작 (체력 50% 회복)");
-        System.out.println("2. 게임 종료");
-        System.out.print("선택: ");
-        
-        int choice = scanner.nextInt();
-        scanner.nextLine();
-        
-        if (choice == 1) {
-            player.setHp(player.getMaxHp() / 2);
-            player.setCurrentLocation("마을");
-            gameState = GameState.MAIN_MENU;
+    
+    // 지금 행동하는 참가자 자신에 대한 기록 (행동 불가, 상태 이상 피해)
+    private void logActing(CombatEventKind kind, int actor, StatusEffectType status, int amount) {
+        if (actingSlot < partySize) {
+            log(kind, actor, actingSlot, CombatLog.NO_SLOT, -1, status, 0, amount, party[actingSlot].getHp());
         } else {
-            isRunning = false;
+            int slot = actingSlot - partySize;
+            log(kind, actor, CombatLog.NO_SLOT, slot, -1, status, 0, amount, pack[slot].getHp());
         }
     }
     
-    private void showSaveLoadMenu() {
-        boolean inMenu = true;
-        
-        while (inMenu) {
-            System.out.println("\n===== 저장/불러오기 =====");
-            System.out.println("1. 게임 저장");
-            System.out.println("2. 게임 불러오기");
-            System.out.println("3. 메인 메뉴로 돌아가기");
-            System.out.print("선택: ");
-            
-            int choice = scanner.nextInt();
-            scanner.nextLine();
-            
-            switch (choice) {
-                case 1:
-                    saveGame();
-                    break;
-                case 2:
-                    loadGame();
-                    break;
-                case 3:
-                    inMenu = false;
-                    gameState = GameState.MAIN_MENU;
-                    break;
-                default:
-                    System.out.println("잘못된 선택입니다.");
-            }
+    // 기록이 켜져 있으면 한 건 남긴다. 파티원과 몬스터 필드는 슬롯이 가리키는 참가자의 값이고
+    // 그쪽 참가자가 없으면 비워 둔다. 피해로 대상의 체력이 0이 되었으면 처치로 표시한다
+    private void log(CombatEventKind kind, int actor, int memberSlot, int monsterSlot, int action, 
+                     StatusEffectType status, int flags, int amount, int targetHp) {
+        if (combatLog == null) return;
+        if (targetHp <= 0 && amount > 0 && kind != CombatEventKind.END && kind != CombatEventKind.HEAL) {
+            flags |= CombatLog.KILLED;
         }
+        Player member = memberSlot == CombatLog.NO_SLOT ? null : party[memberSlot];
+        Monster monster = monsterSlot == CombatLog.NO_SLOT ? null : pack[monsterSlot];
+        combatLog.append(logBattle, turns, kind, actor, memberSlot, monsterSlot, action, 
+            status == null ? 0 : status.ordinal() + 1, flags, amount, targetHp, logLocation, 
+            monster == null ? -1 : logMonsters[monsterSlot], member == null ? 0 : member.getLevel(), 
+            monster == null ? 0 : monster.getLevel(), member == null ? -1 : member.getPlayerClass().ordinal());
     }
     
-    private void saveGame() {
-        System.out.print("\n저장할 파일 이름을 입력하세요 (예: save1.sav): ");
-        String filename = scanner.nextLine();
+    private void showStatus() {
+        if (out == null) return;
         
-        try {
-            saveGame(filename);
-            System.out.println("게임이 성공적으로 저장되었습니다!");
-        } catch (IOException e) {
-            System.out.println("게임 저장 중 오류가 발생했습니다: " + e.getMessage());
+        out.println("\n-----------------------");
+        for (int i = 0; i < partySize; i++) {
+            out.printf("%s (Lv.%d) HP: %d/%d | 마나: %d/%d%s\n", party[i].getName(), party[i].getLevel(),
+                party[i].getHp(), party[i].getMaxHp(), party[i].getMana(), party[i].getMaxMana(),
+                statusText(party[i].getStatusEffects()));
+        }
+        out.println("VS");
+        for (int i = 0; i < packSize; i++) {
+            if (!pack[i].isAlive()) continue;
+            String weaknesses = revealWeakness ? TypeChart.describeRevealed(pack[i]) : "";
+            out.printf("%d. %s (Lv.%d) HP: %d/%d%s%s\n", i + 1, pack[i].getName(), pack[i].getLevel(),
+                pack[i].getHp(), pack[i].getMaxHp(), statusText(pack[i].getStatusEffects()),
+                weaknesses.isEmpty() ? "" : " | 약점: " + weaknesses);
         }
+        out.println("-----------------------");
     }
     
-    private void loadGame() {
-        System.out.print("\n불러올 파일 이름을 입력하세요 (예: save1.sav): ");
-        String filename = scanner.nextLine();
-        
-        try {
-            loadGame(filename);
-            System.out.println("게임이 성공적으로 불러와졌습니다!");
-        } catch (IOException | ClassNotFoundException e) {
-            System.out.println("게임 불러오기 중 오류가 발생했습니다: " + e.getMessage());
+    private static String statusText(StatusEffects effects) {
+        return effects.isEmpty() ? "" : " | 상태 이상: " + effects.describe();
+    }
+    
+    private int calculateDamage(int attack, int defense) {
+        int baseDamage = Math.max(1, attack - defense);
+        int randomFactor = random.nextInt(baseDamage / 2 + 1);
+        return baseDamage + randomFactor;
+    }
+    
+    private int calculateMagicDamage(int magicPower, int defense) {
+        int baseDamage = Math.max(1, magicPower - defense / 2);
+        int randomFactor = random.nextInt(baseDamage / 2 + 1);
+        return baseDamage + randomFactor;
+    }
+    
+    private void println(String message) {
+        if (out != null) {
+            out.println(message);
         }
     }
     
-    public void saveGame(String filename) throws IOException {
-        try (ObjectOutputStream oos = new ObjectOutputStream(
-            new FileOutputStream(filename))) {
-            oos.writeObject(player);
-            oos.writeObject(gameDay);
-            oos.writeObject(player.getCurrentLocation());
-            System.out.println("게임이 저장되었습니다!");
+    // BattleEngine과 같이 인자 모양별로 나눠 출력을 끈 전투에서는 인자 배열도 박싱도 생기지 않게 한다
+    private void printf(String format, Object a) {
+        if (out != null) {
+            out.printf(format, a);
         }
     }
     
-    public void loadGame(String filename) throws IOException, ClassNotFoundException {
-        try (ObjectInputStream ois = new ObjectInputStream(
-            new FileInputStream(filename))) {
-            player = (Player) ois.readObject();
-            gameDay = (int) ois.readObject();
-            String location = (String) ois.readObject();
-            player.setCurrentLocation(location);
-            System.out.println("게임을 불러왔습니다!");
+    private void printf(String format, Object a, Object b) {
+        if (out != null) {
+            out.printf(format, a, b);
         }
     }
     
-    private void autoSave() {
-        try {
-            saveGame("autosave.sav");
-            System.out.println("\n게임이 자동 저장되었습니다.");
-        } catch (IOException e) {
-            System.out.println("\n자동 저장에 실패했습니다.");
+    private void printf(String format, Object a, Object b, int c) {
+        if (out != null) {
+            out.printf(format, a, b, c);
+        }
+    }
+    
+    private void printf(String format, Object a, Object b, int c, int d) {
+        if (out != null) {
+            out.printf(format, a, b, c, d);
+        }
+    }
+    
+    private void printf(String format, Object a, Object b, Object c, int d) {
+        if (out != null) {
+            out.printf(format, a, b, c, d);
+        }
+    }
+    
+    // 파티 대 무리 전투를 반복해 승률과 행동당 처리 시간을 잰다: pack [파티 인원] [몬스터 수] [레벨] [전투 수] [시드]
+    public static void run(String[] args) {
+        int members = args.length > 0 ? Integer.parseInt(args[0]) : MAX_PARTY;
+        int monsters = args.length > 1 ? Integer.parseInt(args[1]) : MAX_PACK;
+        int level = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        int fights = args.length > 3 ? Integer.parseInt(args[3]) : 5000;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 42L;
+        
+        List<MonsterTemplate> goblins = new Game(seed, null).getMonsters().stream()
+            .filter(m -> m.hasTag(Game.PACK_TAG))
+            .collect(Collectors.toList());
+        PlayerClass[] classes = PlayerClass.values();
+        SplitMixRandom random = new SplitMixRandom(0);
+        PackBattleEngine engine = new PackBattleEngine(random);
+        
+        System.out.println("정책,대상 규칙,승률,평균 턴,평균 처치,평균 생존자");
+        String[] policyNames = {"기본 공격", "첫 번째 스킬"};
+        ActionPolicy[] policies = {ActionPolicy.BASIC_ATTACK, ActionPolicy.FIRST_SKILL};
+        for (int p = 0; p < policies.length; p++) {
+            for (PackTargeting rule : PackTargeting.values()) {
+                engine.setTargeting(rule);
+                int wins = 0;
+                long turns = 0;
+                long kills = 0;
+                long survivors = 0;
+                long actions = 0;
+                long start = System.nanoTime();
+                for (int i = 0; i < fights; i++) {
+                    random.setSeed(seed + i);
+                    List<Player> party = new ArrayList<>(members);
+                    for (int m = 0; m < members; m++) {
+                        party.add(BalanceSweep.createPlayer(classes[m % classes.length], level));
+                    }
+                    List<Monster> pack = new ArrayList<>(monsters);
+                    for (int m = 0; m < monsters; m++) {
+                        pack.add(goblins.get(m % goblins.size()).spawn());
+                    }
+                    PackOutcome outcome = engine.resolve(party, pack, policies[p]);
+                    if (outcome.isPartyWin()) wins++;
+                    turns += outcome.getTurns();
+                    kills += outcome.getKills();
+                    survivors += outcome.getSurvivors();
+                    actions += outcome.getActions();
+                }
+                long nanos = System.nanoTime() - start;
+                System.out.printf("%s,%s,%.4f,%.2f,%.2f,%.2f\n", policyNames[p], rule,
+                    wins / (double) fights, turns / (double) fights, kills / (double) fights, survivors / (double) fights);
+                System.err.printf("%s/%s: 행동당 %.0f나노초 (전투 준비 포함)\n", policyNames[p], rule, nanos / (double) Math.max(1, actions));
+            }
         }
     }
+}
 
-    public void updateQuestProgress(Monster monster) {
-        player.getActiveQuests().forEach(q -> q.updateProgress(monster));
+// 무리 전투 클래스 (게임 진행 중 만난 몬스터 무리와 싸우고 보상을 정산한다)
+// 세션마다 하나만 만들어 무리를 만날 때마다 다시 쓴다
+class PackBattle {
+    private Player player;
+    private List<Monster> pack;
+    private Game game;
+    private PrintStream out;
+    private PackBattleEngine engine;
+    private ConsoleActionPolicy consolePolicy;
+    
+    public PackBattle(Game game) {
+        this.game = game;
+        this.engine = new PackBattleEngine(game.getRandom(), null);
+        this.engine.setRevealWeakness(true);
+        this.consolePolicy = new ConsoleActionPolicy(game.getInput());
     }
     
-    public void setGameState(GameState state) {
-        this.gameState = state;
+    public void start(Player player, List<Monster> pack) {
+        this.player = player;
+        this.pack = pack;
+        this.out = game.getOutput();
+        engine.setOutput(game.isHeadless() ? null : out);
+        engine.setCombatLog(game.getCombatLog());
+        
+        out.println("\n===== 무리 전투 시작! (" + pack.size() + "마리) =====");
+        
+        PackOutcome outcome = engine.resolve(Collections.singletonList(player), pack,
+            game.getBattlePolicy() != null ? game.getBattlePolicy() : consolePolicy);
+        
+        int exp = 0;
+        int gold = 0;
+        for (Monster monster : pack) {
+            if (!monster.isAlive()) {
+                exp += monster.getExpReward();
+                gold += monster.getGoldReward();
+            }
+        }
+        game.recordPackBattle(outcome, exp);
+        
+        if (!outcome.isPartyWin()) {
+            game.setGameState(GameState.GAME_OVER);
+            releasePack();
+            return;
+        }
+        
+        out.println("\n무리를 모두 처치했습니다!");
+        out.println(exp + " 경험치를 얻었습니다!");
+        out.println(gold + " 골드를 얻었습니다!");
+        player.gainExp(exp);
+        player.gainGold(gold);
+        player.increaseConsecutiveBattles();
+        for (Monster monster : pack) {
+            game.updateQuestProgress(monster);
+        }
+        for (Item item : outcome.getLoot()) {
+            player.addItem(item.copy());
+            out.println(item.getName() + "을(를) 획득했습니다!");
+        }
+        game.checkLocationUnlocks();
+        game.setGameState(GameState.EXPLORATION);
+        releasePack();
+    }
+    
+    private void releasePack() {
+        for (Monster monster : pack) {
+            game.releaseMonster(monster);
+        }
+        this.player = null;
+        this.pack = null;
     }
 }